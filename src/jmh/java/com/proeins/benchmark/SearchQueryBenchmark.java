@@ -0,0 +1,35 @@
+package com.proeins.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.proeins.dao.SearchQuery;
+
+/**
+ * Parsing a search into criteria and HQL, which the service skips for
+ * searches it has cached.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchQueryBenchmark {
+
+	@Benchmark
+	public SearchQuery parseExact() {
+		return SearchQuery.parse(ShoeSearchBenchmark.EXACT);
+	}
+
+	@Benchmark
+	public SearchQuery parseMixed() {
+		return SearchQuery.parse("brand=Nike|Puma|Adidas,color:ed,size>=40,size<44;name^\"Runner, Pro\",stock>0");
+	}
+}
@@ -0,0 +1,108 @@
+package com.proeins.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.proeins.AppConfig;
+import com.proeins.dao.ShoeDao;
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeBuilder;
+import com.proeins.service.ShoeService;
+
+/**
+ * The application context on an embedded H2 database seeded with
+ * <code>shoes</code> shoes. Brands and colors are spread independently, so
+ * <code>brand=Brand7,color=Red</code> matches one shoe in 500.
+ * <p>
+ * The query cache is off, benchmarks measure the database path.
+ */
+@State(Scope.Benchmark)
+public class ShoeCatalog {
+
+	static final String[] COLORS = { "Black", "White", "Red", "Blue", "Green", "Grey", "Brown", "Pink", "Navy", "Beige" };
+
+	static final int BRANDS = 50;
+
+	private static final int SEED_BATCH_SIZE = 5000;
+
+	@Param({ "10000", "100000", "1000000" })
+	public int shoes;
+
+	private AnnotationConfigApplicationContext context;
+
+	ShoeService shoeService;
+
+	ShoeDao shoeDao;
+
+	private TransactionTemplate readOnly;
+
+	@Setup(Level.Trial)
+	public void start() {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put("mysql.driver", "org.h2.Driver");
+		properties.put("mysql.url", "jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1");
+		properties.put("mysql.user", "sa");
+		properties.put("mysql.password", "");
+		properties.put("hibernate.show_sql", "false");
+		properties.put("hibernate.hbm2ddl.auto", "create-drop");
+		properties.put("hibernate.cache.use_query_cache", "false");
+
+		context = new AnnotationConfigApplicationContext();
+		context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+		context.register(AppConfig.class);
+		context.refresh();
+		shoeService = context.getBean(ShoeService.class);
+		shoeDao = context.getBean(ShoeDao.class);
+		readOnly = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+		readOnly.setReadOnly(true);
+
+		List<Shoe> batch = new ArrayList<>(SEED_BATCH_SIZE);
+		for (int i = 0; i < shoes; i++) {
+			batch.add(shoe(i));
+			if (batch.size() == SEED_BATCH_SIZE) {
+				shoeService.saveAll(batch);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			shoeService.saveAll(batch);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		context.close();
+	}
+
+	/**
+	 * Runs DAO calls in a read-only transaction, like the service does.
+	 */
+	<T> T read(TransactionCallback<T> callback) {
+		return readOnly.execute(callback);
+	}
+
+	static Shoe shoe(int i) {
+		return new ShoeBuilder()
+				.setArticleNumber("A" + i)
+				.setName("Runner " + i)
+				.setBrand("Brand" + i % BRANDS)
+				.setColor(COLORS[i / BRANDS % COLORS.length])
+				.setSize(String.valueOf(36 + i % 12))
+				.setStock(String.valueOf(i % 100))
+				.build();
+	}
+}
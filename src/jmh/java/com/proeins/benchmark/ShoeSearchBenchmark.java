@@ -0,0 +1,78 @@
+package com.proeins.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+import com.proeins.dao.PageCriteria;
+import com.proeins.dao.SearchQuery;
+import com.proeins.dao.ShoePage;
+import com.proeins.model.Shoe;
+
+/**
+ * Searches through the service, parsing included, and straight on the DAO
+ * with a parsed query, to tell query building from database time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ShoeSearchBenchmark {
+
+	static final String EXACT = "brand=Brand7,color=Red";
+
+	static final String RANGE = "brand=Brand7,size>=40,size<44";
+
+	private static final SearchQuery EXACT_QUERY = SearchQuery.parse(EXACT);
+
+	private static final SearchQuery RANGE_QUERY = SearchQuery.parse(RANGE);
+
+	@Benchmark
+	public List<Shoe> serviceExact(ShoeCatalog catalog) {
+		return catalog.shoeService.searchShoes(EXACT);
+	}
+
+	@Benchmark
+	public List<Shoe> serviceRange(ShoeCatalog catalog) {
+		return catalog.shoeService.searchShoes(RANGE);
+	}
+
+	@Benchmark
+	public List<Shoe> daoExact(ShoeCatalog catalog) {
+		return search(catalog, EXACT_QUERY);
+	}
+
+	@Benchmark
+	public List<Shoe> daoRange(ShoeCatalog catalog) {
+		return search(catalog, RANGE_QUERY);
+	}
+
+	@Benchmark
+	public ShoePage daoFirstPageBySize(final ShoeCatalog catalog) {
+		return catalog.read(new TransactionCallback<ShoePage>() {
+			@Override
+			public ShoePage doInTransaction(TransactionStatus status) {
+				return catalog.shoeDao.searchShoes(SearchQuery.ALL, new PageCriteria("size", true, 50));
+			}
+		});
+	}
+
+	private static List<Shoe> search(final ShoeCatalog catalog, final SearchQuery query) {
+		return catalog.read(new TransactionCallback<List<Shoe>>() {
+			@Override
+			public List<Shoe> doInTransaction(TransactionStatus status) {
+				return catalog.shoeDao.searchShoes(query);
+			}
+		});
+	}
+}
@@ -0,0 +1,58 @@
+package com.proeins.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.proeins.model.Shoe;
+
+/**
+ * Writing a search result as JSON, with the mapper Spring MVC configures.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShoeSerializationBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	public int results;
+
+	private ObjectMapper mapper;
+
+	private List<Shoe> shoes;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		mapper = Jackson2ObjectMapperBuilder.json().build();
+		shoes = new ArrayList<>(results);
+		for (int i = 0; i < results; i++) {
+			Shoe shoe = ShoeCatalog.shoe(i);
+			shoe.setId((long) i + 1);
+			shoes.add(shoe);
+		}
+	}
+
+	@Benchmark
+	public byte[] writeList() throws JsonProcessingException {
+		return mapper.writeValueAsBytes(shoes);
+	}
+}
@@ -0,0 +1,112 @@
+package com.proeins.loadtest;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * JDBC driver for <code>jdbc:delay:&lt;url&gt;</code> that connects to
+ * <code>jdbc:&lt;url&gt;</code> and holds every statement execution, commit
+ * and rollback for <code>loadtest.db.latency_millis</code>, standing in for
+ * the round trip to a remote database.
+ */
+public class DelayingDriver implements Driver {
+
+	static final String PREFIX = "jdbc:delay:";
+
+	private static final long DELAY_NANOS = (long) (TimeUnit.MILLISECONDS.toNanos(1)
+			* Double.parseDouble(System.getProperty("loadtest.db.latency_millis", "0")));
+
+	static {
+		try {
+			DriverManager.registerDriver(new DelayingDriver());
+		} catch (SQLException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	@Override
+	public Connection connect(String url, Properties info) throws SQLException {
+		if (!acceptsURL(url)) {
+			return null;
+		}
+		Connection connection = DriverManager.getConnection("jdbc:" + url.substring(PREFIX.length()), info);
+		return delaying(connection, Connection.class);
+	}
+
+	@Override
+	public boolean acceptsURL(String url) {
+		return url != null && url.startsWith(PREFIX);
+	}
+
+	@Override
+	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+		return new DriverPropertyInfo[0];
+	}
+
+	@Override
+	public int getMajorVersion() {
+		return 1;
+	}
+
+	@Override
+	public int getMinorVersion() {
+		return 0;
+	}
+
+	@Override
+	public boolean jdbcCompliant() {
+		return false;
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	/* statements created by a delaying connection are delaying as well */
+	private static <T> T delaying(final Object target, Class<T> type) {
+		Object proxy = Proxy.newProxyInstance(DelayingDriver.class.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.startsWith("execute") || name.equals("commit") || name.equals("rollback")) {
+					pause();
+				}
+				Object result;
+				try {
+					result = method.invoke(target, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+				if (result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+					return delaying(result, method.getReturnType());
+				}
+				return result;
+			}
+		});
+		return type.cast(proxy);
+	}
+
+	private static void pause() {
+		if (DELAY_NANOS <= 0) {
+			return;
+		}
+		long deadline = System.nanoTime() + DELAY_NANOS;
+		for (long left = DELAY_NANOS; left > 0; left = deadline - System.nanoTime()) {
+			LockSupport.parkNanos(left);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package com.proeins.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.springframework.web.SpringServletContainerInitializer;
+
+import com.proeins.WebAppInitializer;
+
+/**
+ * The application as deployed, started through {@link WebAppInitializer} on
+ * an embedded Tomcat with a plain HTTP connector on a free port. Properties of
+ * db.properties are overridden by system properties of the same name.
+ */
+class EmbeddedShoeServer {
+
+	private final Tomcat tomcat = new Tomcat();
+
+	EmbeddedShoeServer(int maxThreads, int acceptCount) throws IOException {
+		File baseDir = Files.createTempDirectory("shoe-loadtest").toFile();
+		tomcat.setBaseDir(baseDir.getAbsolutePath());
+		tomcat.setPort(0);
+		Connector connector = tomcat.getConnector();
+		connector.setProperty("maxThreads", String.valueOf(maxThreads));
+		connector.setProperty("acceptCount", String.valueOf(acceptCount));
+
+		Context context = tomcat.addContext("", baseDir.getAbsolutePath());
+		context.addServletContainerInitializer(new SpringServletContainerInitializer(),
+				Collections.<Class<?>>singleton(WebAppInitializer.class));
+	}
+
+	/**
+	 * Starts the server and returns its base URL.
+	 */
+	String start() throws LifecycleException {
+		tomcat.start();
+		return "http://localhost:" + tomcat.getConnector().getLocalPort();
+	}
+
+	void stop() throws LifecycleException {
+		tomcat.stop();
+		tomcat.destroy();
+	}
+}
@@ -0,0 +1,41 @@
+package com.proeins.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ids of the shoes the load test created and has not deleted yet.
+ */
+class IdPool {
+
+	private final List<Long> ids = new ArrayList<>();
+
+	synchronized void add(long id) {
+		ids.add(id);
+	}
+
+	/**
+	 * Some id, or 0 which matches no shoe if none is left.
+	 */
+	synchronized long pick(int random) {
+		return ids.isEmpty() ? 0 : ids.get(random % ids.size());
+	}
+
+	/**
+	 * Removes and returns some id, <code>null</code> if none is left.
+	 */
+	synchronized Long take(int random) {
+		if (ids.isEmpty()) {
+			return null;
+		}
+		int index = random % ids.size();
+		Long id = ids.get(index);
+		ids.set(index, ids.get(ids.size() - 1));
+		ids.remove(ids.size() - 1);
+		return id;
+	}
+
+	synchronized int size() {
+		return ids.size();
+	}
+}
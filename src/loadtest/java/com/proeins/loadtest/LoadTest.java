@@ -0,0 +1,284 @@
+package com.proeins.loadtest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.proeins.metrics.LatencyHistogram;
+
+/**
+ * Open-loop load test of the shoe endpoints. Requests are started at a fixed
+ * rate whether or not earlier ones have completed, and every latency is taken
+ * from the time the request was due, not from when a client got around to
+ * sending it. A stalled server thus shows up in the percentiles instead of
+ * silently lowering the request rate (coordinated omission).
+ * <p>
+ * Everything is configured by system properties, see {@link #setting}. Those
+ * of db.properties, e.g. <code>hibernate.c3p0.max_size</code>, reach the
+ * application as well. Without database settings the application runs on an
+ * in-memory H2 database behind {@link DelayingDriver}.
+ */
+public class LoadTest {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+	/*
+	 * Percentiles are bucket bounds of LatencyHistogram, 12.5% apart, so an
+	 * unchanged p99 can move by one bucket between runs.
+	 */
+	private static final double MIN_REGRESSION_PERCENT = 13;
+
+	private final int rate = Integer.parseInt(setting("loadtest.rate", "200"));
+	private final int warmupSeconds = Integer.parseInt(setting("loadtest.warmup_seconds", "10"));
+	private final int durationSeconds = Integer.parseInt(setting("loadtest.duration_seconds", "60"));
+	private final int connections = Integer.parseInt(setting("loadtest.connections", "256"));
+	private final int seedShoes = Integer.parseInt(setting("loadtest.seed_shoes", "10000"));
+	private final long randomSeed = Long.parseLong(setting("loadtest.random_seed", "42"));
+	private final String mix = setting("loadtest.mix", "post=10,get=40,search=30,put=15,delete=5");
+	private final int tomcatMaxThreads = Integer.parseInt(setting("loadtest.tomcat.max_threads", "200"));
+	private final int tomcatAcceptCount = Integer.parseInt(setting("loadtest.tomcat.accept_count", "100"));
+	private final String reportFile = setting("loadtest.report", "target/loadtest-report.json");
+	private final String baselineFile = setting("loadtest.baseline", "");
+	private final double maxRegressionPercent = Double.parseDouble(setting("loadtest.max_regression_percent", "-1"));
+
+	private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+	private final Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+
+	/* largest delay of the scheduler behind the plan, a client side stall would show here */
+	private final AtomicLong maxScheduleLagNanos = new AtomicLong();
+
+	public static void main(String[] args) throws Exception {
+		System.exit(new LoadTest().run());
+	}
+
+	static String setting(String name, String defaultValue) {
+		return System.getProperty(name, defaultValue);
+	}
+
+	private static void defaultSetting(String name, String value) {
+		if (System.getProperty(name) == null) {
+			System.setProperty(name, value);
+		}
+	}
+
+	int run() throws Exception {
+		if (maxRegressionPercent >= 0 && maxRegressionPercent < MIN_REGRESSION_PERCENT) {
+			throw new IllegalArgumentException("loadtest.max_regression_percent must be at least " + MIN_REGRESSION_PERCENT
+					+ ", smaller changes are within the bucket error of the histogram: " + maxRegressionPercent);
+		}
+		defaultSetting("mysql.driver", DelayingDriver.class.getName());
+		defaultSetting("mysql.url", DelayingDriver.PREFIX + "h2:mem:loadtest;DB_CLOSE_DELAY=-1");
+		defaultSetting("mysql.user", "sa");
+		defaultSetting("mysql.password", "");
+		defaultSetting("hibernate.show_sql", "false");
+		defaultSetting("hibernate.hbm2ddl.auto", "create-drop");
+		// the JDK keeps only five idle connections per host by default
+		defaultSetting("http.maxConnections", String.valueOf(connections));
+
+		for (Operation operation : Operation.values()) {
+			latencies.put(operation, new LatencyHistogram());
+			errors.put(operation, new AtomicLong());
+		}
+
+		EmbeddedShoeServer server = new EmbeddedShoeServer(tomcatMaxThreads, tomcatAcceptCount);
+		String baseUrl = server.start();
+		try {
+			ShoeClient client = new ShoeClient(baseUrl);
+			IdPool ids = seed(client);
+			Map<String, Object> results = drive(client, ids);
+
+			Map<String, Object> report = new LinkedHashMap<>();
+			report.put("settings", settings());
+			report.putAll(results);
+			File file = new File(reportFile);
+			if (file.getParentFile() != null) {
+				file.getParentFile().mkdirs();
+			}
+			MAPPER.writeValue(file, report);
+			System.out.println("Report written to " + file.getAbsolutePath());
+			return baselineFile.isEmpty() ? 0 : compare(report);
+		} finally {
+			server.stop();
+		}
+	}
+
+	private IdPool seed(ShoeClient client) throws Exception {
+		IdPool ids = new IdPool();
+		Random random = new Random(randomSeed);
+		for (int seeded = 0; seeded < seedShoes; seeded += 1000) {
+			List<Map<String, Object>> batch = new ArrayList<>();
+			for (int i = seeded; i < Math.min(seedShoes, seeded + 1000); i++) {
+				batch.add(Operation.shoe(random.nextInt(Integer.MAX_VALUE)));
+			}
+			ShoeClient.Response response = client.send("POST", "/shoe/batch", batch);
+			if (response.getStatus() != 201) {
+				throw new IllegalStateException("Seeding failed with status " + response.getStatus());
+			}
+			Operation.addIds(ids, response.<List<Map<String, Object>>>read());
+		}
+		return ids;
+	}
+
+	private Map<String, Object> drive(final ShoeClient client, final IdPool ids) throws InterruptedException {
+		Operation[] slots = Operation.parseMix(mix);
+		Random random = new Random(randomSeed);
+		ExecutorService clients = Executors.newFixedThreadPool(connections);
+		long period = TimeUnit.SECONDS.toNanos(1) / rate;
+		long start = System.nanoTime();
+		long warmupEnd = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+		long end = warmupEnd + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+		Map<Operation, LatencyHistogram.Snapshot> warmupLatencies = null;
+		Map<Operation, Long> warmupErrors = null;
+		for (long i = 0;; i++) {
+			final long due = start + i * period;
+			if (due >= end) {
+				break;
+			}
+			if (warmupLatencies == null && due >= warmupEnd) {
+				warmupLatencies = snapshotLatencies();
+				warmupErrors = snapshotErrors();
+			}
+			final Operation operation = slots[random.nextInt(slots.length)];
+			final int value = random.nextInt(Integer.MAX_VALUE);
+			for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+				LockSupport.parkNanos(wait);
+			}
+			long lag = System.nanoTime() - due;
+			if (lag > maxScheduleLagNanos.get()) {
+				maxScheduleLagNanos.set(lag);
+			}
+			clients.execute(new Runnable() {
+				@Override
+				public void run() {
+					int status;
+					try {
+						status = operation.send(client, ids, value);
+					} catch (Exception e) {
+						status = -1;
+					}
+					latencies.get(operation).recordNanos(System.nanoTime() - due);
+					if (status < 200 || status >= 300) {
+						errors.get(operation).incrementAndGet();
+					}
+				}
+			});
+		}
+		if (warmupLatencies == null) {
+			warmupLatencies = snapshotLatencies();
+			warmupErrors = snapshotErrors();
+		}
+		clients.shutdown();
+		if (!clients.awaitTermination(60, TimeUnit.SECONDS)) {
+			System.err.println("Requests still running after 60 seconds, they are missing from the report");
+			clients.shutdownNow();
+		}
+
+		Map<String, Object> endpoints = new LinkedHashMap<>();
+		long completed = 0;
+		for (Operation operation : Operation.values()) {
+			LatencyHistogram.Snapshot measured = latencies.get(operation).snapshot().minus(warmupLatencies.get(operation));
+			if (measured.getCount() == 0) {
+				continue;
+			}
+			completed += measured.getCount();
+			Map<String, Object> endpoint = measured.toMap();
+			endpoint.put("p999Millis", measured.getPercentileMillis(0.999));
+			endpoint.put("errors", errors.get(operation).get() - warmupErrors.get(operation));
+			endpoints.put(operation.getEndpoint(), endpoint);
+			System.out.printf("%-32s %8d requests  p50 %8.2f  p99 %8.2f  p99.9 %8.2f  max %8.2f ms  %d errors%n",
+					operation.getEndpoint(), measured.getCount(), measured.getPercentileMillis(0.5),
+					measured.getPercentileMillis(0.99), measured.getPercentileMillis(0.999), measured.getMaxMillis(),
+					endpoint.get("errors"));
+		}
+
+		Map<String, Object> results = new LinkedHashMap<>();
+		results.put("achievedRate", (double) completed / durationSeconds);
+		results.put("maxScheduleLagMillis", maxScheduleLagNanos.get() / 1e6);
+		results.put("endpoints", endpoints);
+		return results;
+	}
+
+	private Map<Operation, LatencyHistogram.Snapshot> snapshotLatencies() {
+		Map<Operation, LatencyHistogram.Snapshot> snapshots = new EnumMap<>(Operation.class);
+		for (Map.Entry<Operation, LatencyHistogram> latency : latencies.entrySet()) {
+			snapshots.put(latency.getKey(), latency.getValue().snapshot());
+		}
+		return snapshots;
+	}
+
+	private Map<Operation, Long> snapshotErrors() {
+		Map<Operation, Long> snapshots = new EnumMap<>(Operation.class);
+		for (Map.Entry<Operation, AtomicLong> error : errors.entrySet()) {
+			snapshots.put(error.getKey(), error.getValue().get());
+		}
+		return snapshots;
+	}
+
+	private Map<String, Object> settings() {
+		Map<String, Object> settings = new LinkedHashMap<>();
+		settings.put("rate", rate);
+		settings.put("warmupSeconds", warmupSeconds);
+		settings.put("durationSeconds", durationSeconds);
+		settings.put("connections", connections);
+		settings.put("seedShoes", seedShoes);
+		settings.put("randomSeed", randomSeed);
+		settings.put("mix", mix);
+		settings.put("dbLatencyMillis", setting("loadtest.db.latency_millis", "0"));
+		settings.put("tomcatMaxThreads", tomcatMaxThreads);
+		settings.put("tomcatAcceptCount", tomcatAcceptCount);
+		for (String name : new String[] { "hibernate.c3p0.min_size", "hibernate.c3p0.max_size", "shoe.web.execution.mode",
+				"shoe.web.execution.pool_size" }) {
+			settings.put(name, setting(name, "default"));
+		}
+		settings.put("java", System.getProperty("java.version"));
+		return settings;
+	}
+
+	/*
+	 * Prints the change of each percentile against the baseline report and
+	 * fails if a p99 grew by more than loadtest.max_regression_percent.
+	 */
+	@SuppressWarnings("unchecked")
+	private int compare(Map<String, Object> report) throws Exception {
+		Map<String, Object> baseline = MAPPER.readValue(new File(baselineFile), Map.class);
+		Map<String, Map<String, Number>> before = (Map<String, Map<String, Number>>) baseline.get("endpoints");
+		Map<String, Map<String, Number>> after = (Map<String, Map<String, Number>>) report.get("endpoints");
+		if (!baseline.get("settings").equals(MAPPER.convertValue(report.get("settings"), Map.class))) {
+			System.out.println("Warning: the baseline was recorded with different settings");
+		}
+		int result = 0;
+		for (Map.Entry<String, Map<String, Number>> endpoint : after.entrySet()) {
+			Map<String, Number> previous = before.get(endpoint.getKey());
+			if (previous == null) {
+				continue;
+			}
+			StringBuilder line = new StringBuilder(String.format("%-32s", endpoint.getKey()));
+			for (String percentile : new String[] { "p50Millis", "p99Millis", "p999Millis" }) {
+				double old = previous.get(percentile).doubleValue();
+				double current = endpoint.getValue().get(percentile).doubleValue();
+				double change = old == 0 ? 0 : (current - old) * 100 / old;
+				line.append(String.format("  %s %8.2f -> %8.2f (%+.0f%%)", percentile.substring(0, percentile.length() - 6), old, current, change));
+				if (percentile.equals("p99Millis") && maxRegressionPercent >= 0 && change > maxRegressionPercent) {
+					result = 1;
+				}
+			}
+			System.out.println(line);
+		}
+		if (result != 0) {
+			System.out.println("p99 regressed by more than " + maxRegressionPercent + "%");
+		}
+		return result;
+	}
+}
@@ -0,0 +1,123 @@
+package com.proeins.loadtest;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The requests of the traffic mix. Each is sent with a random number drawn
+ * by the scheduler, so a seed reproduces the sequence of requests.
+ */
+enum Operation {
+
+	POST("POST /shoe") {
+		@Override
+		int send(ShoeClient client, IdPool ids, int random) throws IOException {
+			ShoeClient.Response response = client.send("POST", "/shoe", shoe(random));
+			if (response.getStatus() == 201) {
+				ids.add(((Number) response.<Map<String, Object>>read().get("id")).longValue());
+			}
+			return response.getStatus();
+		}
+	},
+
+	GET("GET /shoe?search=id") {
+		@Override
+		int send(ShoeClient client, IdPool ids, int random) throws IOException {
+			return client.send("GET", "/shoe?search=id:" + ids.pick(random), null).getStatus();
+		}
+	},
+
+	SEARCH("GET /shoe?search=brand,color") {
+		@Override
+		int send(ShoeClient client, IdPool ids, int random) throws IOException {
+			String search = "brand=Brand" + random % BRANDS + ",color=" + COLORS[random / BRANDS % COLORS.length];
+			return client.send("GET", "/shoe?search=" + URLEncoder.encode(search, "UTF-8"), null).getStatus();
+		}
+	},
+
+	PUT("PUT /shoe/{id}") {
+		@Override
+		int send(ShoeClient client, IdPool ids, int random) throws IOException {
+			Map<String, Object> changes = new LinkedHashMap<>();
+			changes.put("color", COLORS[random % COLORS.length]);
+			changes.put("stock", String.valueOf(random % 100));
+			return client.send("PUT", "/shoe/" + ids.pick(random), changes).getStatus();
+		}
+	},
+
+	DELETE("DELETE /shoe/{id}") {
+		@Override
+		int send(ShoeClient client, IdPool ids, int random) throws IOException {
+			Long id = ids.take(random);
+			return id == null ? 404 : client.send("DELETE", "/shoe/" + id, null).getStatus();
+		}
+	};
+
+	static final String[] COLORS = { "Black", "White", "Red", "Blue", "Green", "Grey", "Brown", "Pink", "Navy", "Beige" };
+
+	static final int BRANDS = 50;
+
+	private final String endpoint;
+
+	private Operation(String endpoint) {
+		this.endpoint = endpoint;
+	}
+
+	String getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * Sends the request and returns the response status.
+	 */
+	abstract int send(ShoeClient client, IdPool ids, int random) throws IOException;
+
+	static Map<String, Object> shoe(int random) {
+		Map<String, Object> shoe = new LinkedHashMap<>();
+		shoe.put("articleNumber", "L" + Integer.toHexString(random));
+		shoe.put("name", "Runner " + random % 1000);
+		shoe.put("brand", "Brand" + random % BRANDS);
+		shoe.put("color", COLORS[random / BRANDS % COLORS.length]);
+		shoe.put("size", String.valueOf(36 + random % 12));
+		shoe.put("stock", String.valueOf(random % 100));
+		return shoe;
+	}
+
+	/**
+	 * Parses a mix like <code>post=10,get=40,search=30,put=15,delete=5</code>
+	 * into the operation of each percent, in order.
+	 */
+	static Operation[] parseMix(String mix) {
+		Map<Operation, Integer> weights = new LinkedHashMap<>();
+		int total = 0;
+		for (String part : mix.split(",")) {
+			String[] weight = part.trim().split("=");
+			if (weight.length != 2) {
+				throw new IllegalArgumentException("Invalid mix entry: " + part);
+			}
+			int value = Integer.parseInt(weight[1].trim());
+			weights.put(valueOf(weight[0].trim().toUpperCase()), value);
+			total += value;
+		}
+		if (total <= 0) {
+			throw new IllegalArgumentException("Mix without weights: " + mix);
+		}
+		Operation[] slots = new Operation[total];
+		int slot = 0;
+		for (Map.Entry<Operation, Integer> weight : weights.entrySet()) {
+			for (int i = 0; i < weight.getValue(); i++) {
+				slots[slot++] = weight.getKey();
+			}
+		}
+		return slots;
+	}
+
+	static void addIds(IdPool ids, List<Map<String, Object>> shoes) {
+		for (Map<String, Object> shoe : shoes) {
+			ids.add(((Number) shoe.get("id")).longValue());
+		}
+	}
+}
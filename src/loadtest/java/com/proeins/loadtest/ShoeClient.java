@@ -0,0 +1,75 @@
+package com.proeins.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Minimal JSON client on HttpURLConnection. Responses are read completely so
+ * connections are kept alive and reused.
+ */
+class ShoeClient {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final String baseUrl;
+
+	ShoeClient(String baseUrl) {
+		this.baseUrl = baseUrl;
+	}
+
+	Response send(String method, String path, Object body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+		connection.setRequestMethod(method);
+		connection.setRequestProperty("Accept", "application/json");
+		if (body != null) {
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/json");
+			OutputStream out = connection.getOutputStream();
+			try {
+				MAPPER.writeValue(out, body);
+			} finally {
+				out.close();
+			}
+		}
+		int status = connection.getResponseCode();
+		InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		if (in != null) {
+			try {
+				byte[] buffer = new byte[8192];
+				for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+					content.write(buffer, 0, read);
+				}
+			} finally {
+				in.close();
+			}
+		}
+		return new Response(status, content.toByteArray());
+	}
+
+	static class Response {
+
+		private final int status;
+		private final byte[] content;
+
+		Response(int status, byte[] content) {
+			this.status = status;
+			this.content = content;
+		}
+
+		int getStatus() {
+			return status;
+		}
+
+		@SuppressWarnings("unchecked")
+		<T> T read() throws IOException {
+			return (T) MAPPER.readValue(content, Object.class);
+		}
+	}
+}
@@ -1,17 +1,47 @@
 package com.proeins;
 
+import java.beans.PropertyVetoException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.jcache.JCacheRegionFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.ComponentScans;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.core.env.Environment;
 import org.springframework.orm.hibernate5.HibernateTransactionManager;
 import org.springframework.orm.hibernate5.LocalSessionFactoryBean;
+import org.springframework.orm.hibernate5.LocalSessionFactoryBuilder;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+import com.proeins.dao.ConnectionChurnCustomizer;
+import com.proeins.dao.ConnectionPoolMetrics;
+import com.proeins.dao.ReplicaRoutingDataSource;
+import com.proeins.dao.ShardedSequenceGenerator;
+import com.proeins.dao.ShardedShoeDao;
+import com.proeins.dao.ShoeBitmapIndex;
+import com.proeins.dao.ShoeCatalogVersion;
+import com.proeins.dao.ShoeChangeListener;
+import com.proeins.dao.ShoeDao;
+import com.proeins.dao.ShoeDaoImpl;
+import com.proeins.dao.ShoeIdSequenceInitializer;
+import com.proeins.dao.ShoeRevisionInitializer;
+import com.proeins.metrics.LatencyRegistry;
+import com.proeins.metrics.MethodTimingPostProcessor;
+import com.proeins.service.AdaptiveConcurrencyLimit;
+import com.proeins.service.ConcurrencyLimitPostProcessor;
+import com.proeins.service.ShoeService;
+
 import static org.hibernate.cfg.Environment.*;
 
 @Configuration
@@ -24,38 +54,209 @@ public class AppConfig {
 	@Autowired
 	private Environment environment;
 
+	/*
+	 * The pool is a bean of its own instead of being created by Hibernate, so
+	 * its counters can be read and its size changed at runtime.
+	 */
+	@Bean(destroyMethod = "close")
+	public ComboPooledDataSource getPooledDataSource() {
+		return newPool(environment.getProperty("mysql.url"));
+	}
+
+	/*
+	 * Read-only transactions go to the replicas, if any are configured. Each
+	 * replica gets a pool sized like the primary's.
+	 */
+	@Bean(destroyMethod = "close")
+	public ReplicaRoutingDataSource getReplicaRoutingDataSource(ConnectionPoolMetrics connectionPoolMetrics) {
+		List<ComboPooledDataSource> replicas = new ArrayList<>();
+		for (String url : environment.getProperty("mysql.replica.urls", String[].class, new String[0])) {
+			if (!url.trim().isEmpty()) {
+				replicas.add(newPool(url.trim()));
+			}
+		}
+		return new ReplicaRoutingDataSource(connectionPoolMetrics.getDataSource(), replicas,
+				ReplicaRoutingDataSource.balanceOf(environment.getProperty("mysql.replica.balance", "round_robin")),
+				environment.getProperty("mysql.replica.read_your_writes_millis", Long.class, 5000L),
+				environment.getProperty("mysql.replica.client_header", "X-Client-Id"));
+	}
+
+	private ComboPooledDataSource newPool(String url) {
+		ComboPooledDataSource dataSource = new ComboPooledDataSource();
+		try {
+			dataSource.setDriverClass(environment.getProperty("mysql.driver"));
+		} catch (PropertyVetoException e) {
+			throw new IllegalStateException("Cannot load JDBC driver", e);
+		}
+		dataSource.setJdbcUrl(url);
+		dataSource.setUser(environment.getProperty("mysql.user"));
+		dataSource.setPassword(environment.getProperty("mysql.password"));
+
+		// Setting C3P0 properties
+		dataSource.setMinPoolSize(environment.getProperty("hibernate.c3p0.min_size", Integer.class, 5));
+		dataSource.setInitialPoolSize(environment.getProperty("hibernate.c3p0.min_size", Integer.class, 5));
+		dataSource.setMaxPoolSize(environment.getProperty("hibernate.c3p0.max_size", Integer.class, 20));
+		dataSource.setAcquireIncrement(environment.getProperty("hibernate.c3p0.acquire_increment", Integer.class, 1));
+		dataSource.setMaxIdleTime(environment.getProperty("hibernate.c3p0.timeout", Integer.class, 1800));
+		dataSource.setMaxStatements(environment.getProperty("hibernate.c3p0.max_statements", Integer.class, 150));
+		dataSource.setConnectionCustomizerClassName(ConnectionChurnCustomizer.class.getName());
+		return dataSource;
+	}
+
 	@Bean
-	public LocalSessionFactoryBean getSessionFactory() {
+	public LocalSessionFactoryBean getSessionFactory(ConnectionPoolMetrics connectionPoolMetrics,
+			ReplicaRoutingDataSource replicaRoutingDataSource) {
 		LocalSessionFactoryBean factoryBean = new LocalSessionFactoryBean();
+		factoryBean.setDataSource(replicaRoutingDataSource.hasReplicas() ? replicaRoutingDataSource.lazy()
+				: connectionPoolMetrics.getDataSource());
 
-		Properties props = new Properties();
-		// Setting JDBC properties
-		props.put(DRIVER, environment.getProperty("mysql.driver"));
-		props.put(URL, environment.getProperty("mysql.url"));
-		props.put(USER, environment.getProperty("mysql.user"));
-		props.put(PASS, environment.getProperty("mysql.password"));
+		factoryBean.setHibernateProperties(getHibernateProperties(0));
+		factoryBean.setPackagesToScan("com.proeins.model");
+
+		return factoryBean;
+	}
 
+	/*
+	 * Settings of the session factory of the given shard. Shards after the
+	 * first keep their cache regions apart, query results differ per shard.
+	 */
+	private Properties getHibernateProperties(int shard) {
+		Properties props = new Properties();
 		// Setting Hibernate properties
 		props.put(SHOW_SQL, environment.getProperty("hibernate.show_sql"));
+		if (environment.containsProperty("hibernate.dialect")) {
+			props.put(DIALECT, environment.getProperty("hibernate.dialect"));
+		}
 		props.put(HBM2DDL_AUTO, environment.getProperty("hibernate.hbm2ddl.auto"));
+		props.put(STATEMENT_BATCH_SIZE, environment.getProperty("hibernate.jdbc.batch_size"));
+		props.put(ORDER_INSERTS, environment.getProperty("hibernate.order_inserts"));
+		props.put(ORDER_UPDATES, environment.getProperty("hibernate.order_updates"));
+		props.put(GENERATE_STATISTICS, environment.getProperty("hibernate.generate_statistics"));
 
-		// Setting C3P0 properties
-		props.put(C3P0_MIN_SIZE, environment.getProperty("hibernate.c3p0.min_size"));
-		props.put(C3P0_MAX_SIZE, environment.getProperty("hibernate.c3p0.max_size"));
-		props.put(C3P0_ACQUIRE_INCREMENT, environment.getProperty("hibernate.c3p0.acquire_increment"));
-		props.put(C3P0_TIMEOUT, environment.getProperty("hibernate.c3p0.timeout"));
-		props.put(C3P0_MAX_STATEMENTS, environment.getProperty("hibernate.c3p0.max_statements"));
+		// Setting second-level cache properties
+		props.put(USE_SECOND_LEVEL_CACHE, environment.getProperty("hibernate.cache.use_second_level_cache"));
+		props.put(USE_QUERY_CACHE, environment.getProperty("hibernate.cache.use_query_cache"));
+		props.put(CACHE_REGION_FACTORY, environment.getProperty("hibernate.cache.region.factory_class"));
+		props.put(JCacheRegionFactory.PROVIDER, environment.getProperty("hibernate.javax.cache.provider"));
 
-		factoryBean.setHibernateProperties(props);
-		factoryBean.setPackagesToScan("com.proeins.model");
+		props.put(ShardedSequenceGenerator.SHARD_INDEX, String.valueOf(shard));
+		props.put(ShardedSequenceGenerator.SHARD_COUNT, String.valueOf(getShardUrls().size() + 1));
+		if (shard > 0) {
+			props.put(CACHE_REGION_PREFIX, "shard-" + shard);
+		}
+		return props;
+	}
 
-		return factoryBean;
+	/* urls of the shards after the first, which is the primary */
+	private List<String> getShardUrls() {
+		List<String> urls = new ArrayList<>();
+		if (environment.getProperty("shoe.shard.enabled", Boolean.class, false)) {
+			for (String url : environment.getProperty("shoe.shard.urls", String[].class, new String[0])) {
+				if (!url.trim().isEmpty()) {
+					urls.add(url.trim());
+				}
+			}
+		}
+		return urls;
+	}
+
+	/*
+	 * Replaces the DAO of the primary database when the catalog is sharded.
+	 * The primary is the first shard, each further one gets its own pool,
+	 * session factory and transaction manager. All shards notify the change
+	 * listeners; the bitmap index is built from the primary and only serves
+	 * its searches. The in-memory facets would only count the primary, so
+	 * they cannot be enabled together with sharding.
+	 */
+	@Bean(destroyMethod = "close")
+	@Primary
+	@ConditionalOnProperty(name = "shoe.shard.enabled", havingValue = "true")
+	public ShardedShoeDao getShardedShoeDao(SessionFactory sessionFactory, HibernateTransactionManager transactionManager,
+			ShoeCatalogVersion catalogVersion, ObjectProvider<List<ShoeChangeListener>> changeListeners,
+			ObjectProvider<ShoeBitmapIndex> bitmapIndex) {
+		if (environment.getProperty("shoe.facets.in_memory.enabled", Boolean.class, false)) {
+			throw new IllegalStateException("shoe.facets.in_memory.enabled only counts the primary, disable it on a sharded catalog");
+		}
+		List<ShoeChangeListener> listeners = changeListeners.getIfAvailable();
+		if (listeners == null) {
+			listeners = Collections.emptyList();
+		}
+		List<ShardedShoeDao.Shard> shards = new ArrayList<>();
+		ShoeDaoImpl primaryDao = newShoeDao(sessionFactory, catalogVersion, listeners);
+		primaryDao.setBitmapIndex(bitmapIndex.getIfAvailable());
+		shards.add(new ShardedShoeDao.Shard(primaryDao, transactionManager));
+		List<String> urls = getShardUrls();
+		for (int i = 0; i < urls.size(); i++) {
+			ComboPooledDataSource pool = newPool(urls.get(i));
+			LocalSessionFactoryBuilder builder = new LocalSessionFactoryBuilder(pool);
+			builder.scanPackages("com.proeins.model");
+			builder.addProperties(getHibernateProperties(i + 1));
+			SessionFactory shardSessionFactory = builder.buildSessionFactory();
+			new ShoeIdSequenceInitializer(shardSessionFactory).initialize();
+			new ShoeRevisionInitializer(shardSessionFactory).initialize();
+			HibernateTransactionManager shardTransactionManager = new HibernateTransactionManager(shardSessionFactory);
+			shards.add(new ShardedShoeDao.Shard(newShoeDao(shardSessionFactory, catalogVersion, listeners), shardTransactionManager,
+					shardSessionFactory, pool));
+		}
+		return new ShardedShoeDao(shards, ShardedShoeDao.shardKeyOf(environment.getProperty("shoe.shard.key", "article_number")),
+				environment.getProperty("shoe.shard.search_parallelism", Integer.class, 16));
+	}
+
+	private ShoeDaoImpl newShoeDao(SessionFactory sessionFactory, ShoeCatalogVersion catalogVersion,
+			List<ShoeChangeListener> changeListeners) {
+		ShoeDaoImpl shoeDao = new ShoeDaoImpl(sessionFactory, catalogVersion);
+		shoeDao.setChangeListeners(changeListeners);
+		shoeDao.setBatchSize(environment.getProperty("hibernate.jdbc.batch_size", Integer.class, 50));
+		shoeDao.setExportFetchSize(environment.getProperty("shoe.export.fetch_size", Integer.class, 500));
+		return shoeDao;
+	}
+
+	@Bean
+	public static LatencyRegistry getLatencyRegistry() {
+		return new LatencyRegistry();
+	}
+
+	/*
+	 * Post processors are created before the other beans, hence static and
+	 * handed the registry as parameter.
+	 */
+	@Bean
+	public static MethodTimingPostProcessor getServiceTimingPostProcessor(LatencyRegistry latencyRegistry) {
+		return new MethodTimingPostProcessor(latencyRegistry, ShoeService.class, "shoe_service_seconds");
+	}
+
+	@Bean
+	public static MethodTimingPostProcessor getDaoTimingPostProcessor(LatencyRegistry latencyRegistry) {
+		return new MethodTimingPostProcessor(latencyRegistry, ShoeDao.class, "shoe_dao_seconds");
+	}
+
+	/*
+	 * Registered after the timing, so it ends up in front of it and rejected
+	 * calls are not timed. Exports stream for as long as the client reads, so
+	 * their duration says nothing about the load of the database.
+	 */
+	@Bean
+	@ConditionalOnProperty(name = "shoe.limit.enabled", havingValue = "true")
+	public static ConcurrencyLimitPostProcessor getServiceConcurrencyLimitPostProcessor(Environment environment) {
+		return new ConcurrencyLimitPostProcessor(ShoeService.class, newLimit(environment, "read"),
+				newLimit(environment, "write"), environment.getProperty("shoe.limit.retry_after_seconds", Integer.class, 1),
+				Collections.singleton("exportShoes"));
+	}
+
+	private static AdaptiveConcurrencyLimit newLimit(Environment environment, String kind) {
+		String prefix = "shoe.limit." + kind + ".";
+		return new AdaptiveConcurrencyLimit(environment.getProperty(prefix + "initial", Integer.class, 20),
+				environment.getProperty(prefix + "min", Integer.class, 5),
+				environment.getProperty(prefix + "max", Integer.class, 200),
+				environment.getProperty("shoe.limit.tolerance", Double.class, 1.5),
+				environment.getProperty("shoe.limit.smoothing", Double.class, 0.2),
+				environment.getProperty("shoe.limit.window", Integer.class, 600));
 	}
 
 	@Bean
-	public HibernateTransactionManager getTransactionManager() {
+	public HibernateTransactionManager getTransactionManager(SessionFactory sessionFactory) {
 		HibernateTransactionManager transactionManager = new HibernateTransactionManager();
-		transactionManager.setSessionFactory(getSessionFactory().getObject());
+		transactionManager.setSessionFactory(sessionFactory);
 		return transactionManager;
 	}
 }
@@ -1,5 +1,9 @@
 package com.proeins;
 
+import javax.servlet.Filter;
+
+import org.springframework.web.filter.DelegatingFilterProxy;
+import org.springframework.web.servlet.FrameworkServlet;
 import org.springframework.web.servlet.support.AbstractAnnotationConfigDispatcherServletInitializer;
 
 public class WebAppInitializer extends AbstractAnnotationConfigDispatcherServletInitializer {
@@ -18,4 +22,15 @@ public class WebAppInitializer extends AbstractAnnotationConfigDispatcherServlet
 	protected String[] getServletMappings() {
 		return new String[] { "/" };
 	}
+
+	/*
+	 * The compression filter is a bean of the dispatcher's context, which is
+	 * looked up on the first request.
+	 */
+	@Override
+	protected Filter[] getServletFilters() {
+		DelegatingFilterProxy compression = new DelegatingFilterProxy("responseCompressionFilter");
+		compression.setContextAttribute(FrameworkServlet.SERVLET_CONTEXT_PREFIX + getServletName());
+		return new Filter[] { compression };
+	}
 }
@@ -1,26 +1,76 @@
 package com.proeins;
 
+import java.util.List;
 import java.util.Properties;
 
 import org.apache.catalina.Context;
 import org.apache.catalina.connector.Connector;
 import org.apache.tomcat.util.descriptor.web.SecurityCollection;
 import org.apache.tomcat.util.descriptor.web.SecurityConstraint;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.embedded.EmbeddedServletContainerFactory;
 import org.springframework.boot.context.embedded.tomcat.TomcatEmbeddedServletContainerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 import org.springframework.web.servlet.handler.SimpleMappingExceptionResolver;
 
+import com.proeins.controller.HandlerTimingInterceptor;
+import com.proeins.controller.ResponseCompressionFilter;
+import com.proeins.controller.ShoeProtobufHttpMessageConverter;
+
 @Configuration
 @EnableWebMvc
 @ComponentScan(basePackages = { "com.proeins.controller" })
 public class WebConfig extends WebMvcConfigurerAdapter {
+
+	@Value("${shoe.web.execution.timeout_millis:30000}")
+	private long asyncTimeoutMillis = 30000;
+
+	@Value("${shoe.web.compression.min_size:2048}")
+	private int compressionMinSize = 2048;
+
+	@Autowired
+	private HandlerTimingInterceptor handlerTimingInterceptor;
+
+	/*
+	 * Handlers answer with futures completed on the ShoeRequestExecutor, a
+	 * request still waiting after the timeout is answered with 503.
+	 */
+	@Override
+	public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+		configurer.setDefaultTimeout(asyncTimeoutMillis);
+	}
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(handlerTimingInterceptor);
+	}
+
+	/*
+	 * Shoes are also read and written as protobuf, chosen by Accept and
+	 * Content-Type; JSON stays the default.
+	 */
+	@Override
+	public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+		converters.add(new ShoeProtobufHttpMessageConverter());
+	}
+
+	/*
+	 * Applied through WebAppInitializer to every response of the dispatcher.
+	 */
+	@Bean
+	public ResponseCompressionFilter responseCompressionFilter() {
+		return new ResponseCompressionFilter(compressionMinSize);
+	}
 	
 	@Bean
     public SimpleMappingExceptionResolver exceptionResolver() {
@@ -0,0 +1,27 @@
+package com.proeins.controller;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.proeins.service.CacheStatisticsService;
+
+@RestController
+public class CacheStatisticsController {
+
+	private CacheStatisticsService cacheStatisticsService;
+
+	@Autowired
+	public CacheStatisticsController(CacheStatisticsService cacheStatisticsService) {
+		this.cacheStatisticsService = cacheStatisticsService;
+	}
+
+	/*---hit, miss and eviction counts of the second-level cache---*/
+	@GetMapping("/cache/stats")
+	public ResponseEntity<Map<String, Object>> getStatistics() {
+		return ResponseEntity.ok().body(cacheStatisticsService.getStatistics());
+	}
+}
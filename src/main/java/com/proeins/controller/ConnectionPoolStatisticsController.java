@@ -0,0 +1,28 @@
+package com.proeins.controller;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.proeins.service.ConnectionPoolStatisticsService;
+
+@RestController
+public class ConnectionPoolStatisticsController {
+
+	private ConnectionPoolStatisticsService connectionPoolStatisticsService;
+
+	@Autowired
+	public ConnectionPoolStatisticsController(ConnectionPoolStatisticsService connectionPoolStatisticsService) {
+		this.connectionPoolStatisticsService = connectionPoolStatisticsService;
+	}
+
+	/*---checkout waits, connection counts, churn and statement cache use of the connection pool---*/
+	@GetMapping("/pool/stats")
+	public ResponseEntity<Map<String, Object>> getStatistics() throws SQLException {
+		return ResponseEntity.ok().body(connectionPoolStatisticsService.getStatistics());
+	}
+}
@@ -0,0 +1,78 @@
+package com.proeins.controller;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import com.proeins.metrics.LatencyHistogram;
+import com.proeins.metrics.LatencyRegistry;
+
+/**
+ * Times requests per handler method and status class, from the first
+ * dispatch to the completion of the last, so handlers answering with futures
+ * are measured until their result is written.
+ */
+@Component
+public class HandlerTimingInterceptor extends HandlerInterceptorAdapter {
+
+	static final String METRIC = "shoe_http_request_seconds";
+
+	private static final String START_ATTRIBUTE = HandlerTimingInterceptor.class.getName() + ".start";
+
+	private static final String[] STATUS_CLASSES = { "1xx", "2xx", "3xx", "4xx", "5xx" };
+
+	private LatencyRegistry latencyRegistry;
+
+	/* per handler method, one histogram per status class */
+	private final ConcurrentMap<Method, AtomicReferenceArray<LatencyHistogram>> histograms = new ConcurrentHashMap<>();
+
+	@Autowired
+	public HandlerTimingInterceptor(LatencyRegistry latencyRegistry) {
+		this.latencyRegistry = latencyRegistry;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		// the async dispatch passes here again, the request started with the first
+		if (request.getAttribute(START_ATTRIBUTE) == null) {
+			request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+		}
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+		Long start = (Long) request.getAttribute(START_ATTRIBUTE);
+		if (start == null || !(handler instanceof HandlerMethod)) {
+			return;
+		}
+		histogram((HandlerMethod) handler, response.getStatus()).recordNanos(System.nanoTime() - start);
+	}
+
+	private LatencyHistogram histogram(HandlerMethod handler, int status) {
+		Method method = handler.getMethod();
+		AtomicReferenceArray<LatencyHistogram> byStatus = histograms.get(method);
+		if (byStatus == null) {
+			histograms.putIfAbsent(method, new AtomicReferenceArray<LatencyHistogram>(STATUS_CLASSES.length));
+			byStatus = histograms.get(method);
+		}
+		int statusClass = Math.min(Math.max(status / 100, 1), STATUS_CLASSES.length) - 1;
+		LatencyHistogram histogram = byStatus.get(statusClass);
+		if (histogram == null) {
+			// the registry hands every caller the same histogram, the slot only saves the lookup
+			byStatus.compareAndSet(statusClass, null, latencyRegistry.histogram(METRIC, "handler=\"" + LatencyRegistry.escape(
+					handler.getBeanType().getSimpleName() + "." + method.getName()) + "\",status=\"" + STATUS_CLASSES[statusClass] + "\""));
+			histogram = byStatus.get(statusClass);
+		}
+		return histogram;
+	}
+}
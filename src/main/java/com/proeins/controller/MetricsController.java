@@ -0,0 +1,31 @@
+package com.proeins.controller;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.proeins.service.MetricsService;
+
+@RestController
+public class MetricsController {
+
+	static final MediaType PROMETHEUS_TEXT = MediaType.parseMediaType("text/plain;version=0.0.4;charset=utf-8");
+
+	private MetricsService metricsService;
+
+	@Autowired
+	public MetricsController(MetricsService metricsService) {
+		this.metricsService = metricsService;
+	}
+
+	/*---latency histograms and counters in the Prometheus text format, for scraping---*/
+	@GetMapping("/metrics")
+	public ResponseEntity<String> scrape() throws IOException, SQLException {
+		return ResponseEntity.ok().contentType(PROMETHEUS_TEXT).body(metricsService.scrape());
+	}
+}
@@ -0,0 +1,367 @@
+package com.proeins.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * Compresses response bodies with gzip or deflate, as accepted by the client,
+ * once they grow beyond <code>minSize</code> bytes. Smaller bodies are sent
+ * as they are, compressing them costs more than it saves.
+ * <p>
+ * Handlers answering with futures write their body on the async dispatch, so
+ * like {@link org.springframework.web.filter.ShallowEtagHeaderFilter} the
+ * filter runs on that dispatch too and finishes the body there.
+ * <p>
+ * Every response of a compressible type carries <code>Vary:
+ * Accept-Encoding</code>, also when this request did not accept an encoding,
+ * so a shared cache does not hand a compressed body to clients without one.
+ * A body written with non-blocking I/O is sent as it is.
+ */
+public class ResponseCompressionFilter extends OncePerRequestFilter {
+
+	private static final List<MediaType> COMPRESSIBLE = Arrays.asList(MediaType.APPLICATION_JSON,
+			MediaType.parseMediaType("application/*+json"), MediaType.parseMediaType("application/x-ndjson"),
+			ShoeProtobufHttpMessageConverter.APPLICATION_PROTOBUF, MediaType.parseMediaType("text/*"));
+
+	private final int minSize;
+
+	public ResponseCompressionFilter(int minSize) {
+		this.minSize = minSize;
+	}
+
+	@Override
+	protected boolean shouldNotFilterAsyncDispatch() {
+		return false;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		CompressingResponse compressing = WebUtils.getNativeResponse(response, CompressingResponse.class);
+		if (compressing == null) {
+			String encoding = negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+			if (encoding == null || "HEAD".equals(request.getMethod())) {
+				filterChain.doFilter(request, new IdentityResponse(response));
+				return;
+			}
+			compressing = new CompressingResponse(response, encoding);
+			varyByAcceptEncoding(response);
+		}
+		filterChain.doFilter(request, compressing);
+		if (!isAsyncStarted(request)) {
+			compressing.finish();
+		}
+	}
+
+	/*
+	 * gzip is preferred over deflate at equal weight, encodings with q=0 and
+	 * the wildcard are not taken.
+	 */
+	static String negotiate(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return null;
+		}
+		String result = null;
+		double best = 0;
+		for (String entry : StringUtils.commaDelimitedListToStringArray(acceptEncoding)) {
+			String[] parts = entry.trim().split(";");
+			String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+			if (!coding.equals("gzip") && !coding.equals("deflate")) {
+				continue;
+			}
+			double quality = 1;
+			for (int i = 1; i < parts.length; i++) {
+				String parameter = parts[i].trim();
+				if (parameter.startsWith("q=")) {
+					try {
+						quality = Double.parseDouble(parameter.substring(2));
+					} catch (NumberFormatException e) {
+						quality = 0;
+					}
+				}
+			}
+			if (quality > best || (quality == best && quality > 0 && coding.equals("gzip"))) {
+				best = quality;
+				result = coding;
+			}
+		}
+		return result;
+	}
+
+	private static boolean isEventStream(String contentType) {
+		try {
+			return contentType != null && MediaType.TEXT_EVENT_STREAM.includes(MediaType.parseMediaType(contentType));
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	private static boolean isCompressible(String contentType) {
+		if (contentType == null) {
+			return false;
+		}
+		MediaType mediaType;
+		try {
+			mediaType = MediaType.parseMediaType(contentType);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		for (MediaType compressible : COMPRESSIBLE) {
+			if (compressible.includes(mediaType)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void varyByAcceptEncoding(HttpServletResponse response) {
+		if (!response.getHeaders(HttpHeaders.VARY).contains(HttpHeaders.ACCEPT_ENCODING)) {
+			response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		}
+	}
+
+	/**
+	 * Sends the body as it is, but marks it as depending on Accept-Encoding
+	 * once its content type turns out compressible.
+	 */
+	private static class IdentityResponse extends HttpServletResponseWrapper {
+
+		IdentityResponse(HttpServletResponse response) {
+			super(response);
+		}
+
+		@Override
+		public void setContentType(String type) {
+			super.setContentType(type);
+			contentTypeSet(type);
+		}
+
+		@Override
+		public void setHeader(String name, String value) {
+			super.setHeader(name, value);
+			if (HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(name)) {
+				contentTypeSet(value);
+			}
+		}
+
+		@Override
+		public void addHeader(String name, String value) {
+			super.addHeader(name, value);
+			if (HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(name)) {
+				contentTypeSet(value);
+			}
+		}
+
+		private void contentTypeSet(String contentType) {
+			if (!isCommitted() && isCompressible(contentType)) {
+				varyByAcceptEncoding((HttpServletResponse) getResponse());
+			}
+		}
+	}
+
+	/**
+	 * Holds the body back until it reaches the minimum size, then decides
+	 * whether to compress and streams the rest.
+	 */
+	private class CompressingResponse extends HttpServletResponseWrapper {
+
+		private final String encoding;
+
+		private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+		/* where the body goes once decided, null while pending */
+		private OutputStream target;
+
+		/* the stream of the container, once decided */
+		private ServletOutputStream out;
+
+		private ServletOutputStream outputStream;
+
+		private PrintWriter writer;
+
+		CompressingResponse(HttpServletResponse response, String encoding) {
+			super(response);
+			this.encoding = encoding;
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() {
+			if (outputStream == null) {
+				outputStream = new ServletOutputStream() {
+					@Override
+					public void write(int b) throws IOException {
+						write(new byte[] { (byte) b }, 0, 1);
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len) throws IOException {
+						CompressingResponse.this.write(b, off, len);
+					}
+
+					@Override
+					public void flush() throws IOException {
+						CompressingResponse.this.flush();
+					}
+
+					@Override
+					public boolean isReady() {
+						return out == null || out.isReady();
+					}
+
+					@Override
+					public void setWriteListener(WriteListener listener) {
+						// writes must go straight to the container to be non-blocking
+						try {
+							if (target == null) {
+								sendAsIs();
+							}
+						} catch (IOException e) {
+							throw new IllegalStateException("Body could not be sent", e);
+						}
+						out.setWriteListener(listener);
+					}
+				};
+			}
+			return outputStream;
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if (writer == null) {
+				writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+			}
+			return writer;
+		}
+
+		/* the length of a compressed body is unknown, it is set on finish for uncompressed ones */
+		@Override
+		public void setContentLength(int len) {
+		}
+
+		@Override
+		public void setContentLengthLong(long len) {
+		}
+
+		@Override
+		public void setHeader(String name, String value) {
+			if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+				super.setHeader(name, value);
+			}
+		}
+
+		@Override
+		public void addHeader(String name, String value) {
+			if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+				super.addHeader(name, value);
+			}
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			flush();
+			// committing now would send the headers before Content-Encoding is known
+			if (target != null) {
+				super.flushBuffer();
+			}
+		}
+
+		@Override
+		public void resetBuffer() {
+			if (target == null) {
+				pending.reset();
+			}
+			super.resetBuffer();
+		}
+
+		@Override
+		public void reset() {
+			if (target == null) {
+				pending.reset();
+			}
+			super.reset();
+		}
+
+		private void write(byte[] b, int off, int len) throws IOException {
+			if (target != null) {
+				target.write(b, off, len);
+				return;
+			}
+			pending.write(b, off, len);
+			if (pending.size() >= minSize) {
+				decide(true);
+			}
+		}
+
+		/* converters flush after every body, so a pending body waits for its size or the end */
+		private void flush() throws IOException {
+			if (writer != null) {
+				writer.flush();
+			}
+			if (target == null && isEventStream(getContentType())) {
+				// events have to reach the client when flushed, the stream is sent as it is
+				sendAsIs();
+			}
+			if (target != null) {
+				target.flush();
+			}
+		}
+
+		private void sendAsIs() throws IOException {
+			out = getResponse().getOutputStream();
+			target = out;
+			pending.writeTo(target);
+			pending = null;
+		}
+
+		private void decide(boolean compress) throws IOException {
+			out = getResponse().getOutputStream();
+			if (compress && !getResponse().isCommitted() && isCompressible(getContentType())
+					&& getHeader(HttpHeaders.CONTENT_ENCODING) == null) {
+				super.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+				target = encoding.equals("gzip") ? new GZIPOutputStream(out, 8192, true) : new DeflaterOutputStream(out, true);
+			} else {
+				if (!compress && !getResponse().isCommitted()) {
+					getResponse().setContentLength(pending.size());
+				}
+				target = out;
+			}
+			pending.writeTo(target);
+			pending = null;
+		}
+
+		void finish() throws IOException {
+			if (writer != null) {
+				writer.flush();
+			}
+			if (target == null) {
+				decide(false);
+			}
+			if (target instanceof DeflaterOutputStream) {
+				((DeflaterOutputStream) target).finish();
+			}
+			target.flush();
+		}
+	}
+}
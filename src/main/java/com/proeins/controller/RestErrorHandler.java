@@ -1,13 +1,21 @@
 package com.proeins.controller;
 
+import java.util.concurrent.RejectedExecutionException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import com.proeins.exception.IngestQueueFullException;
+import com.proeins.exception.InvalidRequestException;
+import com.proeins.exception.ServiceOverloadedException;
 import com.proeins.exception.ShoeNotFoundException;
+import com.proeins.exception.ShoeVersionConflictException;
+import com.proeins.exception.StockConflictException;
 
 @ControllerAdvice
 public class RestErrorHandler {
@@ -21,6 +29,47 @@ public class RestErrorHandler {
         return ResponseEntity.notFound().build();
     }
 	
+	@ExceptionHandler(ShoeVersionConflictException.class)
+    @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+    public ResponseEntity<?> handleShoeVersionConflictException(ShoeVersionConflictException ex) {
+        LOGGER.debug("Version conflict: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(ex.getMessage());
+    }
+	
+	@ExceptionHandler(StockConflictException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public ResponseEntity<?> handleStockConflictException(StockConflictException ex) {
+        LOGGER.debug("Stock conflict: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+    }
+	
+	@ExceptionHandler(IngestQueueFullException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ResponseEntity<?> handleIngestQueueFullException(IngestQueueFullException ex) {
+        LOGGER.debug("Rejecting write: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        		.header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+        		.body(ex.getMessage());
+    }
+	
+	@ExceptionHandler(RejectedExecutionException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ResponseEntity<?> handleRejectedExecutionException(RejectedExecutionException ex) {
+        LOGGER.debug("Rejecting request: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        		.header(HttpHeaders.RETRY_AFTER, "1")
+        		.body("Too many requests in flight");
+    }
+	
+	@ExceptionHandler(ServiceOverloadedException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ResponseEntity<?> handleServiceOverloadedException(ServiceOverloadedException ex) {
+        LOGGER.debug("Shedding request: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        		.header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+        		.body(ex.getMessage());
+    }
+	
 	@ExceptionHandler(IllegalArgumentException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ResponseEntity<?> handleIllegalArgumentException(IllegalArgumentException ex) {
@@ -28,4 +77,11 @@ public class RestErrorHandler {
         return ResponseEntity.badRequest().body("Cannot modify id or article");
     }
 	
+	@ExceptionHandler(InvalidRequestException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ResponseEntity<?> handleInvalidRequestException(InvalidRequestException ex) {
+        LOGGER.debug("Invalid request: {}", ex.getMessage());
+        return ResponseEntity.badRequest().body(ex.getMessage());
+    }
+	
 }
@@ -1,64 +1,451 @@
 package com.proeins.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import com.proeins.dao.PageCriteria;
+import com.proeins.dao.ShoeCatalogVersion;
+import com.proeins.dao.ShoeDelta;
+import com.proeins.dao.ShoeFacets;
+import com.proeins.dao.ShoePage;
+import com.proeins.exception.IngestQueueFullException;
+import com.proeins.exception.InvalidRequestException;
 import com.proeins.exception.ShoeNotFoundException;
+import com.proeins.exception.ShoeVersionConflictException;
+import com.proeins.exception.StockConflictException;
 import com.proeins.model.Shoe;
+import com.proeins.service.ShoeChange;
+import com.proeins.service.ShoeChangeFeed;
+import com.proeins.service.ShoeCsvReader;
+import com.proeins.service.ShoeImportService;
+import com.proeins.service.ShoeIngestService;
+import com.proeins.service.ShoeIngestTicket;
 import com.proeins.service.ShoeService;
 
 @RestController
 @CrossOrigin(origins= {"https://9895fbf4.ap.ngrok.io"})
 public class ShoeController {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShoeController.class);
+
+	static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+	static final int MAX_BATCH_SIZE = 10000;
+
+	static final String PREFER_HEADER = "Prefer";
+
+	static final String RESPOND_ASYNC = "respond-async";
+
+	static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
 	private ShoeService shoeService;
+
+	private ShoeIngestService shoeIngestService;
+
+	private ShoeImportService shoeImportService;
+
+	private ShoeChangeFeed changeFeed;
+
+	private ShoeCatalogVersion catalogVersion;
+
+	private ShoeRequestExecutor requestExecutor = new ShoeRequestExecutor();
+
+	/* exports and imports take as long as the catalog is big, 0 waits for them without limit */
+	@Value("${shoe.web.transfer.timeout_millis:0}")
+	private long transferTimeoutMillis = 0;
 	
 	@Autowired
 	public ShoeController(ShoeService shoeService) {
 		this.shoeService = shoeService;
 	}
-	/*---Add new shoe---*/
+
+	@Autowired(required = false)
+	public void setRequestExecutor(ShoeRequestExecutor requestExecutor) {
+		this.requestExecutor = requestExecutor;
+	}
+
+	@Autowired(required = false)
+	public void setCatalogVersion(ShoeCatalogVersion catalogVersion) {
+		this.catalogVersion = catalogVersion;
+	}
+
+	@Autowired(required = false)
+	public void setShoeIngestService(ShoeIngestService shoeIngestService) {
+		this.shoeIngestService = shoeIngestService;
+	}
+
+	@Autowired(required = false)
+	public void setShoeImportService(ShoeImportService shoeImportService) {
+		this.shoeImportService = shoeImportService;
+	}
+
+	@Autowired(required = false)
+	public void setChangeFeed(ShoeChangeFeed changeFeed) {
+		this.changeFeed = changeFeed;
+	}
+
+	/*---Add new shoe, queued for a group commit with Prefer: respond-async---*/
 	@PostMapping("/shoe")
-	public ResponseEntity<?> save(@RequestBody Shoe shoe) throws IllegalArgumentException {
-		System.out.println("POST request initiated");
-		Shoe savedShoe = shoeService.save(shoe);
-		final URI location = ServletUriComponentsBuilder.fromCurrentServletMapping().path("/shoe/{id}").build().expand(shoe.getId()).toUri();
-		return ResponseEntity.created(location).body(savedShoe);
+	public CompletableFuture<ResponseEntity<?>> save(@RequestBody final Shoe shoe, @RequestHeader(value = PREFER_HEADER, required = false) String prefer)
+			throws IllegalArgumentException, IngestQueueFullException {
+		LOGGER.debug("POST request initiated");
+		if (isAsync(prefer)) {
+			return CompletableFuture.<ResponseEntity<?>>completedFuture(accepted(shoeIngestService.submitSave(shoe)));
+		}
+		return requestExecutor.supply(new Callable<ResponseEntity<?>>() {
+			@Override
+			public ResponseEntity<?> call() {
+				Shoe savedShoe = shoeService.save(shoe);
+				final URI location = ServletUriComponentsBuilder.fromCurrentServletMapping().path("/shoe/{id}").build().expand(shoe.getId()).toUri();
+				return ResponseEntity.created(location).body(savedShoe);
+			}
+		});
 	}
 
+	/*---Add new shoes in one batched transaction---*/
+	@PostMapping("/shoe/batch")
+	public CompletableFuture<ResponseEntity<List<Shoe>>> saveAll(@RequestBody final List<Shoe> shoes) throws IllegalArgumentException {
+		if (shoes.isEmpty() || shoes.size() > MAX_BATCH_SIZE) {
+			throw new InvalidRequestException("A batch must contain between 1 and " + MAX_BATCH_SIZE + " shoes");
+		}
+		return requestExecutor.supply(new Callable<ResponseEntity<List<Shoe>>>() {
+			@Override
+			public ResponseEntity<List<Shoe>> call() {
+				List<Shoe> savedShoes = shoeService.saveAll(shoes);
+				return ResponseEntity.status(HttpStatus.CREATED).body(savedShoes);
+			}
+		});
+	}
 	
 	/*---get all shoes or by Id, articleNumber, brand, name, color, stock---*/
+	/*---optionally sorted and paged by limit and the cursor of the previous page---*/
+	/*---304 without a query while the catalog version in If-None-Match is current---*/
 	@GetMapping("/shoe")
-	public ResponseEntity<List<Shoe>> searchShoes(@RequestParam(value = "search", required = false) String search) {
-		System.out.println("search: " + search);
-        List<Shoe> shoes = shoeService.searchShoes(search);
-        return  ResponseEntity.ok().body(shoes);
+	public CompletableFuture<ResponseEntity<List<Shoe>>> searchShoes(@RequestParam(value = "search", required = false) final String search,
+			@RequestParam(value = "limit", required = false) Integer limit,
+			@RequestParam(value = "sort", required = false) String sort,
+			@RequestParam(value = "cursor", required = false) String cursor, WebRequest request) {
+		LOGGER.debug("search: {}", search);
+		// read before searching, a write in between only makes the tag older than the body
+		final ShoeCatalogVersion.Stamp stamp = catalogStamp();
+		if (notModified(request, stamp)) {
+			return CompletableFuture.completedFuture(validated(ResponseEntity.status(HttpStatus.NOT_MODIFIED), stamp).<List<Shoe>>build());
+		}
+		if (limit == null && sort == null && cursor == null) {
+			return requestExecutor.supply(new Callable<ResponseEntity<List<Shoe>>>() {
+				@Override
+				public ResponseEntity<List<Shoe>> call() {
+					List<Shoe> shoes = shoeService.searchShoes(search);
+					return  validated(ResponseEntity.ok(), stamp).body(shoes);
+				}
+			});
+		}
+		final PageCriteria pageCriteria = PageCriteria.of(sort, limit, cursor);
+		return requestExecutor.supply(new Callable<ResponseEntity<List<Shoe>>>() {
+			@Override
+			public ResponseEntity<List<Shoe>> call() {
+				ShoePage page = shoeService.searchShoes(search, pageCriteria);
+				ResponseEntity.BodyBuilder response = validated(ResponseEntity.ok(), stamp);
+				if (page.getNextCursor() != null) {
+					response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+				}
+				return response.body(page.getShoes());
+			}
+		});
     }
 
+	/*---shoes written and deleted after the given revision, and the revision to sync from next---*/
+	@GetMapping(value = "/shoe", params = "since")
+	public CompletableFuture<ResponseEntity<ShoeDelta>> changesSince(@RequestParam("since") final long since, WebRequest request) {
+		if (since < 0) {
+			throw new InvalidRequestException("since must not be negative");
+		}
+		final ShoeCatalogVersion.Stamp stamp = catalogStamp();
+		if (notModified(request, stamp)) {
+			return CompletableFuture.completedFuture(validated(ResponseEntity.status(HttpStatus.NOT_MODIFIED), stamp).<ShoeDelta>build());
+		}
+		return requestExecutor.supply(new Callable<ResponseEntity<ShoeDelta>>() {
+			@Override
+			public ResponseEntity<ShoeDelta> call() {
+				return validated(ResponseEntity.ok(), stamp).body(shoeService.changesSince(since));
+			}
+		});
+	}
+
+	/*---number of shoes per brand, color and size among all shoes or a search result---*/
+	@GetMapping("/shoe/facets")
+	public CompletableFuture<ResponseEntity<ShoeFacets>> facetShoes(@RequestParam(value = "search", required = false) final String search,
+			WebRequest request) {
+		LOGGER.debug("facets: {}", search);
+		final ShoeCatalogVersion.Stamp stamp = catalogStamp();
+		if (notModified(request, stamp)) {
+			return CompletableFuture.completedFuture(validated(ResponseEntity.status(HttpStatus.NOT_MODIFIED), stamp).<ShoeFacets>build());
+		}
+		return requestExecutor.supply(new Callable<ResponseEntity<ShoeFacets>>() {
+			@Override
+			public ResponseEntity<ShoeFacets> call() {
+				return validated(ResponseEntity.ok(), stamp).body(shoeService.facetShoes(search));
+			}
+		});
+	}
+
+	/* no validators where the version misses writes a response may show */
+	private ShoeCatalogVersion.Stamp catalogStamp() {
+		return catalogVersion == null || catalogVersion.isPartial() ? null : catalogVersion.current();
+	}
+
+	private static boolean notModified(WebRequest request, ShoeCatalogVersion.Stamp stamp) {
+		return stamp != null && request.checkNotModified(eTagOf(stamp), lastModifiedOf(stamp));
+	}
+
+	/*
+	 * The headers set by checkNotModified belong to the servlet response, the
+	 * entity written after the asynchronous dispatch carries its own.
+	 */
+	private static ResponseEntity.BodyBuilder validated(ResponseEntity.BodyBuilder response, ShoeCatalogVersion.Stamp stamp) {
+		response.varyBy(HttpHeaders.ACCEPT);
+		if (stamp == null) {
+			return response;
+		}
+		response.eTag(eTagOf(stamp));
+		long lastModified = lastModifiedOf(stamp);
+		return lastModified < 0 ? response : response.lastModified(lastModified);
+	}
+
+	/*
+	 * Weak, the same catalog version is sent as JSON or protobuf, gzipped or
+	 * not, and those bodies differ byte by byte.
+	 */
+	private static String eTagOf(ShoeCatalogVersion.Stamp stamp) {
+		return "W/\"" + stamp.getETag() + "\"";
+	}
+
+	/*
+	 * Last-Modified has second precision. Until the second of the stamp is
+	 * over a later write can still get the same date, so only the tag
+	 * validates and no date is sent.
+	 */
+	private static long lastModifiedOf(ShoeCatalogVersion.Stamp stamp) {
+		long lastModified = stamp.getLastModified();
+		return lastModified / 1000 < System.currentTimeMillis() / 1000 ? lastModified : -1;
+	}
+
+	/*---export all shoes or a search result as ndjson or csv, streamed row by row---*/
+	@GetMapping("/shoe/export")
+	public WebAsyncTask<Void> exportShoes(@RequestParam(value = "search", required = false) final String search,
+			@RequestParam(value = "format", defaultValue = "ndjson") String format, final HttpServletResponse response) {
+		final ShoeExportFormat exportFormat = ShoeExportFormat.of(format);
+		response.setContentType(exportFormat.getMediaType().toString());
+		return new WebAsyncTask<>(transferTimeoutMillis, new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				ShoeExportFormat.Writer writer = exportFormat.open(response.getOutputStream());
+				shoeService.exportShoes(search, writer);
+				writer.flush();
+				return null;
+			}
+		});
+	}
+
+	/*---import shoes from csv, upserted by articleNumber, reporting row errors and progress as ndjson---*/
+	@PostMapping(value = "/shoe/import", consumes = "text/csv")
+	public WebAsyncTask<Void> importShoes(InputStream csv, final HttpServletResponse response) throws IOException {
+		if (shoeImportService == null) {
+			response.setStatus(HttpStatus.NOT_FOUND.value());
+			return null;
+		}
+		final ShoeCsvReader rows = shoeImportService.open(csv);
+		response.setContentType(ShoeImportReport.MEDIA_TYPE.toString());
+		return new WebAsyncTask<>(transferTimeoutMillis, new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				ShoeImportReport report = new ShoeImportReport(response.getOutputStream());
+				report.done(shoeImportService.importShoes(rows, report));
+				return null;
+			}
+		});
+	}
+
+	/*---committed inserts, updates and deletes as server-sent events, resumed after Last-Event-ID---*/
+	@GetMapping("/shoe/changes")
+	public ResponseEntity<SseEmitter> streamChanges(@RequestHeader(value = LAST_EVENT_ID_HEADER, required = false) String lastEventId) {
+		if (changeFeed == null) {
+			return ResponseEntity.notFound().build();
+		}
+		final SseEmitter emitter = new SseEmitter(changeFeed.getTimeoutMillis());
+		final ShoeChangeFeed.Subscriber subscriber = new ShoeChangeFeed.Subscriber() {
+			@Override
+			public void changed(ShoeChange change) throws IOException {
+				emitter.send(SseEmitter.event()
+						.id(change.getId())
+						.name(change.getType().name().toLowerCase())
+						.data(change.getShoe(), MediaType.APPLICATION_JSON));
+			}
+
+			@Override
+			public void reset(String id) throws IOException {
+				emitter.send(SseEmitter.event().id(id).name("reset").data("reload"));
+			}
+
+			@Override
+			public void heartbeat() throws IOException {
+				emitter.send(SseEmitter.event().comment(""));
+			}
+
+			@Override
+			public void close() {
+				emitter.complete();
+			}
+		};
+		Runnable unsubscribe = new Runnable() {
+			@Override
+			public void run() {
+				changeFeed.unsubscribe(subscriber);
+			}
+		};
+		emitter.onCompletion(unsubscribe);
+		emitter.onTimeout(unsubscribe);
+		changeFeed.subscribe(lastEventId, subscriber);
+		return ResponseEntity.ok().body(emitter);
+	}
+
 	/*---Update a shoe by id---*/
 	@PutMapping("/shoe/{id}")
-	public ResponseEntity<?> update(@PathVariable("id") long id, @RequestBody Shoe shoe) throws ShoeNotFoundException, IllegalArgumentException {
-		Shoe updatedShoe = shoeService.update(id, shoe);
-		return ResponseEntity.ok().body(updatedShoe);
+	public CompletableFuture<ResponseEntity<?>> update(@PathVariable("id") final long id, @RequestBody final Shoe shoe,
+			@RequestHeader(value = PREFER_HEADER, required = false) String prefer)
+			throws IllegalArgumentException, IngestQueueFullException {
+		if (isAsync(prefer)) {
+			return CompletableFuture.<ResponseEntity<?>>completedFuture(accepted(shoeIngestService.submitUpdate(id, shoe)));
+		}
+		return requestExecutor.supply(new Callable<ResponseEntity<?>>() {
+			@Override
+			public ResponseEntity<?> call() throws ShoeNotFoundException {
+				Shoe updatedShoe = shoeService.update(id, shoe);
+				return ResponseEntity.ok().body(updatedShoe);
+			}
+		});
+	}
+
+	/*---Status of a queued write---*/
+	@GetMapping("/shoe/ingest/{ticket}")
+	public ResponseEntity<ShoeIngestTicket> getIngestTicket(@PathVariable("ticket") String id) {
+		ShoeIngestTicket ticket = shoeIngestService == null ? null : shoeIngestService.getTicket(id);
+		if (ticket == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return ResponseEntity.ok().body(ticket);
+	}
+
+	private boolean isAsync(String prefer) {
+		return shoeIngestService != null && prefer != null && prefer.toLowerCase().contains(RESPOND_ASYNC);
+	}
+
+	private ResponseEntity<ShoeIngestTicket> accepted(ShoeIngestTicket ticket) {
+		final URI location = ServletUriComponentsBuilder.fromCurrentServletMapping().path("/shoe/ingest/{ticket}").build().expand(ticket.getId()).toUri();
+		return ResponseEntity.accepted().location(location).header("Preference-Applied", RESPOND_ASYNC).body(ticket);
+	}
+
+	/*---Update the given fields of a shoe if it is still at the version in If-Match---*/
+	@PatchMapping("/shoe/{id}")
+	public CompletableFuture<ResponseEntity<?>> patch(@PathVariable("id") final long id, @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+			@RequestBody final Shoe changes) throws ShoeVersionConflictException, IllegalArgumentException {
+		if (ifMatch == null) {
+			return CompletableFuture.<ResponseEntity<?>>completedFuture(
+					ResponseEntity.status(HttpStatus.PRECONDITION_REQUIRED).body("If-Match header required"));
+		}
+		final long expectedVersion = parseVersion(ifMatch);
+		return requestExecutor.supply(new Callable<ResponseEntity<?>>() {
+			@Override
+			public ResponseEntity<?> call() throws ShoeNotFoundException, ShoeVersionConflictException {
+				long version = shoeService.patch(id, expectedVersion, changes);
+				return ResponseEntity.noContent().eTag(String.valueOf(version)).build();
+			}
+		});
+	}
+
+	private long parseVersion(String ifMatch) throws ShoeVersionConflictException {
+		String tag = ifMatch.trim();
+		if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+			try {
+				return Long.parseLong(tag.substring(1, tag.length() - 1));
+			} catch (NumberFormatException e) {
+				// falls through, no version can match
+			}
+		}
+		throw new ShoeVersionConflictException("If-Match must be the quoted version of the shoe");
+	}
+
+	/*---Take stock of a shoe with one conditional update, 404 if unknown, 409 if not enough is left---*/
+	@PostMapping("/shoe/{id}/reserve")
+	public CompletableFuture<ResponseEntity<Void>> reserveStock(@PathVariable("id") final long id, @RequestParam("qty") final int quantity) {
+		checkQuantity(quantity);
+		return requestExecutor.supply(new Callable<ResponseEntity<Void>>() {
+			@Override
+			public ResponseEntity<Void> call() throws ShoeNotFoundException, StockConflictException {
+				shoeService.reserveStock(id, quantity);
+				return ResponseEntity.noContent().build();
+			}
+		});
+	}
+
+	/*---Give reserved stock of a shoe back---*/
+	@PostMapping("/shoe/{id}/release")
+	public CompletableFuture<ResponseEntity<Void>> releaseStock(@PathVariable("id") final long id, @RequestParam("qty") final int quantity) {
+		checkQuantity(quantity);
+		return requestExecutor.supply(new Callable<ResponseEntity<Void>>() {
+			@Override
+			public ResponseEntity<Void> call() throws ShoeNotFoundException, StockConflictException {
+				shoeService.releaseStock(id, quantity);
+				return ResponseEntity.noContent().build();
+			}
+		});
+	}
+
+	private void checkQuantity(int quantity) {
+		if (quantity < 1) {
+			throw new InvalidRequestException("qty must be positive");
+		}
 	}
 
 	/*---Delete a shoe by id---*/
 	@DeleteMapping("/shoe/{id}")
-	public ResponseEntity<?> delete(@PathVariable("id") long id) throws ShoeNotFoundException {
-		Shoe deletedShoe = shoeService.delete(id);
-		return ResponseEntity.ok().body(deletedShoe);
+	public CompletableFuture<ResponseEntity<?>> delete(@PathVariable("id") final long id) {
+		return requestExecutor.supply(new Callable<ResponseEntity<?>>() {
+			@Override
+			public ResponseEntity<?> call() throws ShoeNotFoundException {
+				Shoe deletedShoe = shoeService.delete(id);
+				return ResponseEntity.ok().body(deletedShoe);
+			}
+		});
 	}
 }
@@ -0,0 +1,121 @@
+package com.proeins.controller;
+
+import java.io.BufferedWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.proeins.dao.ShoeRowHandler;
+import com.proeins.exception.InvalidRequestException;
+import com.proeins.model.Shoe;
+
+/**
+ * Line oriented formats of the catalog export. Each shoe is written as soon as
+ * it is read, so nothing but the current row is held in memory.
+ */
+public enum ShoeExportFormat {
+
+	NDJSON("application/x-ndjson") {
+		@Override
+		public Writer open(OutputStream out) throws IOException {
+			final JsonGenerator generator = MAPPER.getFactory().createGenerator(out);
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.setRootValueSeparator(new SerializedString("\n"));
+			return new Writer() {
+				private boolean empty = true;
+
+				@Override
+				public void handle(Shoe shoe) throws IOException {
+					generator.writeObject(shoe);
+					empty = false;
+				}
+
+				@Override
+				public void flush() throws IOException {
+					if (!empty) {
+						generator.writeRaw('\n');
+					}
+					generator.flush();
+				}
+			};
+		}
+	},
+
+	CSV("text/csv") {
+		@Override
+		public Writer open(OutputStream out) throws IOException {
+			final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			writer.write("id,articleNumber,name,brand,color,size,stock\r\n");
+			return new Writer() {
+				@Override
+				public void handle(Shoe shoe) throws IOException {
+					writer.write(String.valueOf(shoe.getId()));
+					writeField(shoe.getArticleNumber());
+					writeField(shoe.getName());
+					writeField(shoe.getBrand());
+					writeField(shoe.getColor());
+					writeField(shoe.getSize());
+					writeField(shoe.getStock());
+					writer.write("\r\n");
+				}
+
+				private void writeField(String value) throws IOException {
+					writer.write(',');
+					if (value == null) {
+						return;
+					}
+					if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+						writer.write(value);
+						return;
+					}
+					writer.write('"');
+					writer.write(value.replace("\"", "\"\""));
+					writer.write('"');
+				}
+
+				@Override
+				public void flush() throws IOException {
+					writer.flush();
+				}
+			};
+		}
+	};
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final MediaType mediaType;
+
+	private ShoeExportFormat(String mediaType) {
+		this.mediaType = MediaType.parseMediaType(mediaType);
+	}
+
+	public MediaType getMediaType() {
+		return mediaType;
+	}
+
+	/**
+	 * Starts an export to the given stream. The returned writer must be flushed
+	 * once all shoes have been handled.
+	 */
+	public abstract Writer open(OutputStream out) throws IOException;
+
+	public static ShoeExportFormat of(String format) {
+		for (ShoeExportFormat exportFormat : values()) {
+			if (exportFormat.name().equalsIgnoreCase(format)) {
+				return exportFormat;
+			}
+		}
+		throw new InvalidRequestException("Unknown export format: " + format);
+	}
+
+	public interface Writer extends ShoeRowHandler, Flushable {
+	}
+}
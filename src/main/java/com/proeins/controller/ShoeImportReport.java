@@ -0,0 +1,77 @@
+package com.proeins.controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.proeins.service.ShoeImportListener;
+import com.proeins.service.ShoeImportProgress;
+
+/**
+ * Writes the outcome of an import as newline delimited JSON while it runs:
+ * an <code>error</code> line per rejected record, a <code>progress</code>
+ * line per committed batch and a final <code>done</code> line. Each line is
+ * flushed, so clients can follow a long import.
+ */
+public class ShoeImportReport implements ShoeImportListener {
+
+	public static final MediaType MEDIA_TYPE = MediaType.parseMediaType("application/x-ndjson");
+
+	private static final JsonFactory FACTORY = new JsonFactory();
+
+	private final JsonGenerator generator;
+
+	public ShoeImportReport(OutputStream out) throws IOException {
+		this.generator = FACTORY.createGenerator(out, JsonEncoding.UTF8);
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		// lines are ended by endLine
+		generator.setRootValueSeparator(null);
+	}
+
+	@Override
+	public void rowFailed(long line, List<String> errors) throws IOException {
+		generator.writeStartObject();
+		generator.writeStringField("type", "error");
+		generator.writeNumberField("line", line);
+		generator.writeArrayFieldStart("errors");
+		for (String error : errors) {
+			generator.writeString(error);
+		}
+		generator.writeEndArray();
+		generator.writeEndObject();
+		endLine(false);
+	}
+
+	@Override
+	public void batchCommitted(ShoeImportProgress progress) throws IOException {
+		writeProgress("progress", progress);
+	}
+
+	public void done(ShoeImportProgress progress) throws IOException {
+		writeProgress("done", progress);
+	}
+
+	private void writeProgress(String type, ShoeImportProgress progress) throws IOException {
+		generator.writeStartObject();
+		generator.writeStringField("type", type);
+		generator.writeNumberField("rows", progress.getRows());
+		generator.writeNumberField("inserted", progress.getInserted());
+		generator.writeNumberField("updated", progress.getUpdated());
+		generator.writeNumberField("failed", progress.getFailed());
+		generator.writeEndObject();
+		endLine(true);
+	}
+
+	/* error lines wait for the progress line that follows their batch */
+	private void endLine(boolean flush) throws IOException {
+		generator.writeRaw('\n');
+		if (flush) {
+			generator.flush();
+		}
+	}
+}
@@ -0,0 +1,305 @@
+package com.proeins.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.util.StreamUtils;
+
+import com.proeins.model.Shoe;
+
+/**
+ * Reads and writes {@link Shoe} and <code>List&lt;Shoe&gt;</code> as protocol
+ * buffers, following <code>src/main/proto/shoe.proto</code>. A list is a
+ * <code>ShoeList</code> message. The encoding is written by hand, so the
+ * schema is the contract and no generated classes are needed.
+ * <p>
+ * Unknown fields are skipped when reading, so clients built from a newer
+ * schema can still talk to this node.
+ */
+public class ShoeProtobufHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+	public static final MediaType APPLICATION_PROTOBUF = MediaType.parseMediaType("application/x-protobuf");
+
+	private static final int WIRE_VARINT = 0;
+	private static final int WIRE_FIXED64 = 1;
+	private static final int WIRE_LENGTH_DELIMITED = 2;
+	private static final int WIRE_FIXED32 = 5;
+
+	/* field numbers of message Shoe */
+	private static final int ID = 1;
+	private static final int ARTICLE_NUMBER = 2;
+	private static final int NAME = 3;
+	private static final int BRAND = 4;
+	private static final int COLOR = 5;
+	private static final int SIZE = 6;
+	private static final int STOCK = 7;
+	private static final int VERSION = 8;
+
+	/* field number of message ShoeList */
+	private static final int SHOES = 1;
+
+	public ShoeProtobufHttpMessageConverter() {
+		super(APPLICATION_PROTOBUF);
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return Shoe.class.isAssignableFrom(clazz) || List.class.isAssignableFrom(clazz);
+	}
+
+	@Override
+	public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+		return (type == Shoe.class || isShoeList(type)) && canRead(mediaType);
+	}
+
+	@Override
+	public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+		if (type instanceof Class || type instanceof ParameterizedType) {
+			return (Shoe.class.isAssignableFrom(clazz) || isShoeList(type)) && canWrite(mediaType);
+		}
+		// the declared type is unknown, e.g. ResponseEntity<?>, a list is checked while writing
+		return supports(clazz) && canWrite(mediaType);
+	}
+
+	private static boolean isShoeList(Type type) {
+		if (!(type instanceof ParameterizedType)) {
+			return false;
+		}
+		ParameterizedType parameterized = (ParameterizedType) type;
+		return parameterized.getRawType() instanceof Class && List.class.isAssignableFrom((Class<?>) parameterized.getRawType())
+				&& parameterized.getActualTypeArguments()[0] == Shoe.class;
+	}
+
+	@Override
+	public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+		return readInternal(type == Shoe.class ? Shoe.class : List.class, inputMessage);
+	}
+
+	@Override
+	protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+		byte[] body = StreamUtils.copyToByteArray(inputMessage.getBody());
+		Reader reader = new Reader(body, 0, body.length);
+		if (Shoe.class.isAssignableFrom(clazz)) {
+			return readShoe(reader);
+		}
+		List<Shoe> shoes = new ArrayList<>();
+		while (reader.hasMore()) {
+			int tag = reader.varint32();
+			if (tag >>> 3 == SHOES && (tag & 7) == WIRE_LENGTH_DELIMITED) {
+				shoes.add(readShoe(reader.message()));
+			} else {
+				reader.skip(tag & 7);
+			}
+		}
+		return shoes;
+	}
+
+	private static Shoe readShoe(Reader reader) {
+		Shoe shoe = new Shoe();
+		while (reader.hasMore()) {
+			int tag = reader.varint32();
+			int wireType = tag & 7;
+			switch (tag >>> 3) {
+			case ID:
+				shoe.setId(reader.int64(wireType));
+				break;
+			case ARTICLE_NUMBER:
+				shoe.setArticleNumber(reader.string(wireType));
+				break;
+			case NAME:
+				shoe.setName(reader.string(wireType));
+				break;
+			case BRAND:
+				shoe.setBrand(reader.string(wireType));
+				break;
+			case COLOR:
+				shoe.setColor(reader.string(wireType));
+				break;
+			case SIZE:
+				shoe.setSize(reader.string(wireType));
+				break;
+			case STOCK:
+				shoe.setStock(reader.string(wireType));
+				break;
+			case VERSION:
+				// read-only like in JSON, the version of a write is sent in If-Match
+				reader.int64(wireType);
+				break;
+			default:
+				reader.skip(wireType);
+			}
+		}
+		return shoe;
+	}
+
+	@Override
+	protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException {
+		OutputStream out = outputMessage.getBody();
+		if (object instanceof Shoe) {
+			writeShoe(out, (Shoe) object);
+			return;
+		}
+		ByteArrayOutputStream shoe = new ByteArrayOutputStream(128);
+		for (Object element : (List<?>) object) {
+			if (!(element instanceof Shoe)) {
+				throw new HttpMessageNotWritableException("Cannot write " + element.getClass().getName() + " as protobuf");
+			}
+			shoe.reset();
+			writeShoe(shoe, (Shoe) element);
+			writeVarint(out, SHOES << 3 | WIRE_LENGTH_DELIMITED);
+			writeVarint(out, shoe.size());
+			shoe.writeTo(out);
+		}
+	}
+
+	private static void writeShoe(OutputStream out, Shoe shoe) throws IOException {
+		writeInt64(out, ID, shoe.getId());
+		writeString(out, ARTICLE_NUMBER, shoe.getArticleNumber());
+		writeString(out, NAME, shoe.getName());
+		writeString(out, BRAND, shoe.getBrand());
+		writeString(out, COLOR, shoe.getColor());
+		writeString(out, SIZE, shoe.getSize());
+		writeString(out, STOCK, shoe.getStock());
+		writeInt64(out, VERSION, shoe.getVersion());
+	}
+
+	/* proto3 leaves out default values, null is sent like zero and the empty string */
+	private static void writeInt64(OutputStream out, int field, Long value) throws IOException {
+		if (value != null && value != 0) {
+			writeVarint(out, field << 3 | WIRE_VARINT);
+			writeVarint(out, value);
+		}
+	}
+
+	private static void writeString(OutputStream out, int field, String value) throws IOException {
+		if (value != null && !value.isEmpty()) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeVarint(out, field << 3 | WIRE_LENGTH_DELIMITED);
+			writeVarint(out, bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static void writeVarint(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	/**
+	 * Cursor over an encoded message or a length delimited part of it.
+	 */
+	private static class Reader {
+
+		private final byte[] bytes;
+		private int position;
+		private final int end;
+
+		Reader(byte[] bytes, int position, int end) {
+			this.bytes = bytes;
+			this.position = position;
+			this.end = end;
+		}
+
+		boolean hasMore() {
+			return position < end;
+		}
+
+		long varint() {
+			long result = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				int b = next();
+				result |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return result;
+				}
+			}
+			throw new HttpMessageNotReadableException("Malformed varint");
+		}
+
+		int varint32() {
+			return (int) varint();
+		}
+
+		long int64(int wireType) {
+			expect(wireType, WIRE_VARINT);
+			return varint();
+		}
+
+		String string(int wireType) {
+			expect(wireType, WIRE_LENGTH_DELIMITED);
+			int length = length();
+			String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+			position += length;
+			return value;
+		}
+
+		Reader message() {
+			int length = length();
+			Reader message = new Reader(bytes, position, position + length);
+			position += length;
+			return message;
+		}
+
+		void skip(int wireType) {
+			switch (wireType) {
+			case WIRE_VARINT:
+				varint();
+				break;
+			case WIRE_FIXED64:
+				advance(8);
+				break;
+			case WIRE_LENGTH_DELIMITED:
+				advance(length());
+				break;
+			case WIRE_FIXED32:
+				advance(4);
+				break;
+			default:
+				throw new HttpMessageNotReadableException("Unsupported wire type " + wireType);
+			}
+		}
+
+		private int length() {
+			long length = varint();
+			if (length < 0 || length > end - position) {
+				throw new HttpMessageNotReadableException("Truncated protobuf message");
+			}
+			return (int) length;
+		}
+
+		private void advance(int count) {
+			if (count > end - position) {
+				throw new HttpMessageNotReadableException("Truncated protobuf message");
+			}
+			position += count;
+		}
+
+		private int next() {
+			if (position >= end) {
+				throw new HttpMessageNotReadableException("Truncated protobuf message");
+			}
+			return bytes[position++];
+		}
+
+		private static void expect(int wireType, int expected) {
+			if (wireType != expected) {
+				throw new HttpMessageNotReadableException("Unexpected wire type " + wireType);
+			}
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package com.proeins.controller;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * Runs the blocking part of request handling, so servlet threads are handed
+ * back to Tomcat while a handler waits for the database.
+ * <p>
+ * <code>shoe.web.execution.mode</code> selects where handlers run:
+ * <ul>
+ * <li><code>direct</code> on the servlet thread, as before</li>
+ * <li><code>pool</code> on a bounded pool of <code>pool_size</code> threads
+ * with a queue of <code>queue_capacity</code> requests</li>
+ * <li><code>virtual</code> on a virtual thread per request, if the runtime
+ * has them (Java 21+), otherwise on the pool</li>
+ * </ul>
+ * Requests beyond <code>pool_size + queue_capacity</code> are rejected with a
+ * {@link RejectedExecutionException} rather than queued without bound. The
+ * JDBC connection pool still limits how many of them hit the database.
+ */
+@Component
+public class ShoeRequestExecutor {
+
+	public enum Mode {
+		DIRECT, POOL, VIRTUAL
+	}
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShoeRequestExecutor.class);
+
+	@Value("${shoe.web.execution.mode:direct}")
+	private String mode = "direct";
+
+	@Value("${shoe.web.execution.pool_size:200}")
+	private int poolSize = 200;
+
+	@Value("${shoe.web.execution.queue_capacity:1000}")
+	private int queueCapacity = 1000;
+
+	/* null runs handlers on the calling thread */
+	private ExecutorService executor;
+
+	/* bounds the requests in flight on virtual threads, which have no queue to fill up */
+	private Semaphore permits;
+
+	@PostConstruct
+	public void initialize() {
+		Mode selected = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+		if (selected == Mode.VIRTUAL) {
+			executor = newVirtualThreadPerTaskExecutor();
+			if (executor != null) {
+				permits = new Semaphore(poolSize + queueCapacity);
+				LOGGER.info("Handling requests on virtual threads");
+				return;
+			}
+			LOGGER.warn("Virtual threads need Java 21 or later, handling requests on a pool of {} threads", poolSize);
+			selected = Mode.POOL;
+		}
+		if (selected == Mode.POOL) {
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "shoe-request-" + count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			pool.allowCoreThreadTimeOut(true);
+			executor = pool;
+		}
+	}
+
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			// looked up reflectively, the code still builds and runs on Java 8
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (ReflectiveOperationException e) {
+			LOGGER.warn("Cannot create virtual thread executor", e);
+			return null;
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Calls the action on the configured executor. The returned future
+	 * completes with its result or with the exception it threw, checked ones
+	 * included, so the usual exception handlers apply.
+	 */
+	public <T> CompletableFuture<T> supply(final Callable<T> action) {
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		if (executor == null) {
+			complete(future, action);
+			return future;
+		}
+		if (permits != null && !permits.tryAcquire()) {
+			future.completeExceptionally(new RejectedExecutionException("Too many requests in flight"));
+			return future;
+		}
+		// handlers build links from the current request
+		final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					RequestContextHolder.setRequestAttributes(attributes);
+					try {
+						complete(future, action);
+					} finally {
+						RequestContextHolder.resetRequestAttributes();
+						if (permits != null) {
+							permits.release();
+						}
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			if (permits != null) {
+				permits.release();
+			}
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	private static <T> void complete(CompletableFuture<T> future, Callable<T> action) {
+		try {
+			future.complete(action.call());
+		} catch (Exception e) {
+			future.completeExceptionally(e);
+		}
+	}
+}
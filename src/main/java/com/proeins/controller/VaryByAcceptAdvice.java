@@ -0,0 +1,38 @@
+package com.proeins.controller;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Marks JSON and protobuf bodies as chosen by the Accept header, so a shared
+ * cache does not hand the protobuf body of a URL to a client asking for JSON.
+ */
+@ControllerAdvice
+public class VaryByAcceptAdvice implements ResponseBodyAdvice<Object> {
+
+	@Override
+	public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+		return true;
+	}
+
+	@Override
+	public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+			Class<? extends HttpMessageConverter<?>> selectedConverterType, ServerHttpRequest request,
+			ServerHttpResponse response) {
+		if (isNegotiated(selectedContentType) && !response.getHeaders().getVary().contains(HttpHeaders.ACCEPT)) {
+			response.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+		}
+		return body;
+	}
+
+	private static boolean isNegotiated(MediaType contentType) {
+		return MediaType.APPLICATION_JSON.isCompatibleWith(contentType)
+				|| ShoeProtobufHttpMessageConverter.APPLICATION_PROTOBUF.isCompatibleWith(contentType);
+	}
+}
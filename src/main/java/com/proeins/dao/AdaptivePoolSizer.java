@@ -0,0 +1,121 @@
+package com.proeins.dao;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+import com.proeins.metrics.LatencyHistogram;
+
+/**
+ * Moves the maximum size of the connection pool between
+ * <code>hibernate.c3p0.min_size</code> and <code>max_size</code> by the
+ * observed checkout waits. Every interval the 90th percentile wait of that
+ * interval is compared against two thresholds: above
+ * <code>grow_wait_millis</code> the pool may grow by the acquire increment,
+ * below <code>shrink_wait_millis</code> with at most half of it busy it
+ * shrinks by the same step.
+ * <p>
+ * c3p0 applies a new size with a soft reset: connections are replaced as they
+ * are returned, so the interval should stay in the tens of seconds.
+ */
+@Component
+@ConditionalOnProperty(name = "shoe.pool.adaptive.enabled", havingValue = "true")
+public class AdaptivePoolSizer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AdaptivePoolSizer.class);
+
+	private ConnectionPoolMetrics metrics;
+
+	@Value("${hibernate.c3p0.min_size:5}")
+	private int minSize = 5;
+
+	@Value("${hibernate.c3p0.max_size:20}")
+	private int maxSize = 20;
+
+	@Value("${hibernate.c3p0.acquire_increment:1}")
+	private int step = 1;
+
+	@Value("${shoe.pool.adaptive.interval_seconds:30}")
+	private long intervalSeconds = 30;
+
+	@Value("${shoe.pool.adaptive.grow_wait_millis:5}")
+	private double growWaitMillis = 5;
+
+	@Value("${shoe.pool.adaptive.shrink_wait_millis:0.5}")
+	private double shrinkWaitMillis = 0.5;
+
+	private LatencyHistogram.Snapshot previous;
+
+	private ScheduledExecutorService scheduler;
+
+	@Autowired
+	public AdaptivePoolSizer(ConnectionPoolMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@PostConstruct
+	public void initialize() {
+		previous = metrics.getAcquireTimes().snapshot();
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "connection-pool-sizer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					adjust();
+				} catch (SQLException | RuntimeException e) {
+					LOGGER.warn("Adjusting the connection pool failed", e);
+				}
+			}
+		}, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+	/**
+	 * Compares the waits since the last call against the thresholds and
+	 * resizes the pool if needed. Returns the maximum pool size now in effect.
+	 */
+	public synchronized int adjust() throws SQLException {
+		LatencyHistogram.Snapshot current = metrics.getAcquireTimes().snapshot();
+		LatencyHistogram.Snapshot interval = current.minus(previous);
+		previous = current;
+
+		ComboPooledDataSource pool = metrics.getPool();
+		int size = pool.getMaxPoolSize();
+		double wait = interval.getPercentileMillis(0.9);
+		int target = size;
+		if (interval.getCount() > 0 && wait >= growWaitMillis) {
+			target = Math.min(maxSize, size + step);
+		} else if (wait <= shrinkWaitMillis && metrics.getBusyConnections() <= size / 2) {
+			target = Math.max(minSize, size - step);
+		}
+		if (target != size) {
+			LOGGER.info("Resizing connection pool from {} to {}, p90 checkout wait {} ms", size, target, wait);
+			pool.setMaxPoolSize(target);
+		}
+		return target;
+	}
+}
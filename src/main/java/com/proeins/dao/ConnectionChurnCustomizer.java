@@ -0,0 +1,47 @@
+package com.proeins.dao;
+
+import java.sql.Connection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mchange.v2.c3p0.AbstractConnectionCustomizer;
+
+/**
+ * Counts the physical connections c3p0 opens and closes. c3p0 creates its
+ * customizers itself, so the counters live here, per pool identity token.
+ */
+public class ConnectionChurnCustomizer extends AbstractConnectionCustomizer {
+
+	private static final ConcurrentMap<String, AtomicLong[]> COUNTERS = new ConcurrentHashMap<>();
+
+	@Override
+	public void onAcquire(Connection connection, String parentDataSourceIdentityToken) {
+		countersOf(parentDataSourceIdentityToken)[0].incrementAndGet();
+	}
+
+	@Override
+	public void onDestroy(Connection connection, String parentDataSourceIdentityToken) {
+		countersOf(parentDataSourceIdentityToken)[1].incrementAndGet();
+	}
+
+	public static long getOpened(String identityToken) {
+		return countersOf(identityToken)[0].get();
+	}
+
+	public static long getClosed(String identityToken) {
+		return countersOf(identityToken)[1].get();
+	}
+
+	private static AtomicLong[] countersOf(String identityToken) {
+		AtomicLong[] counters = COUNTERS.get(identityToken);
+		if (counters == null) {
+			AtomicLong[] created = { new AtomicLong(), new AtomicLong() };
+			counters = COUNTERS.putIfAbsent(identityToken, created);
+			if (counters == null) {
+				counters = created;
+			}
+		}
+		return counters;
+	}
+}
@@ -0,0 +1,94 @@
+package com.proeins.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+import com.proeins.metrics.LatencyHistogram;
+
+/**
+ * Telemetry of the c3p0 pool behind Hibernate. c3p0 knows its connection
+ * counts and statement cache, how long callers wait for a connection is
+ * measured by the data source handed to Hibernate, see {@link #getDataSource()}.
+ */
+@Component
+public class ConnectionPoolMetrics {
+
+	private final ComboPooledDataSource pool;
+
+	private final LatencyHistogram acquireTimes = new LatencyHistogram();
+
+	private final DataSource dataSource;
+
+	@Autowired
+	public ConnectionPoolMetrics(ComboPooledDataSource pool) {
+		this.pool = pool;
+		this.dataSource = new DelegatingDataSource(pool) {
+			@Override
+			public Connection getConnection() throws SQLException {
+				long start = System.nanoTime();
+				try {
+					return super.getConnection();
+				} finally {
+					acquireTimes.recordNanos(System.nanoTime() - start);
+				}
+			}
+		};
+	}
+
+	/**
+	 * The pool, timing every connection checkout.
+	 */
+	public DataSource getDataSource() {
+		return dataSource;
+	}
+
+	public ComboPooledDataSource getPool() {
+		return pool;
+	}
+
+	/**
+	 * Time spent waiting for a connection, failed checkouts included.
+	 */
+	public LatencyHistogram getAcquireTimes() {
+		return acquireTimes;
+	}
+
+	public int getBusyConnections() throws SQLException {
+		return pool.getNumBusyConnectionsDefaultUser();
+	}
+
+	public int getIdleConnections() throws SQLException {
+		return pool.getNumIdleConnectionsDefaultUser();
+	}
+
+	public int getPendingCheckouts() throws SQLException {
+		return pool.getNumThreadsAwaitingCheckoutDefaultUser();
+	}
+
+	public long getFailedCheckouts() throws SQLException {
+		return pool.getNumFailedCheckoutsDefaultUser();
+	}
+
+	public int getCachedStatements() throws SQLException {
+		return pool.getStatementCacheNumStatementsDefaultUser();
+	}
+
+	public int getCheckedOutStatements() throws SQLException {
+		return pool.getStatementCacheNumCheckedOutDefaultUser();
+	}
+
+	public long getOpenedConnections() {
+		return ConnectionChurnCustomizer.getOpened(pool.getIdentityToken());
+	}
+
+	public long getClosedConnections() {
+		return ConnectionChurnCustomizer.getClosed(pool.getIdentityToken());
+	}
+}
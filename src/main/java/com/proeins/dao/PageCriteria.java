@@ -0,0 +1,195 @@
+package com.proeins.dao;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.proeins.exception.InvalidRequestException;
+import com.proeins.model.Shoe;
+
+/**
+ * Keyset pagination request: the sort key and direction, the page size and
+ * the position (sort value, id) of the last shoe of the previous page.
+ * <p>
+ * The position is handed to clients as an opaque, URL safe cursor, so the
+ * database only ever seeks on <code>(sort key, id)</code> and never has to
+ * skip over an OFFSET.
+ */
+public class PageCriteria {
+
+	public static final int MAX_LIMIT = 1000;
+
+	/* sort keys to the properties ordered by; size and stock sort numerically */
+	private static final Map<String, String> SORT_PROPERTIES = new HashMap<>();
+	static {
+		SORT_PROPERTIES.put("id", "id");
+		SORT_PROPERTIES.put("articleNumber", "articleNumber");
+		SORT_PROPERTIES.put("name", "name");
+		SORT_PROPERTIES.put("brand", "brand");
+		SORT_PROPERTIES.put("color", "color");
+		SORT_PROPERTIES.put("size", "sizeValue");
+		SORT_PROPERTIES.put("stock", "stockCount");
+	}
+
+	private static final String SEPARATOR = "\n";
+
+	private String sortKey;
+	private boolean ascending;
+	private Integer limit;
+	private boolean afterPosition;
+	private String afterValue;
+	private Long afterId;
+
+	public PageCriteria(String sortKey, boolean ascending, Integer limit) {
+		if (!SORT_PROPERTIES.containsKey(sortKey)) {
+			throw new InvalidRequestException("Cannot sort by " + sortKey);
+		}
+		if (limit != null && (limit < 1 || limit > MAX_LIMIT)) {
+			throw new InvalidRequestException("limit must be between 1 and " + MAX_LIMIT);
+		}
+		this.sortKey = sortKey;
+		this.ascending = ascending;
+		this.limit = limit;
+	}
+
+	/**
+	 * Builds the criteria from the raw request parameters. <code>sort</code>
+	 * is a field name, prefixed with <code>-</code> for descending order. When
+	 * a cursor is given it determines the sort order and must agree with
+	 * <code>sort</code> if both are present.
+	 */
+	public static PageCriteria of(String sort, Integer limit, String cursor) {
+		String sortKey = "id";
+		boolean ascending = true;
+		if (sort != null && !sort.isEmpty()) {
+			ascending = !sort.startsWith("-");
+			sortKey = ascending ? sort : sort.substring(1);
+		}
+		if (cursor == null || cursor.isEmpty()) {
+			return new PageCriteria(sortKey, ascending, limit);
+		}
+
+		String[] parts = decode(cursor);
+		boolean cursorAscending = "a".equals(parts[1]);
+		if (sort != null && !sort.isEmpty() && (!sortKey.equals(parts[0]) || ascending != cursorAscending)) {
+			throw new InvalidRequestException("Cursor does not match sort " + sort);
+		}
+		PageCriteria page = new PageCriteria(parts[0], cursorAscending, limit);
+		page.afterPosition = true;
+		try {
+			page.afterId = Long.valueOf(parts[2]);
+		} catch (NumberFormatException e) {
+			throw new InvalidRequestException("Invalid cursor");
+		}
+		page.afterValue = parts[3].startsWith("v") ? parts[3].substring(1) : null;
+		return page;
+	}
+
+	/**
+	 * Encodes the position of the given shoe as cursor for the next page.
+	 */
+	public String cursorAfter(Shoe shoe) {
+		Object value = sortValue(shoe);
+		String raw = sortKey + SEPARATOR + (ascending ? "a" : "d") + SEPARATOR + shoe.getId() + SEPARATOR
+				+ (value == null ? "n" : "v" + value);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * The order of the pages for sorting shoes in memory, like MySQL sorts
+	 * them: nulls first, text case insensitive and ties by id.
+	 */
+	public Comparator<Shoe> comparator() {
+		Comparator<Shoe> ascendingOrder = new Comparator<Shoe>() {
+			@Override
+			public int compare(Shoe first, Shoe second) {
+				int order = compareValues(sortValue(first), sortValue(second));
+				return order != 0 ? order : first.getId().compareTo(second.getId());
+			}
+		};
+		return ascending ? ascendingOrder : ascendingOrder.reversed();
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static int compareValues(Object first, Object second) {
+		if (first == null || second == null) {
+			return first == null ? (second == null ? 0 : -1) : 1;
+		}
+		if (first instanceof String) {
+			return String.CASE_INSENSITIVE_ORDER.compare((String) first, (String) second);
+		}
+		return ((Comparable) first).compareTo(second);
+	}
+
+	private static String[] decode(String cursor) {
+		String[] parts;
+		try {
+			parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(SEPARATOR, 4);
+		} catch (IllegalArgumentException e) {
+			throw new InvalidRequestException("Invalid cursor");
+		}
+		if (parts.length != 4 || !("a".equals(parts[1]) || "d".equals(parts[1]))) {
+			throw new InvalidRequestException("Invalid cursor");
+		}
+		return parts;
+	}
+
+	private Object sortValue(Shoe shoe) {
+		switch (sortKey) {
+		case "id":
+			return shoe.getId();
+		case "articleNumber":
+			return shoe.getArticleNumber();
+		case "name":
+			return shoe.getName();
+		case "brand":
+			return shoe.getBrand();
+		case "color":
+			return shoe.getColor();
+		case "size":
+			return shoe.getSizeValue();
+		default:
+			return shoe.getStockCount();
+		}
+	}
+
+	public String getSortKey() {
+		return sortKey;
+	}
+
+	/**
+	 * Entity property the sort key orders by.
+	 */
+	public String getSortProperty() {
+		return SORT_PROPERTIES.get(sortKey);
+	}
+
+	public boolean isAscending() {
+		return ascending;
+	}
+
+	/**
+	 * Maximum number of shoes on the page, <code>null</code> for no limit.
+	 */
+	public Integer getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Whether this page continues after a previous one, in which case
+	 * {@link #getAfterId()} and {@link #getAfterValue()} hold its last position.
+	 */
+	public boolean hasAfterPosition() {
+		return afterPosition;
+	}
+
+	public String getAfterValue() {
+		return afterValue;
+	}
+
+	public Long getAfterId() {
+		return afterId;
+	}
+}
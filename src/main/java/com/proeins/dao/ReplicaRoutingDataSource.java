@@ -0,0 +1,229 @@
+package com.proeins.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+
+/**
+ * Sends connections of read-only transactions to a replica and everything
+ * else to the primary. Replicas are picked round robin or, with
+ * <code>least_busy</code>, by the fewest checked out connections.
+ * <p>
+ * A client that committed a write reads from the primary for the
+ * read-your-writes window afterwards, so it does not miss its own write on a
+ * lagging replica. Clients are told apart by the client header, or by their
+ * address if they do not send it, and only writes made while handling their
+ * requests count. Other clients may still read stale rows within the
+ * replication lag, the second-level cache included.
+ * <p>
+ * The read-only flag is only known once the transaction has begun, so the
+ * connection has to be fetched lazily, see {@link #lazy()}. A replica that
+ * cannot hand out a connection is skipped for the primary.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+	public enum Balance {
+		ROUND_ROBIN, LEAST_BUSY
+	}
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+	private final DataSource primary;
+
+	private final List<ComboPooledDataSource> replicas;
+
+	private final Balance balance;
+
+	private final String clientHeader;
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	private final AtomicLong primaryConnections = new AtomicLong();
+
+	private final List<AtomicLong> replicaConnections = new ArrayList<>();
+
+	/* clients within the read-your-writes window of their last commit */
+	private final Cache<String, Boolean> recentWriters;
+
+	public ReplicaRoutingDataSource(DataSource primary, List<ComboPooledDataSource> replicas, Balance balance,
+			long readYourWritesMillis, String clientHeader) {
+		this.primary = primary;
+		this.replicas = replicas;
+		this.balance = balance;
+		this.clientHeader = clientHeader;
+		for (int i = 0; i < replicas.size(); i++) {
+			replicaConnections.add(new AtomicLong());
+		}
+		this.recentWriters = Caffeine.newBuilder()
+				.expireAfterWrite(readYourWritesMillis, TimeUnit.MILLISECONDS)
+				.maximumSize(100000)
+				.build();
+	}
+
+	public static Balance balanceOf(String balance) {
+		return Balance.valueOf(balance.trim().toUpperCase(Locale.ROOT));
+	}
+
+	/**
+	 * This data source behind a proxy that fetches the connection on its first
+	 * statement, when the transaction has been marked read-only.
+	 */
+	public DataSource lazy() {
+		return new LazyConnectionDataSourceProxy(this);
+	}
+
+	public boolean hasReplicas() {
+		return !replicas.isEmpty();
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return route(null, null);
+	}
+
+	/**
+	 * Routed like {@link #getConnection()}, opened as the given user on the
+	 * chosen target.
+	 */
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return route(username, password);
+	}
+
+	/* null credentials open the connection as the configured user */
+	private Connection route(String username, String password) throws SQLException {
+		if (!TransactionSynchronizationManager.isActualTransactionActive()
+				|| !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			rememberWriter();
+			return fromPrimary(username, password);
+		}
+		if (replicas.isEmpty() || isRecentWriter(clientKey())) {
+			return fromPrimary(username, password);
+		}
+		int replica = pickReplica();
+		try {
+			Connection connection = open(replicas.get(replica), username, password);
+			replicaConnections.get(replica).incrementAndGet();
+			return connection;
+		} catch (SQLException e) {
+			LOGGER.warn("Replica {} is unavailable, reading from the primary: {}", replica, e.getMessage());
+			return fromPrimary(username, password);
+		}
+	}
+
+	/**
+	 * Whether read-only transactions of the current client go to the primary
+	 * instead of a replica, to see the writes it has just committed.
+	 */
+	public boolean isReadingOwnWrites() {
+		return !replicas.isEmpty() && isRecentWriter(clientKey());
+	}
+
+	private Connection fromPrimary(String username, String password) throws SQLException {
+		Connection connection = open(primary, username, password);
+		primaryConnections.incrementAndGet();
+		return connection;
+	}
+
+	private static Connection open(DataSource dataSource, String username, String password) throws SQLException {
+		return username == null ? dataSource.getConnection() : dataSource.getConnection(username, password);
+	}
+
+	private int pickReplica() {
+		int start = (next.getAndIncrement() & Integer.MAX_VALUE) % replicas.size();
+		if (balance == Balance.ROUND_ROBIN) {
+			return start;
+		}
+		// ties go to the round robin choice, so idle replicas share the load
+		int picked = start;
+		int fewest = Integer.MAX_VALUE;
+		for (int i = 0; i < replicas.size(); i++) {
+			int replica = (start + i) % replicas.size();
+			try {
+				int busy = replicas.get(replica).getNumBusyConnectionsDefaultUser();
+				if (busy < fewest) {
+					fewest = busy;
+					picked = replica;
+				}
+			} catch (SQLException e) {
+				// the count is unknown, keep the choice so far
+			}
+		}
+		return picked;
+	}
+
+	private void rememberWriter() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return;
+		}
+		final String client = clientKey();
+		if (client == null) {
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				recentWriters.put(client, Boolean.TRUE);
+			}
+		});
+	}
+
+	private boolean isRecentWriter(String client) {
+		return client != null && recentWriters.getIfPresent(client) != null;
+	}
+
+	/* the client of the request being handled, null outside of requests */
+	private String clientKey() {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (!(attributes instanceof ServletRequestAttributes)) {
+			return null;
+		}
+		HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+		String client = clientHeader.isEmpty() ? null : request.getHeader(clientHeader);
+		return client != null && !client.isEmpty() ? "id:" + client : "address:" + request.getRemoteAddr();
+	}
+
+	/**
+	 * Connections handed out per target, the primary first and then the
+	 * replicas in configuration order.
+	 */
+	public Map<String, Long> getConnectionCounts() {
+		Map<String, Long> counts = new LinkedHashMap<>();
+		counts.put("primary", primaryConnections.get());
+		for (int i = 0; i < replicaConnections.size(); i++) {
+			counts.put("replica-" + i, replicaConnections.get(i).get());
+		}
+		return Collections.unmodifiableMap(counts);
+	}
+
+	public void close() {
+		for (ComboPooledDataSource replica : replicas) {
+			replica.close();
+		}
+	}
+}
@@ -1,35 +1,118 @@
 package com.proeins.dao;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.hibernate.query.Query;
+
+/**
+ * A single comparison of a shoe field against a typed value. For
+ * {@link SearchOperation#IN} the value is a list. The compared entity
+ * property may differ from the field, e.g. ranges on <code>size</code>
+ * compare its numeric copy <code>sizeValue</code>.
+ */
 public class SearchCriteria {
-	
-	private String key;
-    private String operation;
-    private Object value;
-    
-    public SearchCriteria(String key, String operation, Object value) {
-    	this.key = key;
-    	this.operation = operation;
-    	this.value = value;
-	}
-    
+
+	private static final char LIKE_ESCAPE = '!';
+
+	private final String key;
+	private final String property;
+	private final SearchOperation operation;
+	private final Object value;
+
+	public SearchCriteria(String key, SearchOperation operation, Object value) {
+		this(key, key, operation, value);
+	}
+
+	public SearchCriteria(String key, String property, SearchOperation operation, Object value) {
+		this.key = key;
+		this.property = property;
+		this.operation = operation;
+		this.value = value;
+	}
+
 	public String getKey() {
 		return key;
 	}
-	public void setKey(String key) {
-		this.key = key;
+
+	public String getProperty() {
+		return property;
 	}
-	public String getOperation() {
+
+	public SearchOperation getOperation() {
 		return operation;
 	}
-	public void setOperation(String operation) {
-		this.operation = operation;
-	}
+
 	public Object getValue() {
 		return value;
 	}
-	public void setValue(Object value) {
-		this.value = value;
+
+	/**
+	 * HQL condition on the shoe aliased <code>s</code>, reading its value from
+	 * the given named parameter. Contains and prefix matches escape LIKE
+	 * wildcards in the value, so only a prefix match can use an index.
+	 */
+	String toHql(String parameter) {
+		String path = "s." + property;
+		switch (operation) {
+		case CONTAINS:
+		case PREFIX:
+			return path + " like :" + parameter + " escape '" + LIKE_ESCAPE + "'";
+		case IN:
+			return path + " in (:" + parameter + ")";
+		default:
+			return path + " " + operation.getSymbol() + " :" + parameter;
+		}
+	}
+
+	void bind(Query<?> query, String parameter) {
+		switch (operation) {
+		case CONTAINS:
+			query.setParameter(parameter, "%" + escapeLike((String) value) + "%");
+			break;
+		case PREFIX:
+			query.setParameter(parameter, escapeLike((String) value) + "%");
+			break;
+		case IN:
+			query.setParameterList(parameter, (Collection<?>) value);
+			break;
+		default:
+			query.setParameter(parameter, value);
+		}
+	}
+
+	private static String escapeLike(String value) {
+		StringBuilder escaped = new StringBuilder(value.length() + 2);
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+				escaped.append(LIKE_ESCAPE);
+			}
+			escaped.append(c);
+		}
+		return escaped.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder(key).append(operation.getSymbol());
+		if (operation == SearchOperation.IN) {
+			String separator = "";
+			for (Object element : (List<?>) value) {
+				result.append(separator).append(quote(element));
+				separator = "|";
+			}
+		} else {
+			result.append(quote(value));
+		}
+		return result.toString();
+	}
+
+	private static String quote(Object value) {
+		String text = String.valueOf(value);
+		if (!text.matches("[^,;|\"\\\\]*") || !text.trim().equals(text)) {
+			return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+		}
+		return text;
 	}
-    
-    
 }
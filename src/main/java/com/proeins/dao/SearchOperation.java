@@ -0,0 +1,27 @@
+package com.proeins.dao;
+
+/**
+ * Comparison of a {@link SearchCriteria}, with the symbol used for it in
+ * search strings.
+ */
+public enum SearchOperation {
+
+	CONTAINS(":"),
+	PREFIX("^"),
+	EQUAL("="),
+	IN("="),
+	LESS_THAN("<"),
+	LESS_THAN_OR_EQUAL("<="),
+	GREATER_THAN(">"),
+	GREATER_THAN_OR_EQUAL(">=");
+
+	private final String symbol;
+
+	private SearchOperation(String symbol) {
+		this.symbol = symbol;
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+}
@@ -0,0 +1,357 @@
+package com.proeins.dao;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.query.Query;
+
+import com.proeins.exception.InvalidRequestException;
+import com.proeins.model.Shoe;
+
+/**
+ * Parsed shoe search: a disjunction of groups, each a conjunction of
+ * {@link SearchCriteria}. Queries are immutable and compile their HQL
+ * condition once, so they can be cached and shared between requests.
+ * <p>
+ * Syntax: criteria are separated by <code>,</code> (and) and groups by
+ * <code>;</code> (or). A criteria is a field, an operator and a value:
+ * <ul>
+ * <li><code>brand:ik</code> contains</li>
+ * <li><code>brand^Ni</code> starts with</li>
+ * <li><code>brand=Nike</code> equals, <code>brand=Nike|Puma</code> is one of</li>
+ * <li><code>size&lt;42</code>, <code>size&lt;=42</code>, <code>size&gt;42</code>,
+ * <code>size&gt;=42</code> ranges</li>
+ * </ul>
+ * Ranges on size and stock, and exact matches on stock, compare numerically.
+ * Values may be double quoted to contain separators, with <code>\</code>
+ * escaping quotes. Criteria with an empty value are ignored.
+ */
+public class SearchQuery {
+
+	public static final SearchQuery ALL = new SearchQuery(Collections.<List<SearchCriteria>>emptyList());
+
+	private static final Map<String, Class<?>> FIELDS = new HashMap<>();
+	static {
+		FIELDS.put("id", Long.class);
+		FIELDS.put("articleNumber", String.class);
+		FIELDS.put("name", String.class);
+		FIELDS.put("brand", String.class);
+		FIELDS.put("color", String.class);
+		FIELDS.put("size", String.class);
+		FIELDS.put("stock", String.class);
+	}
+
+	/* fields with a numeric copy, used for ranges and, for stock, exact matches */
+	private static final Map<String, String> NUMERIC_PROPERTIES = new HashMap<>();
+	static {
+		NUMERIC_PROPERTIES.put("size", "sizeValue");
+		NUMERIC_PROPERTIES.put("stock", "stockCount");
+	}
+
+	private final List<List<SearchCriteria>> groups;
+
+	private final String condition;
+
+	private SearchQuery(List<List<SearchCriteria>> groups) {
+		this.groups = groups;
+		this.condition = buildCondition(Collections.<SearchCriteria>emptyList());
+	}
+
+	public static SearchQuery parse(String search) {
+		if (search == null || search.trim().isEmpty()) {
+			return ALL;
+		}
+		return new Parser(search).parse();
+	}
+
+	public List<List<SearchCriteria>> getGroups() {
+		return groups;
+	}
+
+	/**
+	 * HQL condition on the shoe aliased <code>s</code>, or <code>null</code>
+	 * if the query matches every shoe.
+	 */
+	public String getCondition() {
+		return condition;
+	}
+
+	/**
+	 * Like {@link #getCondition()}, but leaving out criteria that were already
+	 * answered elsewhere.
+	 */
+	public String getCondition(Collection<SearchCriteria> answered) {
+		return answered.isEmpty() ? condition : buildCondition(answered);
+	}
+
+	/**
+	 * Binds the values of all criteria not in <code>answered</code> to the
+	 * query created from the matching condition.
+	 */
+	public void bind(Query<?> query, Collection<SearchCriteria> answered) {
+		int index = 0;
+		for (List<SearchCriteria> group : groups) {
+			for (SearchCriteria criteria : group) {
+				String parameter = "p" + index++;
+				if (!answered.contains(criteria)) {
+					criteria.bind(query, parameter);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Parameters are numbered over all criteria, so leaving some out does not
+	 * rename the others.
+	 */
+	private String buildCondition(Collection<SearchCriteria> answered) {
+		StringBuilder result = new StringBuilder();
+		int index = 0;
+		for (List<SearchCriteria> group : groups) {
+			StringBuilder conjunction = new StringBuilder();
+			for (SearchCriteria criteria : group) {
+				String parameter = "p" + index++;
+				if (answered.contains(criteria)) {
+					continue;
+				}
+				if (conjunction.length() > 0) {
+					conjunction.append(" and ");
+				}
+				conjunction.append(criteria.toHql(parameter));
+			}
+			if (conjunction.length() == 0) {
+				return null;
+			}
+			if (result.length() > 0) {
+				result.append(" or ");
+			}
+			result.append('(').append(conjunction).append(')');
+		}
+		return result.length() == 0 ? null : result.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		for (List<SearchCriteria> group : groups) {
+			if (result.length() > 0) {
+				result.append(';');
+			}
+			for (int i = 0; i < group.size(); i++) {
+				result.append(i == 0 ? "" : ",").append(group.get(i));
+			}
+		}
+		return result.toString();
+	}
+
+	private static class Parser {
+
+		private final String search;
+		private int position;
+
+		Parser(String search) {
+			this.search = search;
+		}
+
+		SearchQuery parse() {
+			List<List<SearchCriteria>> groups = new ArrayList<>();
+			List<SearchCriteria> group = new ArrayList<>();
+			boolean matchesAll = false;
+			boolean ignoredCriteria = false;
+			while (true) {
+				skipWhitespace();
+				if (!atEnd() && peek() != ',' && peek() != ';') {
+					SearchCriteria criteria = criteria();
+					if (criteria == null) {
+						ignoredCriteria = true;
+					} else {
+						group.add(criteria);
+					}
+				}
+				skipWhitespace();
+				if (atEnd() || peek() == ';') {
+					// a group of only ignored criteria places no restriction at all
+					if (group.isEmpty()) {
+						matchesAll |= ignoredCriteria;
+					} else {
+						groups.add(group);
+					}
+					if (atEnd()) {
+						break;
+					}
+					group = new ArrayList<>();
+					ignoredCriteria = false;
+				} else if (peek() != ',') {
+					throw error("Unexpected '" + peek() + "'");
+				}
+				position++;
+			}
+			return matchesAll || groups.isEmpty() ? ALL : new SearchQuery(groups);
+		}
+
+		private SearchCriteria criteria() {
+			int start = position;
+			while (!atEnd() && Character.isLetterOrDigit(peek())) {
+				position++;
+			}
+			String key = search.substring(start, position);
+			if (key.isEmpty()) {
+				throw error("Expected a field name");
+			}
+			Class<?> type = FIELDS.get(key);
+			if (type == null) {
+				throw new InvalidRequestException("Cannot search by " + key);
+			}
+			SearchOperation operation = operation();
+
+			List<String> values = new ArrayList<>();
+			while (true) {
+				String value = value();
+				if (!value.isEmpty()) {
+					values.add(value);
+				}
+				if (atEnd() || peek() != '|') {
+					break;
+				}
+				if (operation != SearchOperation.EQUAL) {
+					throw error("'|' is only allowed after '='");
+				}
+				position++;
+			}
+			if (values.isEmpty()) {
+				return null;
+			}
+			if (values.size() > 1) {
+				operation = SearchOperation.IN;
+			}
+
+			String property = key;
+			if (NUMERIC_PROPERTIES.containsKey(key) && (isRange(operation) || key.equals("stock")
+					&& (operation == SearchOperation.EQUAL || operation == SearchOperation.IN))) {
+				property = NUMERIC_PROPERTIES.get(key);
+				type = key.equals("size") ? BigDecimal.class : Integer.class;
+			}
+			if (type != String.class) {
+				if (operation == SearchOperation.PREFIX) {
+					throw new InvalidRequestException("Cannot search " + key + " by prefix");
+				}
+				if (operation == SearchOperation.CONTAINS) {
+					operation = SearchOperation.EQUAL;
+				}
+			}
+
+			List<Object> converted = new ArrayList<>(values.size());
+			for (String value : values) {
+				converted.add(convert(key, type, value));
+			}
+			return new SearchCriteria(key, property, operation,
+					operation == SearchOperation.IN ? Collections.unmodifiableList(converted) : converted.get(0));
+		}
+
+		private boolean isRange(SearchOperation operation) {
+			return operation == SearchOperation.LESS_THAN || operation == SearchOperation.LESS_THAN_OR_EQUAL
+					|| operation == SearchOperation.GREATER_THAN || operation == SearchOperation.GREATER_THAN_OR_EQUAL;
+		}
+
+		private SearchOperation operation() {
+			if (atEnd()) {
+				throw error("Expected an operator");
+			}
+			char symbol = search.charAt(position++);
+			boolean orEqual = !atEnd() && peek() == '=' && (symbol == '<' || symbol == '>');
+			if (orEqual) {
+				position++;
+			}
+			switch (symbol) {
+			case ':':
+				return SearchOperation.CONTAINS;
+			case '^':
+				return SearchOperation.PREFIX;
+			case '=':
+				return SearchOperation.EQUAL;
+			case '<':
+				return orEqual ? SearchOperation.LESS_THAN_OR_EQUAL : SearchOperation.LESS_THAN;
+			case '>':
+				return orEqual ? SearchOperation.GREATER_THAN_OR_EQUAL : SearchOperation.GREATER_THAN;
+			default:
+				position--;
+				throw error("Expected an operator");
+			}
+		}
+
+		private String value() {
+			skipWhitespace();
+			if (atEnd() || peek() != '"') {
+				int start = position;
+				while (!atEnd() && peek() != ',' && peek() != ';' && peek() != '|') {
+					position++;
+				}
+				return search.substring(start, position).trim();
+			}
+
+			StringBuilder value = new StringBuilder();
+			position++;
+			while (true) {
+				if (atEnd()) {
+					throw error("Unterminated quote");
+				}
+				char c = search.charAt(position++);
+				if (c == '"') {
+					break;
+				}
+				if (c == '\\' && !atEnd()) {
+					c = search.charAt(position++);
+				}
+				value.append(c);
+			}
+			skipWhitespace();
+			return value.toString();
+		}
+
+		private Object convert(String key, Class<?> type, String value) {
+			Object converted = value;
+			if (type == Long.class) {
+				converted = parseLong(value);
+			} else if (type == Integer.class) {
+				converted = Shoe.parseStock(value);
+			} else if (type == BigDecimal.class) {
+				converted = Shoe.parseSize(value);
+			}
+			if (converted == null) {
+				throw new InvalidRequestException("Invalid " + key + ": " + value);
+			}
+			return converted;
+		}
+
+		private Long parseLong(String value) {
+			try {
+				return Long.valueOf(value);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+
+		private void skipWhitespace() {
+			while (!atEnd() && Character.isWhitespace(peek())) {
+				position++;
+			}
+		}
+
+		private boolean atEnd() {
+			return position >= search.length();
+		}
+
+		private char peek() {
+			return search.charAt(position);
+		}
+
+		private InvalidRequestException error(String message) {
+			return new InvalidRequestException(message + " at position " + position + " of search '" + search + "'");
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package com.proeins.dao;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Properties;
+
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+/**
+ * Sequence generator for shoe ids that encodes the shard: the id is the
+ * sequence value times the shard count plus the shard index, taken from the
+ * session factory settings {@link #SHARD_INDEX} and {@link #SHARD_COUNT}. Ids
+ * are unique across shards and {@link ShardedShoeDao} finds the shard of an
+ * id without asking any database. With a single shard ids are the plain
+ * sequence values.
+ */
+public class ShardedSequenceGenerator extends SequenceStyleGenerator {
+
+	public static final String SHARD_INDEX = "shoe.shard.index";
+
+	public static final String SHARD_COUNT = "shoe.shard.count";
+
+	private int shardIndex;
+
+	private int shardCount = 1;
+
+	@Override
+	public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+		super.configure(type, params, serviceRegistry);
+		Map<?, ?> settings = serviceRegistry.getService(ConfigurationService.class).getSettings();
+		if (settings.get(SHARD_COUNT) != null) {
+			shardIndex = Integer.parseInt(String.valueOf(settings.get(SHARD_INDEX)));
+			shardCount = Integer.parseInt(String.valueOf(settings.get(SHARD_COUNT)));
+		}
+	}
+
+	@Override
+	public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
+		Long value = (Long) super.generate(session, object);
+		return value * shardCount + shardIndex;
+	}
+}
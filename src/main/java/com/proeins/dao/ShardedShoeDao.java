@@ -0,0 +1,467 @@
+package com.proeins.dao;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+import com.proeins.exception.InvalidRequestException;
+import com.proeins.exception.ShoeNotFoundException;
+import com.proeins.exception.ShoeVersionConflictException;
+import com.proeins.exception.StockConflictException;
+import com.proeins.model.Shoe;
+
+/**
+ * Partitions the catalog across several databases by a hash of the article
+ * number or of the brand. New shoes go to the shard of their key, and the
+ * shard is encoded in their id (see {@link ShardedSequenceGenerator}), so
+ * operations by id touch a single shard. Searches run on all shards in
+ * parallel and the results are merged in memory. The other shards are
+ * searched on a pool of <code>parallelism</code> threads shared by all
+ * requests, the primary on the calling thread.
+ * <p>
+ * Each shard call runs in a transaction of that shard; the first shard is
+ * the primary database and joins the caller's transaction. Writes spanning
+ * several shards, like batches, are committed per shard and not atomically.
+ * With the brand as key a shoe stays on its shard when its brand changes,
+ * and an upsert only finds shoes on the shard of the brand it is given.
+ * Exports stream the shards one after the other, each in id order.
+ */
+public class ShardedShoeDao implements ShoeDao {
+
+	public enum ShardKey {
+		ARTICLE_NUMBER, BRAND
+	}
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShardedShoeDao.class);
+
+	private final List<Shard> shards;
+
+	private final ShardKey shardKey;
+
+	private final ExecutorService searchers;
+
+	public ShardedShoeDao(List<Shard> shards, ShardKey shardKey, int parallelism) {
+		this.shards = shards;
+		this.shardKey = shardKey;
+		final AtomicInteger threads = new AtomicInteger();
+		this.searchers = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "shoe-shard-search-" + threads.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		LOGGER.info("Catalog sharded across {} databases by {}", shards.size(), shardKey);
+	}
+
+	public static ShardKey shardKeyOf(String shardKey) {
+		return ShardKey.valueOf(shardKey.trim().toUpperCase(Locale.ROOT));
+	}
+
+	public void close() {
+		searchers.shutdownNow();
+		for (Shard shard : shards) {
+			shard.close();
+		}
+	}
+
+	/**
+	 * Index of the shard a new shoe is written to.
+	 */
+	public int shardOf(Shoe shoe) {
+		String key = shardKey == ShardKey.ARTICLE_NUMBER ? shoe.getArticleNumber() : shoe.getBrand();
+		// case insensitive, as article numbers and brands compare in MySQL
+		return key == null ? 0 : Math.floorMod(key.toLowerCase(Locale.ROOT).hashCode(), shards.size());
+	}
+
+	/**
+	 * Index of the shard holding the shoe with the given id. Shards refuse to
+	 * start while they hold ids of other shards, see
+	 * {@link ShoeIdSequenceInitializer}.
+	 */
+	public int shardOf(long id) {
+		return (int) Math.floorMod(id, (long) shards.size());
+	}
+
+	@Override
+	public Shoe save(final Shoe shoe) {
+		if (shoe.isEmpty()) {
+			throw new IllegalArgumentException("Invalid argument passed");
+		}
+		return unchecked(new ShardCall<Shoe>() {
+			@Override
+			public Shoe call(ShoeDao dao) {
+				return dao.save(shoe);
+			}
+		}, shards.get(shardOf(shoe)), false);
+	}
+
+	@Override
+	public List<Shoe> saveAll(List<Shoe> shoes) {
+		for (Shoe shoe : shoes) {
+			if (shoe.isEmpty()) {
+				throw new IllegalArgumentException("Invalid argument passed");
+			}
+		}
+		List<List<Shoe>> byShard = partition(shoes);
+		for (int i = 0; i < shards.size(); i++) {
+			final List<Shoe> part = byShard.get(i);
+			if (part.isEmpty()) {
+				continue;
+			}
+			unchecked(new ShardCall<List<Shoe>>() {
+				@Override
+				public List<Shoe> call(ShoeDao dao) {
+					return dao.saveAll(part);
+				}
+			}, shards.get(i), false);
+		}
+		return shoes;
+	}
+
+	@Override
+	public int upsertAll(List<Shoe> shoes) {
+		List<List<Shoe>> byShard = partition(shoes);
+		int inserted = 0;
+		for (int i = 0; i < shards.size(); i++) {
+			final List<Shoe> part = byShard.get(i);
+			if (part.isEmpty()) {
+				continue;
+			}
+			inserted += unchecked(new ShardCall<Integer>() {
+				@Override
+				public Integer call(ShoeDao dao) {
+					return dao.upsertAll(part);
+				}
+			}, shards.get(i), false);
+		}
+		return inserted;
+	}
+
+	@Override
+	public Shoe update(final long id, final Shoe shoe) throws ShoeNotFoundException {
+		try {
+			return execute(new ShardCall<Shoe>() {
+				@Override
+				public Shoe call(ShoeDao dao) throws ShoeNotFoundException {
+					return dao.update(id, shoe);
+				}
+			}, shards.get(shardOf(id)), false);
+		} catch (Exception e) {
+			throwIf(e, ShoeNotFoundException.class);
+			throw unchecked(e);
+		}
+	}
+
+	@Override
+	public Shoe delete(final long id) throws ShoeNotFoundException {
+		try {
+			return execute(new ShardCall<Shoe>() {
+				@Override
+				public Shoe call(ShoeDao dao) throws ShoeNotFoundException {
+					return dao.delete(id);
+				}
+			}, shards.get(shardOf(id)), false);
+		} catch (Exception e) {
+			throwIf(e, ShoeNotFoundException.class);
+			throw unchecked(e);
+		}
+	}
+
+	@Override
+	public long patch(final long id, final long version, final Shoe changes) throws ShoeNotFoundException, ShoeVersionConflictException {
+		try {
+			return execute(new ShardCall<Long>() {
+				@Override
+				public Long call(ShoeDao dao) throws ShoeNotFoundException, ShoeVersionConflictException {
+					return dao.patch(id, version, changes);
+				}
+			}, shards.get(shardOf(id)), false);
+		} catch (Exception e) {
+			throwIf(e, ShoeNotFoundException.class);
+			throwIf(e, ShoeVersionConflictException.class);
+			throw unchecked(e);
+		}
+	}
+
+	@Override
+	public void reserveStock(final long id, final int quantity) throws ShoeNotFoundException, StockConflictException {
+		try {
+			execute(new ShardCall<Void>() {
+				@Override
+				public Void call(ShoeDao dao) throws ShoeNotFoundException, StockConflictException {
+					dao.reserveStock(id, quantity);
+					return null;
+				}
+			}, shards.get(shardOf(id)), false);
+		} catch (Exception e) {
+			throwIf(e, ShoeNotFoundException.class);
+			throwIf(e, StockConflictException.class);
+			throw unchecked(e);
+		}
+	}
+
+	@Override
+	public void releaseStock(final long id, final int quantity) throws ShoeNotFoundException, StockConflictException {
+		try {
+			execute(new ShardCall<Void>() {
+				@Override
+				public Void call(ShoeDao dao) throws ShoeNotFoundException, StockConflictException {
+					dao.releaseStock(id, quantity);
+					return null;
+				}
+			}, shards.get(shardOf(id)), false);
+		} catch (Exception e) {
+			throwIf(e, ShoeNotFoundException.class);
+			throwIf(e, StockConflictException.class);
+			throw unchecked(e);
+		}
+	}
+
+	@Override
+	public List<Shoe> searchShoes(final SearchQuery search) {
+		List<Shoe> merged = new ArrayList<>();
+		for (List<Shoe> part : scatter(new ShardCall<List<Shoe>>() {
+			@Override
+			public List<Shoe> call(ShoeDao dao) {
+				return dao.searchShoes(search);
+			}
+		})) {
+			merged.addAll(part);
+		}
+		Collections.sort(merged, new Comparator<Shoe>() {
+			@Override
+			public int compare(Shoe first, Shoe second) {
+				return first.getId().compareTo(second.getId());
+			}
+		});
+		return merged;
+	}
+
+	/*
+	 * Every shard returns its own first page after the cursor, the merged page
+	 * is the first limit shoes of their union.
+	 */
+	@Override
+	public ShoePage searchShoes(final SearchQuery search, final PageCriteria page) {
+		List<Shoe> merged = new ArrayList<>();
+		boolean more = false;
+		for (ShoePage part : scatter(new ShardCall<ShoePage>() {
+			@Override
+			public ShoePage call(ShoeDao dao) {
+				return dao.searchShoes(search, page);
+			}
+		})) {
+			merged.addAll(part.getShoes());
+			more |= part.getNextCursor() != null;
+		}
+		Collections.sort(merged, page.comparator());
+		if (page.getLimit() == null) {
+			return new ShoePage(merged, null);
+		}
+		if (merged.size() > page.getLimit()) {
+			merged = new ArrayList<>(merged.subList(0, page.getLimit()));
+			more = true;
+		}
+		return new ShoePage(merged, more && !merged.isEmpty() ? page.cursorAfter(merged.get(merged.size() - 1)) : null);
+	}
+
+	@Override
+	public ShoeFacets facetShoes(final SearchQuery search) {
+		ShoeFacets.Builder merged = new ShoeFacets.Builder();
+		for (ShoeFacets part : scatter(new ShardCall<ShoeFacets>() {
+			@Override
+			public ShoeFacets call(ShoeDao dao) {
+				return dao.facetShoes(search);
+			}
+		})) {
+			merged.add(part);
+		}
+		return merged.build();
+	}
+
+	/*
+	 * Every shard counts its own revisions, a single number cannot tell how
+	 * far a client has synced each of them.
+	 */
+	@Override
+	public ShoeDelta changesSince(long revision) {
+		throw new InvalidRequestException("Syncing changes is not supported on a sharded catalog");
+	}
+
+	@Override
+	public void exportShoes(final SearchQuery search, final ShoeRowHandler handler) throws IOException {
+		for (Shard shard : shards) {
+			try {
+				execute(new ShardCall<Void>() {
+					@Override
+					public Void call(ShoeDao dao) throws IOException {
+						dao.exportShoes(search, handler);
+						return null;
+					}
+				}, shard, true);
+			} catch (Exception e) {
+				throwIf(e, IOException.class);
+				throw unchecked(e);
+			}
+		}
+	}
+
+	private List<List<Shoe>> partition(List<Shoe> shoes) {
+		List<List<Shoe>> byShard = new ArrayList<>(shards.size());
+		for (int i = 0; i < shards.size(); i++) {
+			byShard.add(new ArrayList<Shoe>());
+		}
+		for (Shoe shoe : shoes) {
+			byShard.get(shardOf(shoe)).add(shoe);
+		}
+		return byShard;
+	}
+
+	/*
+	 * Runs the call on every shard in parallel, results in shard order. The
+	 * primary runs on the calling thread, in the transaction and on the
+	 * connection the caller may already hold; a searcher would need a second
+	 * connection of the same pool, which never comes once the pool is taken
+	 * by callers waiting like this one.
+	 */
+	private <T> List<T> scatter(final ShardCall<T> call) {
+		List<Future<T>> futures = new ArrayList<>(shards.size() - 1);
+		try {
+			for (final Shard shard : shards.subList(1, shards.size())) {
+				futures.add(searchers.submit(new Callable<T>() {
+					@Override
+					public T call() throws Exception {
+						return execute(call, shard, true);
+					}
+				}));
+			}
+			List<T> results = new ArrayList<>(shards.size());
+			results.add(execute(call, shards.get(0), true));
+			for (Future<T> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while searching the shards", e);
+		} catch (ExecutionException e) {
+			throw unchecked(e.getCause() instanceof Exception ? (Exception) e.getCause() : new IllegalStateException(e.getCause()));
+		} catch (Exception e) {
+			throw unchecked(e);
+		} finally {
+			for (Future<T> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	private <T> T unchecked(ShardCall<T> call, Shard shard, boolean readOnly) {
+		try {
+			return execute(call, shard, readOnly);
+		} catch (Exception e) {
+			throw unchecked(e);
+		}
+	}
+
+	/*
+	 * Checked exceptions of the call are rethrown after the transaction ends.
+	 * They leave nothing to undo, so a transaction the caller began is not
+	 * marked for rollback by them.
+	 */
+	private <T> T execute(final ShardCall<T> call, Shard shard, boolean readOnly) throws Exception {
+		final Exception[] failure = new Exception[1];
+		T result = (readOnly ? shard.readTemplate : shard.writeTemplate).execute(new TransactionCallback<T>() {
+			@Override
+			public T doInTransaction(TransactionStatus status) {
+				try {
+					return call.call(shard.dao);
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					failure[0] = e;
+					if (status.isNewTransaction()) {
+						status.setRollbackOnly();
+					}
+					return null;
+				}
+			}
+		});
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		return result;
+	}
+
+	private static <X extends Exception> void throwIf(Exception e, Class<X> type) throws X {
+		if (type.isInstance(e)) {
+			throw type.cast(e);
+		}
+	}
+
+	private static RuntimeException unchecked(Exception e) {
+		return e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException(e);
+	}
+
+	private interface ShardCall<T> {
+
+		T call(ShoeDao dao) throws Exception;
+	}
+
+	/**
+	 * One database of the catalog: its DAO, the transaction manager of its
+	 * session factory and, unless shared with the rest of the application,
+	 * the session factory and pool to close with it.
+	 */
+	public static class Shard {
+
+		private final ShoeDao dao;
+		private final TransactionTemplate writeTemplate;
+		private final TransactionTemplate readTemplate;
+		private final SessionFactory sessionFactory;
+		private final ComboPooledDataSource pool;
+
+		public Shard(ShoeDao dao, PlatformTransactionManager transactionManager) {
+			this(dao, transactionManager, null, null);
+		}
+
+		public Shard(ShoeDao dao, PlatformTransactionManager transactionManager, SessionFactory sessionFactory,
+				ComboPooledDataSource pool) {
+			this.dao = dao;
+			this.writeTemplate = new TransactionTemplate(transactionManager);
+			this.readTemplate = new TransactionTemplate(transactionManager);
+			this.readTemplate.setReadOnly(true);
+			this.sessionFactory = sessionFactory;
+			this.pool = pool;
+		}
+
+		void close() {
+			if (sessionFactory != null) {
+				sessionFactory.close();
+			}
+			if (pool != null) {
+				pool.close();
+			}
+		}
+	}
+}
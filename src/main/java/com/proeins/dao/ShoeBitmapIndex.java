@@ -0,0 +1,294 @@
+package com.proeins.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.proeins.model.Shoe;
+
+/**
+ * In-memory secondary index over brand, color and size. It keeps one
+ * compressed bitmap of shoe ids per distinct value, so a conjunction of
+ * equality filters is answered by intersecting bitmaps instead of scanning
+ * the table.
+ * <p>
+ * Values are compared case insensitively, like MySQL's default collation.
+ * The index only sees writes made through this node's {@link ShoeDaoImpl};
+ * deployments with several nodes should set a rebuild interval.
+ */
+@Component
+@ConditionalOnProperty(name = "shoe.index.bitmap.enabled", havingValue = "true")
+public class ShoeBitmapIndex implements ShoeChangeListener {
+
+	public static final List<String> FIELDS = Arrays.asList("brand", "color", "size");
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShoeBitmapIndex.class);
+
+	private SessionFactory sessionFactory;
+
+	@Value("${shoe.index.bitmap.rebuild_interval_seconds:0}")
+	private long rebuildIntervalSeconds;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/* guarded by lock */
+	private State state = new State();
+
+	/* latest state of shoes written while a rebuild is loading, null for deleted ones; guarded by lock */
+	private Map<Long, Shoe> writesDuringRebuild;
+
+	private ScheduledExecutorService scheduler;
+
+	@Autowired
+	public ShoeBitmapIndex(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	@PostConstruct
+	public void initialize() {
+		rebuild();
+		if (rebuildIntervalSeconds > 0) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "shoe-bitmap-index");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						rebuild();
+					} catch (RuntimeException e) {
+						LOGGER.warn("Rebuilding the shoe bitmap index failed", e);
+					}
+				}
+			}, rebuildIntervalSeconds, rebuildIntervalSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Loads the index from the database and swaps it in. Writes arriving while
+	 * the table is read are replayed onto the new index before the swap.
+	 */
+	public void rebuild() {
+		lock.writeLock().lock();
+		try {
+			writesDuringRebuild = new LinkedHashMap<>();
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		State loaded = new State();
+		StatelessSession session = sessionFactory.openStatelessSession();
+		try {
+			ScrollableResults results = session.createQuery("select s.id, s.brand, s.color, s.size from Shoe s")
+					.setFetchSize(1000)
+					.scroll(ScrollMode.FORWARD_ONLY);
+			try {
+				while (results.next()) {
+					loaded.put((Long) results.get(0),
+							new String[] { (String) results.get(1), (String) results.get(2), (String) results.get(3) });
+				}
+			} finally {
+				results.close();
+			}
+		} finally {
+			session.close();
+		}
+		loaded.optimize();
+
+		lock.writeLock().lock();
+		try {
+			for (Map.Entry<Long, Shoe> write : writesDuringRebuild.entrySet()) {
+				if (write.getValue() == null) {
+					loaded.remove(write.getKey());
+				} else {
+					loaded.put(write.getKey(), valuesOf(write.getValue()));
+				}
+			}
+			writesDuringRebuild = null;
+			state = loaded;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		LOGGER.info("Indexed {} shoes, overflow: {}", loaded.values.size(), loaded.overflow);
+	}
+
+	/**
+	 * Ids of the shoes whose fields equal all of the given values, or
+	 * <code>null</code> if the index cannot answer the query.
+	 */
+	public RoaringBitmap match(Map<String, String> values) {
+		lock.readLock().lock();
+		try {
+			if (state.overflow) {
+				return null;
+			}
+			List<RoaringBitmap> matches = new ArrayList<>(values.size());
+			for (Map.Entry<String, String> value : values.entrySet()) {
+				int field = FIELDS.indexOf(value.getKey());
+				if (field < 0) {
+					return null;
+				}
+				RoaringBitmap bitmap = state.bitmaps.get(field).get(normalize(value.getValue()));
+				if (bitmap == null) {
+					return new RoaringBitmap();
+				}
+				matches.add(bitmap);
+			}
+			if (matches.isEmpty()) {
+				return null;
+			}
+			RoaringBitmap result = matches.get(0).clone();
+			for (int i = 1; i < matches.size(); i++) {
+				result.and(matches.get(i));
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void shoeSaved(Shoe shoe) {
+		put(shoe);
+	}
+
+	@Override
+	public void shoeUpdated(Shoe shoe) {
+		put(shoe);
+	}
+
+	@Override
+	public void shoeDeleted(Shoe shoe) {
+		lock.writeLock().lock();
+		try {
+			state.remove(shoe.getId());
+			if (writesDuringRebuild != null) {
+				writesDuringRebuild.put(shoe.getId(), null);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void put(Shoe shoe) {
+		lock.writeLock().lock();
+		try {
+			state.put(shoe.getId(), valuesOf(shoe));
+			if (writesDuringRebuild != null) {
+				writesDuringRebuild.put(shoe.getId(), shoe);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private static String[] valuesOf(Shoe shoe) {
+		return new String[] { shoe.getBrand(), shoe.getColor(), shoe.getSize() };
+	}
+
+	private static String normalize(String value) {
+		return value == null ? null : value.toLowerCase(Locale.ROOT);
+	}
+
+	private static class State {
+
+		/* per field in FIELDS order: normalized value to ids */
+		private final List<Map<String, RoaringBitmap>> bitmaps = new ArrayList<>();
+
+		/* indexed values per id, to find the bitmaps to clear on update and delete */
+		private final Map<Long, String[]> values = new HashMap<>();
+
+		/* set once an id does not fit into the 32 bit bitmaps; the index is unusable until rebuilt */
+		private boolean overflow;
+
+		State() {
+			for (int i = 0; i < FIELDS.size(); i++) {
+				bitmaps.add(new HashMap<String, RoaringBitmap>());
+			}
+		}
+
+		void put(Long id, String[] fieldValues) {
+			if (id > Integer.MAX_VALUE) {
+				overflow = true;
+				return;
+			}
+			remove(id);
+			String[] normalized = new String[fieldValues.length];
+			for (int i = 0; i < fieldValues.length; i++) {
+				normalized[i] = normalize(fieldValues[i]);
+				if (normalized[i] == null) {
+					continue;
+				}
+				RoaringBitmap bitmap = bitmaps.get(i).get(normalized[i]);
+				if (bitmap == null) {
+					bitmap = new RoaringBitmap();
+					bitmaps.get(i).put(normalized[i], bitmap);
+				}
+				bitmap.add(id.intValue());
+			}
+			values.put(id, normalized);
+		}
+
+		void remove(Long id) {
+			String[] previous = values.remove(id);
+			if (previous == null) {
+				return;
+			}
+			for (int i = 0; i < previous.length; i++) {
+				if (previous[i] == null) {
+					continue;
+				}
+				RoaringBitmap bitmap = bitmaps.get(i).get(previous[i]);
+				bitmap.remove(id.intValue());
+				if (bitmap.isEmpty()) {
+					bitmaps.get(i).remove(previous[i]);
+				}
+			}
+		}
+
+		void optimize() {
+			for (Map<String, RoaringBitmap> field : bitmaps) {
+				for (RoaringBitmap bitmap : field.values()) {
+					bitmap.runOptimize();
+				}
+			}
+		}
+	}
+}
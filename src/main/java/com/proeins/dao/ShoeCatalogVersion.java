@@ -0,0 +1,128 @@
+package com.proeins.dao;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Catalog wide modification version, moved forward after every committed
+ * write of {@link ShoeDaoImpl}. Responses derived from the catalog use it as
+ * validator, so unchanged results are revalidated without a query.
+ * <p>
+ * Writes made through other nodes move it once they have been sequenced:
+ * every pass of {@link ShoeRevisionSequencer} reports the shared revision
+ * and when it was handed out, so a node answers 304 for at most about a
+ * sequence interval after another node wrote. The tag also holds the
+ * startup time and the writes of this node, a restarted node never
+ * reissues tags of its previous run.
+ * <p>
+ * Sharded catalogs only sequence the primary and replicas serve data older
+ * than the primary's revision, there the version is partial and must not
+ * validate responses.
+ */
+@Component
+public class ShoeCatalogVersion {
+
+	private final long epoch = System.currentTimeMillis();
+
+	private final AtomicReference<Stamp> current = new AtomicReference<>(new Stamp("0-" + Long.toString(epoch, 36) + "-0", epoch));
+
+	@Value("${shoe.shard.enabled:false}")
+	private boolean sharded;
+
+	@Value("${mysql.replica.urls:}")
+	private String replicaUrls = "";
+
+	private long revision;
+
+	private long counter;
+
+	public Stamp current() {
+		return current.get();
+	}
+
+	/**
+	 * Whether responses may show writes the version does not follow.
+	 */
+	public boolean isPartial() {
+		return sharded || !replicaUrls.trim().isEmpty();
+	}
+
+	/**
+	 * Moves the version forward once the surrounding transaction has
+	 * committed, right away if there is none. Several writes of one
+	 * transaction move it once.
+	 */
+	public void modified() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			increment();
+			return;
+		}
+		if (TransactionSynchronizationManager.hasResource(this)) {
+			return;
+		}
+		TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				increment();
+			}
+
+			@Override
+			public void afterCompletion(int status) {
+				TransactionSynchronizationManager.unbindResourceIfPossible(ShoeCatalogVersion.this);
+			}
+		});
+	}
+
+	/**
+	 * Takes the shared revision into the version, if it is newer than the
+	 * one seen before.
+	 */
+	public synchronized void sequenced(long revision, long sequencedMillis) {
+		if (revision <= this.revision) {
+			return;
+		}
+		this.revision = revision;
+		update(sequencedMillis);
+	}
+
+	private synchronized void increment() {
+		counter++;
+		update(System.currentTimeMillis());
+	}
+
+	private void update(long modifiedMillis) {
+		// Last-Modified has second precision, it must not go back after a clock step either
+		long lastModified = Math.max(modifiedMillis, current.get().getLastModified());
+		current.set(new Stamp(Long.toString(revision, 36) + "-" + Long.toString(epoch, 36) + "-" + counter, lastModified));
+	}
+
+	/**
+	 * Immutable pair of entity tag and modification time.
+	 */
+	public static final class Stamp {
+
+		private final String eTag;
+		private final long lastModified;
+
+		public Stamp(String eTag, long lastModified) {
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * Unquoted entity tag of the version, the same for every representation.
+		 */
+		public String getETag() {
+			return eTag;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+	}
+}
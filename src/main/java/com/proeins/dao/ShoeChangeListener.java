@@ -0,0 +1,17 @@
+package com.proeins.dao;
+
+import com.proeins.model.Shoe;
+
+/**
+ * Notified by {@link ShoeDaoImpl} about written shoes once the surrounding
+ * transaction has committed, or right away when there is none. Shoes passed
+ * in are detached copies of the written state.
+ */
+public interface ShoeChangeListener {
+
+	void shoeSaved(Shoe shoe);
+
+	void shoeUpdated(Shoe shoe);
+
+	void shoeDeleted(Shoe shoe);
+}
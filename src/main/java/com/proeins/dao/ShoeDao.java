@@ -1,16 +1,37 @@
 package com.proeins.dao;
 
+import java.io.IOException;
 import java.util.List;
 
 import com.proeins.exception.ShoeNotFoundException;
+import com.proeins.exception.ShoeVersionConflictException;
+import com.proeins.exception.StockConflictException;
 import com.proeins.model.Shoe;
 
 public interface ShoeDao {
 	Shoe save(Shoe shoe);
 
+	List<Shoe> saveAll(List<Shoe> shoes);
+
+	int upsertAll(List<Shoe> shoes);
+
 	Shoe update(long id, Shoe shoe) throws ShoeNotFoundException;
 
 	Shoe delete(long id) throws ShoeNotFoundException;
+
+	long patch(long id, long version, Shoe changes) throws ShoeNotFoundException, ShoeVersionConflictException;
+
+	void reserveStock(long id, int quantity) throws ShoeNotFoundException, StockConflictException;
+
+	void releaseStock(long id, int quantity) throws ShoeNotFoundException, StockConflictException;
 	
-	List<Shoe> searchShoes(List<SearchCriteria> params); 
+	List<Shoe> searchShoes(SearchQuery search);
+
+	ShoePage searchShoes(SearchQuery search, PageCriteria page);
+
+	ShoeFacets facetShoes(SearchQuery search);
+
+	ShoeDelta changesSince(long revision);
+
+	void exportShoes(SearchQuery search, ShoeRowHandler handler) throws IOException;
 }
@@ -1,29 +1,98 @@
 package com.proeins.dao;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Predicate;
-import javax.persistence.criteria.Root;
-
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.query.Query;
+import org.roaringbitmap.IntConsumer;
+import org.roaringbitmap.RoaringBitmap;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.proeins.exception.InvalidRequestException;
 import com.proeins.exception.ShoeNotFoundException;
+import com.proeins.exception.ShoeVersionConflictException;
+import com.proeins.exception.StockConflictException;
 import com.proeins.model.Shoe;
+import com.proeins.model.ShoeRevision;
+import com.proeins.model.ShoeTombstone;
 
 @Repository
 public class ShoeDaoImpl implements ShoeDao {
 
+	public static final String SEARCH_CACHE_REGION = "shoe-search";
+
+	/*
+	 * A single conditional UPDATE, so concurrent buyers neither load the shoe
+	 * nor overwrite each other. Assignments are ordered for MySQL, which
+	 * evaluates later ones with the new values. The revision is left pending
+	 * like Shoe#markRevisionPending does.
+	 */
+	private static final String RESERVE_SQL = "update Shoe set stock = concat(stock_count - :quantity, ''),"
+			+ " stock_count = stock_count - :quantity, revision = -(version + 1), version = version + 1"
+			+ " where id = :id and stock_count >= :quantity";
+
+	private static final String RELEASE_SQL = "update Shoe set stock = concat(stock_count + :quantity, ''),"
+			+ " stock_count = stock_count + :quantity, revision = -(version + 1), version = version + 1"
+			+ " where id = :id and stock_count is not null";
+
 	private SessionFactory sessionFactory;
 
+	private ShoeCatalogVersion catalogVersion;
+
+	@Value("${shoe.export.fetch_size:500}")
+	private int exportFetchSize = 500;
+
+	@Value("${hibernate.jdbc.batch_size:50}")
+	private int batchSize = 50;
+
+	/* above this many matches an id list costs more than letting the database filter */
+	@Value("${shoe.index.bitmap.max_ids:10000}")
+	private int maxIndexedIds = 10000;
+
+	private List<ShoeChangeListener> changeListeners = Collections.emptyList();
+
+	private ShoeBitmapIndex bitmapIndex;
+
 	@Autowired
-	public ShoeDaoImpl(SessionFactory sessionFactory) {
+	public ShoeDaoImpl(SessionFactory sessionFactory, ShoeCatalogVersion catalogVersion) {
 		this.sessionFactory = sessionFactory;
+		this.catalogVersion = catalogVersion;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public void setExportFetchSize(int exportFetchSize) {
+		this.exportFetchSize = exportFetchSize;
+	}
+
+	@Autowired(required = false)
+	public void setChangeListeners(List<ShoeChangeListener> changeListeners) {
+		this.changeListeners = changeListeners;
+	}
+
+	@Autowired(required = false)
+	public void setBitmapIndex(ShoeBitmapIndex bitmapIndex) {
+		this.bitmapIndex = bitmapIndex;
 	}
 
 	@Override
@@ -31,9 +100,97 @@ public class ShoeDaoImpl implements ShoeDao {
 		if (shoe.isEmpty()) {
 			throw new IllegalArgumentException("Invalid argument passed");
 		}
+		shoe.markRevisionPending();
 		sessionFactory.getCurrentSession().save(shoe);
-		long id = shoe.getId();
-		return sessionFactory.getCurrentSession().get(Shoe.class, id);
+		catalogVersion.modified();
+		publish(ChangeType.SAVED, shoe);
+		return shoe;
+	}
+
+	@Override
+	public List<Shoe> saveAll(List<Shoe> shoes) {
+		for (Shoe shoe : shoes) {
+			if (shoe.isEmpty()) {
+				throw new IllegalArgumentException("Invalid argument passed");
+			}
+		}
+		Session session = sessionFactory.getCurrentSession();
+		for (int i = 0; i < shoes.size(); i++) {
+			shoes.get(i).markRevisionPending();
+			session.save(shoes.get(i));
+			publish(ChangeType.SAVED, shoes.get(i));
+			if ((i + 1) % batchSize == 0) {
+				// send the batch and keep the persistence context small
+				session.flush();
+				session.clear();
+			}
+		}
+		session.flush();
+		catalogVersion.modified();
+		return shoes;
+	}
+
+	/*
+	 * Updates the shoes whose article number is already in the catalog and
+	 * inserts the others, returning the number inserted. Existing shoes are
+	 * looked up a JDBC batch at a time and only take the non-empty fields, like
+	 * an update. Of several shoes with the same article number the last wins;
+	 * article numbers compare case insensitively, like MySQL's default collation.
+	 */
+	@Override
+	public int upsertAll(List<Shoe> shoes) {
+		Map<String, Shoe> byArticleNumber = new LinkedHashMap<>();
+		for (Shoe shoe : shoes) {
+			if (shoe.getArticleNumber() == null || shoe.getArticleNumber().isEmpty()) {
+				throw new IllegalArgumentException("Invalid argument passed");
+			}
+			byArticleNumber.put(shoe.getArticleNumber().toLowerCase(Locale.ROOT), shoe);
+		}
+		Session session = sessionFactory.getCurrentSession();
+		List<String> articleNumbers = new ArrayList<>();
+		for (Shoe shoe : byArticleNumber.values()) {
+			articleNumbers.add(shoe.getArticleNumber());
+		}
+		Set<String> updated = new HashSet<>();
+		for (int from = 0; from < articleNumbers.size(); from += batchSize) {
+			List<Shoe> existing = session.createQuery("select s from Shoe s where s.articleNumber in (:articleNumbers)", Shoe.class)
+					.setParameterList("articleNumbers", articleNumbers.subList(from, Math.min(from + batchSize, articleNumbers.size())))
+					.list();
+			for (Shoe original : existing) {
+				String key = original.getArticleNumber().toLowerCase(Locale.ROOT);
+				copyFields(byArticleNumber.get(key), original);
+				original.markRevisionPending();
+				updated.add(key);
+				publish(ChangeType.UPDATED, original);
+			}
+			session.flush();
+			session.clear();
+		}
+		int inserted = 0;
+		for (Map.Entry<String, Shoe> shoe : byArticleNumber.entrySet()) {
+			if (updated.contains(shoe.getKey())) {
+				continue;
+			}
+			shoe.getValue().markRevisionPending();
+			session.save(shoe.getValue());
+			publish(ChangeType.SAVED, shoe.getValue());
+			if (++inserted % batchSize == 0) {
+				session.flush();
+				session.clear();
+			}
+		}
+		session.flush();
+		session.clear();
+		catalogVersion.modified();
+		return inserted;
+	}
+
+	private static void copyFields(Shoe from, Shoe to) {
+		to.setName((from.getName() == null || from.getName().isEmpty()) ? to.getName() : from.getName());
+		to.setBrand((from.getBrand() == null || from.getBrand().isEmpty()) ? to.getBrand() : from.getBrand());
+		to.setColor((from.getColor() == null || from.getColor().isEmpty()) ? to.getColor() : from.getColor());
+		to.setSize((from.getSize() == null || from.getSize().isEmpty()) ? to.getSize() : from.getSize());
+		to.setStock((from.getStock() == null || from.getStock().isEmpty()) ? to.getStock() : from.getStock());
 	}
 
 	@Transactional(rollbackFor = {ShoeNotFoundException.class})
@@ -44,12 +201,11 @@ public class ShoeDaoImpl implements ShoeDao {
 		if (shoe.isEmpty()) {
 			throw new IllegalArgumentException("Invalid argument passed");
 		}
-		originalShoeEntity.setName((shoe.getName() == null || shoe.getName().isEmpty()) ? originalShoeEntity.getName() : shoe.getName());
-		originalShoeEntity.setBrand((shoe.getBrand() == null || shoe.getBrand().isEmpty()) ? originalShoeEntity.getBrand() : shoe.getBrand());
-		originalShoeEntity.setColor((shoe.getColor() == null || shoe.getColor().isEmpty()) ? originalShoeEntity.getColor() : shoe.getColor());
-		originalShoeEntity.setSize((shoe.getSize() == null || shoe.getSize().isEmpty()) ? originalShoeEntity.getSize() : shoe.getSize());
-		originalShoeEntity.setStock((shoe.getStock() == null || shoe.getStock().isEmpty()) ? originalShoeEntity.getStock() : shoe.getStock());
+		copyFields(shoe, originalShoeEntity);
+		originalShoeEntity.markRevisionPending();
 		session.flush();
+		catalogVersion.modified();
+		publish(ChangeType.UPDATED, originalShoeEntity);
 		return originalShoeEntity;
 	}
 
@@ -59,29 +215,452 @@ public class ShoeDaoImpl implements ShoeDao {
 		Session session = sessionFactory.getCurrentSession();
 		Shoe shoe = findById(id);
 		session.delete(shoe);
+		session.save(new ShoeTombstone(shoe.getId(), shoe.getArticleNumber(), ShoeRevision.PENDING));
+		catalogVersion.modified();
+		publish(ChangeType.DELETED, shoe);
 		return shoe;
 	}
 
+	/*
+	 * Writes the non-null fields of changes with one UPDATE that only matches
+	 * the expected version, instead of loading and flushing the shoe. Returns
+	 * the new version.
+	 */
+	@Override
+	public long patch(long id, long version, Shoe changes) throws ShoeNotFoundException, ShoeVersionConflictException {
+		if (changes.getId() != null || changes.getArticleNumber() != null) {
+			throw new IllegalArgumentException("Invalid argument passed");
+		}
+		Map<String, Object> columns = new LinkedHashMap<>();
+		putIfPresent(columns, "name", changes.getName());
+		putIfPresent(columns, "brand", changes.getBrand());
+		putIfPresent(columns, "color", changes.getColor());
+		if (changes.getSize() != null) {
+			columns.put("size", changes.getSize());
+			columns.put("sizeValue", changes.getSizeValue());
+		}
+		if (changes.getStock() != null) {
+			columns.put("stock", changes.getStock());
+			columns.put("stockCount", changes.getStockCount());
+		}
+		if (columns.isEmpty()) {
+			throw new InvalidRequestException("Nothing to update");
+		}
+		// pending like Shoe#markRevisionPending at the version written
+		columns.put("revision", -(version + 1));
+
+		StringBuilder hql = new StringBuilder("update versioned Shoe s set ");
+		String separator = "";
+		for (String column : columns.keySet()) {
+			hql.append(separator).append("s.").append(column).append(" = :new_").append(column);
+			separator = ", ";
+		}
+		hql.append(" where s.id = :id and s.version = :version");
+
+		Session session = sessionFactory.getCurrentSession();
+		Query<?> query = session.createQuery(hql.toString());
+		for (Map.Entry<String, Object> column : columns.entrySet()) {
+			query.setParameter("new_" + column.getKey(), column.getValue());
+		}
+		int updated = query.setParameter("id", id).setParameter("version", version).executeUpdate();
+		if (updated == 0) {
+			Long current = session.createQuery("select s.version from Shoe s where s.id = :id", Long.class)
+					.setParameter("id", id)
+					.uniqueResult();
+			if (current == null) {
+				throw new ShoeNotFoundException("No to-entry found with id: " + id);
+			}
+			throw new ShoeVersionConflictException("Shoe " + id + " is at version " + current + ", not " + version);
+		}
+		catalogVersion.modified();
+		if (!changeListeners.isEmpty()) {
+			// listeners need the whole shoe, only then is it read back
+			publish(ChangeType.UPDATED, session.createQuery("select s from Shoe s where s.id = :id", Shoe.class)
+					.setParameter("id", id)
+					.setCacheMode(CacheMode.IGNORE)
+					.uniqueResult());
+		}
+		return version + 1;
+	}
+
+	private static void putIfPresent(Map<String, Object> columns, String column, String value) {
+		if (value != null) {
+			columns.put(column, value);
+		}
+	}
+
+	@Override
+	public void reserveStock(long id, int quantity) throws ShoeNotFoundException, StockConflictException {
+		if (changeStock(RESERVE_SQL, id, quantity) == 0) {
+			throw new StockConflictException(stockCountOf(id) == null ? "Stock of shoe " + id + " is not a number"
+					: "Not enough stock of shoe " + id + " to reserve " + quantity);
+		}
+	}
+
+	@Override
+	public void releaseStock(long id, int quantity) throws ShoeNotFoundException, StockConflictException {
+		if (changeStock(RELEASE_SQL, id, quantity) == 0) {
+			stockCountOf(id);
+			throw new StockConflictException("Stock of shoe " + id + " is not a number");
+		}
+	}
+
+	/*
+	 * Native and synchronized on no table, otherwise Hibernate clears the
+	 * whole Shoe region of the second-level cache. Only the shoe leaves it,
+	 * again after commit so no reader puts the old row back in between, and
+	 * the cached searches go like after any other write.
+	 */
+	private int changeStock(String sql, final long id, int quantity) {
+		Session session = sessionFactory.getCurrentSession();
+		// shoes saved earlier in this transaction must be in the table
+		session.flush();
+		int updated = session.createNativeQuery(sql)
+				.addSynchronizedQuerySpace("")
+				.setParameter("quantity", quantity)
+				.setParameter("id", id)
+				.executeUpdate();
+		if (updated > 0) {
+			evictStock(id);
+			if (TransactionSynchronizationManager.isSynchronizationActive()) {
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+					@Override
+					public void afterCompletion(int status) {
+						evictStock(id);
+					}
+				});
+			}
+			catalogVersion.modified();
+		}
+		return updated;
+	}
+
+	private void evictStock(long id) {
+		sessionFactory.getCache().evictEntity(Shoe.class, id);
+		sessionFactory.getCache().evictQueryRegion(SEARCH_CACHE_REGION);
+	}
+
+	private Integer stockCountOf(long id) throws ShoeNotFoundException {
+		List<Integer> stockCounts = sessionFactory.getCurrentSession()
+				.createQuery("select s.stockCount from Shoe s where s.id = :id", Integer.class)
+				.setParameter("id", id)
+				.getResultList();
+		if (stockCounts.isEmpty()) {
+			throw new ShoeNotFoundException("No to-entry found with id: " + id);
+		}
+		return stockCounts.get(0);
+	}
+
+	@Override
+	public List<Shoe> searchShoes(SearchQuery search) {
+		SearchPlan plan = plan(search);
+		if (plan.matchesNothing()) {
+			return new ArrayList<>();
+		}
+		return plan.createQuery(sessionFactory.getCurrentSession(), null, null, "")
+				.setCacheable(true)
+				.setCacheRegion(SEARCH_CACHE_REGION)
+				.getResultList();
+	}
+
+	@Override
+	public ShoePage searchShoes(SearchQuery search, PageCriteria page) {
+		SearchPlan plan = plan(search);
+		if (plan.matchesNothing()) {
+			return new ShoePage(new ArrayList<Shoe>(), null);
+		}
+
+		String direction = page.isAscending() ? " asc" : " desc";
+		String orderBy = page.getSortKey().equals("id") ? " order by s.id" + direction
+				: " order by s." + page.getSortProperty() + direction + ", s.id" + direction;
+		Query<Shoe> query = plan.createQuery(sessionFactory.getCurrentSession(),
+				page.hasAfterPosition() ? keysetCondition(page) : null, page, orderBy)
+				.setCacheable(true)
+				.setCacheRegion(SEARCH_CACHE_REGION);
+		if (page.getLimit() == null) {
+			return new ShoePage(query.getResultList(), null);
+		}
+		// one extra row tells whether there is a next page without a count query
+		List<Shoe> result = query.setMaxResults(page.getLimit() + 1).getResultList();
+		if (result.size() <= page.getLimit()) {
+			return new ShoePage(result, null);
+		}
+		result = result.subList(0, page.getLimit());
+		return new ShoePage(result, page.cursorAfter(result.get(result.size() - 1)));
+	}
+
+	/*
+	 * One row per combination of brand, color and size, summed up per field
+	 * here, so a single GROUP BY answers all facets.
+	 */
+	@Override
+	public ShoeFacets facetShoes(SearchQuery search) {
+		SearchPlan plan = plan(search);
+		ShoeFacets.Builder facets = new ShoeFacets.Builder();
+		if (plan.matchesNothing()) {
+			return facets.build();
+		}
+		List<Object[]> rows = plan.createQuery(sessionFactory.getCurrentSession(), "select s.brand, s.color, s.size, count(s)",
+				Object[].class, null, null, " group by s.brand, s.color, s.size")
+				.setCacheable(true)
+				.setCacheRegion(SEARCH_CACHE_REGION)
+				.getResultList();
+		for (Object[] row : rows) {
+			facets.addShoes(new String[] { (String) row[0], (String) row[1], (String) row[2] }, (Long) row[3]);
+		}
+		return facets.build();
+	}
+
+	@Override
+	public void exportShoes(SearchQuery search, ShoeRowHandler handler) throws IOException {
+		SearchPlan plan = plan(search);
+		if (plan.matchesNothing()) {
+			return;
+		}
+		Session session = sessionFactory.getCurrentSession();
+		Query<Shoe> query = plan.createQuery(session, null, null, " order by s.id");
+		query.setReadOnly(true);
+		query.setFetchSize(exportFetchSize);
+		query.setCacheMode(CacheMode.IGNORE);
+		ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+		try {
+			while (results.next()) {
+				Shoe shoe = (Shoe) results.get(0);
+				handler.handle(shoe);
+				// keep the persistence context empty so memory does not grow with the table
+				session.evict(shoe);
+			}
+		} finally {
+			results.close();
+		}
+	}
+
+	/*
+	 * Answers the exact matches on brand, color and size from the bitmap index
+	 * when the search is a single conjunction. Otherwise, or when the index is
+	 * disabled or too unselective, the database evaluates all criteria.
+	 */
+	private SearchPlan plan(SearchQuery search) {
+		if (bitmapIndex == null || search.getGroups().size() != 1) {
+			return new SearchPlan(search, null, Collections.<SearchCriteria>emptyList());
+		}
+		List<SearchCriteria> indexed = new ArrayList<>();
+		Map<String, String> values = new LinkedHashMap<>();
+		for (SearchCriteria criteria : search.getGroups().get(0)) {
+			if (criteria.getOperation() == SearchOperation.EQUAL && ShoeBitmapIndex.FIELDS.contains(criteria.getKey())) {
+				String value = (String) criteria.getValue();
+				String previous = values.put(criteria.getKey(), value);
+				if (previous != null && !previous.equalsIgnoreCase(value)) {
+					return new SearchPlan(search, new RoaringBitmap(), indexed);
+				}
+				indexed.add(criteria);
+			}
+		}
+		if (values.isEmpty()) {
+			return new SearchPlan(search, null, Collections.<SearchCriteria>emptyList());
+		}
+		RoaringBitmap ids = bitmapIndex.match(values);
+		if (ids == null || ids.getCardinality() > maxIndexedIds) {
+			return new SearchPlan(search, null, Collections.<SearchCriteria>emptyList());
+		}
+		return new SearchPlan(search, ids, indexed);
+	}
+
+	/*
+	 * Seeks behind (sort value, id) of the previous page. NULL sort values come
+	 * first in ascending and last in descending order, as in MySQL.
+	 */
+	private String keysetCondition(PageCriteria page) {
+		String afterId = page.isAscending() ? "s.id > :afterId" : "s.id < :afterId";
+		if (page.getSortKey().equals("id")) {
+			return afterId;
+		}
+
+		String sortPath = "s." + page.getSortProperty();
+		if (page.getAfterValue() == null) {
+			String sameValue = "(" + sortPath + " is null and " + afterId + ")";
+			return page.isAscending() ? "(" + sameValue + " or " + sortPath + " is not null)" : sameValue;
+		}
+		String sameValue = "(" + sortPath + " = :afterValue and " + afterId + ")";
+		if (page.isAscending()) {
+			return "(" + sortPath + " > :afterValue or " + sameValue + ")";
+		}
+		return "(" + sortPath + " < :afterValue or " + sameValue + " or " + sortPath + " is null)";
+	}
+
+	private Comparable<?> toSortValue(String value, Class<?> type) {
+		if (type == String.class) {
+			return value;
+		}
+		try {
+			if (type == Long.class || type == long.class) {
+				return Long.valueOf(value);
+			}
+			if (type == Integer.class || type == int.class) {
+				return Integer.valueOf(value);
+			}
+			if (type == BigDecimal.class) {
+				return new BigDecimal(value);
+			}
+		} catch (NumberFormatException e) {
+			throw new InvalidRequestException("Invalid cursor");
+		}
+		throw new InvalidRequestException("Cannot page by " + type.getSimpleName());
+	}
+
+	/*
+	 * A search with the criteria answered by the bitmap index replaced by the
+	 * matching ids.
+	 */
+	private class SearchPlan {
+
+		private final SearchQuery search;
+		private final RoaringBitmap indexedIds;
+		private final List<SearchCriteria> indexed;
+
+		SearchPlan(SearchQuery search, RoaringBitmap indexedIds, List<SearchCriteria> indexed) {
+			this.search = search;
+			this.indexedIds = indexedIds;
+			this.indexed = indexed;
+		}
+
+		boolean matchesNothing() {
+			return indexedIds != null && indexedIds.isEmpty();
+		}
+
+		Query<Shoe> createQuery(Session session, String extraCondition, PageCriteria page, String orderBy) {
+			return createQuery(session, "select s", Shoe.class, extraCondition, page, orderBy);
+		}
+
+		<T> Query<T> createQuery(Session session, String select, Class<T> resultType, String extraCondition, PageCriteria page,
+				String suffix) {
+			List<String> conditions = new ArrayList<>();
+			if (indexedIds != null) {
+				conditions.add("s.id in (:indexedIds)");
+			}
+			String condition = search.getCondition(indexed);
+			if (condition != null) {
+				conditions.add(conditions.isEmpty() && extraCondition == null ? condition : "(" + condition + ")");
+			}
+			if (extraCondition != null) {
+				conditions.add(extraCondition);
+			}
+
+			StringBuilder hql = new StringBuilder(select).append(" from Shoe s");
+			for (int i = 0; i < conditions.size(); i++) {
+				hql.append(i == 0 ? " where " : " and ").append(conditions.get(i));
+			}
+			Query<T> query = session.createQuery(hql.append(suffix).toString(), resultType);
+
+			if (indexedIds != null) {
+				query.setParameterList("indexedIds", toIdList(indexedIds));
+			}
+			search.bind(query, indexed);
+			if (extraCondition != null) {
+				query.setParameter("afterId", page.getAfterId());
+				if (!page.getSortKey().equals("id") && page.getAfterValue() != null) {
+					Class<?> type = sessionFactory.getMetamodel().entity(Shoe.class)
+							.getAttribute(page.getSortProperty()).getJavaType();
+					query.setParameter("afterValue", toSortValue(page.getAfterValue(), type));
+				}
+			}
+			return query;
+		}
+	}
+
+	private static List<Long> toIdList(RoaringBitmap ids) {
+		final List<Long> idList = new ArrayList<>(ids.getCardinality());
+		ids.forEach(new IntConsumer() {
+			@Override
+			public void accept(int id) {
+				idList.add((long) id);
+			}
+		});
+		return idList;
+	}
+
+	/*
+	 * Serves the revisions handed out so far. The sequencer stamps committed
+	 * writes and moves the counter in one transaction, so no row can still
+	 * turn up below it; writes waiting for their revision follow in a later
+	 * delta.
+	 */
 	@Override
-	public List<Shoe> searchShoes(List<SearchCriteria> params) {
+	public ShoeDelta changesSince(long revision) {
 		Session session = sessionFactory.getCurrentSession();
-		CriteriaBuilder criteriaBuilder = session.getCriteriaBuilder();
-		CriteriaQuery<Shoe> criteriaQuery = criteriaBuilder.createQuery(Shoe.class);
-		Root<Shoe> root = criteriaQuery.from(Shoe.class);
-		Predicate predicate = criteriaBuilder.conjunction();
-
-		for (SearchCriteria param : params) {
-			if (root.get(param.getKey()).getJavaType() == String.class) {
-				predicate = criteriaBuilder.and(predicate,
-						criteriaBuilder.like(root.get(param.getKey()), "%" + param.getValue() + "%"));
-			} else {
-				predicate = criteriaBuilder.and(predicate,
-						criteriaBuilder.equal(root.get(param.getKey()), param.getValue()));
-			}
-		}
-		criteriaQuery.where(predicate);
-		List<Shoe> result = session.createQuery(criteriaQuery).getResultList();
-		return result;
+		Object[] counter = session.createQuery("select r.lastRevision, r.prunedRevision from ShoeRevision r where r.id = :id", Object[].class)
+				.setParameter("id", ShoeRevision.ID)
+				.getSingleResult();
+		long watermark = (Long) counter[0];
+		// the tombstones up to the pruned revision are gone, the client has to start over
+		boolean reset = revision > 0 && counter[1] != null && revision < (Long) counter[1];
+		long since = reset ? 0 : revision;
+		List<Shoe> shoes = session
+				.createQuery("select s from Shoe s where s.revision > :since and s.revision <= :watermark order by s.revision, s.id", Shoe.class)
+				.setParameter("since", since)
+				.setParameter("watermark", watermark)
+				.getResultList();
+		List<ShoeTombstone> deleted = reset ? Collections.<ShoeTombstone>emptyList() : session
+				.createQuery("select t from ShoeTombstone t where t.revision > :since and t.revision <= :watermark order by t.revision, t.id",
+						ShoeTombstone.class)
+				.setParameter("since", since)
+				.setParameter("watermark", watermark)
+				.getResultList();
+		return new ShoeDelta(watermark, shoes, deleted, reset);
+	}
+
+	/*
+	 * Hands a copy of the shoe to the change listeners once the surrounding
+	 * transaction has committed, so they never see rolled back writes.
+	 */
+	private void publish(final ChangeType type, Shoe shoe) {
+		if (changeListeners.isEmpty()) {
+			return;
+		}
+		final Shoe copy = copyOf(shoe);
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			notifyListeners(type, copy);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				notifyListeners(type, copy);
+			}
+		});
+	}
+
+	private void notifyListeners(ChangeType type, Shoe shoe) {
+		for (ShoeChangeListener listener : changeListeners) {
+			switch (type) {
+			case SAVED:
+				listener.shoeSaved(shoe);
+				break;
+			case UPDATED:
+				listener.shoeUpdated(shoe);
+				break;
+			default:
+				listener.shoeDeleted(shoe);
+			}
+		}
+	}
+
+	private static Shoe copyOf(Shoe shoe) {
+		Shoe copy = new Shoe();
+		copy.setId(shoe.getId());
+		copy.setVersion(shoe.getVersion());
+		copy.setRevision(shoe.getRevision());
+		copy.setArticleNumber(shoe.getArticleNumber());
+		copy.setName(shoe.getName());
+		copy.setBrand(shoe.getBrand());
+		copy.setColor(shoe.getColor());
+		copy.setSize(shoe.getSize());
+		copy.setStock(shoe.getStock());
+		return copy;
+	}
+
+	private enum ChangeType {
+		SAVED, UPDATED, DELETED
 	}
 
 	@Transactional(readOnly = true, rollbackFor = { ShoeNotFoundException.class })
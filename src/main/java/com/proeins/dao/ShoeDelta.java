@@ -0,0 +1,46 @@
+package com.proeins.dao;
+
+import java.util.List;
+
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeTombstone;
+
+/**
+ * Shoes written and deleted after a revision, and the revision to sync
+ * from next time. A reset delta answers a revision older than the retained
+ * tombstones: it holds the whole catalog, which replaces the client's copy.
+ */
+public class ShoeDelta {
+
+	private final long revision;
+	private final List<Shoe> shoes;
+	private final List<ShoeTombstone> deleted;
+	private final boolean reset;
+
+	public ShoeDelta(long revision, List<Shoe> shoes, List<ShoeTombstone> deleted) {
+		this(revision, shoes, deleted, false);
+	}
+
+	public ShoeDelta(long revision, List<Shoe> shoes, List<ShoeTombstone> deleted, boolean reset) {
+		this.revision = revision;
+		this.shoes = shoes;
+		this.deleted = deleted;
+		this.reset = reset;
+	}
+
+	public long getRevision() {
+		return revision;
+	}
+
+	public List<Shoe> getShoes() {
+		return shoes;
+	}
+
+	public List<ShoeTombstone> getDeleted() {
+		return deleted;
+	}
+
+	public boolean isReset() {
+		return reset;
+	}
+}
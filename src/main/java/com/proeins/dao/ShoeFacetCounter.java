@@ -0,0 +1,198 @@
+package com.proeins.dao;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.proeins.model.Shoe;
+
+/**
+ * Facets of the whole catalog kept in memory. Every write through
+ * {@link ShoeDaoImpl} moves the counters of the old values to the new ones,
+ * so unfiltered facets are read without touching the database.
+ * <p>
+ * Values are counted as written, while the database groups them by its
+ * collation. Like {@link ShoeBitmapIndex} the counters only see writes of
+ * this node; deployments with several nodes should set a rebuild interval.
+ * The counters are loaded from the primary database only, a sharded catalog
+ * refuses to start with them.
+ */
+@Component
+@ConditionalOnProperty(name = "shoe.facets.in_memory.enabled", havingValue = "true")
+public class ShoeFacetCounter implements ShoeChangeListener {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShoeFacetCounter.class);
+
+	private SessionFactory sessionFactory;
+
+	@Value("${shoe.facets.in_memory.rebuild_interval_seconds:0}")
+	private long rebuildIntervalSeconds;
+
+	/* counted values per id, to take a shoe away again on update and delete; guarded by this */
+	private Map<Long, String[]> values = new HashMap<>();
+
+	/* guarded by this */
+	private ShoeFacets.Builder counts = new ShoeFacets.Builder();
+
+	/* latest state of shoes written while a rebuild is loading, null for deleted ones; guarded by this */
+	private Map<Long, Shoe> writesDuringRebuild;
+
+	/* built on the first read after a write */
+	private volatile ShoeFacets snapshot;
+
+	private ScheduledExecutorService scheduler;
+
+	@Autowired
+	public ShoeFacetCounter(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	@PostConstruct
+	public void initialize() {
+		rebuild();
+		if (rebuildIntervalSeconds > 0) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "shoe-facet-counter");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						rebuild();
+					} catch (RuntimeException e) {
+						LOGGER.warn("Recounting the shoe facets failed", e);
+					}
+				}
+			}, rebuildIntervalSeconds, rebuildIntervalSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Counts all shoes in the database and swaps the counters in. Writes
+	 * arriving while the table is read are replayed before the swap.
+	 */
+	public void rebuild() {
+		synchronized (this) {
+			writesDuringRebuild = new LinkedHashMap<>();
+		}
+
+		Map<Long, String[]> loadedValues = new HashMap<>();
+		ShoeFacets.Builder loadedCounts = new ShoeFacets.Builder();
+		StatelessSession session = sessionFactory.openStatelessSession();
+		try {
+			ScrollableResults results = session.createQuery("select s.id, s.brand, s.color, s.size from Shoe s")
+					.setFetchSize(1000)
+					.scroll(ScrollMode.FORWARD_ONLY);
+			try {
+				while (results.next()) {
+					String[] shoeValues = { (String) results.get(1), (String) results.get(2), (String) results.get(3) };
+					loadedValues.put((Long) results.get(0), shoeValues);
+					loadedCounts.addShoes(shoeValues, 1);
+				}
+			} finally {
+				results.close();
+			}
+		} finally {
+			session.close();
+		}
+
+		synchronized (this) {
+			values = loadedValues;
+			counts = loadedCounts;
+			for (Map.Entry<Long, Shoe> write : writesDuringRebuild.entrySet()) {
+				if (write.getValue() == null) {
+					remove(write.getKey());
+				} else {
+					put(write.getValue());
+				}
+			}
+			writesDuringRebuild = null;
+			snapshot = null;
+		}
+		LOGGER.info("Counted facets of {} shoes", loadedValues.size());
+	}
+
+	public ShoeFacets getFacets() {
+		ShoeFacets facets = snapshot;
+		if (facets != null) {
+			return facets;
+		}
+		synchronized (this) {
+			if (snapshot == null) {
+				snapshot = counts.build();
+			}
+			return snapshot;
+		}
+	}
+
+	@Override
+	public synchronized void shoeSaved(Shoe shoe) {
+		write(shoe.getId(), shoe);
+	}
+
+	@Override
+	public synchronized void shoeUpdated(Shoe shoe) {
+		write(shoe.getId(), shoe);
+	}
+
+	@Override
+	public synchronized void shoeDeleted(Shoe shoe) {
+		write(shoe.getId(), null);
+	}
+
+	private void write(Long id, Shoe shoe) {
+		if (shoe == null) {
+			remove(id);
+		} else {
+			put(shoe);
+		}
+		if (writesDuringRebuild != null) {
+			writesDuringRebuild.put(id, shoe);
+		}
+		snapshot = null;
+	}
+
+	private void put(Shoe shoe) {
+		remove(shoe.getId());
+		String[] shoeValues = { shoe.getBrand(), shoe.getColor(), shoe.getSize() };
+		values.put(shoe.getId(), shoeValues);
+		counts.addShoes(shoeValues, 1);
+	}
+
+	private void remove(Long id) {
+		String[] previous = values.remove(id);
+		if (previous != null) {
+			counts.addShoes(previous, -1);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.proeins.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Number of shoes per brand, color and size among a set of shoes. Values of
+ * each field are ordered by descending count, shoes without a value are only
+ * part of the total.
+ */
+public class ShoeFacets {
+
+	public static final List<String> FIELDS = Arrays.asList("brand", "color", "size");
+
+	private final long total;
+	private final Map<String, Map<String, Long>> counts;
+
+	public ShoeFacets(long total, Map<String, Map<String, Long>> counts) {
+		this.total = total;
+		this.counts = counts;
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Field name to value to number of shoes.
+	 */
+	public Map<String, Map<String, Long>> getCounts() {
+		return counts;
+	}
+
+	/**
+	 * Sums up shoes, given with their values in {@link ShoeFacets#FIELDS}
+	 * order, or whole facets. Negative counts take shoes away again.
+	 */
+	public static class Builder {
+
+		private long total;
+
+		private final List<Map<String, Long>> counts = new ArrayList<>();
+
+		public Builder() {
+			for (int i = 0; i < FIELDS.size(); i++) {
+				counts.add(new HashMap<String, Long>());
+			}
+		}
+
+		public Builder addShoes(String[] values, long count) {
+			total += count;
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] != null) {
+					add(counts.get(i), values[i], count);
+				}
+			}
+			return this;
+		}
+
+		public Builder add(ShoeFacets facets) {
+			total += facets.total;
+			for (int i = 0; i < FIELDS.size(); i++) {
+				for (Map.Entry<String, Long> count : facets.counts.get(FIELDS.get(i)).entrySet()) {
+					add(counts.get(i), count.getKey(), count.getValue());
+				}
+			}
+			return this;
+		}
+
+		private static void add(Map<String, Long> counts, String value, long count) {
+			Long previous = counts.get(value);
+			long sum = previous == null ? count : previous + count;
+			if (sum == 0) {
+				counts.remove(value);
+			} else {
+				counts.put(value, sum);
+			}
+		}
+
+		public ShoeFacets build() {
+			Map<String, Map<String, Long>> sorted = new LinkedHashMap<>();
+			for (int i = 0; i < FIELDS.size(); i++) {
+				List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.get(i).entrySet());
+				Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+					@Override
+					public int compare(Map.Entry<String, Long> first, Map.Entry<String, Long> second) {
+						int order = second.getValue().compareTo(first.getValue());
+						return order != 0 ? order : first.getKey().compareTo(second.getKey());
+					}
+				});
+				Map<String, Long> field = new LinkedHashMap<>();
+				for (Map.Entry<String, Long> entry : entries) {
+					field.put(entry.getKey(), entry.getValue());
+				}
+				sorted.put(FIELDS.get(i), Collections.unmodifiableMap(field));
+			}
+			return new ShoeFacets(total, Collections.unmodifiableMap(sorted));
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.proeins.dao;
+
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the table backing the <code>shoe_seq</code> generator past the highest
+ * existing id. Shoes used to be inserted with IDENTITY ids, which the table
+ * based sequence on MySQL knows nothing about.
+ * <p>
+ * The table holds sequence values, not ids: on a sharded catalog an id is
+ * the sequence value times the shard count plus the shard index (see
+ * {@link ShardedSequenceGenerator}), so the highest id is mapped back before
+ * it is compared. Every shard has a table of its own and is initialized
+ * separately.
+ * <p>
+ * {@link ShardedShoeDao} finds shoes by the remainder of their id, so a shard
+ * holding an id of another shard refuses to start. That is the case for the
+ * shoes of a catalog written before sharding was enabled, or before the
+ * number of shards changed; they have to be moved first.
+ */
+@Component
+public class ShoeIdSequenceInitializer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShoeIdSequenceInitializer.class);
+
+	private SessionFactory sessionFactory;
+
+	@Autowired
+	public ShoeIdSequenceInitializer(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	@PostConstruct
+	public void initialize() {
+		Map<String, Object> settings = sessionFactory.getProperties();
+		int shardIndex = intSetting(settings, ShardedSequenceGenerator.SHARD_INDEX, 0);
+		int shardCount = intSetting(settings, ShardedSequenceGenerator.SHARD_COUNT, 1);
+		// native sequences are only used by schemas that never had IDENTITY ids
+		boolean nativeSequence = ((SessionFactoryImplementor) sessionFactory).getJdbcServices().getDialect().supportsSequences();
+		if (shardCount == 1 && nativeSequence) {
+			return;
+		}
+		Session session = sessionFactory.openSession();
+		Transaction transaction = session.beginTransaction();
+		try {
+			if (shardCount > 1) {
+				long misplaced = session.createQuery("select count(s.id) from Shoe s where mod(s.id, :count) <> :index", Long.class)
+						.setParameter("count", shardCount)
+						.setParameter("index", shardIndex)
+						.getSingleResult();
+				if (misplaced > 0) {
+					throw new IllegalStateException("Shard " + shardIndex + " holds " + misplaced + " shoes with ids of other shards of "
+							+ shardCount + ", move them before starting with this number of shards");
+				}
+			}
+			Long maxId = nativeSequence ? null : session.createQuery("select max(s.id) from Shoe s", Long.class).getSingleResult();
+			if (maxId != null) {
+				long nextVal = Math.floorDiv(maxId - shardIndex, shardCount) + 1;
+				int updated = session.createNativeQuery("update shoe_seq set next_val = :nextVal where next_val < :nextVal")
+						.setParameter("nextVal", nextVal)
+						.executeUpdate();
+				if (updated > 0) {
+					LOGGER.info("Moved shoe_seq of shard {} to {}", shardIndex, nextVal);
+				}
+			}
+			transaction.commit();
+		} catch (RuntimeException e) {
+			transaction.rollback();
+			throw e;
+		} finally {
+			session.close();
+		}
+	}
+
+	private static int intSetting(Map<String, Object> settings, String name, int defaultValue) {
+		Object value = settings.get(name);
+		return value == null ? defaultValue : Integer.parseInt(String.valueOf(value));
+	}
+}
@@ -0,0 +1,199 @@
+package com.proeins.dao;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.Work;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeMigration;
+
+/**
+ * Fills the numeric <code>size_value</code> and <code>stock_count</code>
+ * columns of shoes written before they existed. Rows are walked in id order,
+ * a short transaction per batch, so the live table is never locked for
+ * long. A row is only written if its text columns did not change since it
+ * was read. The id of the last row handled is committed with each batch in
+ * <code>shoe_migration</code>, so an interrupted backfill resumes where it
+ * stopped, and rows whose text is not a number, which never get numeric
+ * copies, are not read again on later starts.
+ */
+@Component
+public class ShoeNumericColumnsBackfill {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShoeNumericColumnsBackfill.class);
+
+	static final String MIGRATION = "numeric_columns_backfill";
+
+	private static final String UPDATE_SQL = "update Shoe set size_value = ?, stock_count = ?"
+			+ " where id = ? and coalesce(size, '') = ? and coalesce(stock, '') = ?";
+
+	private SessionFactory sessionFactory;
+
+	@Value("${shoe.migration.numeric_backfill.enabled:false}")
+	private boolean enabled;
+
+	@Value("${shoe.migration.numeric_backfill.batch_size:1000}")
+	private int batchSize = 1000;
+
+	@Value("${shoe.migration.numeric_backfill.pause_millis:50}")
+	private long pauseMillis = 50;
+
+	private Thread worker;
+
+	@Autowired
+	public ShoeNumericColumnsBackfill(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	@PostConstruct
+	public void initialize() {
+		if (!enabled) {
+			return;
+		}
+		worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					backfill();
+				} catch (InterruptedException e) {
+					LOGGER.info("Numeric column backfill interrupted, it resumes on the next start");
+				} catch (RuntimeException e) {
+					LOGGER.error("Numeric column backfill failed, it resumes on the next start", e);
+				}
+			}
+		}, "shoe-numeric-backfill");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (worker != null) {
+			worker.interrupt();
+		}
+	}
+
+	/**
+	 * Backfills all rows and returns the number of updated shoes.
+	 */
+	public long backfill() throws InterruptedException {
+		long lastId = lastId();
+		long updated = 0;
+		while (true) {
+			List<Object[]> rows = nextBatch(lastId);
+			if (rows.isEmpty()) {
+				break;
+			}
+			lastId = (Long) rows.get(rows.size() - 1)[0];
+			updated += update(rows, lastId);
+			LOGGER.debug("Backfilled numeric columns up to shoe {}", lastId);
+			if (pauseMillis > 0) {
+				Thread.sleep(pauseMillis);
+			}
+		}
+		if (updated > 0) {
+			// searches by the numeric columns were cached without the backfilled rows
+			sessionFactory.getCache().evictQueryRegions();
+		}
+		LOGGER.info("Backfilled numeric columns of {} shoes", updated);
+		return updated;
+	}
+
+	private long lastId() {
+		Session session = sessionFactory.openSession();
+		try {
+			ShoeMigration progress = session.get(ShoeMigration.class, MIGRATION);
+			return progress == null ? 0 : progress.getLastId();
+		} finally {
+			session.close();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Object[]> nextBatch(long lastId) {
+		StatelessSession session = sessionFactory.openStatelessSession();
+		try {
+			return session.createQuery("select s.id, s.size, s.stock from Shoe s where s.id > :lastId"
+					+ " and (s.sizeValue is null and s.size is not null or s.stockCount is null and s.stock is not null)"
+					+ " order by s.id")
+					.setParameter("lastId", lastId)
+					.setMaxResults(batchSize)
+					.getResultList();
+		} finally {
+			session.close();
+		}
+	}
+
+	/* updates the rows and moves the progress to lastId in one transaction */
+	private int update(final List<Object[]> rows, long lastId) {
+		final List<Object[]> changes = new ArrayList<>();
+		for (Object[] row : rows) {
+			BigDecimal sizeValue = Shoe.parseSize((String) row[1]);
+			Integer stockCount = Shoe.parseStock((String) row[2]);
+			// text that is not a number stays without numeric copy
+			if (sizeValue != null || stockCount != null) {
+				changes.add(new Object[] { row[0], row[1], row[2], sizeValue, stockCount });
+			}
+		}
+
+		final int[] updated = new int[1];
+		Session session = sessionFactory.openSession();
+		Transaction transaction = session.beginTransaction();
+		try {
+			ShoeMigration progress = session.get(ShoeMigration.class, MIGRATION);
+			if (progress == null) {
+				session.save(new ShoeMigration(MIGRATION, lastId));
+			} else {
+				progress.setLastId(lastId);
+			}
+			session.doWork(new Work() {
+				@Override
+				public void execute(Connection connection) throws SQLException {
+					try (PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
+						for (Object[] change : changes) {
+							statement.setObject(1, change[3], Types.DECIMAL);
+							statement.setObject(2, change[4], Types.INTEGER);
+							statement.setLong(3, (Long) change[0]);
+							statement.setString(4, change[1] == null ? "" : (String) change[1]);
+							statement.setString(5, change[2] == null ? "" : (String) change[2]);
+							statement.addBatch();
+						}
+						for (int count : statement.executeBatch()) {
+							// drivers may report SUCCESS_NO_INFO (-2) for rewritten batches
+							updated[0] += count == PreparedStatement.SUCCESS_NO_INFO ? 1 : count;
+						}
+					}
+				}
+			});
+			transaction.commit();
+		} catch (RuntimeException e) {
+			transaction.rollback();
+			throw e;
+		} finally {
+			session.close();
+		}
+		// rows were changed behind Hibernate's back, only they leave the cache
+		for (Object[] change : changes) {
+			sessionFactory.getCache().evictEntity(Shoe.class, (Long) change[0]);
+		}
+		return updated[0];
+	}
+}
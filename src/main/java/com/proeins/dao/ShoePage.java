@@ -0,0 +1,28 @@
+package com.proeins.dao;
+
+import java.util.List;
+
+import com.proeins.model.Shoe;
+
+public class ShoePage {
+
+	private List<Shoe> shoes;
+	private String nextCursor;
+
+	public ShoePage(List<Shoe> shoes, String nextCursor) {
+		this.shoes = shoes;
+		this.nextCursor = nextCursor;
+	}
+
+	public List<Shoe> getShoes() {
+		return shoes;
+	}
+
+	/**
+	 * Opaque cursor pointing behind the last shoe of this page, or
+	 * <code>null</code> when there are no further results.
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+}
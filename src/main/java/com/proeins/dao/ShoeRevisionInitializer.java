@@ -0,0 +1,59 @@
+package com.proeins.dao;
+
+import javax.annotation.PostConstruct;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.exception.ConstraintViolationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.proeins.model.ShoeRevision;
+
+/**
+ * Creates the <code>shoe_revision</code> row on the first start with
+ * revisions, at the highest revision already written.
+ */
+@Component
+public class ShoeRevisionInitializer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShoeRevisionInitializer.class);
+
+	private SessionFactory sessionFactory;
+
+	@Autowired
+	public ShoeRevisionInitializer(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	@PostConstruct
+	public void initialize() {
+		Session session = sessionFactory.openSession();
+		Transaction transaction = session.beginTransaction();
+		try {
+			if (session.get(ShoeRevision.class, ShoeRevision.ID) == null) {
+				long last = Math.max(1, Math.max(maxRevision(session, "Shoe"), maxRevision(session, "ShoeTombstone")));
+				session.save(new ShoeRevision(last));
+				session.flush();
+				LOGGER.info("Started shoe revisions at {}", last);
+			}
+			transaction.commit();
+		} catch (RuntimeException e) {
+			transaction.rollback();
+			if (!(e.getCause() instanceof ConstraintViolationException)) {
+				throw e;
+			}
+			// another node created the row at the same time
+		} finally {
+			session.close();
+		}
+	}
+
+	private static long maxRevision(Session session, String entity) {
+		Long max = session.createQuery("select max(e.revision) from " + entity + " e", Long.class).getSingleResult();
+		return max == null ? 0 : max;
+	}
+}
@@ -0,0 +1,169 @@
+package com.proeins.dao;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeRevision;
+
+/**
+ * Hands out the revisions of {@link ShoeDao#changesSince(long)}. Writers
+ * only mark their rows as pending, see {@link Shoe#markRevisionPending()},
+ * and never touch the counter, so a write needs no connection or commit
+ * besides its own. Every <code>sequence_interval_millis</code> the committed
+ * pending rows get the next revision, in the same transaction that moves the
+ * counter there. Revisions therefore follow the commit order and no write
+ * can turn up below a revision already served; the sync lags the writes by
+ * about the interval. Every pass also reports the shared revision to
+ * {@link ShoeCatalogVersion}, so it follows the writes of other nodes.
+ * <p>
+ * Only the primary database is sequenced, sharded catalogs do not sync. An
+ * interval of 0 leaves sequencing to {@link #sequence()}.
+ */
+@Component
+public class ShoeRevisionSequencer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShoeRevisionSequencer.class);
+
+	private SessionFactory sessionFactory;
+
+	private ShoeCatalogVersion catalogVersion;
+
+	@Value("${shoe.sync.sequence_interval_millis:200}")
+	private long intervalMillis = 200;
+
+	@Value("${shoe.sync.sequence_batch_size:1000}")
+	private int batchSize = 1000;
+
+	private ScheduledExecutorService scheduler;
+
+	@Autowired
+	public ShoeRevisionSequencer(SessionFactory sessionFactory, ShoeCatalogVersion catalogVersion) {
+		this.sessionFactory = sessionFactory;
+		this.catalogVersion = catalogVersion;
+	}
+
+	@PostConstruct
+	public void initialize() {
+		if (intervalMillis <= 0) {
+			return;
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "shoe-revision-sequencer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					sequence();
+				} catch (RuntimeException e) {
+					LOGGER.warn("Sequencing shoe revisions failed", e);
+				}
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Gives the committed pending rows their revisions, a revision per batch.
+	 * Returns the number of rows sequenced.
+	 */
+	public int sequence() {
+		int sequenced = 0;
+		int batch;
+		do {
+			batch = sequenceBatch();
+			sequenced += batch;
+		} while (batch >= batchSize);
+		return sequenced;
+	}
+
+	private int sequenceBatch() {
+		List<Long> shoeIds;
+		List<Long> tombstoneIds;
+		ShoeRevision counter;
+		Session session = sessionFactory.openSession();
+		Transaction transaction = session.beginTransaction();
+		try {
+			shoeIds = pendingIds(session, "Shoe");
+			tombstoneIds = pendingIds(session, "ShoeTombstone");
+			if (shoeIds.isEmpty() && tombstoneIds.isEmpty()) {
+				counter = session.get(ShoeRevision.class, ShoeRevision.ID);
+				transaction.commit();
+				catalogVersion.sequenced(counter.getLastRevision(), counter.getSequencedMillis());
+				return 0;
+			}
+			// the counter row lock orders the passes, other nodes sequence after this one commits
+			session.createQuery("update ShoeRevision r set r.lastRevision = r.lastRevision + 1, r.sequencedMillis = :now where r.id = :id")
+					.setParameter("now", System.currentTimeMillis())
+					.setParameter("id", ShoeRevision.ID)
+					.executeUpdate();
+			counter = session.get(ShoeRevision.class, ShoeRevision.ID);
+			long revision = counter.getLastRevision();
+			int stamped = stamp(session, "Shoe", shoeIds, revision) + stamp(session, "shoe_tombstone", tombstoneIds, revision);
+			if (stamped == 0) {
+				// another node got there first, the revision is not handed out
+				transaction.rollback();
+				return 0;
+			}
+			transaction.commit();
+		} catch (RuntimeException e) {
+			transaction.rollback();
+			throw e;
+		} finally {
+			session.close();
+		}
+		// rows were changed behind Hibernate's back, only they leave the cache
+		for (Long id : shoeIds) {
+			sessionFactory.getCache().evictEntity(Shoe.class, id);
+		}
+		catalogVersion.sequenced(counter.getLastRevision(), counter.getSequencedMillis());
+		return Math.max(shoeIds.size(), tombstoneIds.size());
+	}
+
+	private List<Long> pendingIds(Session session, String entity) {
+		return session.createQuery("select e.id from " + entity + " e where e.revision <= :pending order by e.id", Long.class)
+				.setParameter("pending", ShoeRevision.PENDING)
+				.setMaxResults(batchSize)
+				.getResultList();
+	}
+
+	/* rows written again since they were read are still pending and take this revision as well */
+	private static int stamp(Session session, String table, List<Long> ids, long revision) {
+		if (ids.isEmpty()) {
+			return 0;
+		}
+		return session.createNativeQuery("update " + table + " set revision = :revision where id in (:ids) and revision <= :pending")
+				.addSynchronizedQuerySpace("")
+				.setParameter("revision", revision)
+				.setParameterList("ids", ids)
+				.setParameter("pending", ShoeRevision.PENDING)
+				.executeUpdate();
+	}
+}
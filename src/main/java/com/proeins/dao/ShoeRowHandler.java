@@ -0,0 +1,14 @@
+package com.proeins.dao;
+
+import java.io.IOException;
+
+import com.proeins.model.Shoe;
+
+/**
+ * Callback for shoes read one at a time from a scrolling query. The shoe is
+ * detached from the session once the handler returns.
+ */
+public interface ShoeRowHandler {
+
+	void handle(Shoe shoe) throws IOException;
+}
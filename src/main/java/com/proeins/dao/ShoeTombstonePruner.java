@@ -0,0 +1,122 @@
+package com.proeins.dao;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.proeins.model.ShoeRevision;
+
+/**
+ * Deletes the tombstones of shoes deleted more than
+ * <code>tombstone_retention_hours</code> ago, every
+ * <code>prune_interval_minutes</code>. The highest pruned revision is kept in
+ * <code>shoe_revision</code>; clients syncing from below it get a reset
+ * instead of a delta, see {@link ShoeDelta}. Tombstones still waiting for
+ * their revision are kept.
+ * <p>
+ * A retention of 0 keeps the tombstones forever.
+ */
+@Component
+public class ShoeTombstonePruner {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShoeTombstonePruner.class);
+
+	private SessionFactory sessionFactory;
+
+	@Value("${shoe.sync.tombstone_retention_hours:168}")
+	private long retentionHours = 168;
+
+	@Value("${shoe.sync.prune_interval_minutes:60}")
+	private long intervalMinutes = 60;
+
+	private ScheduledExecutorService scheduler;
+
+	@Autowired
+	public ShoeTombstonePruner(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	@PostConstruct
+	public void initialize() {
+		if (retentionHours <= 0 || intervalMinutes <= 0) {
+			return;
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "shoe-tombstone-pruner");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					prune(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(retentionHours));
+				} catch (RuntimeException e) {
+					LOGGER.warn("Pruning shoe tombstones failed", e);
+				}
+			}
+		}, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Deletes the tombstones up to the highest revision deleted before the
+	 * given time and moves the pruned revision there. Returns the number of
+	 * tombstones deleted.
+	 */
+	public int prune(long deletedBefore) {
+		Session session = sessionFactory.openSession();
+		Transaction transaction = session.beginTransaction();
+		try {
+			Long horizon = session
+					.createQuery("select max(t.revision) from ShoeTombstone t"
+							+ " where t.revision > :pending and (t.deletedMillis < :deletedBefore or t.deletedMillis is null)",
+							Long.class)
+					.setParameter("pending", ShoeRevision.PENDING)
+					.setParameter("deletedBefore", deletedBefore)
+					.getSingleResult();
+			int pruned = 0;
+			if (horizon != null) {
+				pruned = session.createQuery("delete from ShoeTombstone t where t.revision > :pending and t.revision <= :horizon")
+						.setParameter("pending", ShoeRevision.PENDING)
+						.setParameter("horizon", horizon)
+						.executeUpdate();
+				session.createQuery("update ShoeRevision r set r.prunedRevision = :horizon"
+						+ " where r.id = :id and (r.prunedRevision is null or r.prunedRevision < :horizon)")
+						.setParameter("horizon", horizon)
+						.setParameter("id", ShoeRevision.ID)
+						.executeUpdate();
+				LOGGER.info("Pruned {} shoe tombstones up to revision {}", pruned, horizon);
+			}
+			transaction.commit();
+			return pruned;
+		} catch (RuntimeException e) {
+			transaction.rollback();
+			throw e;
+		} finally {
+			session.close();
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.proeins.exception;
+
+public class IngestQueueFullException extends Exception {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private final int retryAfterSeconds;
+	
+	public IngestQueueFullException(String message, int retryAfterSeconds) {
+		super(message);
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+
+}
@@ -0,0 +1,14 @@
+package com.proeins.exception;
+
+public class InvalidRequestException extends IllegalArgumentException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	public InvalidRequestException(String message) {
+		super(message);
+	}
+
+}
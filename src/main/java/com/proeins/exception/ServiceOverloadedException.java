@@ -0,0 +1,21 @@
+package com.proeins.exception;
+
+public class ServiceOverloadedException extends RuntimeException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private final int retryAfterSeconds;
+
+	public ServiceOverloadedException(String message, int retryAfterSeconds) {
+		super(message);
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+
+}
@@ -0,0 +1,14 @@
+package com.proeins.exception;
+
+public class ShoeVersionConflictException extends Exception {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+	
+	public ShoeVersionConflictException(String message) {
+		super(message);
+	}
+
+}
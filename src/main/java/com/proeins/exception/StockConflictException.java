@@ -0,0 +1,14 @@
+package com.proeins.exception;
+
+public class StockConflictException extends Exception {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+	
+	public StockConflictException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,166 @@
+package com.proeins.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of durations in microseconds. Buckets are log-linear,
+ * eight per power of two, so every reported percentile is at most 12.5% above
+ * the true value, at a fixed few kilobytes per histogram.
+ * <p>
+ * Recording is a couple of atomic increments and safe from any thread.
+ * Percentiles are read from {@link Snapshot}s, and the difference of two
+ * snapshots describes the interval between them.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/* up to 2^40 microseconds, about twelve days */
+	private static final int MAX_EXPONENT = 40;
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong sum = new AtomicLong();
+
+	public void record(long duration, TimeUnit unit) {
+		long micros = Math.max(0, unit.toMicros(duration));
+		counts.incrementAndGet(bucketOf(micros));
+		sum.addAndGet(micros);
+	}
+
+	public void recordNanos(long nanos) {
+		record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	public Snapshot snapshot() {
+		long[] copy = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+		}
+		return new Snapshot(copy, sum.get());
+	}
+
+	static int bucketOf(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int shift = exponent - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((micros >>> shift) - SUB_BUCKETS);
+	}
+
+	/* largest value falling into the bucket */
+	static long upperBoundOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+	}
+
+	/**
+	 * Immutable copy of the counts at one point in time.
+	 */
+	public static final class Snapshot {
+
+		private final long[] counts;
+		private final long sum;
+		private final long count;
+
+		private Snapshot(long[] counts, long sum) {
+			this.counts = counts;
+			this.sum = sum;
+			long total = 0;
+			for (long bucketCount : counts) {
+				total += bucketCount;
+			}
+			this.count = total;
+		}
+
+		/**
+		 * The values recorded after the given, earlier snapshot.
+		 */
+		public Snapshot minus(Snapshot earlier) {
+			long[] difference = new long[counts.length];
+			for (int i = 0; i < counts.length; i++) {
+				difference[i] = counts[i] - earlier.counts[i];
+			}
+			return new Snapshot(difference, sum - earlier.sum);
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getTotalMillis() {
+			return sum / 1000.0;
+		}
+
+		public double getMeanMillis() {
+			return count == 0 ? 0 : sum / 1000.0 / count;
+		}
+
+		/**
+		 * Upper bound of the given quantile (0..1) in milliseconds, 0 if
+		 * nothing was recorded.
+		 */
+		public double getPercentileMillis(double quantile) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(quantile * count));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return upperBoundOf(i) / 1000.0;
+				}
+			}
+			return upperBoundOf(counts.length - 1) / 1000.0;
+		}
+
+		/**
+		 * Number of values below the given microseconds, exact when it is the
+		 * start of a bucket, such as any power of two from 8 on.
+		 */
+		public long getCountBelow(long micros) {
+			long below = 0;
+			for (int i = 0; i < counts.length && upperBoundOf(i) < micros; i++) {
+				below += counts[i];
+			}
+			return below;
+		}
+
+		public double getMaxMillis() {
+			for (int i = counts.length - 1; i >= 0; i--) {
+				if (counts[i] > 0) {
+					return upperBoundOf(i) / 1000.0;
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * Count, mean and the usual percentiles, for statistics endpoints.
+		 */
+		public Map<String, Object> toMap() {
+			Map<String, Object> result = new LinkedHashMap<>();
+			result.put("count", count);
+			result.put("meanMillis", getMeanMillis());
+			result.put("p50Millis", getPercentileMillis(0.5));
+			result.put("p90Millis", getPercentileMillis(0.9));
+			result.put("p99Millis", getPercentileMillis(0.99));
+			result.put("maxMillis", getMaxMillis());
+			return result;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.proeins.metrics;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Named latency histograms, written as Prometheus histograms. A histogram is
+ * looked up once by its name and labels and kept by the caller, so recording
+ * never touches the registry.
+ * <p>
+ * The buckets are cumulative counts, so unlike quantiles they can be summed
+ * across nodes and subtracted between scrapes. Their bounds are the powers of
+ * two from 64 microseconds to about 33 seconds, which are bucket boundaries of
+ * {@link LatencyHistogram}, so the counts are exact.
+ */
+public class LatencyRegistry {
+
+	private static final int MIN_BOUND_EXPONENT = 6;
+	private static final int MAX_BOUND_EXPONENT = 25;
+
+	/* le label of each bound, in seconds */
+	private static final String[] BOUND_LABELS = new String[MAX_BOUND_EXPONENT - MIN_BOUND_EXPONENT + 1];
+
+	static {
+		for (int i = 0; i < BOUND_LABELS.length; i++) {
+			BOUND_LABELS[i] = BigDecimal.valueOf(1L << (MIN_BOUND_EXPONENT + i), 6).stripTrailingZeros().toPlainString();
+		}
+	}
+
+	/* metric name to label set to histogram, sorted for a stable scrape */
+	private final ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>> metrics = new ConcurrentSkipListMap<>();
+
+	/**
+	 * The histogram of the given metric and labels, created on first use.
+	 * Labels are given in exposition format, e.g.
+	 * <code>method="save"</code>, and may be empty.
+	 */
+	public LatencyHistogram histogram(String name, String labels) {
+		ConcurrentMap<String, LatencyHistogram> series = metrics.get(name);
+		if (series == null) {
+			metrics.putIfAbsent(name, new ConcurrentSkipListMap<String, LatencyHistogram>());
+			series = metrics.get(name);
+		}
+		LatencyHistogram histogram = series.get(labels);
+		if (histogram == null) {
+			series.putIfAbsent(labels, new LatencyHistogram());
+			histogram = series.get(labels);
+		}
+		return histogram;
+	}
+
+	/**
+	 * Publishes a histogram recorded elsewhere under the given metric and
+	 * labels.
+	 */
+	public void register(String name, String labels, LatencyHistogram histogram) {
+		metrics.putIfAbsent(name, new ConcurrentSkipListMap<String, LatencyHistogram>());
+		metrics.get(name).put(labels, histogram);
+	}
+
+	/**
+	 * Writes every histogram in seconds, in the Prometheus text exposition
+	 * format.
+	 */
+	public void write(Appendable out) throws IOException {
+		for (Map.Entry<String, ConcurrentMap<String, LatencyHistogram>> metric : metrics.entrySet()) {
+			String name = metric.getKey();
+			out.append("# TYPE ").append(name).append(" histogram\n");
+			for (Map.Entry<String, LatencyHistogram> series : metric.getValue().entrySet()) {
+				String labels = series.getKey();
+				String separator = labels.isEmpty() ? "" : ",";
+				LatencyHistogram.Snapshot snapshot = series.getValue().snapshot();
+				for (int i = 0; i < BOUND_LABELS.length; i++) {
+					bucket(out, name, labels + separator, BOUND_LABELS[i],
+							snapshot.getCountBelow(1L << (MIN_BOUND_EXPONENT + i)));
+				}
+				bucket(out, name, labels + separator, "+Inf", snapshot.getCount());
+				String braced = labels.isEmpty() ? "" : "{" + labels + "}";
+				out.append(name).append("_sum").append(braced).append(' ')
+						.append(String.valueOf(snapshot.getTotalMillis() / 1000)).append('\n');
+				out.append(name).append("_count").append(braced).append(' ')
+						.append(String.valueOf(snapshot.getCount())).append('\n');
+			}
+		}
+	}
+
+	private static void bucket(Appendable out, String name, String labels, String bound, long count) throws IOException {
+		out.append(name).append("_bucket{").append(labels).append("le=\"").append(bound).append("\"} ")
+				.append(String.valueOf(count)).append('\n');
+	}
+
+	/**
+	 * Escapes a label value for the exposition format.
+	 */
+	public static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
@@ -0,0 +1,58 @@
+package com.proeins.metrics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.AbstractAdvisingBeanPostProcessor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.RootClassFilter;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+
+/**
+ * Times every call to the methods of the given interface on the beans
+ * implementing it, as metric <code>name</code> labelled with the method name.
+ * The advice goes in front of the transaction advice, so commits are part of
+ * the measured time.
+ */
+public class MethodTimingPostProcessor extends AbstractAdvisingBeanPostProcessor {
+
+	private static final long serialVersionUID = 1L;
+
+	public MethodTimingPostProcessor(final LatencyRegistry registry, final Class<?> type, final String name) {
+		StaticMethodMatcherPointcut pointcut = new StaticMethodMatcherPointcut() {
+			@Override
+			public boolean matches(Method method, Class<?> targetClass) {
+				try {
+					type.getMethod(method.getName(), method.getParameterTypes());
+					return true;
+				} catch (NoSuchMethodException e) {
+					return false;
+				}
+			}
+		};
+		pointcut.setClassFilter(new RootClassFilter(type));
+		this.advisor = new DefaultPointcutAdvisor(pointcut, new MethodInterceptor() {
+			private final ConcurrentMap<Method, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+			@Override
+			public Object invoke(MethodInvocation invocation) throws Throwable {
+				Method method = invocation.getMethod();
+				LatencyHistogram histogram = histograms.get(method);
+				if (histogram == null) {
+					histogram = registry.histogram(name, "method=\"" + LatencyRegistry.escape(method.getName()) + "\"");
+					histograms.putIfAbsent(method, histogram);
+				}
+				long start = System.nanoTime();
+				try {
+					return invocation.proceed();
+				} finally {
+					histogram.recordNanos(System.nanoTime() - start);
+				}
+			}
+		});
+		setBeforeExistingAdvisors(true);
+	}
+}
@@ -1,16 +1,50 @@
 package com.proeins.model;
 
+import java.math.BigDecimal;
+
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
 @Entity(name = "Shoe")
+@Table(indexes = {
+		@Index(name = "idx_shoe_brand_size_value", columnList = "brand, size_value"),
+		@Index(name = "idx_shoe_stock_count", columnList = "stock_count"),
+		@Index(name = "idx_shoe_article_number", columnList = "articleNumber"),
+		@Index(name = "idx_shoe_revision", columnList = "revision") })
+@DynamicUpdate
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Shoe.CACHE_REGION)
 public class Shoe {
 
+	public static final String CACHE_REGION = "shoe";
+
+	/*
+	 * Ids are allocated in blocks from a sequence (a table on MySQL) instead of
+	 * an IDENTITY column, which lets Hibernate batch the inserts. When the
+	 * catalog is sharded the id also tells the shard.
+	 */
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "shoe_seq")
+	@GenericGenerator(name = "shoe_seq", strategy = "com.proeins.dao.ShardedSequenceGenerator", parameters = {
+			@Parameter(name = "sequence_name", value = "shoe_seq"),
+			@Parameter(name = "increment_size", value = "50"),
+			@Parameter(name = "optimizer", value = "pooled-lo") })
 	@Column(updatable = false)
 	private Long id;
 	
@@ -25,11 +59,54 @@ public class Shoe {
 	private String size;
 	
 	private String stock;
+
+	/*
+	 * Numeric copies of size and stock for range searches and sorting, kept in
+	 * sync by the setters. Null where the text is not a number. Rows written
+	 * before these columns existed are filled by ShoeNumericColumnsBackfill.
+	 */
+	@JsonIgnore
+	@Column(name = "size_value", precision = 5, scale = 2)
+	private BigDecimal sizeValue;
+
+	@JsonIgnore
+	@Column(name = "stock_count")
+	private Integer stockCount;
+
+	/*
+	 * Incremented by every update and checked by PATCH against If-Match.
+	 * The default lets schema updates add the column to existing rows.
+	 */
+	@Version
+	@JsonProperty(access = JsonProperty.Access.READ_ONLY)
+	@Column(nullable = false, columnDefinition = "bigint default 0")
+	private Long version;
+
+	/*
+	 * Catalog revision of the last write, see ShoeDao#changesSince. Rows
+	 * from before revisions existed count as revision 1, so syncing since 0
+	 * returns the whole catalog. A write leaves the negated version it
+	 * writes (0 for a new row) until ShoeRevisionSequencer hands out the
+	 * revision. Each write leaves another value, so the column stays in the
+	 * dynamic update even when the row was sequenced after it was read.
+	 */
+	@JsonProperty(access = JsonProperty.Access.READ_ONLY)
+	@Column(nullable = false, columnDefinition = "bigint default 1")
+	private Long revision;
 	
 	public Long getId() {
 		return id;
 	}
 
+	public Long getVersion() {
+		return version;
+	}
+
+	/* 0 while the last write waits for its revision */
+	public Long getRevision() {
+		return revision != null && revision < 0 ? Long.valueOf(0) : revision;
+	}
+
 	public String getArticleNumber() {
 		return articleNumber;
 	}
@@ -54,11 +131,32 @@ public class Shoe {
 	public String getStock() {
 		return stock;
 	}
+
+	public BigDecimal getSizeValue() {
+		return sizeValue;
+	}
+
+	public Integer getStockCount() {
+		return stockCount;
+	}
 	
 	public void setId(Long id) {
 		this.id = id;
 	}
 
+	public void setVersion(Long version) {
+		this.version = version;
+	}
+
+	public void setRevision(Long revision) {
+		this.revision = revision;
+	}
+
+	/* called before each write, the version is incremented on flush */
+	public void markRevisionPending() {
+		this.revision = version == null ? 0 : -(version + 1);
+	}
+
 	public void setArticleNumber(String articleNumber) {
 		this.articleNumber = articleNumber;
 	}
@@ -77,10 +175,42 @@ public class Shoe {
 
 	public void setSize(String size) {
 		this.size = size;
+		this.sizeValue = parseSize(size);
 	}
 
 	public void setStock(String stock) {
 		this.stock = stock;
+		this.stockCount = parseStock(stock);
+	}
+
+	/**
+	 * Numeric value of a size like <code>42</code> or <code>10,5</code>, or
+	 * <code>null</code> if it is not a number.
+	 */
+	public static BigDecimal parseSize(String size) {
+		if (size == null) {
+			return null;
+		}
+		try {
+			BigDecimal value = new BigDecimal(size.trim().replace(',', '.'));
+			return value.scale() <= 2 && value.precision() - value.scale() <= 3 ? value : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Numeric value of a stock, or <code>null</code> if it is not an integer.
+	 */
+	public static Integer parseStock(String stock) {
+		if (stock == null) {
+			return null;
+		}
+		try {
+			return Integer.valueOf(stock.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
 	}
 
 	public boolean isEmpty() {
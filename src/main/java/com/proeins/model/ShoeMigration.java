@@ -0,0 +1,41 @@
+package com.proeins.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Progress of a data migration that walks the shoes in id order: the id of
+ * the last shoe it has handled.
+ */
+@Entity(name = "ShoeMigration")
+@Table(name = "shoe_migration")
+public class ShoeMigration {
+
+	@Id
+	private String name;
+
+	@Column(name = "last_id", nullable = false)
+	private Long lastId;
+
+	protected ShoeMigration() {
+	}
+
+	public ShoeMigration(String name, long lastId) {
+		this.name = name;
+		this.lastId = lastId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Long getLastId() {
+		return lastId;
+	}
+
+	public void setLastId(Long lastId) {
+		this.lastId = lastId;
+	}
+}
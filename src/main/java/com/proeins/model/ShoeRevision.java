@@ -0,0 +1,58 @@
+package com.proeins.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * The single row holding the last revision handed out by the sequencer, and
+ * the revision up to which tombstones have been pruned.
+ */
+@Entity(name = "ShoeRevision")
+@Table(name = "shoe_revision")
+public class ShoeRevision {
+
+	public static final int ID = 1;
+
+	/* revisions of rows waiting for the sequencer are at most this */
+	public static final long PENDING = 0;
+
+	@Id
+	private Integer id;
+
+	@Column(name = "last_revision", nullable = false)
+	private Long lastRevision;
+
+	/* when the last revision was handed out, null before it was recorded */
+	@Column(name = "sequenced_millis")
+	private Long sequencedMillis;
+
+	/* null until tombstones are first pruned */
+	@Column(name = "pruned_revision")
+	private Long prunedRevision;
+
+	protected ShoeRevision() {
+	}
+
+	public ShoeRevision(long lastRevision) {
+		this.id = ID;
+		this.lastRevision = lastRevision;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public Long getLastRevision() {
+		return lastRevision;
+	}
+
+	public long getSequencedMillis() {
+		return sequencedMillis == null ? 0 : sequencedMillis;
+	}
+
+	public long getPrunedRevision() {
+		return prunedRevision == null ? 0 : prunedRevision;
+	}
+}
@@ -0,0 +1,59 @@
+package com.proeins.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Marks a deleted shoe for clients syncing changes, at the revision of the
+ * delete. Shoe ids are never reused, so the id stays unique. Tombstones are
+ * pruned after a retention period, see
+ * {@link com.proeins.dao.ShoeTombstonePruner}.
+ */
+@Entity(name = "ShoeTombstone")
+@Table(name = "shoe_tombstone", indexes = { @Index(name = "idx_shoe_tombstone_revision", columnList = "revision") })
+public class ShoeTombstone {
+
+	@Id
+	private Long id;
+
+	private String articleNumber;
+
+	@Column(nullable = false)
+	private Long revision;
+
+	/* null for tombstones written before it was recorded */
+	@JsonIgnore
+	@Column(name = "deleted_millis")
+	private Long deletedMillis;
+
+	protected ShoeTombstone() {
+	}
+
+	public ShoeTombstone(Long id, String articleNumber, Long revision) {
+		this.id = id;
+		this.articleNumber = articleNumber;
+		this.revision = revision;
+		this.deletedMillis = System.currentTimeMillis();
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getArticleNumber() {
+		return articleNumber;
+	}
+
+	public Long getRevision() {
+		return revision;
+	}
+
+	public Long getDeletedMillis() {
+		return deletedMillis;
+	}
+}
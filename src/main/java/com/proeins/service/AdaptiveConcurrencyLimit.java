@@ -0,0 +1,97 @@
+package com.proeins.service;
+
+/**
+ * A limit on the calls in flight that follows the observed latency, after the
+ * gradient algorithm: every finished call compares its latency against the
+ * long-term average. While calls are not slower than <code>tolerance</code>
+ * times the average the limit grows by its square root, which leaves room for
+ * a short queue; slower calls shrink it in proportion, by at most half. Each
+ * new limit is only weighed in by <code>smoothing</code>, so single outliers
+ * do not move it much.
+ * <p>
+ * The limit only grows while at least half of it is in use, otherwise there is
+ * no evidence it is too low. After a long overload the average has caught up
+ * with the slow calls; it is pulled back once calls are twice as fast again.
+ */
+public class AdaptiveConcurrencyLimit {
+
+	private final int minLimit;
+
+	private final int maxLimit;
+
+	private final double tolerance;
+
+	private final double smoothing;
+
+	/* weight of a sample in the long-term average */
+	private final double averageWeight;
+
+	private double limit;
+
+	private double averageNanos;
+
+	private int inFlight;
+
+	private long rejected;
+
+	public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing,
+			int window) {
+		if (minLimit < 1 || minLimit > maxLimit) {
+			throw new IllegalArgumentException("Limits must satisfy 1 <= min <= max: " + minLimit + ", " + maxLimit);
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.tolerance = tolerance;
+		this.smoothing = smoothing;
+		this.averageWeight = 2.0 / (window + 1);
+		this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+	}
+
+	/**
+	 * Takes a place for a call, <code>false</code> if the limit is reached. A
+	 * place taken must be given back with {@link #release(long)}.
+	 */
+	public synchronized boolean tryAcquire() {
+		if (inFlight >= (int) limit) {
+			rejected++;
+			return false;
+		}
+		inFlight++;
+		return true;
+	}
+
+	/**
+	 * Gives back the place of a call that took <code>latencyNanos</code> and
+	 * adjusts the limit by it.
+	 */
+	public synchronized void release(long latencyNanos) {
+		int observedInFlight = inFlight--;
+		double latency = Math.max(latencyNanos, 1);
+		if (averageNanos == 0) {
+			averageNanos = latency;
+		} else {
+			averageNanos += averageWeight * (latency - averageNanos);
+		}
+		if (averageNanos > 2 * latency) {
+			averageNanos *= 0.95;
+		}
+		double gradient = Math.max(0.5, Math.min(1.0, tolerance * averageNanos / latency));
+		if (gradient == 1.0 && observedInFlight * 2 < limit) {
+			return;
+		}
+		double target = limit * gradient + Math.sqrt(limit);
+		limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - smoothing) + target * smoothing));
+	}
+
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	public synchronized long getRejected() {
+		return rejected;
+	}
+}
@@ -0,0 +1,235 @@
+package com.proeins.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import com.proeins.exception.ShoeNotFoundException;
+import com.proeins.exception.StockConflictException;
+
+/**
+ * Absorbs contention on hot shoes by reserving from units held in memory.
+ * <p>
+ * When its local units run out, a shoe claims a chunk of stock from the
+ * database with one conditional update and serves the following
+ * reservations from it. Released and unsold units go back to the database
+ * on the next flush. Every unit is taken from the database before it is
+ * sold, so several nodes can buffer the same shoe without overselling.
+ * Between flushes the stock in the database is lower than what is really
+ * left, by the units held here.
+ * <p>
+ * Local units are striped over several counters, so concurrent buyers of
+ * the same shoe mostly update different counters.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "shoe.stock.buffered.enabled", havingValue = "true")
+public class BufferedStockReservations implements StockReservations {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BufferedStockReservations.class);
+
+	private static final int STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+
+	private StockReservations direct;
+
+	@Value("${shoe.stock.buffered.chunk_size:20}")
+	private int chunkSize = 20;
+
+	@Value("${shoe.stock.buffered.flush_interval_millis:1000}")
+	private long flushIntervalMillis = 1000;
+
+	/* shoes are never removed, units added after a flush must stay reachable */
+	private final ConcurrentMap<Long, Units> units = new ConcurrentHashMap<>();
+
+	private ScheduledExecutorService scheduler;
+
+	@Autowired
+	public BufferedStockReservations(@Qualifier("directStockReservations") StockReservations direct) {
+		this.direct = direct;
+	}
+
+	@PostConstruct
+	public void initialize() {
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "shoe-stock-flush");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flush();
+				} catch (RuntimeException e) {
+					LOGGER.warn("Returning buffered stock failed", e);
+				}
+			}
+		}, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		scheduler.shutdown();
+		scheduler.awaitTermination(flushIntervalMillis, TimeUnit.MILLISECONDS);
+		flush();
+	}
+
+	@Override
+	public void reserve(long id, int quantity) throws ShoeNotFoundException, StockConflictException {
+		Units shoeUnits = unitsOf(id);
+		if (shoeUnits.take(quantity)) {
+			return;
+		}
+		int claimed = Math.max(quantity, chunkSize);
+		try {
+			direct.reserve(id, claimed);
+		} catch (StockConflictException e) {
+			// not a full chunk left, make up the quantity from the units held here and the rest in the database
+			reserveRemaining(id, quantity, shoeUnits);
+			return;
+		}
+		shoeUnits.add(claimed - quantity);
+	}
+
+	private void reserveRemaining(long id, int quantity, Units shoeUnits) throws ShoeNotFoundException, StockConflictException {
+		int held = shoeUnits.drain();
+		boolean reserved = false;
+		try {
+			if (held < quantity) {
+				direct.reserve(id, quantity - held);
+			}
+			reserved = true;
+		} finally {
+			shoeUnits.add(reserved ? held - quantity : held);
+		}
+	}
+
+	@Override
+	public void release(long id, int quantity) throws ShoeNotFoundException, StockConflictException {
+		Units shoeUnits = units.get(id);
+		if (shoeUnits == null) {
+			// unknown here, let the database check that the shoe exists
+			direct.release(id, quantity);
+			return;
+		}
+		shoeUnits.add(quantity);
+	}
+
+	/**
+	 * Returns all units held in memory to the database.
+	 */
+	public void flush() {
+		for (Map.Entry<Long, Units> entry : units.entrySet()) {
+			int drained = entry.getValue().drain();
+			if (drained == 0) {
+				continue;
+			}
+			try {
+				direct.release(entry.getKey(), drained);
+			} catch (ShoeNotFoundException e) {
+				LOGGER.debug("Dropping {} buffered units of deleted shoe {}", drained, entry.getKey());
+			} catch (StockConflictException | RuntimeException e) {
+				// keep the units for the next flush
+				entry.getValue().add(drained);
+				LOGGER.warn("Cannot return {} units of shoe {}: {}", drained, entry.getKey(), e.getMessage());
+			}
+		}
+	}
+
+	private Units unitsOf(long id) {
+		Units shoeUnits = units.get(id);
+		if (shoeUnits == null) {
+			Units created = new Units();
+			shoeUnits = units.putIfAbsent(id, created);
+			if (shoeUnits == null) {
+				shoeUnits = created;
+			}
+		}
+		return shoeUnits;
+	}
+
+	private static class Units {
+
+		private final AtomicInteger[] stripes = new AtomicInteger[STRIPES];
+
+		Units() {
+			for (int i = 0; i < stripes.length; i++) {
+				stripes[i] = new AtomicInteger();
+			}
+		}
+
+		boolean take(int quantity) {
+			int home = home();
+			for (int i = 0; i < stripes.length; i++) {
+				AtomicInteger stripe = stripes[(home + i) & (stripes.length - 1)];
+				int available = stripe.get();
+				while (available >= quantity) {
+					if (stripe.compareAndSet(available, available - quantity)) {
+						return true;
+					}
+					available = stripe.get();
+				}
+			}
+			return takeAcrossStripes(quantity);
+		}
+
+		/* no stripe holds the whole quantity, collect it from several or put back what was taken */
+		private boolean takeAcrossStripes(int quantity) {
+			int taken = 0;
+			for (AtomicInteger stripe : stripes) {
+				int available = stripe.get();
+				while (available > 0) {
+					int part = Math.min(available, quantity - taken);
+					if (stripe.compareAndSet(available, available - part)) {
+						taken += part;
+						break;
+					}
+					available = stripe.get();
+				}
+				if (taken == quantity) {
+					return true;
+				}
+			}
+			add(taken);
+			return false;
+		}
+
+		void add(int quantity) {
+			if (quantity > 0) {
+				stripes[home()].addAndGet(quantity);
+			}
+		}
+
+		int drain() {
+			int drained = 0;
+			for (AtomicInteger stripe : stripes) {
+				drained += stripe.getAndSet(0);
+			}
+			return drained;
+		}
+
+		private int home() {
+			return (int) Thread.currentThread().getId() & (stripes.length - 1);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.proeins.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.cache.management.CacheStatisticsMXBean;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.proeins.dao.ShoeDaoImpl;
+import com.proeins.model.Shoe;
+
+/**
+ * Hit, miss and eviction counts of the second-level cache regions. Hibernate
+ * counts hits and misses, evictions are only known to the JCache provider,
+ * which publishes them as statistics MXBean.
+ */
+@Service
+public class CacheStatisticsService {
+
+	private static final String[] REGIONS = { Shoe.CACHE_REGION, ShoeDaoImpl.SEARCH_CACHE_REGION };
+
+	private SessionFactory sessionFactory;
+
+	@Autowired
+	public CacheStatisticsService(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	public Map<String, Object> getStatistics() {
+		Statistics statistics = sessionFactory.getStatistics();
+		Map<String, Object> result = new LinkedHashMap<>();
+		for (String region : REGIONS) {
+			Map<String, Object> regionStatistics = new LinkedHashMap<>();
+			SecondLevelCacheStatistics cacheStatistics = statistics.getSecondLevelCacheStatistics(region);
+			if (cacheStatistics != null) {
+				regionStatistics.put("hits", cacheStatistics.getHitCount());
+				regionStatistics.put("misses", cacheStatistics.getMissCount());
+				regionStatistics.put("puts", cacheStatistics.getPutCount());
+			}
+			CacheStatisticsMXBean providerStatistics = providerStatistics(region);
+			if (providerStatistics != null) {
+				regionStatistics.put("evictions", providerStatistics.getCacheEvictions());
+				regionStatistics.put("removals", providerStatistics.getCacheRemovals());
+			}
+			result.put(region, regionStatistics);
+		}
+
+		Map<String, Object> queryStatistics = new LinkedHashMap<>();
+		queryStatistics.put("hits", statistics.getQueryCacheHitCount());
+		queryStatistics.put("misses", statistics.getQueryCacheMissCount());
+		queryStatistics.put("puts", statistics.getQueryCachePutCount());
+		queryStatistics.put("executions", statistics.getQueryExecutionCount());
+		result.put("queries", queryStatistics);
+		return result;
+	}
+
+	private CacheStatisticsMXBean providerStatistics(String region) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			Set<ObjectName> names = server.queryNames(
+					new ObjectName("javax.cache:type=CacheStatistics,Cache=" + region + ",*"), null);
+			if (names.isEmpty()) {
+				return null;
+			}
+			return JMX.newMXBeanProxy(server, names.iterator().next(), CacheStatisticsMXBean.class);
+		} catch (MalformedObjectNameException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.proeins.service;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.AbstractAdvisingBeanPostProcessor;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.RootClassFilter;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+
+import com.proeins.exception.ServiceOverloadedException;
+
+/**
+ * Sheds calls to the methods of the given interface above an adaptive limit
+ * of calls in flight, with a {@link ServiceOverloadedException} instead of
+ * letting them queue for a connection. Methods of read-only transactions
+ * count against the read limit, all others against the write limit, so a
+ * burst of searches cannot starve the writes or the other way round.
+ * <p>
+ * The advice goes in front of the transaction advice, so a rejected call
+ * never opens a transaction. Unlimited methods, such as streaming exports,
+ * pass through without taking a place.
+ */
+public class ConcurrencyLimitPostProcessor extends AbstractAdvisingBeanPostProcessor {
+
+	private static final long serialVersionUID = 1L;
+
+	private final AdaptiveConcurrencyLimit readLimit;
+
+	private final AdaptiveConcurrencyLimit writeLimit;
+
+	public ConcurrencyLimitPostProcessor(final Class<?> type, final AdaptiveConcurrencyLimit readLimit,
+			final AdaptiveConcurrencyLimit writeLimit, final int retryAfterSeconds, Collection<String> unlimitedMethods) {
+		this.readLimit = readLimit;
+		this.writeLimit = writeLimit;
+		final Set<String> unlimited = new HashSet<>(unlimitedMethods);
+		StaticMethodMatcherPointcut pointcut = new StaticMethodMatcherPointcut() {
+			@Override
+			public boolean matches(Method method, Class<?> targetClass) {
+				if (unlimited.contains(method.getName())) {
+					return false;
+				}
+				try {
+					type.getMethod(method.getName(), method.getParameterTypes());
+					return true;
+				} catch (NoSuchMethodException e) {
+					return false;
+				}
+			}
+		};
+		pointcut.setClassFilter(new RootClassFilter(type));
+		this.advisor = new DefaultPointcutAdvisor(pointcut, new MethodInterceptor() {
+			private final AnnotationTransactionAttributeSource transactionAttributes = new AnnotationTransactionAttributeSource();
+
+			private final ConcurrentMap<Method, AdaptiveConcurrencyLimit> limits = new ConcurrentHashMap<>();
+
+			@Override
+			public Object invoke(MethodInvocation invocation) throws Throwable {
+				AdaptiveConcurrencyLimit limit = limitOf(invocation);
+				if (!limit.tryAcquire()) {
+					throw new ServiceOverloadedException(
+							(limit == readLimit ? "Too many reads" : "Too many writes") + " in flight", retryAfterSeconds);
+				}
+				long start = System.nanoTime();
+				try {
+					return invocation.proceed();
+				} finally {
+					limit.release(System.nanoTime() - start);
+				}
+			}
+
+			private AdaptiveConcurrencyLimit limitOf(MethodInvocation invocation) {
+				Method method = invocation.getMethod();
+				AdaptiveConcurrencyLimit limit = limits.get(method);
+				if (limit == null) {
+					Class<?> targetClass = invocation.getThis() != null ? AopUtils.getTargetClass(invocation.getThis()) : null;
+					TransactionAttribute attribute = transactionAttributes.getTransactionAttribute(method, targetClass);
+					limit = attribute != null && attribute.isReadOnly() ? readLimit : writeLimit;
+					limits.putIfAbsent(method, limit);
+				}
+				return limit;
+			}
+		});
+		setBeforeExistingAdvisors(true);
+	}
+
+	public AdaptiveConcurrencyLimit getReadLimit() {
+		return readLimit;
+	}
+
+	public AdaptiveConcurrencyLimit getWriteLimit() {
+		return writeLimit;
+	}
+}
@@ -0,0 +1,58 @@
+package com.proeins.service;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+import com.proeins.dao.ConnectionPoolMetrics;
+
+/**
+ * Checkout waits, connection counts, churn and statement cache use of the
+ * connection pool, to size it per node from data. c3p0 does not count
+ * statement cache hits, its fill level against <code>max_statements</code>
+ * tells whether statements get evicted.
+ */
+@Service
+public class ConnectionPoolStatisticsService {
+
+	private ConnectionPoolMetrics metrics;
+
+	@Autowired
+	public ConnectionPoolStatisticsService(ConnectionPoolMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public Map<String, Object> getStatistics() throws SQLException {
+		ComboPooledDataSource pool = metrics.getPool();
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("acquire", metrics.getAcquireTimes().snapshot().toMap());
+
+		Map<String, Object> connections = new LinkedHashMap<>();
+		connections.put("active", metrics.getBusyConnections());
+		connections.put("idle", metrics.getIdleConnections());
+		connections.put("pending", metrics.getPendingCheckouts());
+		connections.put("failedCheckouts", metrics.getFailedCheckouts());
+		connections.put("minSize", pool.getMinPoolSize());
+		connections.put("maxSize", pool.getMaxPoolSize());
+		result.put("connections", connections);
+
+		Map<String, Object> churn = new LinkedHashMap<>();
+		churn.put("opened", metrics.getOpenedConnections());
+		churn.put("closed", metrics.getClosedConnections());
+		result.put("churn", churn);
+
+		Map<String, Object> statements = new LinkedHashMap<>();
+		int maxStatements = pool.getMaxStatements();
+		int cached = metrics.getCachedStatements();
+		statements.put("maxStatements", maxStatements);
+		statements.put("cached", cached);
+		statements.put("checkedOut", metrics.getCheckedOutStatements());
+		statements.put("fill", maxStatements == 0 ? 0 : (double) cached / maxStatements);
+		result.put("statementCache", statements);
+		return result;
+	}
+}
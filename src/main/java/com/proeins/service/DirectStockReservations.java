@@ -0,0 +1,34 @@
+package com.proeins.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.proeins.dao.ShoeDao;
+import com.proeins.exception.ShoeNotFoundException;
+import com.proeins.exception.StockConflictException;
+
+/**
+ * Applies every reservation to the database right away.
+ */
+@Service
+@Transactional(rollbackFor = { ShoeNotFoundException.class, StockConflictException.class })
+public class DirectStockReservations implements StockReservations {
+
+	private ShoeDao shoeDao;
+
+	@Autowired
+	public DirectStockReservations(ShoeDao shoeDao) {
+		this.shoeDao = shoeDao;
+	}
+
+	@Override
+	public void reserve(long id, int quantity) throws ShoeNotFoundException, StockConflictException {
+		shoeDao.reserveStock(id, quantity);
+	}
+
+	@Override
+	public void release(long id, int quantity) throws ShoeNotFoundException, StockConflictException {
+		shoeDao.releaseStock(id, quantity);
+	}
+}
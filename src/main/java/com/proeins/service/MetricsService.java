@@ -0,0 +1,134 @@
+package com.proeins.service;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Map;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.proeins.dao.ConnectionPoolMetrics;
+import com.proeins.dao.ReplicaRoutingDataSource;
+import com.proeins.metrics.LatencyRegistry;
+
+/**
+ * All metrics of the node in the Prometheus text exposition format: the
+ * latency histograms of endpoints, services and DAOs, the connection pool, the
+ * connections routed to the primary and each replica, the executed and
+ * coalesced searches, the concurrency limits of the service and Hibernate's
+ * statement, entity and cache counters.
+ */
+@Service
+public class MetricsService {
+
+	private LatencyRegistry latencyRegistry;
+
+	private SessionFactory sessionFactory;
+
+	private ConnectionPoolMetrics connectionPoolMetrics;
+
+	private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+	private SearchCoalescer searchCoalescer;
+
+	private ConcurrencyLimitPostProcessor concurrencyLimits;
+
+	@Autowired
+	public MetricsService(LatencyRegistry latencyRegistry, SessionFactory sessionFactory,
+			ConnectionPoolMetrics connectionPoolMetrics, ReplicaRoutingDataSource replicaRoutingDataSource) {
+		this.latencyRegistry = latencyRegistry;
+		this.sessionFactory = sessionFactory;
+		this.connectionPoolMetrics = connectionPoolMetrics;
+		this.replicaRoutingDataSource = replicaRoutingDataSource;
+		latencyRegistry.register("shoe_pool_acquire_seconds", "", connectionPoolMetrics.getAcquireTimes());
+	}
+
+	@Autowired(required = false)
+	public void setSearchCoalescer(SearchCoalescer searchCoalescer) {
+		this.searchCoalescer = searchCoalescer;
+	}
+
+	@Autowired(required = false)
+	public void setConcurrencyLimits(ConcurrencyLimitPostProcessor concurrencyLimits) {
+		this.concurrencyLimits = concurrencyLimits;
+	}
+
+	public String scrape() throws IOException, SQLException {
+		StringBuilder out = new StringBuilder(8192);
+		latencyRegistry.write(out);
+
+		gauge(out, "shoe_pool_connections", "state=\"active\"", connectionPoolMetrics.getBusyConnections());
+		gauge(out, "shoe_pool_connections", "state=\"idle\"", connectionPoolMetrics.getIdleConnections());
+		gauge(out, "shoe_pool_pending_checkouts", null, connectionPoolMetrics.getPendingCheckouts());
+		gauge(out, "shoe_pool_max_size", null, connectionPoolMetrics.getPool().getMaxPoolSize());
+		counter(out, "shoe_pool_failed_checkouts_total", null, connectionPoolMetrics.getFailedCheckouts());
+		counter(out, "shoe_pool_connections_opened_total", null, connectionPoolMetrics.getOpenedConnections());
+		counter(out, "shoe_pool_connections_closed_total", null, connectionPoolMetrics.getClosedConnections());
+		if (replicaRoutingDataSource.hasReplicas()) {
+			for (Map.Entry<String, Long> target : replicaRoutingDataSource.getConnectionCounts().entrySet()) {
+				counter(out, "shoe_datasource_connections_total", "target=\"" + target.getKey() + "\"", target.getValue());
+			}
+		}
+
+		if (searchCoalescer != null) {
+			// the coalescing ratio is coalesced over all searches
+			counter(out, "shoe_search_requests_total", "result=\"executed\"", searchCoalescer.getExecutions());
+			counter(out, "shoe_search_requests_total", "result=\"coalesced\"", searchCoalescer.getCoalesced());
+		}
+
+		if (concurrencyLimits != null) {
+			limit(out, "read", concurrencyLimits.getReadLimit());
+			limit(out, "write", concurrencyLimits.getWriteLimit());
+		}
+
+		Statistics statistics = sessionFactory.getStatistics();
+		if (statistics.isStatisticsEnabled()) {
+			counter(out, "hibernate_sessions_opened_total", null, statistics.getSessionOpenCount());
+			counter(out, "hibernate_flushes_total", null, statistics.getFlushCount());
+			counter(out, "hibernate_transactions_total", null, statistics.getTransactionCount());
+			counter(out, "hibernate_statements_prepared_total", null, statistics.getPrepareStatementCount());
+			counter(out, "hibernate_statements_closed_total", null, statistics.getCloseStatementCount());
+			counter(out, "hibernate_entities_total", "operation=\"load\"", statistics.getEntityLoadCount());
+			counter(out, "hibernate_entities_total", "operation=\"fetch\"", statistics.getEntityFetchCount());
+			counter(out, "hibernate_entities_total", "operation=\"insert\"", statistics.getEntityInsertCount());
+			counter(out, "hibernate_entities_total", "operation=\"update\"", statistics.getEntityUpdateCount());
+			counter(out, "hibernate_entities_total", "operation=\"delete\"", statistics.getEntityDeleteCount());
+			counter(out, "hibernate_queries_executed_total", null, statistics.getQueryExecutionCount());
+			gauge(out, "hibernate_query_execution_max_seconds", null, statistics.getQueryExecutionMaxTime() / 1000.0);
+			counter(out, "hibernate_second_level_cache_requests_total", "result=\"hit\"", statistics.getSecondLevelCacheHitCount());
+			counter(out, "hibernate_second_level_cache_requests_total", "result=\"miss\"", statistics.getSecondLevelCacheMissCount());
+			counter(out, "hibernate_query_cache_requests_total", "result=\"hit\"", statistics.getQueryCacheHitCount());
+			counter(out, "hibernate_query_cache_requests_total", "result=\"miss\"", statistics.getQueryCacheMissCount());
+		}
+		return out.toString();
+	}
+
+	private static void limit(StringBuilder out, String kind, AdaptiveConcurrencyLimit limit) {
+		String labels = "kind=\"" + kind + "\"";
+		gauge(out, "shoe_concurrency_limit", labels, limit.getLimit());
+		gauge(out, "shoe_concurrency_in_flight", labels, limit.getInFlight());
+		counter(out, "shoe_concurrency_rejected_total", labels, limit.getRejected());
+	}
+
+	private static void gauge(StringBuilder out, String name, String labels, Number value) {
+		sample(out, "gauge", name, labels, value);
+	}
+
+	private static void counter(StringBuilder out, String name, String labels, Number value) {
+		sample(out, "counter", name, labels, value);
+	}
+
+	/* the TYPE line is written before the first sample of a metric only */
+	private static void sample(StringBuilder out, String type, String name, String labels, Number value) {
+		if (out.lastIndexOf("# TYPE " + name + " ") < 0) {
+			out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		}
+		out.append(name);
+		if (labels != null) {
+			out.append('{').append(labels).append('}');
+		}
+		out.append(' ').append(value).append('\n');
+	}
+}
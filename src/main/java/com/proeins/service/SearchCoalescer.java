@@ -0,0 +1,97 @@
+package com.proeins.service;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Lets concurrent callers with the same key share one execution: the first
+ * runs it, those arriving while it runs wait for its result or exception.
+ * A caller arriving after the execution finished starts a new one, so unlike
+ * a cache no result outlives its execution.
+ * <p>
+ * Waiting callers get the very same result object and must not modify it.
+ */
+@Component
+@ConditionalOnProperty(name = "shoe.search.coalescing.enabled", havingValue = "true")
+public class SearchCoalescer {
+
+	private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+	private final AtomicLong executions = new AtomicLong();
+
+	private final AtomicLong coalesced = new AtomicLong();
+
+	@SuppressWarnings("unchecked")
+	public <T> T execute(String key, Callable<T> execution) {
+		CompletableFuture<Object> own = new CompletableFuture<>();
+		CompletableFuture<Object> running = inFlight.putIfAbsent(key, own);
+		if (running != null) {
+			coalesced.incrementAndGet();
+			return (T) await(running);
+		}
+		executions.incrementAndGet();
+		try {
+			T result = execution.call();
+			// removed first, so nobody joins a flight that has already landed
+			inFlight.remove(key, own);
+			own.complete(result);
+			return result;
+		} catch (Exception e) {
+			inFlight.remove(key, own);
+			own.completeExceptionally(e);
+			throw e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException(e);
+		} catch (Error e) {
+			inFlight.remove(key, own);
+			own.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	private static Object await(CompletableFuture<Object> running) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return running.get();
+				} catch (InterruptedException e) {
+					// the result is on its way, the interrupt is kept for the caller
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Executions started, one per distinct key in flight.
+	 */
+	public long getExecutions() {
+		return executions.get();
+	}
+
+	/**
+	 * Callers served by the execution of an earlier caller.
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+}
@@ -0,0 +1,39 @@
+package com.proeins.service;
+
+import com.proeins.model.Shoe;
+
+/**
+ * A committed write as published by {@link ShoeChangeFeed}. Ids are unique
+ * per node and run, and ordered within them.
+ */
+public class ShoeChange {
+
+	public enum Type {
+		SAVED, UPDATED, DELETED
+	}
+
+	private final String id;
+	private final Type type;
+	private final Shoe shoe;
+
+	public ShoeChange(String id, Type type, Shoe shoe) {
+		this.id = id;
+		this.type = type;
+		this.shoe = shoe;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * The shoe as written, the last state for deleted ones.
+	 */
+	public Shoe getShoe() {
+		return shoe;
+	}
+}
@@ -0,0 +1,352 @@
+package com.proeins.service;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.proeins.dao.ShoeChangeListener;
+import com.proeins.model.Shoe;
+
+/**
+ * Numbers committed writes and hands them to subscribers. The last
+ * <code>replay_size</code> changes are kept in a ring, so a subscriber that
+ * reconnects with the id of the last change it saw gets the ones it missed.
+ * When that id is no longer in the ring, or comes from an earlier run, the
+ * subscriber is told to reset and load the catalog again.
+ * <p>
+ * Sequencing and replay run on a single feed thread, which only queues the
+ * changes per subscriber; a pool of <code>sender_threads</code> writes them
+ * out. Idle subscribers cost no thread, committing requests never wait for
+ * clients, and a slow client only holds up itself. A subscriber with more
+ * than <code>buffer_size</code> changes waiting is closed, it reconnects
+ * with its last id and catches up from the ring or resets. A subscriber that
+ * fails is dropped. The feed only sees writes made through this node.
+ */
+@Component
+@ConditionalOnProperty(name = "shoe.changes.enabled", havingValue = "true")
+public class ShoeChangeFeed implements ShoeChangeListener {
+
+	/**
+	 * Receives changes on a sender thread, one call at a time; an exception
+	 * unsubscribes.
+	 */
+	public interface Subscriber {
+
+		void changed(ShoeChange change) throws IOException;
+
+		/**
+		 * The changes after the requested id are no longer known. The
+		 * subscriber should reload and continue after the given id.
+		 */
+		void reset(String id) throws IOException;
+
+		void heartbeat() throws IOException;
+
+		/**
+		 * The subscriber fell too far behind and is no longer fed.
+		 */
+		void close();
+	}
+
+	private static final Object HEARTBEAT = new Object();
+
+	private static final Object CLOSE = new Object();
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShoeChangeFeed.class);
+
+	@Value("${shoe.changes.replay_size:10000}")
+	private int replaySize = 10000;
+
+	@Value("${shoe.changes.heartbeat_seconds:15}")
+	private long heartbeatSeconds = 15;
+
+	@Value("${shoe.changes.timeout_millis:300000}")
+	private long timeoutMillis = 300000;
+
+	@Value("${shoe.changes.buffer_size:1000}")
+	private int bufferSize = 1000;
+
+	@Value("${shoe.changes.sender_threads:4}")
+	private int senderThreads = 4;
+
+	private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+	/* the fields below are confined to the feed thread */
+	private ShoeChange[] replay;
+
+	private long sequence;
+
+	private final Map<Subscriber, Subscription> subscriptions = new LinkedHashMap<>();
+
+	private ScheduledExecutorService feed;
+
+	private ExecutorService senders;
+
+	@PostConstruct
+	public void initialize() {
+		replay = new ShoeChange[Math.max(replaySize, 1)];
+		feed = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "shoe-change-feed");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		final AtomicInteger threads = new AtomicInteger();
+		senders = Executors.newFixedThreadPool(Math.max(senderThreads, 1), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "shoe-change-sender-" + threads.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		if (heartbeatSeconds > 0) {
+			feed.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					heartbeat();
+				}
+			}, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		feed.shutdownNow();
+		senders.shutdownNow();
+	}
+
+	/**
+	 * How long a subscription is kept open before the client has to
+	 * reconnect.
+	 */
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * Starts delivering changes to the subscriber, first those after
+	 * <code>lastId</code> if given, then new ones as they are committed.
+	 */
+	public void subscribe(final String lastId, final Subscriber subscriber) {
+		run(new Runnable() {
+			@Override
+			public void run() {
+				Subscription subscription = new Subscription(subscriber);
+				if (lastId != null && !lastId.isEmpty()) {
+					long after = replayPosition(lastId);
+					if (after < 0) {
+						subscription.offer(idOf(sequence));
+					}
+					// the replay is bounded by the ring, only what follows counts against the buffer
+					for (long replayed = after + 1; after >= 0 && replayed <= sequence; replayed++) {
+						subscription.limit++;
+						subscription.offer(replay[index(replayed)]);
+					}
+				}
+				subscriptions.put(subscriber, subscription);
+			}
+		});
+	}
+
+	public void unsubscribe(final Subscriber subscriber) {
+		run(new Runnable() {
+			@Override
+			public void run() {
+				Subscription subscription = subscriptions.remove(subscriber);
+				if (subscription != null) {
+					subscription.cancel();
+				}
+			}
+		});
+	}
+
+	@Override
+	public void shoeSaved(Shoe shoe) {
+		publish(ShoeChange.Type.SAVED, shoe);
+	}
+
+	@Override
+	public void shoeUpdated(Shoe shoe) {
+		publish(ShoeChange.Type.UPDATED, shoe);
+	}
+
+	@Override
+	public void shoeDeleted(Shoe shoe) {
+		publish(ShoeChange.Type.DELETED, shoe);
+	}
+
+	private void publish(final ShoeChange.Type type, final Shoe shoe) {
+		run(new Runnable() {
+			@Override
+			public void run() {
+				sequence++;
+				ShoeChange change = new ShoeChange(idOf(sequence), type, shoe);
+				replay[index(sequence)] = change;
+				for (Iterator<Subscription> i = subscriptions.values().iterator(); i.hasNext();) {
+					if (!i.next().offer(change)) {
+						i.remove();
+					}
+				}
+			}
+		});
+	}
+
+	/* idle connections are closed by proxies, and dead ones are only noticed on a write */
+	private void heartbeat() {
+		for (Subscription subscription : subscriptions.values()) {
+			subscription.offerIfIdle(HEARTBEAT);
+		}
+	}
+
+	private void run(Runnable task) {
+		try {
+			feed.execute(task);
+		} catch (RejectedExecutionException e) {
+			// shutting down, subscribers reconnect to another node
+		}
+	}
+
+	/* sequence of the given id if the changes after it are still in the ring, -1 otherwise */
+	private long replayPosition(String id) {
+		int separator = id.lastIndexOf('-');
+		if (separator < 0 || !id.substring(0, separator).equals(epoch)) {
+			return -1;
+		}
+		long after;
+		try {
+			after = Long.parseLong(id.substring(separator + 1));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+		return after <= sequence && sequence - after <= replay.length ? after : -1;
+	}
+
+	private String idOf(long sequence) {
+		return epoch + "-" + sequence;
+	}
+
+	private int index(long sequence) {
+		return (int) (sequence % replay.length);
+	}
+
+	/*
+	 * The changes waiting for one subscriber. Filled by the feed thread and
+	 * drained by at most one sender at a time, so the subscriber sees them in
+	 * order.
+	 */
+	private final class Subscription implements Runnable {
+
+		private final Subscriber subscriber;
+
+		/* guarded by this */
+		private final Deque<Object> pending = new ArrayDeque<>();
+
+		private int limit = Math.max(bufferSize, 1);
+
+		private boolean draining;
+
+		private boolean closed;
+
+		Subscription(Subscriber subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		/* false once the subscription is closed */
+		boolean offer(Object event) {
+			boolean open;
+			synchronized (this) {
+				if (closed) {
+					return false;
+				}
+				if (pending.size() >= limit) {
+					LOGGER.debug("Closed change subscriber {} changes behind", pending.size());
+					closed = true;
+					pending.clear();
+					pending.add(CLOSE);
+				} else {
+					pending.add(event);
+				}
+				open = !closed;
+				if (draining) {
+					return open;
+				}
+				draining = true;
+			}
+			send();
+			return open;
+		}
+
+		void offerIfIdle(Object event) {
+			synchronized (this) {
+				if (draining || closed) {
+					return;
+				}
+			}
+			offer(event);
+		}
+
+		synchronized void cancel() {
+			closed = true;
+			pending.clear();
+		}
+
+		private void send() {
+			try {
+				senders.execute(this);
+			} catch (RejectedExecutionException e) {
+				// shutting down, subscribers reconnect to another node
+			}
+		}
+
+		@Override
+		public void run() {
+			Object event;
+			while (true) {
+				synchronized (this) {
+					event = pending.poll();
+					if (event == null) {
+						draining = false;
+						return;
+					}
+				}
+				try {
+					if (event == CLOSE) {
+						subscriber.close();
+					} else if (event == HEARTBEAT) {
+						subscriber.heartbeat();
+					} else if (event instanceof String) {
+						subscriber.reset((String) event);
+					} else {
+						subscriber.changed((ShoeChange) event);
+					}
+				} catch (IOException | RuntimeException e) {
+					LOGGER.debug("Dropped change subscriber: {}", e.toString());
+					cancel();
+					unsubscribe(subscriber);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package com.proeins.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.proeins.exception.InvalidRequestException;
+
+/**
+ * Reads CSV in the layout of the catalog export one record at a time:
+ * comma separated, fields optionally quoted with <code>"</code>, quotes
+ * escaped by doubling and records ended by CRLF or LF. The first record
+ * names the columns.
+ * <p>
+ * Only the current record is held in memory. A record longer than the
+ * maximum length is skipped up to its end and returned marked as too long.
+ */
+public class ShoeCsvReader {
+
+	public static final List<String> COLUMNS = Arrays.asList("id", "articleNumber", "name", "brand", "color", "size", "stock");
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final Reader in;
+
+	private final int maxRecordLength;
+
+	private final char[] buffer = new char[BUFFER_SIZE];
+
+	private int position;
+
+	private int limit;
+
+	private long line = 1;
+
+	private final List<String> header;
+
+	public ShoeCsvReader(Reader in, int maxRecordLength) throws IOException {
+		this.in = in;
+		this.maxRecordLength = maxRecordLength;
+		Row first = next();
+		if (first == null || first.isTooLong()) {
+			throw new InvalidRequestException("CSV header expected");
+		}
+		header = new ArrayList<>(first.getFields());
+		if (header.get(0).startsWith("\uFEFF")) {
+			// byte order mark of spreadsheet exports
+			header.set(0, header.get(0).substring(1));
+		}
+		for (String column : header) {
+			if (!COLUMNS.contains(column)) {
+				throw new InvalidRequestException("Unknown CSV column: " + column);
+			}
+		}
+		if (!header.contains("articleNumber")) {
+			throw new InvalidRequestException("CSV column articleNumber is required");
+		}
+	}
+
+	/**
+	 * Column names of the header, in order.
+	 */
+	public List<String> getHeader() {
+		return header;
+	}
+
+	/**
+	 * The next record, <code>null</code> at the end of the input. Empty lines
+	 * are skipped.
+	 */
+	public Row next() throws IOException {
+		while (true) {
+			long start = line;
+			List<String> fields = new ArrayList<>();
+			StringBuilder field = new StringBuilder();
+			int length = 0;
+			boolean quoted = false;
+			boolean tooLong = false;
+			boolean any = false;
+			int c;
+			while ((c = read()) >= 0) {
+				any = true;
+				if (c == '\n') {
+					line++;
+				}
+				if (quoted) {
+					if (c != '"') {
+						append(field, (char) c, tooLong);
+					} else if (peek() == '"') {
+						read();
+						append(field, '"', tooLong);
+					} else {
+						quoted = false;
+					}
+				} else if (c == '"') {
+					quoted = true;
+				} else if (c == ',') {
+					fields.add(field.toString());
+					field.setLength(0);
+				} else if (c == '\n') {
+					break;
+				} else if (c != '\r' || (peek() != '\n' && peek() >= 0)) {
+					append(field, (char) c, tooLong);
+				}
+				if (++length > maxRecordLength && !tooLong) {
+					tooLong = true;
+					fields.clear();
+					field.setLength(0);
+				}
+			}
+			if (!any) {
+				return null;
+			}
+			if (tooLong) {
+				return new Row(start, Collections.<String>emptyList(), true);
+			}
+			if (fields.isEmpty() && field.length() == 0) {
+				continue;
+			}
+			fields.add(field.toString());
+			return new Row(start, fields, false);
+		}
+	}
+
+	private static void append(StringBuilder field, char c, boolean tooLong) {
+		if (!tooLong) {
+			field.append(c);
+		}
+	}
+
+	private int read() throws IOException {
+		if (position == limit && !fill()) {
+			return -1;
+		}
+		return buffer[position++];
+	}
+
+	private int peek() throws IOException {
+		if (position == limit && !fill()) {
+			return -1;
+		}
+		return buffer[position];
+	}
+
+	private boolean fill() throws IOException {
+		int read = in.read(buffer, 0, buffer.length);
+		if (read <= 0) {
+			return false;
+		}
+		position = 0;
+		limit = read;
+		return true;
+	}
+
+	/**
+	 * One record and the line it starts on.
+	 */
+	public static class Row {
+
+		private final long line;
+		private final List<String> fields;
+		private final boolean tooLong;
+
+		Row(long line, List<String> fields, boolean tooLong) {
+			this.line = line;
+			this.fields = fields;
+			this.tooLong = tooLong;
+		}
+
+		public long getLine() {
+			return line;
+		}
+
+		public List<String> getFields() {
+			return fields;
+		}
+
+		public boolean isTooLong() {
+			return tooLong;
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.proeins.service;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Receives the outcome of an import batch by batch. Both methods are called on
+ * the importing thread, in the order of the input.
+ */
+public interface ShoeImportListener {
+
+	/**
+	 * A record was rejected, either by validation or by the database.
+	 */
+	void rowFailed(long line, List<String> errors) throws IOException;
+
+	/**
+	 * A batch was committed.
+	 */
+	void batchCommitted(ShoeImportProgress progress) throws IOException;
+}
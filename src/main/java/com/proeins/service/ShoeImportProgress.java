@@ -0,0 +1,39 @@
+package com.proeins.service;
+
+/**
+ * Counts of an import by {@link ShoeImportService}, as of its last committed
+ * batch. Rows that repeat an article number within a batch count as updates.
+ */
+public class ShoeImportProgress {
+
+	private final long rows;
+	private final long inserted;
+	private final long updated;
+	private final long failed;
+
+	public ShoeImportProgress(long rows, long inserted, long updated, long failed) {
+		this.rows = rows;
+		this.inserted = inserted;
+		this.updated = updated;
+		this.failed = failed;
+	}
+
+	/**
+	 * Records handled so far, not counting the header.
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	public long getInserted() {
+		return inserted;
+	}
+
+	public long getUpdated() {
+		return updated;
+	}
+
+	public long getFailed() {
+		return failed;
+	}
+}
@@ -0,0 +1,312 @@
+package com.proeins.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.proeins.dao.ShoeDao;
+import com.proeins.model.Shoe;
+
+/**
+ * Bulk import of CSV catalogs, upserted by article number. The input is read
+ * record by record; each batch of <code>batch_size</code> records is
+ * validated on a pool of <code>parallelism</code> threads while earlier
+ * batches are written, and written in a transaction of its own. At most
+ * <code>parallelism + 1</code> batches are held in memory at a time.
+ * <p>
+ * A batch the database rejects is retried record by record, so a bad record
+ * only fails itself. Batches committed before a failure of the whole import,
+ * such as a dropped connection, stay committed.
+ */
+@Service
+public class ShoeImportService {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShoeImportService.class);
+
+	/* length of the varchar columns */
+	private static final int MAX_FIELD_LENGTH = 255;
+
+	private ShoeDao shoeDao;
+
+	private TransactionTemplate transactionTemplate;
+
+	@Value("${shoe.import.batch_size:1000}")
+	private int batchSize = 1000;
+
+	@Value("${shoe.import.parallelism:0}")
+	private int parallelism;
+
+	@Value("${shoe.import.max_record_length:65536}")
+	private int maxRecordLength = 65536;
+
+	private ExecutorService validators;
+
+	@Autowired
+	public ShoeImportService(ShoeDao shoeDao, PlatformTransactionManager transactionManager) {
+		this.shoeDao = shoeDao;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	@PostConstruct
+	public void initialize() {
+		if (parallelism <= 0) {
+			parallelism = Runtime.getRuntime().availableProcessors();
+		}
+		final AtomicInteger threads = new AtomicInteger();
+		validators = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "shoe-import-validator-" + threads.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		validators.shutdownNow();
+	}
+
+	/**
+	 * Reads the header of a UTF-8 encoded CSV upload, so a malformed one is
+	 * rejected before the import starts.
+	 */
+	public ShoeCsvReader open(InputStream csv) throws IOException {
+		return new ShoeCsvReader(new InputStreamReader(csv, StandardCharsets.UTF_8), maxRecordLength);
+	}
+
+	/**
+	 * Imports the remaining records of the reader and returns the final counts.
+	 */
+	public ShoeImportProgress importShoes(final ShoeCsvReader csv, ShoeImportListener listener) throws IOException {
+		Counts counts = new Counts();
+		Deque<Future<List<Validated>>> validating = new ArrayDeque<>();
+		List<ShoeCsvReader.Row> batch = new ArrayList<>(batchSize);
+		ShoeCsvReader.Row row;
+		try {
+			while ((row = csv.next()) != null) {
+				batch.add(row);
+				if (batch.size() == batchSize) {
+					validating.add(validate(csv.getHeader(), batch));
+					batch = new ArrayList<>(batchSize);
+					if (validating.size() > parallelism) {
+						write(validating.poll().get(), counts, listener);
+					}
+				}
+			}
+			if (!batch.isEmpty()) {
+				validating.add(validate(csv.getHeader(), batch));
+			}
+			while (!validating.isEmpty()) {
+				write(validating.poll().get(), counts, listener);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Import interrupted");
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Validating an import batch failed", e.getCause());
+		} finally {
+			for (Future<List<Validated>> pending : validating) {
+				pending.cancel(true);
+			}
+		}
+		LOGGER.info("Imported {} rows: {} inserted, {} updated, {} failed", counts.rows, counts.inserted, counts.updated, counts.failed);
+		return counts.progress();
+	}
+
+	private Future<List<Validated>> validate(final List<String> header, final List<ShoeCsvReader.Row> batch) {
+		return validators.submit(new Callable<List<Validated>>() {
+			@Override
+			public List<Validated> call() {
+				List<Validated> validated = new ArrayList<>(batch.size());
+				for (ShoeCsvReader.Row row : batch) {
+					validated.add(validate(header, row));
+				}
+				return validated;
+			}
+		});
+	}
+
+	private Validated validate(List<String> header, ShoeCsvReader.Row row) {
+		List<String> errors = new ArrayList<>();
+		if (row.isTooLong()) {
+			errors.add("Record is longer than " + maxRecordLength + " characters");
+			return new Validated(row.getLine(), null, errors);
+		}
+		List<String> fields = row.getFields();
+		if (fields.size() != header.size()) {
+			errors.add("Expected " + header.size() + " fields, found " + fields.size());
+			return new Validated(row.getLine(), null, errors);
+		}
+		Shoe shoe = new Shoe();
+		for (int i = 0; i < header.size(); i++) {
+			String column = header.get(i);
+			String value = fields.get(i).trim();
+			if (value.length() > MAX_FIELD_LENGTH) {
+				errors.add(column + " is longer than " + MAX_FIELD_LENGTH + " characters");
+				continue;
+			}
+			if (value.isEmpty()) {
+				continue;
+			}
+			switch (column) {
+			case "articleNumber":
+				shoe.setArticleNumber(value);
+				break;
+			case "name":
+				shoe.setName(value);
+				break;
+			case "brand":
+				shoe.setBrand(value);
+				break;
+			case "color":
+				shoe.setColor(value);
+				break;
+			case "size":
+				shoe.setSize(value);
+				break;
+			case "stock":
+				shoe.setStock(value);
+				if (shoe.getStockCount() == null || shoe.getStockCount() < 0) {
+					errors.add("stock must be a whole number of at least 0");
+				}
+				break;
+			default:
+				// ids are assigned by the catalog
+			}
+		}
+		if (fields.get(header.indexOf("articleNumber")).trim().isEmpty()) {
+			errors.add("articleNumber is required");
+		}
+		return new Validated(row.getLine(), errors.isEmpty() ? shoe : null, errors);
+	}
+
+	private void write(List<Validated> batch, Counts counts, ShoeImportListener listener) throws IOException {
+		List<Shoe> shoes = new ArrayList<>(batch.size());
+		List<Validated> valid = new ArrayList<>(batch.size());
+		for (Validated validated : batch) {
+			counts.rows++;
+			if (validated.shoe == null) {
+				counts.failed++;
+				listener.rowFailed(validated.line, validated.errors);
+			} else {
+				shoes.add(validated.shoe);
+				valid.add(validated);
+			}
+		}
+		if (!shoes.isEmpty()) {
+			try {
+				int inserted = upsert(shoes);
+				counts.inserted += inserted;
+				counts.updated += articleNumbersOf(shoes) - inserted;
+			} catch (RuntimeException e) {
+				if (shoes.size() == 1) {
+					counts.failed++;
+					listener.rowFailed(valid.get(0).line, Collections.singletonList(messageOf(e)));
+				} else {
+					LOGGER.debug("Import batch of {} shoes failed, retrying them one by one", shoes.size(), e);
+					writeOneByOne(valid, counts, listener);
+				}
+			}
+		}
+		listener.batchCommitted(counts.progress());
+	}
+
+	private void writeOneByOne(List<Validated> valid, Counts counts, ShoeImportListener listener) throws IOException {
+		for (Validated validated : valid) {
+			// a rolled back batch may have left an id and version behind
+			validated.shoe.setId(null);
+			validated.shoe.setVersion(null);
+			try {
+				int inserted = upsert(Collections.singletonList(validated.shoe));
+				counts.inserted += inserted;
+				counts.updated += 1 - inserted;
+			} catch (RuntimeException e) {
+				counts.failed++;
+				listener.rowFailed(validated.line, Collections.singletonList(messageOf(e)));
+			}
+		}
+	}
+
+	/* rows repeating an article number of the batch are written as one shoe, like upsertAll does */
+	private static int articleNumbersOf(List<Shoe> shoes) {
+		Set<String> articleNumbers = new HashSet<>();
+		for (Shoe shoe : shoes) {
+			articleNumbers.add(shoe.getArticleNumber().toLowerCase(Locale.ROOT));
+		}
+		return articleNumbers.size();
+	}
+
+	private int upsert(final List<Shoe> shoes) {
+		return transactionTemplate.execute(new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus status) {
+				return shoeDao.upsertAll(shoes);
+			}
+		});
+	}
+
+	private static String messageOf(Throwable failure) {
+		Throwable cause = failure;
+		while (cause.getCause() != null && cause.getCause() != cause) {
+			cause = cause.getCause();
+		}
+		return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+	}
+
+	private static class Validated {
+
+		private final long line;
+		private final Shoe shoe;
+		private final List<String> errors;
+
+		Validated(long line, Shoe shoe, List<String> errors) {
+			this.line = line;
+			this.shoe = shoe;
+			this.errors = errors;
+		}
+	}
+
+	private static class Counts {
+
+		private long rows;
+		private long inserted;
+		private long updated;
+		private long failed;
+
+		ShoeImportProgress progress() {
+			return new ShoeImportProgress(rows, inserted, updated, failed);
+		}
+	}
+}
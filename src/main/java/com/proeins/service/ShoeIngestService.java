@@ -0,0 +1,243 @@
+package com.proeins.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.proeins.dao.ShoeDao;
+import com.proeins.exception.IngestQueueFullException;
+import com.proeins.exception.ShoeNotFoundException;
+import com.proeins.model.Shoe;
+
+/**
+ * Write-behind ingestion for bursts of single shoe writes. Accepted writes
+ * wait in a bounded queue, a single writer commits them in groups of up to
+ * <code>batch_size</code> shoes or after <code>max_delay_millis</code>, so a
+ * burst costs one commit per group instead of one per shoe.
+ * <p>
+ * If a group fails, for example on the update of a missing shoe, its writes
+ * are retried one by one, so a bad write only fails its own ticket. A full queue rejects writes instead of blocking
+ * request threads.
+ */
+@Service
+@ConditionalOnProperty(name = "shoe.ingest.enabled", havingValue = "true")
+public class ShoeIngestService {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShoeIngestService.class);
+
+	private ShoeDao shoeDao;
+
+	private TransactionTemplate transactionTemplate;
+
+	@Value("${shoe.ingest.queue_capacity:10000}")
+	private int queueCapacity = 10000;
+
+	@Value("${shoe.ingest.batch_size:500}")
+	private int batchSize = 500;
+
+	@Value("${shoe.ingest.max_delay_millis:20}")
+	private long maxDelayMillis = 20;
+
+	@Value("${shoe.ingest.ticket_ttl_minutes:60}")
+	private long ticketTtlMinutes = 60;
+
+	/* a burst must not grow the finished tickets without bound until they expire */
+	@Value("${shoe.ingest.max_tickets:100000}")
+	private long maxTickets = 100000;
+
+	private BlockingQueue<Write> queue;
+
+	private Cache<String, ShoeIngestTicket> tickets;
+
+	private Thread writer;
+
+	private volatile boolean running;
+
+	@Autowired
+	public ShoeIngestService(ShoeDao shoeDao, PlatformTransactionManager transactionManager) {
+		this.shoeDao = shoeDao;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	@PostConstruct
+	public void initialize() {
+		if (maxTickets < queueCapacity) {
+			// the tickets of queued writes could be evicted before their writes commit
+			throw new IllegalStateException("shoe.ingest.max_tickets must not be below shoe.ingest.queue_capacity: "
+					+ maxTickets + " < " + queueCapacity);
+		}
+		queue = new ArrayBlockingQueue<>(queueCapacity);
+		tickets = Caffeine.newBuilder()
+				.maximumSize(maxTickets)
+				.expireAfterWrite(ticketTtlMinutes, TimeUnit.MINUTES)
+				.build();
+		running = true;
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		}, "shoe-ingest-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Stops accepting writes and commits everything still queued.
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		running = false;
+		writer.join();
+	}
+
+	public ShoeIngestTicket submitSave(Shoe shoe) throws IngestQueueFullException {
+		if (shoe.isEmpty()) {
+			throw new IllegalArgumentException("Invalid argument passed");
+		}
+		return submit(new Write(null, shoe, newTicket(null)));
+	}
+
+	public ShoeIngestTicket submitUpdate(long id, Shoe shoe) throws IngestQueueFullException {
+		if (shoe.isEmpty()) {
+			throw new IllegalArgumentException("Invalid argument passed");
+		}
+		return submit(new Write(id, shoe, newTicket(id)));
+	}
+
+	/**
+	 * The ticket with the given id, <code>null</code> if unknown or expired.
+	 */
+	public ShoeIngestTicket getTicket(String id) {
+		return tickets.getIfPresent(id);
+	}
+
+	private ShoeIngestTicket newTicket(Long shoeId) {
+		return new ShoeIngestTicket(UUID.randomUUID().toString(), shoeId);
+	}
+
+	private ShoeIngestTicket submit(Write write) throws IngestQueueFullException {
+		if (!running || !queue.offer(write)) {
+			// the queue drains a group per max delay at the least
+			int retryAfter = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(queueCapacity / batchSize * maxDelayMillis));
+			throw new IngestQueueFullException("Ingest queue is full", retryAfter);
+		}
+		tickets.put(write.ticket.getId(), write.ticket);
+		return write.ticket;
+	}
+
+	private void drain() {
+		while (running || !queue.isEmpty()) {
+			try {
+				Write first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				List<Write> group = new ArrayList<>(batchSize);
+				group.add(first);
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+				while (group.size() < batchSize) {
+					long remaining = deadline - System.nanoTime();
+					// past the deadline only what is already queued joins the group
+					Write next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+					if (next == null) {
+						break;
+					}
+					group.add(next);
+				}
+				commit(group);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (RuntimeException e) {
+				LOGGER.error("Ingest writer failed", e);
+			}
+		}
+	}
+
+	private void commit(final List<Write> group) {
+		try {
+			transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					for (Write write : group) {
+						write.apply(shoeDao);
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			if (group.size() == 1) {
+				Write write = group.get(0);
+				write.ticket.failed(write.failure != null ? write.failure : e.getMessage());
+				return;
+			}
+			LOGGER.debug("Group of {} writes failed, retrying them one by one", group.size(), e);
+			for (Write write : group) {
+				commit(Collections.singletonList(write));
+			}
+			return;
+		}
+		for (Write write : group) {
+			write.complete();
+		}
+	}
+
+	private static class Write {
+
+		private final Long id;
+		private final Shoe shoe;
+		private final ShoeIngestTicket ticket;
+		private String failure;
+
+		Write(Long id, Shoe shoe, ShoeIngestTicket ticket) {
+			this.id = id;
+			this.shoe = shoe;
+			this.ticket = ticket;
+		}
+
+		void apply(ShoeDao shoeDao) {
+			failure = null;
+			if (id == null) {
+				// a rolled back group may have left an id and version behind
+				shoe.setId(null);
+				shoe.setVersion(null);
+				shoeDao.save(shoe);
+				return;
+			}
+			try {
+				shoeDao.update(id, shoe);
+			} catch (ShoeNotFoundException e) {
+				// the dao marked the transaction rollback only, the group is retried one by one
+				failure = e.getMessage();
+			}
+		}
+
+		void complete() {
+			if (failure != null) {
+				ticket.failed(failure);
+			} else {
+				ticket.done(id == null ? shoe.getId() : id);
+			}
+		}
+	}
+}
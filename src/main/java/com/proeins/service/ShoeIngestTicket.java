@@ -0,0 +1,51 @@
+package com.proeins.service;
+
+/**
+ * Status handle of a write accepted by {@link ShoeIngestService}.
+ */
+public class ShoeIngestTicket {
+
+	public enum Status {
+		PENDING, DONE, FAILED
+	}
+
+	private final String id;
+	private volatile Status status = Status.PENDING;
+	private volatile Long shoeId;
+	private volatile String error;
+
+	public ShoeIngestTicket(String id, Long shoeId) {
+		this.id = id;
+		this.shoeId = shoeId;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * Id of the written shoe, known for updates right away and for new shoes
+	 * once they are committed.
+	 */
+	public Long getShoeId() {
+		return shoeId;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	void done(Long shoeId) {
+		this.shoeId = shoeId;
+		this.status = Status.DONE;
+	}
+
+	void failed(String error) {
+		this.error = error;
+		this.status = Status.FAILED;
+	}
+}
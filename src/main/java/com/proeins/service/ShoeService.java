@@ -1,17 +1,41 @@
 package com.proeins.service;
 
+import java.io.IOException;
 import java.util.List;
 
+import com.proeins.dao.PageCriteria;
+import com.proeins.dao.ShoeDelta;
+import com.proeins.dao.ShoeFacets;
+import com.proeins.dao.ShoePage;
+import com.proeins.dao.ShoeRowHandler;
 import com.proeins.exception.ShoeNotFoundException;
+import com.proeins.exception.ShoeVersionConflictException;
+import com.proeins.exception.StockConflictException;
 import com.proeins.model.Shoe;
 
 public interface ShoeService {
 
 	Shoe save(Shoe shoe);
 
+	List<Shoe> saveAll(List<Shoe> shoes);
+
 	Shoe update(long id, Shoe shoe) throws ShoeNotFoundException;
 
 	Shoe delete(long id) throws ShoeNotFoundException;
+
+	long patch(long id, long version, Shoe changes) throws ShoeNotFoundException, ShoeVersionConflictException;
+
+	void reserveStock(long id, int quantity) throws ShoeNotFoundException, StockConflictException;
+
+	void releaseStock(long id, int quantity) throws ShoeNotFoundException, StockConflictException;
 	
 	List<Shoe> searchShoes(String search);
+
+	ShoePage searchShoes(String search, PageCriteria page);
+
+	ShoeFacets facetShoes(String search);
+
+	ShoeDelta changesSince(long revision);
+
+	void exportShoes(String search, ShoeRowHandler handler) throws IOException;
 }
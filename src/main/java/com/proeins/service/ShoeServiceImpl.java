@@ -1,17 +1,34 @@
 package com.proeins.service;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import com.proeins.dao.SearchCriteria;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.proeins.dao.PageCriteria;
+import com.proeins.dao.ReplicaRoutingDataSource;
+import com.proeins.dao.SearchQuery;
+import com.proeins.dao.ShoeCatalogVersion;
 import com.proeins.dao.ShoeDao;
+import com.proeins.dao.ShoeDelta;
+import com.proeins.dao.ShoeFacetCounter;
+import com.proeins.dao.ShoeFacets;
+import com.proeins.dao.ShoePage;
+import com.proeins.dao.ShoeRowHandler;
 import com.proeins.exception.ShoeNotFoundException;
+import com.proeins.exception.ShoeVersionConflictException;
+import com.proeins.exception.StockConflictException;
 import com.proeins.model.Shoe;
 
 
@@ -19,11 +36,52 @@ import com.proeins.model.Shoe;
 @Transactional(readOnly = true)
 public class ShoeServiceImpl implements ShoeService {
 
+	private static final int SEARCH_QUERY_CACHE_SIZE = 1000;
+
+	private final Cache<String, SearchQuery> searchQueries = Caffeine.newBuilder()
+			.maximumSize(SEARCH_QUERY_CACHE_SIZE)
+			.build();
+
 	private ShoeDao shoeDao;
+
+	private StockReservations stockReservations;
+
+	private ShoeFacetCounter facetCounter;
+
+	private SearchCoalescer searchCoalescer;
+
+	private ShoeCatalogVersion catalogVersion;
+
+	private ReplicaRoutingDataSource replicaRouting;
+
+	private TransactionTemplate readOnlyTransaction;
 	
 	@Autowired
-	public ShoeServiceImpl(ShoeDao shoeDao) {
+	public ShoeServiceImpl(ShoeDao shoeDao, StockReservations stockReservations, PlatformTransactionManager transactionManager) {
 		this.shoeDao = shoeDao;
+		this.stockReservations = stockReservations;
+		this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+		this.readOnlyTransaction.setReadOnly(true);
+	}
+
+	@Autowired(required = false)
+	public void setFacetCounter(ShoeFacetCounter facetCounter) {
+		this.facetCounter = facetCounter;
+	}
+
+	@Autowired(required = false)
+	public void setSearchCoalescer(SearchCoalescer searchCoalescer) {
+		this.searchCoalescer = searchCoalescer;
+	}
+
+	@Autowired(required = false)
+	public void setCatalogVersion(ShoeCatalogVersion catalogVersion) {
+		this.catalogVersion = catalogVersion;
+	}
+
+	@Autowired(required = false)
+	public void setReplicaRouting(ReplicaRoutingDataSource replicaRouting) {
+		this.replicaRouting = replicaRouting;
 	}
 	
 	@Transactional
@@ -32,6 +90,12 @@ public class ShoeServiceImpl implements ShoeService {
 		return shoeDao.save(shoe);
 	}
 
+	@Transactional
+	@Override
+	public List<Shoe> saveAll(List<Shoe> shoes) {
+		return shoeDao.saveAll(shoes);
+	}
+
 	@Transactional
 	@Override
 	public Shoe update(long id, Shoe shoe) throws ShoeNotFoundException {
@@ -44,16 +108,112 @@ public class ShoeServiceImpl implements ShoeService {
 		return shoeDao.delete(id);
 	}
 
+	@Transactional
+	@Override
+	public long patch(long id, long version, Shoe changes) throws ShoeNotFoundException, ShoeVersionConflictException {
+		return shoeDao.patch(id, version, changes);
+	}
+
+	/*
+	 * Reservations manage their own transactions, buffered ones should not
+	 * hold a connection while served from memory.
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	@Override
+	public void reserveStock(long id, int quantity) throws ShoeNotFoundException, StockConflictException {
+		stockReservations.reserve(id, quantity);
+	}
+
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	@Override
+	public void releaseStock(long id, int quantity) throws ShoeNotFoundException, StockConflictException {
+		stockReservations.release(id, quantity);
+	}
+
+	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
 	@Override
 	public List<Shoe> searchShoes(String search) {
-        List<SearchCriteria> params = new ArrayList<SearchCriteria>();
-		if (search != null) {
-            Pattern pattern = Pattern.compile("(\\w+?)(:|<|>)(\\w+?),");
-            Matcher matcher = pattern.matcher(search + ",");
-            while (matcher.find()) {
-                params.add(new SearchCriteria(matcher.group(1), matcher.group(2), matcher.group(3)));
-            }
-        }
-		return shoeDao.searchShoes(params);
+		final SearchQuery query = parseSearch(search);
+		return search(query.toString(), new TransactionCallback<List<Shoe>>() {
+			@Override
+			public List<Shoe> doInTransaction(TransactionStatus status) {
+				return shoeDao.searchShoes(query);
+			}
+		});
+	}
+
+	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+	@Override
+	public ShoePage searchShoes(String search, final PageCriteria page) {
+		final SearchQuery query = parseSearch(search);
+		String key = query + "\n" + page.getSortKey() + (page.isAscending() ? "+" : "-") + page.getLimit()
+				+ (page.hasAfterPosition() ? "\n" + page.getAfterValue() + "\n" + page.getAfterId() : "");
+		return search(key, new TransactionCallback<ShoePage>() {
+			@Override
+			public ShoePage doInTransaction(TransactionStatus status) {
+				return shoeDao.searchShoes(query, page);
+			}
+		});
+	}
+
+	/*
+	 * Identical searches arriving while one runs wait for its result instead
+	 * of querying again. They wait outside of a transaction, so they hold no
+	 * connection. Callers in a transaction of their own search by themselves,
+	 * their uncommitted writes must not leak into the results of others, and
+	 * so do clients reading their own writes from the primary. The catalog
+	 * version is part of the key: it moves on commit, so a search started
+	 * before a write is never joined by one issued after it.
+	 */
+	private <T> T search(String key, final TransactionCallback<T> search) {
+		if (searchCoalescer == null || TransactionSynchronizationManager.isActualTransactionActive()
+				|| (replicaRouting != null && replicaRouting.isReadingOwnWrites())) {
+			return readOnlyTransaction.execute(search);
+		}
+		if (catalogVersion != null) {
+			key = catalogVersion.current().getETag() + "\n" + key;
+		}
+		return searchCoalescer.execute(key, new Callable<T>() {
+			@Override
+			public T call() {
+				return readOnlyTransaction.execute(search);
+			}
+		});
+	}
+
+	@Override
+	public ShoeFacets facetShoes(String search) {
+		SearchQuery query = parseSearch(search);
+		if (query == SearchQuery.ALL && facetCounter != null) {
+			return facetCounter.getFacets();
+		}
+		return shoeDao.facetShoes(query);
+	}
+
+	@Override
+	public ShoeDelta changesSince(long revision) {
+		return shoeDao.changesSince(revision);
+	}
+
+	@Override
+	public void exportShoes(String search, ShoeRowHandler handler) throws IOException {
+		shoeDao.exportShoes(parseSearch(search), handler);
+	}
+
+	/*
+	 * Parsed queries are immutable and carry their compiled HQL, so repeated
+	 * searches skip parsing and query building.
+	 */
+	private SearchQuery parseSearch(String search) {
+		if (search == null) {
+			return SearchQuery.ALL;
+		}
+		String normalized = search.trim();
+		SearchQuery query = searchQueries.getIfPresent(normalized);
+		if (query == null) {
+			query = SearchQuery.parse(normalized);
+			searchQueries.put(normalized, query);
+		}
+		return query;
 	}
 }
@@ -0,0 +1,15 @@
+package com.proeins.service;
+
+import com.proeins.exception.ShoeNotFoundException;
+import com.proeins.exception.StockConflictException;
+
+/**
+ * Takes units of stock out of and back into the catalog without loading
+ * shoes.
+ */
+public interface StockReservations {
+
+	void reserve(long id, int quantity) throws ShoeNotFoundException, StockConflictException;
+
+	void release(long id, int quantity) throws ShoeNotFoundException, StockConflictException;
+}
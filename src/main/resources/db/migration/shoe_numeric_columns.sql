@@ -0,0 +1,14 @@
+-- Numeric copies of Shoe.size and Shoe.stock with indexes for range searches.
+-- For schemas not managed by hibernate.hbm2ddl.auto. On MySQL 5.6+ both steps
+-- run online without blocking reads or writes. Afterwards start the
+-- application once with shoe.migration.numeric_backfill.enabled=true to fill
+-- the columns of existing rows.
+
+ALTER TABLE Shoe
+	ADD COLUMN size_value DECIMAL(5,2) NULL,
+	ADD COLUMN stock_count INT NULL,
+	ALGORITHM=INPLACE, LOCK=NONE;
+
+-- InnoDB secondary indexes carry the primary key, so both cover id lookups
+CREATE INDEX idx_shoe_brand_size_value ON Shoe (brand, size_value) ALGORITHM=INPLACE LOCK=NONE;
+CREATE INDEX idx_shoe_stock_count ON Shoe (stock_count) ALGORITHM=INPLACE LOCK=NONE;
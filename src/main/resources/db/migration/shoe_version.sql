@@ -0,0 +1,7 @@
+-- Optimistic locking version of Shoe, checked by PATCH /shoe/{id} against
+-- If-Match. For schemas not managed by hibernate.hbm2ddl.auto. Existing rows
+-- start at version 0; on MySQL 5.6+ the column is added online.
+
+ALTER TABLE Shoe
+	ADD COLUMN version BIGINT NOT NULL DEFAULT 0,
+	ALGORITHM=INPLACE, LOCK=NONE;
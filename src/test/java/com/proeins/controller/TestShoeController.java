@@ -1,45 +1,111 @@
 package com.proeins.controller;
 
 import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.StreamUtils;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.proeins.TestUtils;
 import com.proeins.config.TestContext;
+import com.proeins.dao.PageCriteria;
+import com.proeins.dao.ShoeCatalogVersion;
+import com.proeins.dao.ShoeDelta;
+import com.proeins.dao.ShoeFacets;
+import com.proeins.dao.ShoePage;
+import com.proeins.dao.ShoeRowHandler;
+import com.proeins.exception.IngestQueueFullException;
+import com.proeins.exception.ServiceOverloadedException;
 import com.proeins.exception.ShoeNotFoundException;
+import com.proeins.exception.ShoeVersionConflictException;
+import com.proeins.exception.StockConflictException;
+import com.proeins.metrics.LatencyRegistry;
 import com.proeins.model.Shoe;
 import com.proeins.model.ShoeBuilder;
+import com.proeins.model.ShoeTombstone;
+import com.proeins.service.ShoeChange;
+import com.proeins.service.ShoeChangeFeed;
+import com.proeins.service.ShoeCsvReader;
+import com.proeins.service.ShoeImportListener;
+import com.proeins.service.ShoeImportProgress;
+import com.proeins.service.ShoeImportService;
+import com.proeins.service.ShoeIngestService;
+import com.proeins.service.ShoeIngestTicket;
 import com.proeins.service.ShoeService;
 
 @RunWith(SpringRunner.class)
@@ -59,6 +125,20 @@ public class TestShoeController {
     }
 	
 	
+	/*
+	 * Handlers answer with futures, the dispatch that writes their result is
+	 * performed here so each test reads like a synchronous exchange.
+	 */
+	private ResultActions perform(RequestBuilder requestBuilder) throws Exception {
+		ResultActions actions = mockMvc.perform(requestBuilder);
+		MvcResult result = actions.andReturn();
+		if (!result.getRequest().isAsyncStarted()) {
+			return actions;
+		}
+		result.getAsyncResult();
+		return mockMvc.perform(asyncDispatch(result));
+	}
+	
 	/******************************************
 	 * 		Test cases for save operation
 	 ******************************************/
@@ -66,7 +146,7 @@ public class TestShoeController {
     public void save_EmptyShoeEntry_ShouldReturnHttpStatusCode404() throws Exception {
     	Shoe shoe = new ShoeBuilder().build();
     	when(shoeService.save(any(Shoe.class))).thenThrow(new IllegalArgumentException(""));
-        mockMvc.perform(post("/shoe")
+        perform(post("/shoe")
                 .contentType(TestUtils.APPLICATION_JSON_UTF8)
                 .content(TestUtils.convertObjectToJsonBytes(shoe))
         		)
@@ -100,7 +180,7 @@ public class TestShoeController {
 
         when(shoeService.save(any(Shoe.class))).thenReturn(added);
 
-        mockMvc.perform(post("/shoe")
+        perform(post("/shoe")
                 	.contentType(MediaType.APPLICATION_JSON_UTF8)
                 	.content(TestUtils.convertObjectToJsonBytes(shoe))
         		)
@@ -113,13 +193,47 @@ public class TestShoeController {
         verifyNoMoreInteractions(shoeService);
     }
     
+    @Test
+    public void saveAll_NewShoeEntries_ShouldAddShoeEntriesAndReturnThem() throws Exception {
+        List<Shoe> shoes = new ArrayList<>();
+        shoes.add(new ShoeBuilder().setArticleNumber("S1").setBrand("Nike").build());
+        shoes.add(new ShoeBuilder().setArticleNumber("S2").setBrand("Puma").build());
+
+        List<Shoe> added = new ArrayList<>();
+        added.add(new ShoeBuilder().setId(1).setArticleNumber("S1").setBrand("Nike").build());
+        added.add(new ShoeBuilder().setId(2).setArticleNumber("S2").setBrand("Puma").build());
+
+        when(shoeService.saveAll(anyListOf(Shoe.class))).thenReturn(added);
+
+        perform(post("/shoe/batch")
+                	.contentType(MediaType.APPLICATION_JSON_UTF8)
+                	.content(TestUtils.convertObjectToJsonBytes(shoes))
+        		)
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[1].id", is(2)));
+
+        verify(shoeService, times(1)).saveAll(anyListOf(Shoe.class));
+        verifyNoMoreInteractions(shoeService);
+    }
+    
+    @Test
+    public void saveAll_EmptyBatch_ShouldReturnHttpStatusCode400() throws Exception {
+        perform(post("/shoe/batch")
+                	.contentType(MediaType.APPLICATION_JSON_UTF8)
+                	.content("[]")
+        		)
+                .andExpect(status().isBadRequest());
+        verifyZeroInteractions(shoeService);
+    }
+    
     /******************************************
 	 * 		Test cases for delete operation
 	 ******************************************/
 	@Test
 	public void deleteById_ShoeIsNotFound_ShouldReturnHttpStatusCode404() throws Exception {
 		when(shoeService.delete(3L)).thenThrow(new ShoeNotFoundException(""));
-		mockMvc.perform(delete("/shoe/{id}", 3L)).
+		perform(delete("/shoe/{id}", 3L)).
 				andExpect(MockMvcResultMatchers.status().isNotFound());
 
 		verify(shoeService, times(1)).delete(3L);
@@ -140,7 +254,7 @@ public class TestShoeController {
 
 		when(shoeService.delete(1L)).thenReturn(deleted);
 		
-		mockMvc.perform(delete("/shoe/{id}", 1L))
+		perform(delete("/shoe/{id}", 1L))
 				.andExpect(status().isOk())
 				.andExpect(jsonPath("$.id", is(1)));
 
@@ -148,6 +262,577 @@ public class TestShoeController {
 		verifyNoMoreInteractions(shoeService);
 	}
 	
+	/******************************************
+	 * 		Test cases for patch operation
+	 ******************************************/
+	@Test
+	public void patch_MatchingVersion_ShouldReturnNewVersionAsETag() throws Exception {
+		Shoe changes = new ShoeBuilder().setStock("7").build();
+		when(shoeService.patch(eq(1L), eq(3L), any(Shoe.class))).thenReturn(4L);
+
+		perform(patch("/shoe/{id}", 1L)
+				.header("If-Match", "\"3\"")
+				.contentType(TestUtils.APPLICATION_JSON_UTF8)
+				.content(TestUtils.convertObjectToJsonBytes(changes)))
+				.andExpect(status().isNoContent())
+				.andExpect(header().string("ETag", "\"4\""));
+
+		ArgumentCaptor<Shoe> dtoCaptor = ArgumentCaptor.forClass(Shoe.class);
+		verify(shoeService, times(1)).patch(eq(1L), eq(3L), dtoCaptor.capture());
+		assertThat(dtoCaptor.getValue().getStock(), is("7"));
+		verifyNoMoreInteractions(shoeService);
+	}
+
+	@Test
+	public void patch_StaleVersion_ShouldReturnHttpStatusCode412() throws Exception {
+		when(shoeService.patch(eq(1L), eq(2L), any(Shoe.class))).thenThrow(new ShoeVersionConflictException("stale"));
+
+		perform(patch("/shoe/{id}", 1L)
+				.header("If-Match", "\"2\"")
+				.contentType(TestUtils.APPLICATION_JSON_UTF8)
+				.content("{\"stock\":\"7\"}"))
+				.andExpect(status().isPreconditionFailed());
+	}
+
+	@Test
+	public void patch_MalformedIfMatch_ShouldReturnHttpStatusCode412() throws Exception {
+		perform(patch("/shoe/{id}", 1L)
+				.header("If-Match", "W/\"2\"")
+				.contentType(TestUtils.APPLICATION_JSON_UTF8)
+				.content("{\"stock\":\"7\"}"))
+				.andExpect(status().isPreconditionFailed());
+		verifyZeroInteractions(shoeService);
+	}
+
+	@Test
+	public void patch_WithoutIfMatch_ShouldReturnHttpStatusCode428() throws Exception {
+		perform(patch("/shoe/{id}", 1L)
+				.contentType(TestUtils.APPLICATION_JSON_UTF8)
+				.content("{\"stock\":\"7\"}"))
+				.andExpect(status().is(428));
+		verifyZeroInteractions(shoeService);
+	}
+
+	@Test
+	public void patch_ShoeIsNotFound_ShouldReturnHttpStatusCode404() throws Exception {
+		when(shoeService.patch(eq(3L), eq(0L), any(Shoe.class))).thenThrow(new ShoeNotFoundException(""));
+
+		perform(patch("/shoe/{id}", 3L)
+				.header("If-Match", "\"0\"")
+				.contentType(TestUtils.APPLICATION_JSON_UTF8)
+				.content("{\"stock\":\"7\"}"))
+				.andExpect(status().isNotFound());
+	}
+
+	/******************************************
+	 * 		Test cases for stock reservation
+	 ******************************************/
+	@Test
+	public void reserveStock_EnoughStock_ShouldReturnHttpStatusCode204() throws Exception {
+		perform(post("/shoe/{id}/reserve", 1L).param("qty", "2"))
+				.andExpect(status().isNoContent());
+
+		verify(shoeService, times(1)).reserveStock(1L, 2);
+		verifyNoMoreInteractions(shoeService);
+	}
+
+	@Test
+	public void reserveStock_NotEnoughStock_ShouldReturnHttpStatusCode409() throws Exception {
+		doThrow(new StockConflictException("Not enough stock")).when(shoeService).reserveStock(1L, 5);
+		perform(post("/shoe/{id}/reserve", 1L).param("qty", "5"))
+				.andExpect(status().isConflict())
+				.andExpect(content().string("Not enough stock"));
+	}
+
+	@Test
+	public void reserveStock_ShoeIsNotFound_ShouldReturnHttpStatusCode404() throws Exception {
+		doThrow(new ShoeNotFoundException("")).when(shoeService).reserveStock(3L, 1);
+		perform(post("/shoe/{id}/reserve", 3L).param("qty", "1"))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void reserveStock_NonPositiveQuantity_ShouldReturnHttpStatusCode400() throws Exception {
+		perform(post("/shoe/{id}/reserve", 1L).param("qty", "0"))
+				.andExpect(status().isBadRequest());
+		verifyZeroInteractions(shoeService);
+	}
+
+	@Test
+	public void releaseStock_ShouldReturnHttpStatusCode204() throws Exception {
+		perform(post("/shoe/{id}/release", 1L).param("qty", "2"))
+				.andExpect(status().isNoContent());
+
+		verify(shoeService, times(1)).releaseStock(1L, 2);
+		verifyNoMoreInteractions(shoeService);
+	}
+
+	/******************************************
+	 * 		Test cases for request execution
+	 ******************************************/
+	@Test
+	public void save_PoolExecution_ShouldReturnHttpStatusCode201WithLocation() throws Exception {
+		ShoeRequestExecutor requestExecutor = new ShoeRequestExecutor();
+		ReflectionTestUtils.setField(requestExecutor, "mode", "pool");
+		requestExecutor.initialize();
+		ShoeController controller = new ShoeController(shoeService);
+		controller.setRequestExecutor(requestExecutor);
+		this.mockMvc = MockMvcBuilders.standaloneSetup(controller).setControllerAdvice(new RestErrorHandler()).build();
+		Shoe shoe = new ShoeBuilder().setId(5).setArticleNumber("S5").build();
+		when(shoeService.save(any(Shoe.class))).thenReturn(shoe);
+
+		try {
+			perform(post("/shoe")
+					.contentType(TestUtils.APPLICATION_JSON_UTF8)
+					.content(TestUtils.convertObjectToJsonBytes(shoe)))
+					.andExpect(status().isCreated())
+					.andExpect(header().string("Location", "http://localhost/shoe/5"));
+		} finally {
+			requestExecutor.shutdown();
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void searchShoes_ExecutorSaturated_ShouldReturnHttpStatusCode503() throws Exception {
+		ShoeRequestExecutor requestExecutor = mock(ShoeRequestExecutor.class);
+		CompletableFuture<Object> rejected = new CompletableFuture<>();
+		rejected.completeExceptionally(new RejectedExecutionException("Too many requests in flight"));
+		when(requestExecutor.supply(any(Callable.class))).thenReturn(rejected);
+		ShoeController controller = new ShoeController(shoeService);
+		controller.setRequestExecutor(requestExecutor);
+		this.mockMvc = MockMvcBuilders.standaloneSetup(controller).setControllerAdvice(new RestErrorHandler()).build();
+
+		perform(get("/shoe"))
+				.andExpect(status().isServiceUnavailable())
+				.andExpect(header().string("Retry-After", "1"));
+		verifyZeroInteractions(shoeService);
+	}
+
+	@Test
+	public void searchShoes_ServiceOverloaded_ShouldReturnHttpStatusCode503() throws Exception {
+		when(shoeService.searchShoes(eq("brand:Nike"))).thenThrow(new ServiceOverloadedException("Too many reads in flight", 2));
+
+		perform(get("/shoe").param("search", "brand:Nike"))
+				.andExpect(status().isServiceUnavailable())
+				.andExpect(header().string("Retry-After", "2"))
+				.andExpect(content().string("Too many reads in flight"));
+	}
+
+	/******************************************
+	 * 		Test cases for protobuf and compression
+	 ******************************************/
+	private static final Type SHOE_LIST = new ParameterizedTypeReference<List<Shoe>>() {}.getType();
+
+	private void setupFormats() {
+		this.mockMvc = MockMvcBuilders.standaloneSetup(new ShoeController(shoeService))
+				.setControllerAdvice(new RestErrorHandler(), new VaryByAcceptAdvice())
+				.setMessageConverters(new StringHttpMessageConverter(), new MappingJackson2HttpMessageConverter(),
+						new ShoeProtobufHttpMessageConverter())
+				.addFilters(new ResponseCompressionFilter(256)).build();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void searchShoes_AcceptProtobuf_ShouldReturnShoeList() throws Exception {
+		setupFormats();
+		Shoe first = new ShoeBuilder().setId(1).setArticleNumber("S1").setBrand("Nike").setSize("42,5").build();
+		first.setVersion(3L);
+		Shoe second = new ShoeBuilder().setId(2).setArticleNumber("S2").setName("Runner \u00e9").build();
+		when(shoeService.searchShoes(null)).thenReturn(Arrays.asList(first, second));
+
+		MvcResult result = perform(get("/shoe").accept(ShoeProtobufHttpMessageConverter.APPLICATION_PROTOBUF))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(ShoeProtobufHttpMessageConverter.APPLICATION_PROTOBUF))
+				.andReturn();
+		assertThat(result.getResponse().getHeaders("Vary").contains("Accept"), is(true));
+		byte[] body = result.getResponse().getContentAsByteArray();
+
+		List<Shoe> shoes = (List<Shoe>) new ShoeProtobufHttpMessageConverter().read(SHOE_LIST, null, new MockHttpInputMessage(body));
+		assertThat(shoes, hasSize(2));
+		assertThat(shoes.get(0).getId(), is(1L));
+		assertThat(shoes.get(0).getBrand(), is("Nike"));
+		assertThat(shoes.get(0).getSize(), is("42,5"));
+		assertThat(shoes.get(1).getName(), is("Runner \u00e9"));
+		assertThat(shoes.get(1).getBrand(), nullValue());
+	}
+
+	@Test
+	public void save_ProtobufBody_ShouldSaveShoe() throws Exception {
+		setupFormats();
+		Shoe shoe = new ShoeBuilder().setArticleNumber("S7").setBrand("Puma").setStock("4").build();
+		MockHttpOutputMessage message = new MockHttpOutputMessage();
+		new ShoeProtobufHttpMessageConverter().write(shoe, ShoeProtobufHttpMessageConverter.APPLICATION_PROTOBUF, message);
+		when(shoeService.save(any(Shoe.class))).thenReturn(shoe);
+
+		perform(post("/shoe")
+				.contentType(ShoeProtobufHttpMessageConverter.APPLICATION_PROTOBUF)
+				.content(message.getBodyAsBytes()))
+				.andExpect(status().isCreated());
+
+		ArgumentCaptor<Shoe> saved = ArgumentCaptor.forClass(Shoe.class);
+		verify(shoeService).save(saved.capture());
+		assertThat(saved.getValue().getArticleNumber(), is("S7"));
+		assertThat(saved.getValue().getBrand(), is("Puma"));
+		assertThat(saved.getValue().getStockCount(), is(4));
+	}
+
+	@Test
+	public void searchShoes_AcceptGzipLargeResult_ShouldCompress() throws Exception {
+		setupFormats();
+		List<Shoe> shoes = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			shoes.add(new ShoeBuilder().setId(i).setArticleNumber("S" + i).setBrand("Nike").build());
+		}
+		when(shoeService.searchShoes(null)).thenReturn(shoes);
+
+		MvcResult result = perform(get("/shoe").header("Accept-Encoding", "deflate;q=0.5, gzip"))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Content-Encoding", "gzip"))
+				.andExpect(header().string("Vary", "Accept-Encoding"))
+				.andReturn();
+
+		byte[] json = StreamUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray())));
+		assertThat(new ObjectMapper().readValue(json, List.class).size(), is(50));
+	}
+
+	@Test
+	public void searchShoes_AcceptGzipSmallResult_ShouldNotCompress() throws Exception {
+		setupFormats();
+		when(shoeService.searchShoes(null)).thenReturn(singletonList(new ShoeBuilder().setId(1).setArticleNumber("S1").build()));
+
+		perform(get("/shoe").header("Accept-Encoding", "gzip"))
+				.andExpect(status().isOk())
+				.andExpect(header().doesNotExist("Content-Encoding"))
+				.andExpect(jsonPath("$", hasSize(1)));
+	}
+
+	@Test
+	public void compression_NonBlockingWrite_ShouldPassTheListenerToTheContainer() throws Exception {
+		final ServletOutputStream container = mock(ServletOutputStream.class);
+		final WriteListener listener = mock(WriteListener.class);
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		when(response.getOutputStream()).thenReturn(container);
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/shoe");
+		request.addHeader("Accept-Encoding", "gzip");
+
+		new ResponseCompressionFilter(256).doFilter(request, response, new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+				ServletOutputStream out = response.getOutputStream();
+				out.write('x');
+				out.setWriteListener(listener);
+			}
+		});
+
+		verify(container).write(any(byte[].class), eq(0), eq(1));
+		verify(container).setWriteListener(listener);
+		verify(response, times(0)).setHeader(eq("Content-Encoding"), any(String.class));
+	}
+
+	@Test
+	public void searchShoes_WithoutAcceptEncoding_ShouldStillVaryByIt() throws Exception {
+		setupFormats();
+		when(shoeService.searchShoes(null)).thenReturn(singletonList(new ShoeBuilder().setId(1).setArticleNumber("S1").build()));
+
+		MvcResult result = perform(get("/shoe"))
+				.andExpect(status().isOk())
+				.andExpect(header().doesNotExist("Content-Encoding"))
+				.andReturn();
+		assertThat(result.getResponse().getHeaders("Vary"), hasItems("Accept-Encoding", "Accept"));
+	}
+
+	/******************************************
+	 * 		Test cases for metrics
+	 ******************************************/
+	@Test
+	public void searchShoes_Timed_ShouldRecordOncePerRequest() throws Exception {
+		LatencyRegistry latencyRegistry = new LatencyRegistry();
+		this.mockMvc = MockMvcBuilders.standaloneSetup(new ShoeController(shoeService)).setControllerAdvice(new RestErrorHandler())
+				.addInterceptors(new HandlerTimingInterceptor(latencyRegistry)).build();
+		when(shoeService.searchShoes(null)).thenReturn(new ArrayList<Shoe>());
+
+		perform(get("/shoe")).andExpect(status().isOk());
+
+		StringBuilder scrape = new StringBuilder();
+		latencyRegistry.write(scrape);
+		assertThat(scrape.toString(), containsString(
+				"shoe_http_request_seconds_count{handler=\"ShoeController.searchShoes\",status=\"2xx\"} 1\n"));
+	}
+
+	/******************************************
+	 * 		Test cases for conditional search
+	 ******************************************/
+	private ShoeCatalogVersion catalogVersion() {
+		return catalogVersion(new ShoeCatalogVersion());
+	}
+
+	private ShoeCatalogVersion catalogVersion(ShoeCatalogVersion catalogVersion) {
+		ShoeController controller = new ShoeController(shoeService);
+		controller.setCatalogVersion(catalogVersion);
+		this.mockMvc = MockMvcBuilders.standaloneSetup(controller).setControllerAdvice(new RestErrorHandler()).build();
+		return catalogVersion;
+	}
+
+	@Test
+	public void searchShoes_ShouldReturnCatalogVersionAsWeakETag() throws Exception {
+		ShoeCatalogVersion catalogVersion = catalogVersion();
+		when(shoeService.searchShoes(null)).thenReturn(new ArrayList<Shoe>());
+
+		MvcResult result = perform(get("/shoe"))
+				.andExpect(status().isOk())
+				.andExpect(header().string("ETag", "W/\"" + catalogVersion.current().getETag() + "\""))
+				.andReturn();
+		assertThat(result.getResponse().getHeaders("Vary").contains("Accept"), is(true));
+	}
+
+	@Test
+	public void searchShoes_ModifiedWithinTheCurrentSecond_ShouldIgnoreIfModifiedSince() throws Exception {
+		// a stamp whose second is not over before the request, however slow the test runs
+		long lastModified = System.currentTimeMillis() + 5000;
+		ShoeCatalogVersion catalogVersion = mock(ShoeCatalogVersion.class);
+		when(catalogVersion.current()).thenReturn(new ShoeCatalogVersion.Stamp("t1", lastModified));
+		catalogVersion(catalogVersion);
+		when(shoeService.searchShoes(null)).thenReturn(new ArrayList<Shoe>());
+
+		// a second write within that second would get the same date
+		perform(get("/shoe").header("If-Modified-Since", lastModified))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Last-Modified", nullValue()));
+	}
+
+	@Test
+	public void searchShoes_IfModifiedSinceAnEarlierSecond_ShouldReturnHttpStatusCode304() throws Exception {
+		long lastModified = System.currentTimeMillis() - 10000;
+		ShoeCatalogVersion catalogVersion = mock(ShoeCatalogVersion.class);
+		when(catalogVersion.current()).thenReturn(new ShoeCatalogVersion.Stamp("t1", lastModified));
+		catalogVersion(catalogVersion);
+		when(shoeService.searchShoes(null)).thenReturn(new ArrayList<Shoe>());
+
+		perform(get("/shoe"))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Last-Modified", notNullValue()));
+		perform(get("/shoe").header("If-Modified-Since", lastModified))
+				.andExpect(status().isNotModified());
+		verify(shoeService, times(1)).searchShoes(null);
+	}
+
+	@Test
+	public void searchShoes_MatchingIfNoneMatch_ShouldReturnHttpStatusCode304WithoutSearching() throws Exception {
+		ShoeCatalogVersion catalogVersion = catalogVersion();
+
+		perform(get("/shoe").param("search", "brand:Nike")
+				.header("If-None-Match", "\"" + catalogVersion.current().getETag() + "\""))
+				.andExpect(status().isNotModified())
+				.andExpect(content().string(""));
+
+		verifyZeroInteractions(shoeService);
+	}
+
+	@Test
+	public void searchShoes_CatalogModified_ShouldReturnHttpStatusCode200() throws Exception {
+		ShoeCatalogVersion catalogVersion = catalogVersion();
+		String eTag = "\"" + catalogVersion.current().getETag() + "\"";
+		catalogVersion.modified();
+		when(shoeService.searchShoes(null)).thenReturn(new ArrayList<Shoe>());
+
+		perform(get("/shoe").header("If-None-Match", eTag))
+				.andExpect(status().isOk())
+				.andExpect(header().string("ETag", "W/\"" + catalogVersion.current().getETag() + "\""));
+
+		verify(shoeService, times(1)).searchShoes(null);
+	}
+
+	@Test
+	public void searchShoes_SequencedOnOtherNode_ShouldReturnHttpStatusCode200() throws Exception {
+		ShoeCatalogVersion catalogVersion = catalogVersion();
+		String eTag = "\"" + catalogVersion.current().getETag() + "\"";
+		catalogVersion.sequenced(3, System.currentTimeMillis());
+		when(shoeService.searchShoes(null)).thenReturn(new ArrayList<Shoe>());
+
+		perform(get("/shoe").header("If-None-Match", eTag))
+				.andExpect(status().isOk())
+				.andExpect(header().string("ETag", "W/\"" + catalogVersion.current().getETag() + "\""));
+	}
+
+	@Test
+	public void searchShoes_PartialCatalogVersion_ShouldNotValidate() throws Exception {
+		ShoeCatalogVersion catalogVersion = mock(ShoeCatalogVersion.class);
+		when(catalogVersion.current()).thenReturn(new ShoeCatalogVersion.Stamp("t1", System.currentTimeMillis() - 10000));
+		when(catalogVersion.isPartial()).thenReturn(true);
+		catalogVersion(catalogVersion);
+		when(shoeService.searchShoes(null)).thenReturn(new ArrayList<Shoe>());
+
+		perform(get("/shoe").header("If-None-Match", "\"t1\""))
+				.andExpect(status().isOk())
+				.andExpect(header().string("ETag", nullValue()))
+				.andExpect(header().string("Last-Modified", nullValue()));
+	}
+
+	@Test
+	public void changesSince_ShouldReturnDelta() throws Exception {
+		Shoe changed = new ShoeBuilder().setId(1).setArticleNumber("S1").build();
+		when(shoeService.changesSince(5)).thenReturn(new ShoeDelta(7, singletonList(changed),
+				singletonList(new ShoeTombstone(2L, "S2", 7L))));
+
+		perform(get("/shoe").param("since", "5"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.revision", is(7)))
+				.andExpect(jsonPath("$.reset", is(false)))
+				.andExpect(jsonPath("$.shoes[0].articleNumber", is("S1")))
+				.andExpect(jsonPath("$.deleted[0].id", is(2)))
+				.andExpect(jsonPath("$.deleted[0].revision", is(7)));
+		verify(shoeService, times(0)).searchShoes(any(String.class));
+	}
+
+	@Test
+	public void changesSince_Negative_ShouldReturnHttpStatusCode400() throws Exception {
+		perform(get("/shoe").param("since", "-1"))
+				.andExpect(status().isBadRequest());
+		verifyZeroInteractions(shoeService);
+	}
+
+	@Test
+	public void facetShoes_ShouldReturnCountsPerField() throws Exception {
+		ShoeFacets facets = new ShoeFacets.Builder()
+				.addShoes(new String[] { "Nike", "red", "42" }, 2)
+				.addShoes(new String[] { "Puma", "red", null }, 1)
+				.build();
+		when(shoeService.facetShoes("color=red")).thenReturn(facets);
+
+		perform(get("/shoe/facets").param("search", "color=red"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.total", is(3)))
+				.andExpect(jsonPath("$.counts.brand.Nike", is(2)))
+				.andExpect(jsonPath("$.counts.brand.Puma", is(1)))
+				.andExpect(jsonPath("$.counts.color.red", is(3)))
+				.andExpect(jsonPath("$.counts.size.42", is(2)));
+	}
+
+	@Test
+	public void facetShoes_MatchingIfNoneMatch_ShouldReturnHttpStatusCode304WithoutCounting() throws Exception {
+		ShoeCatalogVersion catalogVersion = catalogVersion();
+
+		perform(get("/shoe/facets").header("If-None-Match", "W/\"" + catalogVersion.current().getETag() + "\""))
+				.andExpect(status().isNotModified());
+
+		verifyZeroInteractions(shoeService);
+	}
+
+	@Test
+	public void streamChanges_ShouldSendChangesAsEvents() throws Exception {
+		ShoeChangeFeed changeFeed = mock(ShoeChangeFeed.class);
+		when(changeFeed.getTimeoutMillis()).thenReturn(60000L);
+		ShoeController controller = new ShoeController(shoeService);
+		controller.setChangeFeed(changeFeed);
+		this.mockMvc = MockMvcBuilders.standaloneSetup(controller).addFilters(new ResponseCompressionFilter(256)).build();
+
+		// events are smaller than the compression threshold and must not be held back for it
+		MvcResult result = mockMvc.perform(get("/shoe/changes").header("Last-Event-ID", "abc-4").header("Accept-Encoding", "gzip"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		ArgumentCaptor<ShoeChangeFeed.Subscriber> subscriber = ArgumentCaptor.forClass(ShoeChangeFeed.Subscriber.class);
+		verify(changeFeed).subscribe(eq("abc-4"), subscriber.capture());
+
+		subscriber.getValue().changed(new ShoeChange("abc-5", ShoeChange.Type.UPDATED,
+				new ShoeBuilder().setId(7).setArticleNumber("S7").build()));
+		subscriber.getValue().reset("abc-5");
+
+		assertThat(result.getResponse().getContentType(), containsString("text/event-stream"));
+		assertThat(result.getResponse().getHeader("Content-Encoding"), is(nullValue()));
+		String body = result.getResponse().getContentAsString();
+		assertThat(body, containsString("id:abc-5\nevent:updated\ndata:{\"id\":7,\"articleNumber\":\"S7\""));
+		assertThat(body, containsString("id:abc-5\nevent:reset\ndata:reload\n\n"));
+	}
+
+	@Test
+	public void streamChanges_FeedDisabled_ShouldReturnHttpStatusCode404() throws Exception {
+		mockMvc.perform(get("/shoe/changes"))
+				.andExpect(status().isNotFound());
+	}
+
+	/******************************************
+	 * 		Test cases for queued writes
+	 ******************************************/
+	private ShoeIngestService mockIngest() {
+		ShoeIngestService ingestService = mock(ShoeIngestService.class);
+		ShoeController controller = new ShoeController(shoeService);
+		controller.setShoeIngestService(ingestService);
+		this.mockMvc = MockMvcBuilders.standaloneSetup(controller).setControllerAdvice(new RestErrorHandler()).build();
+		return ingestService;
+	}
+
+	@Test
+	public void save_RespondAsync_ShouldReturnHttpStatusCode202WithTicket() throws Exception {
+		ShoeIngestService ingestService = mockIngest();
+		ShoeIngestTicket ticket = new ShoeIngestTicket("t1", null);
+		when(ingestService.submitSave(any(Shoe.class))).thenReturn(ticket);
+
+		perform(post("/shoe").header("Prefer", "respond-async")
+				.contentType(TestUtils.APPLICATION_JSON_UTF8)
+				.content(TestUtils.convertObjectToJsonBytes(new ShoeBuilder().setArticleNumber("S1").build())))
+				.andExpect(status().isAccepted())
+				.andExpect(header().string("Location", "http://localhost/shoe/ingest/t1"))
+				.andExpect(header().string("Preference-Applied", "respond-async"))
+				.andExpect(jsonPath("$.status", is("PENDING")));
+
+		verify(ingestService, times(1)).submitSave(any(Shoe.class));
+		verifyZeroInteractions(shoeService);
+	}
+
+	@Test
+	public void save_RespondAsyncQueueFull_ShouldReturnHttpStatusCode503() throws Exception {
+		ShoeIngestService ingestService = mockIngest();
+		when(ingestService.submitSave(any(Shoe.class))).thenThrow(new IngestQueueFullException("Ingest queue is full", 2));
+
+		perform(post("/shoe").header("Prefer", "respond-async")
+				.contentType(TestUtils.APPLICATION_JSON_UTF8)
+				.content(TestUtils.convertObjectToJsonBytes(new ShoeBuilder().setArticleNumber("S1").build())))
+				.andExpect(status().isServiceUnavailable())
+				.andExpect(header().string("Retry-After", "2"));
+	}
+
+	@Test
+	public void update_RespondAsync_ShouldReturnHttpStatusCode202() throws Exception {
+		ShoeIngestService ingestService = mockIngest();
+		ShoeIngestTicket ticket = new ShoeIngestTicket("t2", 3L);
+		when(ingestService.submitUpdate(eq(3L), any(Shoe.class))).thenReturn(ticket);
+
+		perform(put("/shoe/{id}", 3L).header("Prefer", "respond-async")
+				.contentType(TestUtils.APPLICATION_JSON_UTF8)
+				.content(TestUtils.convertObjectToJsonBytes(new ShoeBuilder().setBrand("Nike").build())))
+				.andExpect(status().isAccepted())
+				.andExpect(header().string("Location", "http://localhost/shoe/ingest/t2"));
+
+		verifyZeroInteractions(shoeService);
+	}
+
+	@Test
+	public void save_RespondAsyncWithoutIngest_ShouldSaveDirectly() throws Exception {
+		Shoe shoe = new ShoeBuilder().setId(1).setArticleNumber("S1").build();
+		when(shoeService.save(any(Shoe.class))).thenReturn(shoe);
+
+		perform(post("/shoe").header("Prefer", "respond-async")
+				.contentType(TestUtils.APPLICATION_JSON_UTF8)
+				.content(TestUtils.convertObjectToJsonBytes(shoe)))
+				.andExpect(status().isCreated());
+	}
+
+	@Test
+	public void getIngestTicket_ShouldReturnStatus() throws Exception {
+		ShoeIngestService ingestService = mockIngest();
+		ShoeIngestTicket ticket = new ShoeIngestTicket("t3", 7L);
+		when(ingestService.getTicket("t3")).thenReturn(ticket);
+
+		perform(get("/shoe/ingest/{ticket}", "t3"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.id", is("t3")))
+				.andExpect(jsonPath("$.status", is("PENDING")))
+				.andExpect(jsonPath("$.shoeId", is(7)));
+		perform(get("/shoe/ingest/{ticket}", "unknown"))
+				.andExpect(status().isNotFound());
+	}
+
 	/******************************************
 	 * 		Test cases for search operation
 	 ******************************************/
@@ -165,7 +850,7 @@ public class TestShoeController {
 		List<Shoe> shoeList = singletonList(found);
         when(shoeService.searchShoes("id:9")).thenReturn(shoeList);
 
-        mockMvc.perform(get("/shoe?search=id:9"))
+        perform(get("/shoe?search=id:9"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(TestUtils.APPLICATION_JSON_UTF8))
                 .andExpect(jsonPath("$", hasSize(1)))
@@ -179,7 +864,7 @@ public class TestShoeController {
     public void findByEmptyId_ShoeEntryNotFound_ShouldReturnEmptyList() throws Exception {
 	    List<Shoe> shoeList = new ArrayList<>();
 		when(shoeService.searchShoes("id:")).thenReturn(shoeList);
-        mockMvc.perform(get("/shoe?search=id:")).andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(0)));
+        perform(get("/shoe?search=id:")).andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(0)));
         verify(shoeService, times(1)).searchShoes("id:");
         verifyNoMoreInteractions(shoeService);
     }
@@ -197,7 +882,7 @@ public class TestShoeController {
 		List<Shoe> shoeList = singletonList(found);
         when(shoeService.searchShoes("articleNumber:S1234")).thenReturn(shoeList);
 
-        mockMvc.perform(get("/shoe?search=articleNumber:S1234"))
+        perform(get("/shoe?search=articleNumber:S1234"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(TestUtils.APPLICATION_JSON_UTF8))
                 .andExpect(jsonPath("$", hasSize(1)))
@@ -211,7 +896,7 @@ public class TestShoeController {
     public void findByEmptyArticleNumber_ShoeEntryNotFound_ShouldReturnEmptyList() throws Exception {
 	    List<Shoe> shoeList = new ArrayList<>();
 		when(shoeService.searchShoes("articleNumber:")).thenReturn(shoeList);
-        mockMvc.perform(get("/shoe?search=articleNumber:")).andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(0)));
+        perform(get("/shoe?search=articleNumber:")).andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(0)));
         verify(shoeService, times(1)).searchShoes("articleNumber:");
         verifyNoMoreInteractions(shoeService);
     }
@@ -229,7 +914,7 @@ public class TestShoeController {
 		List<Shoe> shoeList = singletonList(found);
         when(shoeService.searchShoes("brand:Nike")).thenReturn(shoeList);
 
-        mockMvc.perform(get("/shoe?search=brand:Nike"))
+        perform(get("/shoe?search=brand:Nike"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(TestUtils.APPLICATION_JSON_UTF8))
                 .andExpect(jsonPath("$", hasSize(1)))
@@ -243,7 +928,7 @@ public class TestShoeController {
     public void findByEmptyBrand_ShoeEntryNotFound_ShouldReturnEmptyList() throws Exception {
 	    List<Shoe> shoeList = new ArrayList<>();
 		when(shoeService.searchShoes("brand:")).thenReturn(shoeList);
-        mockMvc.perform(get("/shoe?search=brand:")).andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(0)));
+        perform(get("/shoe?search=brand:")).andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(0)));
         verify(shoeService, times(1)).searchShoes("brand:");
         verifyNoMoreInteractions(shoeService);
     }
@@ -261,7 +946,7 @@ public class TestShoeController {
 		List<Shoe> shoeList = singletonList(found);
         when(shoeService.searchShoes("name:Nike Sports Shoe")).thenReturn(shoeList);
 
-        mockMvc.perform(get("/shoe?search=name:Nike Sports Shoe"))
+        perform(get("/shoe?search=name:Nike Sports Shoe"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(TestUtils.APPLICATION_JSON_UTF8))
                 .andExpect(jsonPath("$", hasSize(1)))
@@ -275,7 +960,7 @@ public class TestShoeController {
     public void findByEmptyName_ShoeEntryNotFound_ShouldReturnEmptyList() throws Exception {
 	    List<Shoe> shoeList = new ArrayList<>();
 		when(shoeService.searchShoes("name:")).thenReturn(shoeList);
-        mockMvc.perform(get("/shoe?search=name:")).andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(0)));
+        perform(get("/shoe?search=name:")).andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(0)));
         verify(shoeService, times(1)).searchShoes("name:");
         verifyNoMoreInteractions(shoeService);
     }
@@ -293,7 +978,7 @@ public class TestShoeController {
 		List<Shoe> shoeList = singletonList(found);
         when(shoeService.searchShoes("color:white")).thenReturn(shoeList);
 
-        mockMvc.perform(get("/shoe?search=color:white"))
+        perform(get("/shoe?search=color:white"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(TestUtils.APPLICATION_JSON_UTF8))
                 .andExpect(jsonPath("$", hasSize(1)))
@@ -307,7 +992,7 @@ public class TestShoeController {
     public void findByEmptyColor_ShoeEntryNotFound_ShouldReturnEmptyList() throws Exception {
 	    List<Shoe> shoeList = new ArrayList<>();
 		when(shoeService.searchShoes("color:")).thenReturn(shoeList);
-        mockMvc.perform(get("/shoe?search=color:")).andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(0)));
+        perform(get("/shoe?search=color:")).andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(0)));
         verify(shoeService, times(1)).searchShoes("color:");
         verifyNoMoreInteractions(shoeService);
     }
@@ -325,7 +1010,7 @@ public class TestShoeController {
 		List<Shoe> shoeList = singletonList(found);
         when(shoeService.searchShoes("size:11")).thenReturn(shoeList);
 
-        mockMvc.perform(get("/shoe?search=size:11"))
+        perform(get("/shoe?search=size:11"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(TestUtils.APPLICATION_JSON_UTF8))
                 .andExpect(jsonPath("$", hasSize(1)))
@@ -339,7 +1024,7 @@ public class TestShoeController {
     public void findByEmptySize_ShoeEntryNotFound_ShouldReturnEmptyList() throws Exception {
 	    List<Shoe> shoeList = new ArrayList<>();
 		when(shoeService.searchShoes("size:")).thenReturn(shoeList);
-        mockMvc.perform(get("/shoe?search=size:")).andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(0)));
+        perform(get("/shoe?search=size:")).andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(0)));
         verify(shoeService, times(1)).searchShoes("size:");
         verifyNoMoreInteractions(shoeService);
     }
@@ -357,7 +1042,7 @@ public class TestShoeController {
 		List<Shoe> shoeList = singletonList(found);
         when(shoeService.searchShoes("stock:1")).thenReturn(shoeList);
 
-        mockMvc.perform(get("/shoe?search=stock:1"))
+        perform(get("/shoe?search=stock:1"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(TestUtils.APPLICATION_JSON_UTF8))
                 .andExpect(jsonPath("$", hasSize(1)))
@@ -371,7 +1056,7 @@ public class TestShoeController {
     public void findByEmptyStock_ShoeEntryNotFound_ShouldReturnEmptyList() throws Exception {
 	    List<Shoe> shoeList = new ArrayList<>();
 		when(shoeService.searchShoes("stock:")).thenReturn(shoeList);
-        mockMvc.perform(get("/shoe?search=stock:")).andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(0)));
+        perform(get("/shoe?search=stock:")).andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(0)));
         verify(shoeService, times(1)).searchShoes("stock:");
         verifyNoMoreInteractions(shoeService);
     }
@@ -389,7 +1074,7 @@ public class TestShoeController {
 		List<Shoe> shoeList = singletonList(found);
         when(shoeService.searchShoes(null)).thenReturn(shoeList);
 
-        mockMvc.perform(get("/shoe"))
+        perform(get("/shoe"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(TestUtils.APPLICATION_JSON_UTF8))
                 .andExpect(jsonPath("$", hasSize(1)));
@@ -398,6 +1083,194 @@ public class TestShoeController {
         verifyNoMoreInteractions(shoeService);
     }
 	
+	@Test
+    public void findAllPaged_NextPageExists_ShouldReturnNextCursorHeader() throws Exception {
+		Shoe found = new ShoeBuilder()
+				.setId(1)
+                .setArticleNumber("S1234")
+                .setBrand("Nike")
+				.build();
+        when(shoeService.searchShoes(eq("brand:Nike"), any(PageCriteria.class)))
+        		.thenReturn(new ShoePage(singletonList(found), "next"));
+
+        perform(get("/shoe?search=brand:Nike&limit=1&sort=-brand"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ShoeController.NEXT_CURSOR_HEADER, "next"))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(1)));
+
+        ArgumentCaptor<PageCriteria> pageCaptor = ArgumentCaptor.forClass(PageCriteria.class);
+        verify(shoeService, times(1)).searchShoes(eq("brand:Nike"), pageCaptor.capture());
+        assertThat(pageCaptor.getValue().getSortKey(), is("brand"));
+        assertThat(pageCaptor.getValue().isAscending(), is(false));
+        assertThat(pageCaptor.getValue().getLimit(), is(1));
+        verifyNoMoreInteractions(shoeService);
+    }
+	
+	@Test
+    public void findAllPaged_LastPage_ShouldNotReturnNextCursorHeader() throws Exception {
+        when(shoeService.searchShoes(eq((String) null), any(PageCriteria.class)))
+        		.thenReturn(new ShoePage(new ArrayList<Shoe>(), null));
+
+        perform(get("/shoe?limit=10"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(ShoeController.NEXT_CURSOR_HEADER))
+                .andExpect(jsonPath("$", hasSize(0)));
+    }
+	
+	@Test
+    public void findAllPaged_InvalidCursor_ShouldReturnHttpStatusCode400() throws Exception {
+        perform(get("/shoe?limit=10&cursor=garbage"))
+                .andExpect(status().isBadRequest());
+        verifyZeroInteractions(shoeService);
+    }
+	
+	@Test
+    public void findAllPaged_LimitTooLarge_ShouldReturnHttpStatusCode400() throws Exception {
+        perform(get("/shoe?limit=" + (PageCriteria.MAX_LIMIT + 1)))
+                .andExpect(status().isBadRequest());
+        verifyZeroInteractions(shoeService);
+    }
+	
+	@Test
+    public void findAllPaged_UnknownSortKey_ShouldReturnHttpStatusCode400() throws Exception {
+        perform(get("/shoe?sort=weight"))
+                .andExpect(status().isBadRequest());
+        verifyZeroInteractions(shoeService);
+    }
+	
+	/******************************************
+	 * 		Test cases for export operation
+	 ******************************************/
+	@Test
+    public void export_CsvFormat_ShouldStreamShoesAsCsv() throws Exception {
+		final Shoe found = new ShoeBuilder()
+				.setId(1)
+                .setArticleNumber("S1234")
+                .setBrand("Nike")
+				.setName("Nike \"Air\", low")
+				.setColor("White")
+				.setSize("11")
+				.setStock("10")
+				.build();
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				((ShoeRowHandler) invocation.getArguments()[1]).handle(found);
+				return null;
+			}
+		}).when(shoeService).exportShoes(eq("brand:Nike"), any(ShoeRowHandler.class));
+
+        MvcResult result = mockMvc.perform(get("/shoe/export?search=brand:Nike&format=csv"))
+                .andExpect(request().asyncStarted())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv"))
+                .andReturn();
+        // not cut off by the timeout of the other requests
+        assertThat(result.getRequest().getAsyncContext().getTimeout(), is(0L));
+        result.getAsyncResult(5000);
+        assertThat(result.getResponse().getContentAsString(), is("id,articleNumber,name,brand,color,size,stock\r\n"
+        		+ "1,S1234,\"Nike \"\"Air\"\", low\",Nike,White,11,10\r\n"));
+
+        verify(shoeService, times(1)).exportShoes(eq("brand:Nike"), any(ShoeRowHandler.class));
+        verifyNoMoreInteractions(shoeService);
+    }
+	
+	@Test
+    public void export_NdjsonFormat_ShouldStreamOneShoePerLine() throws Exception {
+		final Shoe first = new ShoeBuilder().setId(1).setArticleNumber("S1").build();
+		final Shoe second = new ShoeBuilder().setId(2).setArticleNumber("S2").build();
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				ShoeRowHandler handler = (ShoeRowHandler) invocation.getArguments()[1];
+				handler.handle(first);
+				handler.handle(second);
+				return null;
+			}
+		}).when(shoeService).exportShoes(eq((String) null), any(ShoeRowHandler.class));
+
+        MvcResult result = mockMvc.perform(get("/shoe/export"))
+                .andExpect(request().asyncStarted())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn();
+        result.getAsyncResult(5000);
+        String body = result.getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertThat(lines.length, is(2));
+        assertThat(lines[0].startsWith("{\"id\":1,\"articleNumber\":\"S1\""), is(true));
+        assertThat(lines[1].startsWith("{\"id\":2,\"articleNumber\":\"S2\""), is(true));
+    }
+	
+	@Test
+    public void export_UnknownFormat_ShouldReturnHttpStatusCode400() throws Exception {
+        mockMvc.perform(get("/shoe/export?format=xml"))
+                .andExpect(status().isBadRequest());
+        verifyZeroInteractions(shoeService);
+    }
+	
+	/******************************************
+	 * 		Test cases for import operation
+	 ******************************************/
+	private ShoeImportService mockImport() throws Exception {
+		ShoeImportService importService = mock(ShoeImportService.class);
+		when(importService.open(any(InputStream.class))).thenAnswer(new Answer<ShoeCsvReader>() {
+			@Override
+			public ShoeCsvReader answer(InvocationOnMock invocation) throws Throwable {
+				return new ShoeCsvReader(new InputStreamReader((InputStream) invocation.getArguments()[0], StandardCharsets.UTF_8), 1000);
+			}
+		});
+		ShoeController controller = new ShoeController(shoeService);
+		controller.setShoeImportService(importService);
+		this.mockMvc = MockMvcBuilders.standaloneSetup(controller).setControllerAdvice(new RestErrorHandler()).build();
+		return importService;
+	}
+
+	@Test
+	public void import_Csv_ShouldStreamRowErrorsAndProgress() throws Exception {
+		ShoeImportService importService = mockImport();
+		when(importService.importShoes(any(ShoeCsvReader.class), any(ShoeImportListener.class))).thenAnswer(new Answer<ShoeImportProgress>() {
+			@Override
+			public ShoeImportProgress answer(InvocationOnMock invocation) throws Throwable {
+				ShoeCsvReader rows = (ShoeCsvReader) invocation.getArguments()[0];
+				ShoeImportListener listener = (ShoeImportListener) invocation.getArguments()[1];
+				assertThat(rows.next().getFields(), is(Arrays.asList("S1", "Nike")));
+				listener.rowFailed(3, singletonList("articleNumber is required"));
+				ShoeImportProgress progress = new ShoeImportProgress(2, 1, 0, 1);
+				listener.batchCommitted(progress);
+				return progress;
+			}
+		});
+
+		MvcResult result = mockMvc.perform(post("/shoe/import")
+				.contentType("text/csv")
+				.content("articleNumber,brand\nS1,Nike\n,Nike\n"))
+				.andExpect(request().asyncStarted())
+				.andExpect(status().isOk())
+				.andExpect(content().contentType("application/x-ndjson"))
+				.andReturn();
+		assertThat(result.getRequest().getAsyncContext().getTimeout(), is(0L));
+		result.getAsyncResult(5000);
+		String[] lines = result.getResponse().getContentAsString().split("\n");
+		assertThat(lines.length, is(3));
+		assertThat(lines[0], is("{\"type\":\"error\",\"line\":3,\"errors\":[\"articleNumber is required\"]}"));
+		assertThat(lines[1], is("{\"type\":\"progress\",\"rows\":2,\"inserted\":1,\"updated\":0,\"failed\":1}"));
+		assertThat(lines[2], is("{\"type\":\"done\",\"rows\":2,\"inserted\":1,\"updated\":0,\"failed\":1}"));
+	}
+
+	@Test
+	public void import_UnknownColumn_ShouldReturnHttpStatusCode400() throws Exception {
+		ShoeImportService importService = mockImport();
+
+		mockMvc.perform(post("/shoe/import")
+				.contentType("text/csv")
+				.content("articleNumber,price\nS1,10\n"))
+				.andExpect(status().isBadRequest());
+		verify(importService, times(0)).importShoes(any(ShoeCsvReader.class), any(ShoeImportListener.class));
+	}
+
 	/******************************************
 	 * 		Test cases for update operation
 	 ******************************************/
@@ -414,7 +1287,7 @@ public class TestShoeController {
         
         when(shoeService.update(anyLong(), any(Shoe.class))).thenThrow(new IllegalArgumentException(""));
         
-        mockMvc.perform(put("/shoe/{id}", 10L)
+        perform(put("/shoe/{id}", 10L)
                 .contentType(TestUtils.APPLICATION_JSON_UTF8)
                 .content(TestUtils.convertObjectToJsonBytes(shoe))
         )
@@ -438,7 +1311,7 @@ public class TestShoeController {
         
         when(shoeService.update(anyLong(), any(Shoe.class))).thenThrow(new IllegalArgumentException(""));
         
-        mockMvc.perform(put("/shoe/{id}", 10L)
+        perform(put("/shoe/{id}", 10L)
                 .contentType(TestUtils.APPLICATION_JSON_UTF8)
                 .content(TestUtils.convertObjectToJsonBytes(shoe))
         )
@@ -461,7 +1334,7 @@ public class TestShoeController {
 
         when(shoeService.update(anyLong(), any(Shoe.class))).thenThrow(new ShoeNotFoundException(""));
 
-        mockMvc.perform(put("/shoe/{id}", 3L)
+        perform(put("/shoe/{id}", 3L)
                 .contentType(TestUtils.APPLICATION_JSON_UTF8)
                 .content(TestUtils.convertObjectToJsonBytes(shoe))
         )
@@ -494,7 +1367,7 @@ public class TestShoeController {
         
         when(shoeService.update(anyLong(), any(Shoe.class))).thenReturn(updated);
         
-        mockMvc.perform(put("/shoe/{id}", 10L)
+        perform(put("/shoe/{id}", 10L)
                 .contentType(TestUtils.APPLICATION_JSON_UTF8)
                 .content(TestUtils.convertObjectToJsonBytes(shoe))
         )
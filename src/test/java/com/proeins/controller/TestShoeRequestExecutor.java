@@ -0,0 +1,120 @@
+package com.proeins.controller;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.proeins.exception.ShoeNotFoundException;
+
+public class TestShoeRequestExecutor {
+
+	private ShoeRequestExecutor executor;
+
+	private ShoeRequestExecutor executor(String mode, int poolSize, int queueCapacity) {
+		executor = new ShoeRequestExecutor();
+		ReflectionTestUtils.setField(executor, "mode", mode);
+		ReflectionTestUtils.setField(executor, "poolSize", poolSize);
+		ReflectionTestUtils.setField(executor, "queueCapacity", queueCapacity);
+		executor.initialize();
+		return executor;
+	}
+
+	@After
+	public void cleanup() {
+		executor.shutdown();
+		RequestContextHolder.resetRequestAttributes();
+	}
+
+	@Test
+	public void supply_DirectMode_ShouldRunOnCallingThread() throws Exception {
+		final Thread caller = Thread.currentThread();
+		Thread runner = executor("direct", 1, 1).supply(new Callable<Thread>() {
+			@Override
+			public Thread call() {
+				return Thread.currentThread();
+			}
+		}).get();
+		assertThat(runner, sameInstance(caller));
+	}
+
+	@Test
+	public void supply_PoolMode_ShouldRunOnPoolWithRequestAttributes() throws Exception {
+		final RequestAttributes attributes = new ServletRequestAttributes(new MockHttpServletRequest());
+		RequestContextHolder.setRequestAttributes(attributes);
+		final Thread caller = Thread.currentThread();
+		Boolean sameAttributes = executor("pool", 2, 10).supply(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				assertThat(Thread.currentThread(), not(sameInstance(caller)));
+				return RequestContextHolder.getRequestAttributes() == attributes;
+			}
+		}).get();
+		assertThat(sameAttributes, is(true));
+	}
+
+	@Test
+	public void supply_CheckedException_ShouldCompleteExceptionally() throws Exception {
+		try {
+			executor("pool", 1, 1).supply(new Callable<Void>() {
+				@Override
+				public Void call() throws ShoeNotFoundException {
+					throw new ShoeNotFoundException("missing");
+				}
+			}).get();
+			fail();
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), instanceOf(ShoeNotFoundException.class));
+		}
+	}
+
+	@Test
+	public void supply_PoolAndQueueFull_ShouldReject() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		Callable<Void> blocked = new Callable<Void>() {
+			@Override
+			public Void call() throws InterruptedException {
+				release.await();
+				return null;
+			}
+		};
+		executor("pool", 1, 1);
+		executor.supply(blocked);
+		executor.supply(blocked);
+		try {
+			executor.supply(blocked).get();
+			fail();
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), instanceOf(RejectedExecutionException.class));
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void initialize_VirtualModeOnOldRuntime_ShouldStillRunOffThread() throws Exception {
+		final Thread caller = Thread.currentThread();
+		Thread runner = executor("virtual", 1, 1).supply(new Callable<Thread>() {
+			@Override
+			public Thread call() {
+				return Thread.currentThread();
+			}
+		}).get();
+		assertThat(runner, not(sameInstance(caller)));
+	}
+}
@@ -0,0 +1,79 @@
+package com.proeins.dao;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.proeins.AppConfig;
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeBuilder;
+import com.proeins.service.ConnectionPoolStatisticsService;
+import com.proeins.service.ShoeService;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+@TestPropertySource(properties = {
+		"mysql.driver=org.h2.Driver",
+		"mysql.url=jdbc:h2:mem:shoepool;DB_CLOSE_DELAY=-1",
+		"mysql.user=sa",
+		"mysql.password=",
+		"hibernate.show_sql=false",
+		"hibernate.hbm2ddl.auto=create-drop",
+		"hibernate.c3p0.min_size=2",
+		"hibernate.c3p0.max_size=4",
+		"shoe.pool.adaptive.enabled=true",
+		"shoe.pool.adaptive.interval_seconds=3600",
+		"shoe.pool.adaptive.grow_wait_millis=60000",
+		"shoe.pool.adaptive.shrink_wait_millis=60000" })
+public class TestConnectionPoolMetrics {
+
+	@Autowired
+	private ShoeService shoeService;
+
+	@Autowired
+	private ConnectionPoolMetrics connectionPoolMetrics;
+
+	@Autowired
+	private AdaptivePoolSizer adaptivePoolSizer;
+
+	@Autowired
+	private ConnectionPoolStatisticsService connectionPoolStatisticsService;
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void getStatistics_AfterQueries_ShouldCountCheckouts() throws Exception {
+		long before = connectionPoolMetrics.getAcquireTimes().snapshot().getCount();
+		Shoe shoe = shoeService.save(new ShoeBuilder().setArticleNumber("P1").setBrand("Pooled").build());
+		shoeService.delete(shoe.getId());
+
+		assertThat(connectionPoolMetrics.getAcquireTimes().snapshot().getCount(), greaterThan(before));
+		Map<String, Object> statistics = connectionPoolStatisticsService.getStatistics();
+		assertThat(statistics.get("acquire"), notNullValue());
+		assertThat((Long) ((Map<String, Object>) statistics.get("churn")).get("opened"), greaterThan(0L));
+		assertThat(((Map<String, Object>) statistics.get("connections")).get("maxSize"), notNullValue());
+	}
+
+	@Test
+	public void adjust_ShortWaits_ShouldShrinkToMinimumAndKeepServing() throws Exception {
+		connectionPoolMetrics.getPool().setMaxPoolSize(4);
+
+		assertThat(adaptivePoolSizer.adjust(), is(3));
+		assertThat(adaptivePoolSizer.adjust(), is(2));
+		assertThat(adaptivePoolSizer.adjust(), is(2));
+		assertThat(connectionPoolMetrics.getPool().getMaxPoolSize(), is(2));
+
+		Shoe shoe = shoeService.save(new ShoeBuilder().setArticleNumber("P2").setBrand("Pooled").build());
+		assertThat(shoeService.searchShoes("articleNumber=P2").size(), is(1));
+		shoeService.delete(shoe.getId());
+	}
+}
@@ -0,0 +1,154 @@
+package com.proeins.dao;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.proeins.AppConfig;
+import com.proeins.model.ShoeBuilder;
+import com.proeins.service.ShoeService;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+@TestPropertySource(properties = {
+		"mysql.driver=org.h2.Driver",
+		"mysql.url=" + TestReplicaRoutingDataSource.PRIMARY_URL,
+		"mysql.user=sa",
+		"mysql.password=",
+		"mysql.replica.urls=" + TestReplicaRoutingDataSource.REPLICA_URL,
+		"mysql.replica.read_your_writes_millis=60000",
+		"hibernate.show_sql=false",
+		"hibernate.hbm2ddl.auto=create-drop",
+		"hibernate.cache.use_second_level_cache=false",
+		"hibernate.cache.use_query_cache=false" })
+public class TestReplicaRoutingDataSource {
+
+	static final String PRIMARY_URL = "jdbc:h2:mem:shoeprimary;DB_CLOSE_DELAY=-1";
+
+	static final String REPLICA_URL = "jdbc:h2:mem:shoereplica;DB_CLOSE_DELAY=-1";
+
+	@Autowired
+	private ShoeService shoeService;
+
+	@Autowired
+	private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	/*
+	 * Nothing replicates between the two databases, so a shoe found tells
+	 * which one was read. The replica gets the schema Hibernate created on the
+	 * primary.
+	 */
+	@Before
+	public void setup() throws SQLException {
+		List<String> schema = new ArrayList<>();
+		try (Connection primary = DriverManager.getConnection(PRIMARY_URL, "sa", "");
+				Statement statement = primary.createStatement();
+				ResultSet script = statement.executeQuery("script nodata")) {
+			while (script.next()) {
+				schema.add(script.getString(1));
+			}
+		}
+		try (Connection replica = DriverManager.getConnection(REPLICA_URL, "sa", "");
+				Statement statement = replica.createStatement()) {
+			statement.execute("drop all objects");
+			for (String ddl : schema) {
+				statement.execute(ddl);
+			}
+			statement.execute("insert into Shoe (id, articleNumber, brand, version) values (1, 'R1', 'Replicated', 0)");
+		}
+	}
+
+	@After
+	public void cleanup() throws SQLException {
+		RequestContextHolder.resetRequestAttributes();
+		try (Connection primary = DriverManager.getConnection(PRIMARY_URL, "sa", "");
+				Statement statement = primary.createStatement()) {
+			statement.execute("delete from Shoe");
+		}
+	}
+
+	private void requestFrom(String client) {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("X-Client-Id", client);
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+	}
+
+	@Test
+	public void searchShoes_ReadOnlyTransaction_ShouldReadFromReplica() {
+		long before = replicaRoutingDataSource.getConnectionCounts().get("replica-0");
+
+		assertThat(shoeService.searchShoes("brand:Replicated").size(), is(1));
+		assertThat(replicaRoutingDataSource.getConnectionCounts().get("replica-0"), greaterThan(before));
+	}
+
+	@Test
+	public void searchShoes_AfterOwnWrite_ShouldReadFromPrimaryForThatClientOnly() {
+		requestFrom("writer");
+		shoeService.save(new ShoeBuilder().setArticleNumber("W1").setBrand("Written").build());
+		assertThat(shoeService.searchShoes("brand:Written").size(), is(1));
+		assertThat(shoeService.searchShoes("brand:Replicated").size(), is(0));
+		assertThat(replicaRoutingDataSource.isReadingOwnWrites(), is(true));
+
+		requestFrom("reader");
+		assertThat(shoeService.searchShoes("brand:Written").size(), is(0));
+		assertThat(replicaRoutingDataSource.isReadingOwnWrites(), is(false));
+
+		RequestContextHolder.resetRequestAttributes();
+		assertThat(shoeService.searchShoes("brand:Written").size(), is(0));
+	}
+
+	@Test
+	public void getConnectionAsUser_ShouldBeRoutedLikeTheConfiguredUser() throws SQLException {
+		TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+		readOnly.setReadOnly(true);
+		long replicated = readOnly.execute(new TransactionCallback<Long>() {
+			@Override
+			public Long doInTransaction(TransactionStatus status) {
+				try {
+					return countReplicated(replicaRoutingDataSource.getConnection("sa", ""));
+				} catch (SQLException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+
+		assertThat(replicated, is(1L));
+		assertThat(countReplicated(replicaRoutingDataSource.getConnection("sa", "")), is(0L));
+	}
+
+	private static long countReplicated(Connection connection) throws SQLException {
+		try (Connection opened = connection;
+				Statement statement = opened.createStatement();
+				ResultSet rows = statement.executeQuery("select count(*) from Shoe where brand = 'Replicated'")) {
+			rows.next();
+			return rows.getLong(1);
+		}
+	}
+}
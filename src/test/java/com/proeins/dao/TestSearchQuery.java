@@ -0,0 +1,112 @@
+package com.proeins.dao;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.proeins.exception.InvalidRequestException;
+
+public class TestSearchQuery {
+
+	@Test
+	public void parse_AndOr_ShouldBuildGroups() {
+		SearchQuery query = SearchQuery.parse("brand:Nike,color=red; size>=42");
+
+		assertThat(query.getGroups().size(), is(2));
+		assertThat(query.getGroups().get(0).get(1).getOperation(), is(SearchOperation.EQUAL));
+		assertThat(query.getGroups().get(1).get(0).getOperation(), is(SearchOperation.GREATER_THAN_OR_EQUAL));
+		assertThat(query.getCondition(),
+				is("(s.brand like :p0 escape '!' and s.color = :p1) or (s.sizeValue >= :p2)"));
+		assertThat(query.toString(), is("brand:Nike,color=red;size>=42"));
+	}
+
+	@Test
+	public void parse_AlternativeValues_ShouldBuildIn() {
+		SearchCriteria criteria = SearchQuery.parse("brand=Nike|Puma").getGroups().get(0).get(0);
+
+		assertThat(criteria.getOperation(), is(SearchOperation.IN));
+		assertThat(criteria.getValue(), is((Object) Arrays.asList("Nike", "Puma")));
+	}
+
+	@Test
+	public void parse_QuotedValue_ShouldKeepSeparators() {
+		SearchCriteria criteria = SearchQuery.parse("name^\"Air, \\\"Max\\\"\"").getGroups().get(0).get(0);
+
+		assertThat(criteria.getOperation(), is(SearchOperation.PREFIX));
+		assertThat(criteria.getValue(), is((Object) "Air, \"Max\""));
+	}
+
+	@Test
+	public void parse_Id_ShouldConvertToNumberAndMatchExactly() {
+		SearchCriteria criteria = SearchQuery.parse("id:9").getGroups().get(0).get(0);
+
+		assertThat(criteria.getOperation(), is(SearchOperation.EQUAL));
+		assertThat(criteria.getValue(), is((Object) 9L));
+	}
+
+	@Test
+	public void parse_SizeAndStock_ShouldCompareNumericColumns() {
+		SearchCriteria size = SearchQuery.parse("size>=40.5").getGroups().get(0).get(0);
+		SearchCriteria stock = SearchQuery.parse("stock=0|1").getGroups().get(0).get(0);
+		SearchCriteria sizeLabel = SearchQuery.parse("size=42").getGroups().get(0).get(0);
+
+		assertThat(size.getProperty(), is("sizeValue"));
+		assertThat(size.getValue(), is((Object) new BigDecimal("40.5")));
+		assertThat(stock.getProperty(), is("stockCount"));
+		assertThat(stock.getValue(), is((Object) Arrays.asList(0, 1)));
+		assertThat(sizeLabel.getProperty(), is("size"));
+	}
+
+	@Test(expected = InvalidRequestException.class)
+	public void parse_NonNumericRange_ShouldFail() {
+		SearchQuery.parse("stock<few");
+	}
+
+	@Test
+	public void parse_EmptyValues_ShouldBeIgnored() {
+		assertThat(SearchQuery.parse("brand:"), sameInstance(SearchQuery.ALL));
+		assertThat(SearchQuery.parse("brand:;color:red"), sameInstance(SearchQuery.ALL));
+		assertThat(SearchQuery.parse("brand:,color:red").getCondition(), is("(s.color like :p0 escape '!')"));
+		assertThat(SearchQuery.parse(" ").getCondition(), nullValue());
+	}
+
+	@Test
+	public void getCondition_AnsweredCriteria_ShouldKeepParameterNames() {
+		SearchQuery query = SearchQuery.parse("brand=Nike,color=red");
+		SearchCriteria brand = query.getGroups().get(0).get(0);
+
+		assertThat(query.getCondition(Collections.singletonList(brand)), is("(s.color = :p1)"));
+	}
+
+	@Test(expected = InvalidRequestException.class)
+	public void parse_UnknownField_ShouldFail() {
+		SearchQuery.parse("price<10");
+	}
+
+	@Test(expected = InvalidRequestException.class)
+	public void parse_MissingOperator_ShouldFail() {
+		SearchQuery.parse("brand");
+	}
+
+	@Test(expected = InvalidRequestException.class)
+	public void parse_InvalidId_ShouldFail() {
+		SearchQuery.parse("id=abc");
+	}
+
+	@Test(expected = InvalidRequestException.class)
+	public void parse_UnterminatedQuote_ShouldFail() {
+		SearchQuery.parse("name=\"Air");
+	}
+
+	@Test(expected = InvalidRequestException.class)
+	public void parse_AlternativesWithoutEquals_ShouldFail() {
+		SearchQuery.parse("brand:Nike|Puma");
+	}
+}
@@ -0,0 +1,211 @@
+package com.proeins.dao;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.proeins.AppConfig;
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeBuilder;
+import com.proeins.service.ShoeService;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class, TestShardedShoeDao.ListenerConfig.class})
+@TestPropertySource(properties = {
+		"mysql.driver=org.h2.Driver",
+		"mysql.url=" + TestShardedShoeDao.SHARD_0_URL,
+		"mysql.user=sa",
+		"mysql.password=",
+		"hibernate.show_sql=false",
+		"hibernate.hbm2ddl.auto=create-drop",
+		"shoe.shard.enabled=true",
+		"shoe.shard.urls=" + TestShardedShoeDao.SHARD_1_URL + "," + TestShardedShoeDao.SHARD_2_URL,
+		"shoe.shard.search_parallelism=2" })
+public class TestShardedShoeDao {
+
+	static final String SHARD_0_URL = "jdbc:h2:mem:shoeshard0;DB_CLOSE_DELAY=-1";
+
+	static final String SHARD_1_URL = "jdbc:h2:mem:shoeshard1;DB_CLOSE_DELAY=-1";
+
+	static final String SHARD_2_URL = "jdbc:h2:mem:shoeshard2;DB_CLOSE_DELAY=-1";
+
+	private static final String[] SHARD_URLS = { SHARD_0_URL, SHARD_1_URL, SHARD_2_URL };
+
+	@Configuration
+	static class ListenerConfig {
+
+		@Bean
+		public RecordingListener getRecordingListener() {
+			return new RecordingListener();
+		}
+	}
+
+	static class RecordingListener implements ShoeChangeListener {
+
+		private final Set<Long> saved = Collections.synchronizedSet(new HashSet<Long>());
+
+		@Override
+		public void shoeSaved(Shoe shoe) {
+			saved.add(shoe.getId());
+		}
+
+		@Override
+		public void shoeUpdated(Shoe shoe) {
+		}
+
+		@Override
+		public void shoeDeleted(Shoe shoe) {
+		}
+	}
+
+	@Autowired
+	private ShoeService shoeService;
+
+	@Autowired
+	private RecordingListener recordingListener;
+
+	@Autowired
+	private ShoeDao shoeDao;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@After
+	public void cleanup() throws Exception {
+		for (Shoe found : shoeService.searchShoes(null)) {
+			shoeService.delete(found.getId());
+		}
+	}
+
+	private static Set<Long> idsIn(String url) throws SQLException {
+		Set<Long> ids = new HashSet<>();
+		try (Connection connection = DriverManager.getConnection(url, "sa", "");
+				Statement statement = connection.createStatement();
+				ResultSet rows = statement.executeQuery("select id from Shoe")) {
+			while (rows.next()) {
+				ids.add(rows.getLong(1));
+			}
+		}
+		return ids;
+	}
+
+	private List<Shoe> saveShoes(int count) {
+		List<Shoe> shoes = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			shoes.add(new ShoeBuilder().setArticleNumber("H" + i).setBrand(i % 2 == 0 ? "Even" : "Odd").setStock(String.valueOf(i)).build());
+		}
+		return shoeService.saveAll(shoes);
+	}
+
+	@Test
+	public void saveAll_ShouldSpreadShoesAndEncodeShardInId() throws Exception {
+		List<Shoe> saved = saveShoes(60);
+
+		int total = 0;
+		for (int i = 0; i < SHARD_URLS.length; i++) {
+			Set<Long> ids = idsIn(SHARD_URLS[i]);
+			assertThat(ids.size(), greaterThan(0));
+			for (Long id : ids) {
+				assertThat(id % SHARD_URLS.length, is((long) i));
+			}
+			total += ids.size();
+		}
+		assertThat(total, is(60));
+		assertThat(saved.size(), is(60));
+		assertThat(shoeService.searchShoes("brand:Even").size(), is(30));
+	}
+
+	@Test
+	public void saveAll_ShouldNotifyListenersOfEveryShard() throws Exception {
+		List<Shoe> saved = saveShoes(30);
+
+		for (Shoe shoe : saved) {
+			assertThat(recordingListener.saved.contains(shoe.getId()), is(true));
+		}
+	}
+
+	@Test
+	public void updateAndDelete_ById_ShouldReachTheShoeOnItsShard() throws Exception {
+		List<Shoe> saved = saveShoes(9);
+
+		for (Shoe shoe : saved) {
+			assertThat(shoeService.update(shoe.getId(), new ShoeBuilder().setColor("Updated").build()).getColor(), is("Updated"));
+		}
+		assertThat(shoeService.searchShoes("color:Updated").size(), is(9));
+		shoeService.delete(saved.get(0).getId());
+		assertThat(shoeService.searchShoes(null).size(), is(8));
+	}
+
+	@Test
+	public void searchShoes_PagedAcrossShards_ShouldMergeInSortOrder() throws Exception {
+		saveShoes(25);
+
+		List<Integer> stocks = new ArrayList<>();
+		Set<Long> ids = new HashSet<>();
+		String cursor = null;
+		do {
+			ShoePage page = shoeService.searchShoes("brand:Odd", PageCriteria.of("-stock", 4, cursor));
+			for (Shoe shoe : page.getShoes()) {
+				stocks.add(shoe.getStockCount());
+				ids.add(shoe.getId());
+			}
+			cursor = page.getNextCursor();
+		} while (cursor != null);
+
+		assertThat(stocks, contains(23, 21, 19, 17, 15, 13, 11, 9, 7, 5, 3, 1));
+		assertThat(ids.size(), is(12));
+	}
+
+	@Test
+	public void searchShoes_InCallerTransaction_ShouldSearchPrimaryOnItsConnection() throws Exception {
+		int found = new TransactionTemplate(transactionManager).execute(new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus status) {
+				// the primary part is not committed yet, only its own connection sees it
+				saveShoes(12);
+				return shoeService.searchShoes(null).size();
+			}
+		});
+
+		assertThat(found, is(12));
+	}
+
+	@Test
+	public void upsertAll_ShouldUpdateShoesOnTheirShards() throws Exception {
+		saveShoes(10);
+		List<Shoe> shoes = new ArrayList<>();
+		for (int i = 5; i < 15; i++) {
+			shoes.add(new ShoeBuilder().setArticleNumber("H" + i).setColor("Upserted").build());
+		}
+
+		assertThat(shoeDao.upsertAll(shoes), is(5));
+		assertThat(shoeService.searchShoes(null).size(), is(15));
+		assertThat(shoeService.searchShoes("color:Upserted").size(), is(10));
+	}
+}
@@ -0,0 +1,137 @@
+package com.proeins.dao;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.proeins.AppConfig;
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeBuilder;
+import com.proeins.service.ShoeService;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+@TestPropertySource(properties = {
+		"mysql.driver=org.h2.Driver",
+		"mysql.url=jdbc:h2:mem:shoeindex;DB_CLOSE_DELAY=-1",
+		"mysql.user=sa",
+		"mysql.password=",
+		"hibernate.show_sql=false",
+		"hibernate.hbm2ddl.auto=create-drop",
+		"hibernate.cache.use_second_level_cache=false",
+		"hibernate.cache.use_query_cache=false",
+		"shoe.index.bitmap.enabled=true" })
+public class TestShoeBitmapIndex {
+
+	@Autowired
+	private ShoeService shoeService;
+
+	@Autowired
+	private ShoeBitmapIndex bitmapIndex;
+
+	private Shoe redNike;
+
+	@Before
+	public void setup() {
+		redNike = shoeService.save(shoe("B1", "Nike", "red", "42"));
+		shoeService.save(shoe("B2", "Nike", "blue", "42"));
+		shoeService.save(shoe("B3", "Puma", "red", "42"));
+		shoeService.save(shoe("B4", "Nike", "red", "43"));
+	}
+
+	@After
+	public void cleanup() throws Exception {
+		for (Shoe shoe : shoeService.searchShoes(null)) {
+			shoeService.delete(shoe.getId());
+		}
+	}
+
+	private Shoe shoe(String articleNumber, String brand, String color, String size) {
+		return new ShoeBuilder()
+				.setArticleNumber(articleNumber)
+				.setBrand(brand)
+				.setName(brand + " Runner")
+				.setColor(color)
+				.setSize(size)
+				.setStock("10")
+				.build();
+	}
+
+	private Map<String, String> values(String... keyValues) {
+		Map<String, String> values = new LinkedHashMap<>();
+		for (int i = 0; i < keyValues.length; i += 2) {
+			values.put(keyValues[i], keyValues[i + 1]);
+		}
+		return values;
+	}
+
+	private List<String> articleNumbers(List<Shoe> shoes) {
+		List<String> articleNumbers = new ArrayList<>();
+		for (Shoe shoe : shoes) {
+			articleNumbers.add(shoe.getArticleNumber());
+		}
+		return articleNumbers;
+	}
+
+	@Test
+	public void match_ShouldIntersectFields() {
+		assertThat(bitmapIndex.match(values("brand", "Nike", "color", "red", "size", "42")).toArray(),
+				is(new int[] { redNike.getId().intValue() }));
+		assertThat(bitmapIndex.match(values("brand", "Nike")).getCardinality(), is(3));
+		assertThat(bitmapIndex.match(values("brand", "Adidas")).isEmpty(), is(true));
+	}
+
+	@Test
+	public void searchShoes_ExactFilters_ShouldBeAnsweredFromIndex() {
+		// H2 compares case sensitively, so only the index can match the lower case values
+		assertThat(articleNumbers(shoeService.searchShoes("brand=nike,color=red,size=42")), contains("B1"));
+	}
+
+	@Test
+	public void searchShoes_ExactAndContainsFilters_ShouldCombine() {
+		assertThat(articleNumbers(shoeService.searchShoes("brand=Nike,articleNumber:4")), contains("B4"));
+		assertThat(shoeService.searchShoes("brand=Nike,brand=Puma"), hasSize(0));
+	}
+
+	@Test
+	public void searchShoes_AfterUpdate_ShouldReindex() throws Exception {
+		shoeService.update(redNike.getId(), new ShoeBuilder().setColor("green").build());
+
+		assertThat(articleNumbers(shoeService.searchShoes("brand=Nike,color=green")), contains("B1"));
+		assertThat(articleNumbers(shoeService.searchShoes("brand=Nike,color=red,size=42")), hasSize(0));
+	}
+
+	@Test
+	public void searchShoes_AfterPatch_ShouldReindex() throws Exception {
+		shoeService.patch(redNike.getId(), redNike.getVersion(), new ShoeBuilder().setBrand("Puma").build());
+
+		assertThat(bitmapIndex.match(values("brand", "Puma", "color", "red")).getCardinality(), is(2));
+	}
+
+	@Test
+	public void searchShoes_AfterDelete_ShouldNotMatch() throws Exception {
+		shoeService.delete(redNike.getId());
+		assertThat(bitmapIndex.match(values("brand", "Nike", "color", "red")).getCardinality(), is(1));
+	}
+
+	@Test
+	public void rebuild_ShouldLoadFromDatabase() {
+		bitmapIndex.rebuild();
+		assertThat(bitmapIndex.match(values("color", "RED")).getCardinality(), is(3));
+	}
+}
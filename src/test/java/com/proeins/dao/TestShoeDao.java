@@ -0,0 +1,333 @@
+package com.proeins.dao;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.hibernate.SessionFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.proeins.AppConfig;
+import com.proeins.exception.ShoeNotFoundException;
+import com.proeins.exception.ShoeVersionConflictException;
+import com.proeins.exception.StockConflictException;
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeBuilder;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+@TestPropertySource(properties = {
+		"mysql.driver=org.h2.Driver",
+		"mysql.url=jdbc:h2:mem:shoes;DB_CLOSE_DELAY=-1",
+		"mysql.user=sa",
+		"mysql.password=",
+		"hibernate.show_sql=false",
+		"hibernate.hbm2ddl.auto=create-drop",
+		"hibernate.cache.use_second_level_cache=false",
+		"hibernate.cache.use_query_cache=false" })
+@Transactional
+public class TestShoeDao {
+
+	private static final SearchQuery NO_CRITERIA = SearchQuery.ALL;
+
+	@Autowired
+	private ShoeDao shoeDao;
+
+	@Autowired
+	private SessionFactory sessionFactory;
+
+	@Before
+	public void setup() {
+		shoeDao.save(shoe("S1", "Nike", "red"));
+		shoeDao.save(shoe("S2", "Adidas", "blue"));
+		shoeDao.save(shoe("S3", "Nike", "white"));
+		shoeDao.save(shoe("S4", null, "black"));
+		shoeDao.save(shoe("S5", "Puma", "red"));
+	}
+
+	private Shoe shoe(String articleNumber, String brand, String color) {
+		return new ShoeBuilder()
+				.setArticleNumber(articleNumber)
+				.setBrand(brand)
+				.setName(brand + " Sports Shoe")
+				.setColor(color)
+				.setSize("11")
+				.setStock("10")
+				.build();
+	}
+
+	private List<String> pageThrough(String sort, int limit) {
+		List<String> articleNumbers = new ArrayList<>();
+		String cursor = null;
+		do {
+			ShoePage page = shoeDao.searchShoes(NO_CRITERIA, PageCriteria.of(sort, limit, cursor));
+			assertThat(page.getShoes().size() <= limit, is(true));
+			for (Shoe shoe : page.getShoes()) {
+				articleNumbers.add(shoe.getArticleNumber());
+			}
+			cursor = page.getNextCursor();
+		} while (cursor != null);
+		return articleNumbers;
+	}
+
+	/******************************************
+	 * 		Test cases for batch insert
+	 ******************************************/
+	@Test
+	public void saveAll_MoreShoesThanBatchSize_ShouldAssignDistinctIds() {
+		List<Shoe> shoes = new ArrayList<>();
+		for (int i = 0; i < 120; i++) {
+			shoes.add(shoe("B" + i, "Asics", "green"));
+		}
+		List<Shoe> saved = shoeDao.saveAll(shoes);
+
+		Set<Long> ids = new HashSet<>();
+		for (Shoe shoe : saved) {
+			ids.add(shoe.getId());
+		}
+		assertThat(ids, hasSize(120));
+		SearchQuery criteria = SearchQuery.parse("brand:Asics");
+		assertThat(shoeDao.searchShoes(criteria), hasSize(120));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void saveAll_EmptyShoe_ShouldRejectWholeBatch() {
+		shoeDao.saveAll(Arrays.asList(shoe("B1", "Asics", "green"), new ShoeBuilder().build()));
+	}
+
+	/******************************************
+	 * 		Test cases for upsert
+	 ******************************************/
+	@Test
+	public void upsertAll_KnownAndNewArticleNumbers_ShouldUpdateAndInsert() {
+		List<Shoe> shoes = new ArrayList<>();
+		shoes.add(new ShoeBuilder().setArticleNumber("S1").setColor("green").setStock("").build());
+		for (int i = 0; i < 120; i++) {
+			shoes.add(shoe("U" + i, "Asics", "green"));
+		}
+		int inserted = shoeDao.upsertAll(shoes);
+
+		assertThat(inserted, is(120));
+		assertThat(search("color:green"), hasSize(121));
+		Shoe updated = shoeDao.searchShoes(SearchQuery.parse("articleNumber:S1")).get(0);
+		assertThat(updated.getBrand(), is("Nike"));
+		assertThat(updated.getStock(), is("10"));
+	}
+
+	@Test
+	public void upsertAll_RepeatedArticleNumber_ShouldKeepLastShoe() {
+		int inserted = shoeDao.upsertAll(Arrays.asList(shoe("U1", "Asics", "green"), shoe("U1", "Asics", "yellow")));
+
+		assertThat(inserted, is(1));
+		assertThat(search("articleNumber:U1"), hasSize(1));
+		assertThat(shoeDao.searchShoes(SearchQuery.parse("articleNumber:U1")).get(0).getColor(), is("yellow"));
+	}
+
+	/******************************************
+	 * 		Test cases for search operators
+	 ******************************************/
+	private List<String> search(String search) {
+		List<String> articleNumbers = new ArrayList<>();
+		for (Shoe shoe : shoeDao.searchShoes(SearchQuery.parse(search))) {
+			articleNumbers.add(shoe.getArticleNumber());
+		}
+		Collections.sort(articleNumbers);
+		return articleNumbers;
+	}
+
+	@Test
+	public void searchShoes_Operators_ShouldBePushedToDatabase() {
+		assertThat(search("brand=Nike"), contains("S1", "S3"));
+		assertThat(search("brand^Pu"), contains("S5"));
+		assertThat(search("brand^ike"), hasSize(0));
+		assertThat(search("color=red|blue"), contains("S1", "S2", "S5"));
+		assertThat(search("articleNumber>S3"), contains("S4", "S5"));
+		assertThat(search("articleNumber<=S2"), contains("S1", "S2"));
+		assertThat(search("brand=Nike,color=white;brand=Puma"), contains("S3", "S5"));
+	}
+
+	@Test
+	public void searchShoes_LikeWildcards_ShouldBeMatchedLiterally() {
+		shoeDao.save(shoe("S_6", "N%ke", "red"));
+		assertThat(search("articleNumber:_"), contains("S_6"));
+		assertThat(search("brand:%"), contains("S_6"));
+	}
+
+	@Test
+	public void searchShoes_PagedWithOr_ShouldKeepKeysetSeparate() {
+		SearchQuery criteria = SearchQuery.parse("color=red;color=blue");
+		ShoePage page = shoeDao.searchShoes(criteria, PageCriteria.of(null, 2, null));
+		page = shoeDao.searchShoes(criteria, PageCriteria.of(null, 2, page.getNextCursor()));
+		assertThat(page.getShoes(), hasSize(1));
+		assertThat(page.getShoes().get(0).getArticleNumber(), is("S5"));
+	}
+
+	@Test
+	public void searchShoes_SizeAndStockRanges_ShouldCompareNumerically() {
+		shoeDao.save(new ShoeBuilder().setArticleNumber("S6").setSize("9").setStock("4").build());
+		shoeDao.save(new ShoeBuilder().setArticleNumber("S7").setSize("10.5").setStock("100").build());
+
+		assertThat(search("stock<5"), contains("S6"));
+		assertThat(search("stock=100"), contains("S7"));
+		assertThat(search("size>=9,size<11"), contains("S6", "S7"));
+		assertThat(search("size>10"), contains("S1", "S2", "S3", "S4", "S5", "S7"));
+	}
+
+	@Test
+	public void searchShoes_PagedByStock_ShouldSortNumerically() {
+		shoeDao.save(new ShoeBuilder().setArticleNumber("S6").setStock("9").build());
+		assertThat(pageThrough("-stock", 2).get(5), is("S6"));
+	}
+
+	/******************************************
+	 * 		Test cases for versioned patch
+	 ******************************************/
+	@Test
+	public void patch_MatchingVersion_ShouldWriteSuppliedFieldsOnly() throws Exception {
+		Shoe shoe = shoeDao.save(shoe("P1", "Nike", "red"));
+		sessionFactory.getCurrentSession().flush();
+
+		long version = shoeDao.patch(shoe.getId(), 0L, new ShoeBuilder().setColor("blue").setStock("3").build());
+
+		Shoe reloaded = reload(shoe);
+		assertThat(version, is(1L));
+		assertThat(reloaded.getVersion(), is(1L));
+		assertThat(reloaded.getColor(), is("blue"));
+		assertThat(reloaded.getStockCount(), is(3));
+		assertThat(reloaded.getBrand(), is("Nike"));
+	}
+
+	@Test(expected = ShoeVersionConflictException.class)
+	public void patch_StaleVersion_ShouldFail() throws Exception {
+		Shoe shoe = shoeDao.save(shoe("P1", "Nike", "red"));
+		sessionFactory.getCurrentSession().flush();
+		shoeDao.patch(shoe.getId(), 0L, new ShoeBuilder().setColor("blue").build());
+
+		shoeDao.patch(shoe.getId(), 0L, new ShoeBuilder().setColor("green").build());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void patch_ArticleNumber_ShouldBeRejected() throws Exception {
+		Shoe shoe = shoeDao.save(shoe("P1", "Nike", "red"));
+		shoeDao.patch(shoe.getId(), 0L, new ShoeBuilder().setArticleNumber("P2").build());
+	}
+
+	@Test
+	public void reserveStock_ShouldIncrementVersion() throws Exception {
+		Shoe shoe = shoeDao.save(shoe("R1", "Nike", "red"));
+		shoeDao.reserveStock(shoe.getId(), 1);
+		assertThat(reload(shoe).getVersion(), is(1L));
+	}
+
+	/******************************************
+	 * 		Test cases for stock reservation
+	 ******************************************/
+	private Shoe reload(Shoe shoe) {
+		// read the row as written, not the instance of the persistence context
+		sessionFactory.getCurrentSession().flush();
+		sessionFactory.getCurrentSession().clear();
+		return sessionFactory.getCurrentSession().get(Shoe.class, shoe.getId());
+	}
+
+	@Test
+	public void reserveStock_EnoughStock_ShouldDecrementBothColumns() throws Exception {
+		Shoe shoe = shoeDao.save(shoe("R1", "Nike", "red"));
+		shoeDao.reserveStock(shoe.getId(), 4);
+		shoeDao.releaseStock(shoe.getId(), 1);
+
+		Shoe reloaded = reload(shoe);
+		assertThat(reloaded.getStock(), is("7"));
+		assertThat(reloaded.getStockCount(), is(7));
+	}
+
+	@Test(expected = StockConflictException.class)
+	public void reserveStock_NotEnoughStock_ShouldFailWithoutChange() throws Exception {
+		Shoe shoe = shoeDao.save(shoe("R1", "Nike", "red"));
+		try {
+			shoeDao.reserveStock(shoe.getId(), 11);
+		} finally {
+			assertThat(reload(shoe).getStockCount(), is(10));
+		}
+	}
+
+	@Test(expected = ShoeNotFoundException.class)
+	public void reserveStock_UnknownShoe_ShouldFail() throws Exception {
+		shoeDao.reserveStock(-1L, 1);
+	}
+
+	/******************************************
+	 * 		Test cases for keyset pagination
+	 ******************************************/
+	@Test
+	public void searchShoes_PagedById_ShouldReturnEveryShoeOnce() {
+		assertThat(pageThrough(null, 2), contains("S1", "S2", "S3", "S4", "S5"));
+	}
+
+	@Test
+	public void searchShoes_PagedByIdDescending_ShouldReturnEveryShoeOnce() {
+		assertThat(pageThrough("-id", 2), contains("S5", "S4", "S3", "S2", "S1"));
+	}
+
+	@Test
+	public void searchShoes_PagedByBrand_ShouldKeepNullsAndTiesInOrder() {
+		assertThat(pageThrough("brand", 1), contains("S4", "S2", "S1", "S3", "S5"));
+		assertThat(pageThrough("brand", 3), contains("S4", "S2", "S1", "S3", "S5"));
+	}
+
+	@Test
+	public void searchShoes_PagedByBrandDescending_ShouldKeepNullsAndTiesInOrder() {
+		assertThat(pageThrough("-brand", 1), contains("S5", "S3", "S1", "S2", "S4"));
+		assertThat(pageThrough("-brand", 2), contains("S5", "S3", "S1", "S2", "S4"));
+	}
+
+	@Test
+	public void searchShoes_PagedWithCriteria_ShouldOnlyReturnMatchingShoes() {
+		SearchQuery criteria = SearchQuery.parse("color:red");
+		ShoePage page = shoeDao.searchShoes(criteria, PageCriteria.of("articleNumber", 1, null));
+		assertThat(page.getShoes(), hasSize(1));
+		assertThat(page.getShoes().get(0).getArticleNumber(), is("S1"));
+
+		page = shoeDao.searchShoes(criteria, PageCriteria.of("articleNumber", 1, page.getNextCursor()));
+		assertThat(page.getShoes(), hasSize(1));
+		assertThat(page.getShoes().get(0).getArticleNumber(), is("S5"));
+		assertThat(page.getNextCursor(), nullValue());
+	}
+
+	@Test
+	public void exportShoes_WithCriteria_ShouldHandleMatchingShoesInIdOrder() throws IOException {
+		final List<String> articleNumbers = new ArrayList<>();
+		SearchQuery criteria = SearchQuery.parse("brand:ike");
+		shoeDao.exportShoes(criteria, new ShoeRowHandler() {
+			@Override
+			public void handle(Shoe shoe) {
+				articleNumbers.add(shoe.getArticleNumber());
+			}
+		});
+		assertThat(articleNumbers, contains("S1", "S3"));
+	}
+
+	@Test
+	public void searchShoes_SortedWithoutLimit_ShouldReturnAllShoes() {
+		ShoePage page = shoeDao.searchShoes(NO_CRITERIA, PageCriteria.of("-color", null, null));
+		assertThat(page.getShoes(), hasSize(5));
+		assertThat(page.getShoes().get(0).getColor(), is("white"));
+		assertThat(page.getNextCursor(), nullValue());
+	}
+}
@@ -0,0 +1,296 @@
+package com.proeins.dao;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.proeins.AppConfig;
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeBuilder;
+import com.proeins.model.ShoeTombstone;
+import com.proeins.service.ShoeService;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+@TestPropertySource(properties = {
+		"mysql.driver=org.h2.Driver",
+		"mysql.url=jdbc:h2:mem:shoedelta;DB_CLOSE_DELAY=-1",
+		"mysql.user=sa",
+		"mysql.password=",
+		"hibernate.show_sql=false",
+		"hibernate.hbm2ddl.auto=create-drop",
+		"shoe.sync.sequence_interval_millis=0" })
+public class TestShoeDeltaSync {
+
+	@Autowired
+	private ShoeService shoeService;
+
+	@Autowired
+	private ShoeDao shoeDao;
+
+	@Autowired
+	private SessionFactory sessionFactory;
+
+	@Autowired
+	private ShoeRevisionSequencer sequencer;
+
+	@Autowired
+	private ShoeTombstonePruner tombstonePruner;
+
+	@Autowired
+	private ShoeCatalogVersion catalogVersion;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private Shoe first;
+
+	private Shoe second;
+
+	private long synced;
+
+	@Before
+	public void setup() {
+		first = shoeService.save(new ShoeBuilder().setArticleNumber("D1").setStock("5").build());
+		second = shoeService.save(new ShoeBuilder().setArticleNumber("D2").setStock("5").build());
+		sequencer.sequence();
+		synced = shoeService.changesSince(0).getRevision();
+	}
+
+	@After
+	public void cleanup() throws Exception {
+		for (Shoe shoe : shoeService.searchShoes(null)) {
+			shoeService.delete(shoe.getId());
+		}
+	}
+
+	private List<String> articleNumbers(ShoeDelta delta) {
+		List<String> articleNumbers = new ArrayList<>();
+		for (Shoe shoe : delta.getShoes()) {
+			articleNumbers.add(shoe.getArticleNumber());
+		}
+		return articleNumbers;
+	}
+
+	@Test
+	public void changesSince_Zero_ShouldReturnWholeCatalog() {
+		ShoeDelta delta = shoeService.changesSince(0);
+
+		assertThat(articleNumbers(delta), contains("D1", "D2"));
+		assertThat(delta.getShoes().get(1).getRevision(), is(synced));
+	}
+
+	@Test
+	public void changesSince_Current_ShouldReturnNothing() {
+		ShoeDelta delta = shoeService.changesSince(synced);
+
+		assertThat(delta.getShoes(), is(empty()));
+		assertThat(delta.getDeleted(), is(empty()));
+		assertThat(delta.getRevision(), is(synced));
+	}
+
+	@Test
+	public void changesSince_ShouldReturnOnlyWrittenShoes() throws Exception {
+		shoeService.update(first.getId(), new ShoeBuilder().setName("Runner").build());
+		// served once it has its revision
+		assertThat(shoeService.changesSince(synced).getShoes(), is(empty()));
+		sequencer.sequence();
+		ShoeDelta delta = shoeService.changesSince(synced);
+		assertThat(articleNumbers(delta), contains("D1"));
+		assertThat(delta.getRevision(), is(greaterThan(synced)));
+
+		shoeService.reserveStock(second.getId(), 2);
+		sequencer.sequence();
+		ShoeDelta next = shoeService.changesSince(delta.getRevision());
+		assertThat(articleNumbers(next), contains("D2"));
+		assertThat(next.getShoes().get(0).getStock(), is("3"));
+
+		shoeService.patch(first.getId(), delta.getShoes().get(0).getVersion(), new ShoeBuilder().setColor("red").build());
+		sequencer.sequence();
+		assertThat(articleNumbers(shoeService.changesSince(next.getRevision())), contains("D1"));
+	}
+
+	@Test
+	public void changesSince_Deleted_ShouldReturnTombstone() throws Exception {
+		shoeService.delete(first.getId());
+		sequencer.sequence();
+
+		ShoeDelta delta = shoeService.changesSince(synced);
+		assertThat(delta.getShoes(), is(empty()));
+		assertThat(delta.getDeleted().size(), is(1));
+		ShoeTombstone tombstone = delta.getDeleted().get(0);
+		assertThat(tombstone.getId(), is(first.getId()));
+		assertThat(tombstone.getArticleNumber(), is("D1"));
+		assertThat(tombstone.getRevision(), is(delta.getRevision()));
+	}
+
+	@Test
+	public void sequence_ShouldGiveCommittedWritesTheNextRevision() {
+		List<Shoe> saved = shoeService.saveAll(Arrays.asList(new ShoeBuilder().setArticleNumber("D3").build(),
+				new ShoeBuilder().setArticleNumber("D4").build()));
+		assertThat(saved.get(0).getRevision(), is(0L));
+
+		assertThat(sequencer.sequence(), is(2));
+		ShoeDelta delta = shoeService.changesSince(synced);
+		assertThat(articleNumbers(delta), contains("D3", "D4"));
+		assertThat(delta.getShoes().get(0).getRevision(), is(synced + 1));
+		assertThat(delta.getShoes().get(1).getRevision(), is(synced + 1));
+		assertThat(sequencer.sequence(), is(0));
+	}
+
+	@Test
+	public void sequence_RevisionOfOtherNode_ShouldMoveCatalogVersion() {
+		String eTag = catalogVersion.current().getETag();
+		Session session = sessionFactory.openSession();
+		Transaction transaction = session.beginTransaction();
+		// as the sequencer of another node would
+		session.createQuery("update ShoeRevision r set r.lastRevision = r.lastRevision + 1").executeUpdate();
+		transaction.commit();
+		session.close();
+
+		sequencer.sequence();
+		assertThat(catalogVersion.current().getETag().equals(eTag), is(false));
+	}
+
+	@Test
+	public void changesSince_WriterInFlight_ShouldNotHoldBackLaterWrites() throws Exception {
+		final CountDownLatch written = new CountDownLatch(1);
+		final CountDownLatch commit = new CountDownLatch(1);
+		ExecutorService writer = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> inFlight = writer.submit(new Runnable() {
+				@Override
+				public void run() {
+					new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+						@Override
+						protected void doInTransactionWithoutResult(TransactionStatus status) {
+							shoeService.save(new ShoeBuilder().setArticleNumber("D5").build());
+							written.countDown();
+							try {
+								commit.await(5, TimeUnit.SECONDS);
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+							}
+						}
+					});
+				}
+			});
+			assertThat(written.await(5, TimeUnit.SECONDS), is(true));
+
+			// neither queued behind the open transaction nor held back by it
+			shoeService.save(new ShoeBuilder().setArticleNumber("D6").build());
+			sequencer.sequence();
+			ShoeDelta delta = shoeService.changesSince(synced);
+			assertThat(articleNumbers(delta), contains("D6"));
+			assertThat(delta.getRevision(), is(synced + 1));
+
+			// committed later, so sequenced later
+			commit.countDown();
+			inFlight.get(5, TimeUnit.SECONDS);
+			sequencer.sequence();
+			ShoeDelta next = shoeService.changesSince(delta.getRevision());
+			assertThat(articleNumbers(next), contains("D5"));
+			assertThat(next.getRevision(), is(synced + 2));
+		} finally {
+			commit.countDown();
+			writer.shutdownNow();
+		}
+	}
+
+	@Test
+	public void changesSince_WrittenAfterSequencedRead_ShouldReturnShoeAgain() throws Exception {
+		shoeService.update(first.getId(), new ShoeBuilder().setName("Runner").build());
+		new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				try {
+					// still pending when read, sequenced before it is written again
+					sessionFactory.getCurrentSession().get(Shoe.class, first.getId());
+					ExecutorService other = Executors.newSingleThreadExecutor();
+					try {
+						other.submit(new Runnable() {
+							@Override
+							public void run() {
+								sequencer.sequence();
+							}
+						}).get(5, TimeUnit.SECONDS);
+					} finally {
+						other.shutdownNow();
+					}
+					shoeDao.update(first.getId(), new ShoeBuilder().setColor("red").build());
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+		long read = shoeService.changesSince(0).getRevision();
+
+		sequencer.sequence();
+		ShoeDelta delta = shoeService.changesSince(read);
+		assertThat(articleNumbers(delta), contains("D1"));
+		assertThat(delta.getShoes().get(0).getColor(), is("red"));
+	}
+
+	@Test
+	public void changesSince_RolledBackWriter_ShouldNotHoldBackRevisions() {
+		new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				shoeService.save(new ShoeBuilder().setArticleNumber("D7").build());
+				status.setRollbackOnly();
+			}
+		});
+		shoeService.save(new ShoeBuilder().setArticleNumber("D8").build());
+		sequencer.sequence();
+
+		ShoeDelta delta = shoeService.changesSince(synced);
+		assertThat(articleNumbers(delta), contains("D8"));
+		assertThat(delta.getRevision(), is(synced + 1));
+	}
+
+	@Test
+	public void changesSince_BeforePrunedTombstones_ShouldReset() throws Exception {
+		shoeService.delete(first.getId());
+		sequencer.sequence();
+		long deleted = shoeService.changesSince(synced).getRevision();
+
+		assertThat(tombstonePruner.prune(System.currentTimeMillis() + 1), is(greaterThan(0)));
+
+		ShoeDelta reset = shoeService.changesSince(synced);
+		assertThat(reset.isReset(), is(true));
+		assertThat(articleNumbers(reset), contains("D2"));
+		assertThat(reset.getDeleted(), is(empty()));
+		assertThat(reset.getRevision(), is(deleted));
+
+		ShoeDelta current = shoeService.changesSince(deleted);
+		assertThat(current.isReset(), is(false));
+		assertThat(current.getShoes(), is(empty()));
+	}
+}
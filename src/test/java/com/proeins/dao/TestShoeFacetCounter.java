@@ -0,0 +1,130 @@
+package com.proeins.dao;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.proeins.AppConfig;
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeBuilder;
+import com.proeins.service.ShoeService;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+@TestPropertySource(properties = {
+		"mysql.driver=org.h2.Driver",
+		"mysql.url=jdbc:h2:mem:shoefacets;DB_CLOSE_DELAY=-1",
+		"mysql.user=sa",
+		"mysql.password=",
+		"hibernate.show_sql=false",
+		"hibernate.hbm2ddl.auto=create-drop",
+		"hibernate.cache.use_second_level_cache=false",
+		"hibernate.cache.use_query_cache=false",
+		"shoe.facets.in_memory.enabled=true" })
+public class TestShoeFacetCounter {
+
+	/* matches every shoe of the setup, but is grouped by the database */
+	private static final String ALL_BY_QUERY = "articleNumber:F";
+
+	@Autowired
+	private ShoeService shoeService;
+
+	@Autowired
+	private ShoeFacetCounter facetCounter;
+
+	private Shoe redNike;
+
+	@Before
+	public void setup() {
+		redNike = shoeService.save(shoe("F1", "Nike", "red", "42"));
+		shoeService.save(shoe("F2", "Nike", "blue", "42"));
+		shoeService.save(shoe("F3", "Puma", "red", "42"));
+		shoeService.save(shoe("F4", "Nike", "red", null));
+	}
+
+	@After
+	public void cleanup() throws Exception {
+		for (Shoe shoe : shoeService.searchShoes(null)) {
+			shoeService.delete(shoe.getId());
+		}
+	}
+
+	private Shoe shoe(String articleNumber, String brand, String color, String size) {
+		return new ShoeBuilder()
+				.setArticleNumber(articleNumber)
+				.setBrand(brand)
+				.setName(brand + " Runner")
+				.setColor(color)
+				.setSize(size)
+				.setStock("10")
+				.build();
+	}
+
+	private Map<String, Long> counts(Object... valueCounts) {
+		Map<String, Long> counts = new LinkedHashMap<>();
+		for (int i = 0; i < valueCounts.length; i += 2) {
+			counts.put((String) valueCounts[i], ((Integer) valueCounts[i + 1]).longValue());
+		}
+		return counts;
+	}
+
+	@Test
+	public void facetShoes_ShouldCountPerValueInDescendingOrder() {
+		ShoeFacets facets = shoeService.facetShoes(null);
+
+		assertThat(facets.getTotal(), is(4L));
+		assertThat(facets.getCounts().get("brand"), is(counts("Nike", 3, "Puma", 1)));
+		assertThat(facets.getCounts().get("color"), is(counts("red", 3, "blue", 1)));
+		assertThat(facets.getCounts().get("size"), is(counts("42", 3)));
+	}
+
+	@Test
+	public void facetShoes_InMemory_ShouldEqualGroupBy() {
+		ShoeFacets grouped = shoeService.facetShoes(ALL_BY_QUERY);
+
+		assertThat(shoeService.facetShoes(null).getCounts(), is(grouped.getCounts()));
+		assertThat(shoeService.facetShoes(null).getTotal(), is(grouped.getTotal()));
+	}
+
+	@Test
+	public void facetShoes_Search_ShouldCountMatchesOnly() {
+		ShoeFacets facets = shoeService.facetShoes("color=red");
+
+		assertThat(facets.getTotal(), is(3L));
+		assertThat(facets.getCounts().get("brand"), is(counts("Nike", 2, "Puma", 1)));
+		assertThat(facets.getCounts().get("color"), is(counts("red", 3)));
+	}
+
+	@Test
+	public void facetShoes_AfterWrites_ShouldMoveCounts() throws Exception {
+		ShoeFacets before = shoeService.facetShoes(null);
+		assertThat(shoeService.facetShoes(null), is(sameInstance(before)));
+
+		shoeService.update(redNike.getId(), new ShoeBuilder().setColor("green").build());
+		shoeService.delete(shoeService.searchShoes("articleNumber=F3").get(0).getId());
+
+		ShoeFacets after = shoeService.facetShoes(null);
+		assertThat(after.getTotal(), is(3L));
+		assertThat(after.getCounts().get("brand"), is(counts("Nike", 3)));
+		assertThat(after.getCounts().get("color"), is(counts("blue", 1, "green", 1, "red", 1)));
+		assertThat(after.getCounts(), is(shoeService.facetShoes(ALL_BY_QUERY).getCounts()));
+	}
+
+	@Test
+	public void rebuild_ShouldLoadFromDatabase() {
+		facetCounter.rebuild();
+		assertThat(facetCounter.getFacets().getCounts(), is(shoeService.facetShoes(ALL_BY_QUERY).getCounts()));
+	}
+}
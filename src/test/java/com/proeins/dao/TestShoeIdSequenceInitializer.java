@@ -0,0 +1,145 @@
+package com.proeins.dao;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.dialect.H2Dialect;
+import org.junit.Test;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import com.proeins.AppConfig;
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeBuilder;
+import com.proeins.service.ShoeService;
+
+/*
+ * The contexts are started by hand, each start is a restart of the node
+ * against the same in-memory databases.
+ */
+public class TestShoeIdSequenceInitializer {
+
+	private static final String[] SHARD_URLS = { "jdbc:h2:mem:shoeidseq0;DB_CLOSE_DELAY=-1",
+			"jdbc:h2:mem:shoeidseq1;DB_CLOSE_DELAY=-1", "jdbc:h2:mem:shoeidseq2;DB_CLOSE_DELAY=-1" };
+
+	private static final int INCREMENT_SIZE = 50;
+
+	/**
+	 * H2 without native sequences, so <code>shoe_seq</code> is a table like on
+	 * MySQL.
+	 */
+	public static class TableSequenceDialect extends H2Dialect {
+
+		@Override
+		public boolean supportsSequences() {
+			return false;
+		}
+
+		@Override
+		public boolean supportsPooledSequences() {
+			return false;
+		}
+	}
+
+	private static AnnotationConfigApplicationContext start(String... urls) {
+		return start(new HashMap<String, Object>(), urls);
+	}
+
+	private static AnnotationConfigApplicationContext start(Map<String, Object> properties, String... urls) {
+		properties.put("mysql.driver", "org.h2.Driver");
+		properties.put("mysql.url", urls[0]);
+		properties.put("mysql.user", "sa");
+		properties.put("mysql.password", "");
+		properties.put("hibernate.show_sql", "false");
+		properties.put("hibernate.hbm2ddl.auto", "update");
+		properties.put("hibernate.dialect", TableSequenceDialect.class.getName());
+		properties.put("shoe.shard.enabled", String.valueOf(urls.length > 1));
+		properties.put("shoe.shard.urls", String.join(",", Arrays.copyOfRange(urls, 1, urls.length)));
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", properties));
+		context.register(AppConfig.class);
+		context.refresh();
+		return context;
+	}
+
+	private static long maxIdIn(String url) throws SQLException {
+		try (Connection connection = DriverManager.getConnection(url, "sa", "");
+				Statement statement = connection.createStatement();
+				ResultSet rows = statement.executeQuery("select max(id) from Shoe")) {
+			rows.next();
+			return rows.getLong(1);
+		}
+	}
+
+	@Test
+	public void restarts_ShouldKeepEveryShardSequenceLinear() throws Exception {
+		int starts = 3;
+		for (int start = 0; start < starts; start++) {
+			try (AnnotationConfigApplicationContext context = start(SHARD_URLS)) {
+				List<Shoe> shoes = new ArrayList<>();
+				for (int i = 0; i < 30; i++) {
+					shoes.add(new ShoeBuilder().setArticleNumber("R" + start + "-" + i).build());
+				}
+				context.getBean(ShoeService.class).saveAll(shoes);
+				assertThat(context.getBean(ShoeService.class).searchShoes(null).size(), is(30 * (start + 1)));
+			}
+		}
+
+		// every start begins a new block of sequence values at most, ids must not multiply by the shard count
+		for (int shard = 0; shard < SHARD_URLS.length; shard++) {
+			assertThat(maxIdIn(SHARD_URLS[shard]), lessThan((long) INCREMENT_SIZE * starts * SHARD_URLS.length));
+		}
+	}
+
+	@Test
+	public void start_WithIdsOfOtherShards_ShouldRefuse() throws Exception {
+		String legacyUrl = "jdbc:h2:mem:shoeidseqlegacy0;DB_CLOSE_DELAY=-1";
+		try (AnnotationConfigApplicationContext context = start(legacyUrl)) {
+			List<Shoe> shoes = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				shoes.add(new ShoeBuilder().setArticleNumber("L" + i).build());
+			}
+			context.getBean(ShoeService.class).saveAll(shoes);
+		}
+
+		try (AnnotationConfigApplicationContext context = start(legacyUrl, "jdbc:h2:mem:shoeidseqlegacy1;DB_CLOSE_DELAY=-1",
+				"jdbc:h2:mem:shoeidseqlegacy2;DB_CLOSE_DELAY=-1")) {
+			fail("Started with shoes the shards cannot find");
+		} catch (BeanCreationException e) {
+			assertThat(rootCauseOf(e) instanceof IllegalStateException, is(true));
+		}
+	}
+
+	@Test
+	public void start_ShardedWithInMemoryFacets_ShouldRefuse() throws Exception {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put("shoe.facets.in_memory.enabled", "true");
+		try (AnnotationConfigApplicationContext context = start(properties, "jdbc:h2:mem:shoeidseqfacets0;DB_CLOSE_DELAY=-1",
+				"jdbc:h2:mem:shoeidseqfacets1;DB_CLOSE_DELAY=-1")) {
+			fail("Started with facets counted on the primary only");
+		} catch (BeanCreationException e) {
+			assertThat(rootCauseOf(e) instanceof IllegalStateException, is(true));
+		}
+	}
+
+	private static Throwable rootCauseOf(Throwable e) {
+		while (e.getCause() != null) {
+			e = e.getCause();
+		}
+		return e;
+	}
+}
@@ -0,0 +1,104 @@
+package com.proeins.dao;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.proeins.AppConfig;
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeBuilder;
+import com.proeins.service.ShoeService;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+@TestPropertySource(properties = {
+		"mysql.driver=org.h2.Driver",
+		"mysql.url=jdbc:h2:mem:shoebackfill;DB_CLOSE_DELAY=-1",
+		"mysql.user=sa",
+		"mysql.password=",
+		"hibernate.show_sql=false",
+		"hibernate.hbm2ddl.auto=create-drop",
+		"shoe.migration.numeric_backfill.batch_size=2",
+		"shoe.migration.numeric_backfill.pause_millis=0" })
+public class TestShoeNumericColumnsBackfill {
+
+	@Autowired
+	private ShoeService shoeService;
+
+	@Autowired
+	private ShoeNumericColumnsBackfill backfill;
+
+	@Autowired
+	private SessionFactory sessionFactory;
+
+	@Before
+	public void setup() {
+		shoeService.save(new ShoeBuilder().setArticleNumber("N1").setSize("42").setStock("3").build());
+		shoeService.save(new ShoeBuilder().setArticleNumber("N2").setSize("10,5").setStock("12").build());
+		shoeService.save(new ShoeBuilder().setArticleNumber("N3").setSize("XL").setStock("many").build());
+		shoeService.save(new ShoeBuilder().setArticleNumber("N4").setSize("44").build());
+		executeUpdate("update Shoe set size_value = null, stock_count = null");
+	}
+
+	@After
+	public void cleanup() {
+		executeUpdate("delete from Shoe");
+	}
+
+	private void executeUpdate(String sql) {
+		StatelessSession session = sessionFactory.openStatelessSession();
+		Transaction transaction = session.beginTransaction();
+		session.createNativeQuery(sql).executeUpdate();
+		transaction.commit();
+		session.close();
+		sessionFactory.getCache().evictAllRegions();
+	}
+
+	@Test
+	public void backfill_ShouldFillParseableValuesAcrossBatches() throws Exception {
+		assertThat(backfill.backfill(), is(3L));
+
+		List<Shoe> shoes = shoeService.searchShoes("stock<10");
+		assertThat(shoes.size(), is(1));
+		assertThat(shoes.get(0).getArticleNumber(), is("N1"));
+		assertThat(shoeService.searchShoes("size>=10.5,size<=42").size(), is(2));
+
+		Shoe unparseable = shoeService.searchShoes("articleNumber=N3").get(0);
+		assertThat(unparseable.getSizeValue(), nullValue());
+		assertThat(unparseable.getStockCount(), nullValue());
+		assertThat(shoeService.searchShoes("articleNumber=N2").get(0).getSizeValue(), is(new BigDecimal("10.50")));
+	}
+
+	@Test
+	public void backfill_WhenAlreadyDone_ShouldUpdateNothing() throws Exception {
+		backfill.backfill();
+		assertThat(backfill.backfill(), is(0L));
+	}
+
+	@Test
+	public void backfill_AfterARun_ShouldNotRescanOrEvictTheRowsItPassed() throws Exception {
+		backfill.backfill();
+		executeUpdate("update Shoe set stock_count = null where articleNumber = 'N1'");
+		Shoe passed = shoeService.searchShoes("articleNumber=N1").get(0);
+
+		// the unparseable N3 and the reset N1 lie below the stored progress
+		assertThat(backfill.backfill(), is(0L));
+		assertThat(sessionFactory.getCache().containsEntity(Shoe.class, passed.getId()), is(true));
+		assertThat(shoeService.searchShoes("articleNumber=N1").get(0).getStockCount(), nullValue());
+	}
+}
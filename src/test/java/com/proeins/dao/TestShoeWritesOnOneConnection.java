@@ -0,0 +1,78 @@
+package com.proeins.dao;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.proeins.AppConfig;
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeBuilder;
+import com.proeins.service.ShoeService;
+
+/*
+ * Writers must get by with the connection of their transaction, a second
+ * one from the pool waits forever once the pool is exhausted.
+ */
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+@TestPropertySource(properties = {
+		"mysql.driver=org.h2.Driver",
+		"mysql.url=jdbc:h2:mem:shoeoneconnection;DB_CLOSE_DELAY=-1",
+		"mysql.user=sa",
+		"mysql.password=",
+		"hibernate.show_sql=false",
+		"hibernate.hbm2ddl.auto=create-drop",
+		"hibernate.c3p0.min_size=1",
+		"hibernate.c3p0.max_size=1",
+		"shoe.sync.sequence_interval_millis=0" })
+public class TestShoeWritesOnOneConnection {
+
+	@Autowired
+	private ShoeService shoeService;
+
+	@Autowired
+	private ShoeRevisionSequencer sequencer;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Test(timeout = 30000)
+	public void writes_WithOneConnection_ShouldComplete() throws Exception {
+		long synced = shoeService.changesSince(0).getRevision();
+		new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				try {
+					Shoe shoe = shoeService.save(new ShoeBuilder().setArticleNumber("O1").setStock("5").build());
+					shoeService.saveAll(Arrays.asList(new ShoeBuilder().setArticleNumber("O2").build()));
+					shoeService.update(shoe.getId(), new ShoeBuilder().setName("Runner").build());
+					shoeService.patch(shoe.getId(), shoe.getVersion(), new ShoeBuilder().setColor("red").build());
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+
+		sequencer.sequence();
+		List<String> articleNumbers = new ArrayList<>();
+		for (Shoe shoe : shoeService.changesSince(synced).getShoes()) {
+			articleNumbers.add(shoe.getArticleNumber());
+		}
+		assertThat(articleNumbers, contains("O1", "O2"));
+	}
+}
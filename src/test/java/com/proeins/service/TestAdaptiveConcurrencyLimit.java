@@ -0,0 +1,156 @@
+package com.proeins.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.proeins.dao.SearchQuery;
+import com.proeins.dao.ShoeDao;
+import com.proeins.exception.ServiceOverloadedException;
+import com.proeins.model.Shoe;
+
+public class TestAdaptiveConcurrencyLimit {
+
+	private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	public void rejectsCallsAboveTheLimit() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10, 1.5, 0.2, 600);
+
+		assertThat(limit.tryAcquire(), is(true));
+		assertThat(limit.tryAcquire(), is(true));
+		assertThat(limit.tryAcquire(), is(false));
+		assertThat(limit.getInFlight(), is(2));
+		assertThat(limit.getRejected(), is(1L));
+
+		limit.release(MILLI);
+		assertThat(limit.tryAcquire(), is(true));
+	}
+
+	@Test
+	public void growsWhileLatencyHolds() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 50, 1.5, 0.2, 600);
+
+		for (int i = 0; i < 100; i++) {
+			fill(limit);
+			drain(limit, MILLI);
+		}
+
+		assertThat(limit.getLimit(), is(50));
+	}
+
+	@Test
+	public void doesNotGrowWhileMostlyIdle() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 50, 1.5, 0.2, 600);
+
+		for (int i = 0; i < 100; i++) {
+			limit.tryAcquire();
+			limit.release(MILLI);
+		}
+
+		assertThat(limit.getLimit(), is(10));
+	}
+
+	@Test
+	public void shrinksWhenLatencyRisesAndRecovers() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(40, 2, 40, 1.5, 0.2, 600);
+		for (int i = 0; i < 10; i++) {
+			fill(limit);
+			drain(limit, MILLI);
+		}
+		assertThat(limit.getLimit(), is(40));
+
+		for (int i = 0; i < 10; i++) {
+			fill(limit);
+			drain(limit, 20 * MILLI);
+		}
+		assertThat(limit.getLimit() <= 5, is(true));
+
+		for (int i = 0; i < 100; i++) {
+			fill(limit);
+			drain(limit, MILLI);
+		}
+		assertThat(limit.getLimit(), is(40));
+	}
+
+	@Test
+	public void limitsReadsAndWritesApart() throws Exception {
+		final CountDownLatch searching = new CountDownLatch(1);
+		final CountDownLatch finish = new CountDownLatch(1);
+		ShoeDao shoeDao = mock(ShoeDao.class);
+		when(shoeDao.searchShoes(any(SearchQuery.class))).thenAnswer(new Answer<List<Shoe>>() {
+			@Override
+			public List<Shoe> answer(InvocationOnMock invocation) throws Throwable {
+				searching.countDown();
+				finish.await(5, TimeUnit.SECONDS);
+				return Collections.emptyList();
+			}
+		});
+		ConcurrencyLimitPostProcessor processor = new ConcurrencyLimitPostProcessor(ShoeService.class,
+				new AdaptiveConcurrencyLimit(1, 1, 1, 1.5, 0.2, 600), new AdaptiveConcurrencyLimit(1, 1, 1, 1.5, 0.2, 600),
+				3, Collections.singleton("exportShoes"));
+		final ShoeService shoeService = (ShoeService) processor.postProcessAfterInitialization(
+				new ShoeServiceImpl(shoeDao, mock(StockReservations.class), mock(PlatformTransactionManager.class)),
+				"shoeService");
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<List<Shoe>> search = executor.submit(new Callable<List<Shoe>>() {
+				@Override
+				public List<Shoe> call() {
+					return shoeService.searchShoes("brand:Nike");
+				}
+			});
+			assertThat(searching.await(5, TimeUnit.SECONDS), is(true));
+
+			try {
+				shoeService.searchShoes("brand:Puma");
+				fail("Read above the limit");
+			} catch (ServiceOverloadedException e) {
+				assertThat(e.getRetryAfterSeconds(), is(3));
+			}
+			// writes and exports are not held up by the reads in flight
+			shoeService.delete(1L);
+			verify(shoeDao).delete(1L);
+			shoeService.exportShoes(null, null);
+
+			finish.countDown();
+			assertThat(search.get(5, TimeUnit.SECONDS).isEmpty(), is(true));
+			assertThat(processor.getReadLimit().getInFlight(), is(0));
+			assertThat(processor.getReadLimit().getRejected(), is(1L));
+			assertThat(processor.getWriteLimit().getRejected(), is(0L));
+		} finally {
+			finish.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	private static void fill(AdaptiveConcurrencyLimit limit) {
+		while (limit.tryAcquire()) {
+		}
+	}
+
+	private static void drain(AdaptiveConcurrencyLimit limit, long latencyNanos) {
+		while (limit.getInFlight() > 0) {
+			limit.release(latencyNanos);
+		}
+	}
+}
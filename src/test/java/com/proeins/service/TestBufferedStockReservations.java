@@ -0,0 +1,140 @@
+package com.proeins.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.proeins.AppConfig;
+import com.proeins.exception.StockConflictException;
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeBuilder;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+@TestPropertySource(properties = {
+		"mysql.driver=org.h2.Driver",
+		"mysql.url=jdbc:h2:mem:shoestock;DB_CLOSE_DELAY=-1",
+		"mysql.user=sa",
+		"mysql.password=",
+		"hibernate.show_sql=false",
+		"hibernate.hbm2ddl.auto=create-drop",
+		"shoe.stock.buffered.enabled=true",
+		"shoe.stock.buffered.chunk_size=10",
+		"shoe.stock.buffered.flush_interval_millis=3600000" })
+public class TestBufferedStockReservations {
+
+	@Autowired
+	private ShoeService shoeService;
+
+	@Autowired
+	private StockReservations stockReservations;
+
+	private Shoe shoe;
+
+	@Before
+	public void setup() {
+		shoe = shoeService.save(new ShoeBuilder().setArticleNumber("H1").setStock("25").build());
+	}
+
+	@After
+	public void cleanup() throws Exception {
+		((BufferedStockReservations) stockReservations).flush();
+		for (Shoe found : shoeService.searchShoes(null)) {
+			shoeService.delete(found.getId());
+		}
+	}
+
+	private String stockInDatabase() {
+		return shoeService.searchShoes("articleNumber=H1").get(0).getStock();
+	}
+
+	@Test
+	public void reserveStock_ConcurrentBuyers_ShouldNeverOversell() throws Exception {
+		assertThat(stockReservations, instanceOf(BufferedStockReservations.class));
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Boolean>> results = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			results.add(executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					try {
+						shoeService.reserveStock(shoe.getId(), 1);
+						return true;
+					} catch (StockConflictException e) {
+						return false;
+					}
+				}
+			}));
+		}
+		int reserved = 0;
+		for (Future<Boolean> result : results) {
+			reserved += result.get() ? 1 : 0;
+		}
+		executor.shutdown();
+
+		assertThat(reserved, is(25));
+		((BufferedStockReservations) stockReservations).flush();
+		assertThat(stockInDatabase(), is("0"));
+	}
+
+	@Test
+	public void reserveStock_ShouldClaimChunksAndReturnUnsoldUnitsOnFlush() throws Exception {
+		shoeService.reserveStock(shoe.getId(), 2);
+		assertThat(stockInDatabase(), is("15"));
+
+		shoeService.reserveStock(shoe.getId(), 3);
+		shoeService.releaseStock(shoe.getId(), 1);
+		assertThat(stockInDatabase(), is("15"));
+
+		((BufferedStockReservations) stockReservations).flush();
+		assertThat(stockInDatabase(), is("21"));
+	}
+
+	@Test
+	public void reserveStock_UnitsOnSeveralStripes_ShouldBeServedFromMemory() throws Exception {
+		shoeService.reserveStock(shoe.getId(), 2);
+		// released on another thread, so most likely onto another stripe
+		ExecutorService other = Executors.newSingleThreadExecutor();
+		other.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				shoeService.releaseStock(shoe.getId(), 5);
+				return null;
+			}
+		}).get();
+		other.shutdown();
+
+		shoeService.reserveStock(shoe.getId(), 13);
+		assertThat(stockInDatabase(), is("15"));
+	}
+
+	@Test(expected = StockConflictException.class)
+	public void reserveStock_NeitherMemoryNorDatabaseEnough_ShouldCombineBothBeforeConflict() throws Exception {
+		shoeService.reserveStock(shoe.getId(), 2);
+
+		shoeService.reserveStock(shoe.getId(), 20);
+		assertThat(stockInDatabase(), is("3"));
+		try {
+			shoeService.reserveStock(shoe.getId(), 4);
+		} finally {
+			((BufferedStockReservations) stockReservations).flush();
+			assertThat(stockInDatabase(), is("3"));
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package com.proeins.service;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.proeins.AppConfig;
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeBuilder;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+@TestPropertySource(properties = {
+		"mysql.driver=org.h2.Driver",
+		"mysql.url=jdbc:h2:mem:shoemetrics;DB_CLOSE_DELAY=-1",
+		"mysql.user=sa",
+		"mysql.password=",
+		"hibernate.show_sql=false",
+		"hibernate.hbm2ddl.auto=create-drop",
+		"shoe.limit.enabled=true",
+		"shoe.search.coalescing.enabled=true" })
+public class TestMetricsService {
+
+	@Autowired
+	private ShoeService shoeService;
+
+	@Autowired
+	private MetricsService metricsService;
+
+	@Test
+	public void scrape_AfterSave_ShouldContainServiceDaoAndHibernateMetrics() throws Exception {
+		Shoe shoe = shoeService.save(new ShoeBuilder().setArticleNumber("M1").setBrand("Measured").build());
+		shoeService.delete(shoe.getId());
+		shoeService.searchShoes("brand=Measured");
+
+		String scrape = metricsService.scrape();
+		assertThat(scrape, containsString("# TYPE shoe_service_seconds histogram\n"));
+		assertThat(scrape, containsString("shoe_service_seconds_count{method=\"save\"} 1\n"));
+		assertThat(scrape, containsString("shoe_service_seconds_bucket{method=\"delete\",le=\"0.001024\"} "));
+		assertThat(scrape, containsString("shoe_service_seconds_bucket{method=\"delete\",le=\"33.554432\"} 1\n"));
+		assertThat(scrape, containsString("shoe_service_seconds_bucket{method=\"delete\",le=\"+Inf\"} 1\n"));
+		assertThat(scrape, containsString("shoe_service_seconds_sum{method=\"delete\"} "));
+		assertThat(scrape, containsString("shoe_dao_seconds_count{method=\"save\"} 1\n"));
+		assertThat(scrape, containsString("shoe_pool_acquire_seconds_count "));
+		assertThat(scrape, containsString("shoe_search_requests_total{result=\"executed\"} 1\n"));
+		assertThat(scrape, containsString("shoe_search_requests_total{result=\"coalesced\"} 0\n"));
+		assertThat(scrape, containsString("shoe_concurrency_limit{kind=\"read\"} "));
+		assertThat(scrape, containsString("shoe_concurrency_in_flight{kind=\"write\"} 0\n"));
+		assertThat(scrape, containsString("shoe_concurrency_rejected_total{kind=\"write\"} 0\n"));
+		assertThat(scrape, containsString("# TYPE hibernate_statements_prepared_total counter\n"));
+		assertThat(scrape, containsString("hibernate_entities_total{operation=\"insert\"} "));
+	}
+}
@@ -0,0 +1,179 @@
+package com.proeins.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.proeins.dao.SearchQuery;
+import com.proeins.dao.ShoeCatalogVersion;
+import com.proeins.dao.ShoeDao;
+import com.proeins.exception.InvalidRequestException;
+import com.proeins.model.Shoe;
+
+public class TestSearchCoalescer {
+
+	private static final int CALLERS = 8;
+
+	private final SearchCoalescer coalescer = new SearchCoalescer();
+
+	private final ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+
+	@After
+	public void cleanup() {
+		callers.shutdownNow();
+	}
+
+	/* starts all callers on one execution that only finishes once every caller has joined it */
+	private List<Future<Object>> callConcurrently(final String key, final Callable<Object> execution) throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		List<Future<Object>> results = new ArrayList<>();
+		results.add(callers.submit(new Callable<Object>() {
+			@Override
+			public Object call() {
+				return coalescer.execute(key, new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						started.countDown();
+						while (coalescer.getCoalesced() < CALLERS - 1) {
+							Thread.sleep(1);
+						}
+						return execution.call();
+					}
+				});
+			}
+		}));
+		assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+		for (int i = 1; i < CALLERS; i++) {
+			results.add(callers.submit(new Callable<Object>() {
+				@Override
+				public Object call() {
+					return coalescer.execute(key, new Callable<Object>() {
+						@Override
+						public Object call() {
+							throw new AssertionError("joined callers must not execute");
+						}
+					});
+				}
+			}));
+		}
+		return results;
+	}
+
+	@Test
+	public void execute_ConcurrentSameKey_ShouldShareOneExecution() throws Exception {
+		final Object result = new Object();
+		final AtomicInteger runs = new AtomicInteger();
+		List<Future<Object>> results = callConcurrently("brand=Nike", new Callable<Object>() {
+			@Override
+			public Object call() {
+				runs.incrementAndGet();
+				return result;
+			}
+		});
+
+		for (Future<Object> future : results) {
+			assertThat(future.get(5, TimeUnit.SECONDS), is(sameInstance(result)));
+		}
+		assertThat(runs.get(), is(1));
+		assertThat(coalescer.getExecutions(), is(1L));
+		assertThat(coalescer.getCoalesced(), is((long) CALLERS - 1));
+	}
+
+	@Test
+	public void execute_Failure_ShouldBeThrownToEveryCaller() throws Exception {
+		List<Future<Object>> results = callConcurrently("brand=Nike", new Callable<Object>() {
+			@Override
+			public Object call() {
+				throw new InvalidRequestException("failed");
+			}
+		});
+
+		for (Future<Object> future : results) {
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertThat(e.getCause() instanceof InvalidRequestException, is(true));
+			}
+		}
+	}
+
+	@Test
+	public void execute_AfterCompletion_ShouldExecuteAgain() {
+		Callable<String> execution = new Callable<String>() {
+			@Override
+			public String call() {
+				return "result";
+			}
+		};
+		coalescer.execute("brand=Nike", execution);
+		coalescer.execute("brand=Nike", execution);
+		coalescer.execute("brand=Puma", execution);
+
+		assertThat(coalescer.getExecutions(), is(3L));
+		assertThat(coalescer.getCoalesced(), is(0L));
+	}
+
+	@Test
+	public void searchShoes_AfterWrite_ShouldNotJoinSearchStartedBeforeIt() throws Exception {
+		final CountDownLatch searching = new CountDownLatch(1);
+		final CountDownLatch finish = new CountDownLatch(1);
+		final AtomicInteger runs = new AtomicInteger();
+		ShoeDao shoeDao = mock(ShoeDao.class);
+		when(shoeDao.searchShoes(any(SearchQuery.class))).thenAnswer(new Answer<List<Shoe>>() {
+			@Override
+			public List<Shoe> answer(InvocationOnMock invocation) throws Throwable {
+				if (runs.incrementAndGet() == 1) {
+					searching.countDown();
+					finish.await(5, TimeUnit.SECONDS);
+				}
+				return Collections.emptyList();
+			}
+		});
+		ShoeCatalogVersion catalogVersion = new ShoeCatalogVersion();
+		final ShoeServiceImpl shoeService = new ShoeServiceImpl(shoeDao, mock(StockReservations.class),
+				mock(PlatformTransactionManager.class));
+		shoeService.setSearchCoalescer(coalescer);
+		shoeService.setCatalogVersion(catalogVersion);
+		Callable<List<Shoe>> search = new Callable<List<Shoe>>() {
+			@Override
+			public List<Shoe> call() {
+				return shoeService.searchShoes("brand:Nike");
+			}
+		};
+
+		Future<List<Shoe>> before = callers.submit(search);
+		assertThat(searching.await(5, TimeUnit.SECONDS), is(true));
+		// a write committed while the search runs, which may not see it
+		catalogVersion.modified();
+		Future<List<Shoe>> after = callers.submit(search);
+
+		assertThat(after.get(5, TimeUnit.SECONDS).isEmpty(), is(true));
+		assertThat(coalescer.getCoalesced(), is(0L));
+		finish.countDown();
+		before.get(5, TimeUnit.SECONDS);
+		assertThat(runs.get(), is(2));
+	}
+}
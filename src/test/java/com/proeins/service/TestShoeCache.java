@@ -0,0 +1,152 @@
+package com.proeins.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.proeins.AppConfig;
+import com.proeins.dao.ShoeCatalogVersion;
+import com.proeins.exception.ShoeVersionConflictException;
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeBuilder;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+@TestPropertySource(properties = {
+		"mysql.driver=org.h2.Driver",
+		"mysql.url=jdbc:h2:mem:shoecache;DB_CLOSE_DELAY=-1",
+		"mysql.user=sa",
+		"mysql.password=",
+		"hibernate.show_sql=false",
+		"hibernate.hbm2ddl.auto=create-drop",
+		"shoe.sync.sequence_interval_millis=0" })
+public class TestShoeCache {
+
+	@Autowired
+	private ShoeService shoeService;
+
+	@Autowired
+	private CacheStatisticsService cacheStatisticsService;
+
+	@Autowired
+	private SessionFactory sessionFactory;
+
+	@Autowired
+	private ShoeCatalogVersion catalogVersion;
+
+	private Statistics statistics;
+
+	@Before
+	public void setup() {
+		// the regions are shared with the contexts of other test classes in this JVM
+		sessionFactory.getCache().evictAllRegions();
+		shoeService.save(new ShoeBuilder().setArticleNumber("C1").setBrand("Nike").setColor("red").build());
+		statistics = sessionFactory.getStatistics();
+		statistics.clear();
+	}
+
+	@After
+	public void cleanup() throws Exception {
+		for (Shoe shoe : shoeService.searchShoes(null)) {
+			shoeService.delete(shoe.getId());
+		}
+	}
+
+	@Test
+	public void searchShoes_RepeatedSearch_ShouldBeAnsweredFromCache() {
+		shoeService.searchShoes("brand:Nike");
+		long executions = statistics.getQueryExecutionCount();
+
+		List<Shoe> shoes = shoeService.searchShoes("brand:Nike");
+
+		assertThat(shoes, hasSize(1));
+		assertThat(statistics.getQueryExecutionCount(), is(executions));
+		assertThat(statistics.getQueryCacheHitCount(), is(1L));
+		assertThat(statistics.getSecondLevelCacheStatistics(Shoe.CACHE_REGION).getHitCount(), is(1L));
+	}
+
+	@Test
+	public void searchShoes_AfterSave_ShouldNotReturnStaleResult() {
+		assertThat(shoeService.searchShoes("brand:Nike"), hasSize(1));
+		shoeService.save(new ShoeBuilder().setArticleNumber("C2").setBrand("Nike").setColor("blue").build());
+		assertThat(shoeService.searchShoes("brand:Nike"), hasSize(2));
+	}
+
+	@Test
+	public void searchShoes_AfterUpdate_ShouldNotReturnStaleEntity() throws Exception {
+		Shoe cached = shoeService.searchShoes("brand:Nike").get(0);
+		shoeService.update(cached.getId(), new ShoeBuilder().setColor("green").build());
+
+		assertThat(shoeService.searchShoes("color:red"), hasSize(0));
+		assertThat(shoeService.searchShoes("brand:Nike").get(0).getColor(), is("green"));
+	}
+
+	@Test
+	public void searchShoes_AfterDelete_ShouldNotReturnDeletedShoe() throws Exception {
+		Shoe cached = shoeService.searchShoes("brand:Nike").get(0);
+		shoeService.delete(cached.getId());
+		assertThat(shoeService.searchShoes("brand:Nike"), hasSize(0));
+	}
+
+	@Test
+	public void reserveStock_ShouldOnlyEvictTheReservedShoeFromCache() throws Exception {
+		shoeService.save(new ShoeBuilder().setArticleNumber("C3").setBrand("Nike").setStock("5").build());
+		List<Shoe> cached = shoeService.searchShoes("brand:Nike");
+		Shoe other = cached.get(0).getArticleNumber().equals("C1") ? cached.get(0) : cached.get(1);
+		Shoe reserved = cached.get(0) == other ? cached.get(1) : cached.get(0);
+
+		shoeService.reserveStock(reserved.getId(), 2);
+
+		assertThat(sessionFactory.getCache().containsEntity(Shoe.class, other.getId()), is(true));
+		for (Shoe shoe : shoeService.searchShoes("brand:Nike")) {
+			if (shoe.getId().equals(reserved.getId())) {
+				assertThat(shoe.getStock(), is("3"));
+				assertThat(shoe.getVersion(), is(reserved.getVersion() + 1));
+			}
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void getStatistics_ShouldReportRegionCounters() {
+		shoeService.searchShoes("brand:Nike");
+		shoeService.searchShoes("brand:Nike");
+
+		Map<String, Object> result = cacheStatisticsService.getStatistics();
+		Map<String, Object> queries = (Map<String, Object>) result.get("queries");
+		Map<String, Object> shoes = (Map<String, Object>) result.get(Shoe.CACHE_REGION);
+		assertThat(queries.get("hits"), is((Object) 1L));
+		assertThat(shoes.get("hits"), is((Object) 1L));
+		assertThat(shoes.containsKey("evictions"), is(true));
+	}
+
+	@Test
+	public void catalogVersion_ShouldOnlyMoveOnCommittedWrites() throws Exception {
+		ShoeCatalogVersion.Stamp before = catalogVersion.current();
+		Shoe cached = shoeService.searchShoes("brand:Nike").get(0);
+		try {
+			shoeService.patch(cached.getId(), cached.getVersion() + 1, new ShoeBuilder().setColor("green").build());
+		} catch (ShoeVersionConflictException e) {
+			// expected, nothing was written
+		}
+		assertThat(catalogVersion.current().getETag(), is(before.getETag()));
+
+		shoeService.update(cached.getId(), new ShoeBuilder().setColor("green").build());
+		assertThat(catalogVersion.current().getETag().equals(before.getETag()), is(false));
+		assertThat(catalogVersion.current().getLastModified() >= before.getLastModified(), is(true));
+	}
+}
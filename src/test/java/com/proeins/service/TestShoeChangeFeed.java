@@ -0,0 +1,215 @@
+package com.proeins.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.proeins.AppConfig;
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeBuilder;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+@TestPropertySource(properties = {
+		"mysql.driver=org.h2.Driver",
+		"mysql.url=jdbc:h2:mem:shoechanges;DB_CLOSE_DELAY=-1",
+		"mysql.user=sa",
+		"mysql.password=",
+		"hibernate.show_sql=false",
+		"hibernate.hbm2ddl.auto=create-drop",
+		"shoe.changes.enabled=true",
+		"shoe.changes.replay_size=3",
+		"shoe.changes.buffer_size=3",
+		"shoe.changes.heartbeat_seconds=0" })
+public class TestShoeChangeFeed {
+
+	@Autowired
+	private ShoeService shoeService;
+
+	@Autowired
+	private ShoeChangeFeed changeFeed;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private RecordingSubscriber subscriber;
+
+	@Before
+	public void setup() {
+		subscriber = new RecordingSubscriber();
+	}
+
+	@After
+	public void cleanup() throws Exception {
+		changeFeed.unsubscribe(subscriber);
+		for (Shoe shoe : shoeService.searchShoes(null)) {
+			shoeService.delete(shoe.getId());
+		}
+	}
+
+	@Test
+	public void subscribe_ShouldReceiveCommittedWritesInOrder() throws Exception {
+		changeFeed.subscribe(null, subscriber);
+
+		Shoe shoe = shoeService.save(new ShoeBuilder().setArticleNumber("C1").setStock("5").build());
+		shoeService.update(shoe.getId(), new ShoeBuilder().setStock("6").build());
+		shoeService.delete(shoe.getId());
+
+		assertThat(subscriber.next(), is("saved C1 5"));
+		assertThat(subscriber.next(), is("updated C1 6"));
+		assertThat(subscriber.next(), is("deleted C1 6"));
+	}
+
+	@Test
+	public void subscribe_RolledBackWrite_ShouldNotBePublished() throws Exception {
+		changeFeed.subscribe(null, subscriber);
+
+		new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				shoeService.save(new ShoeBuilder().setArticleNumber("C2").build());
+				status.setRollbackOnly();
+			}
+		});
+		shoeService.save(new ShoeBuilder().setArticleNumber("C3").setStock("1").build());
+
+		assertThat(subscriber.next(), is("saved C3 1"));
+	}
+
+	@Test
+	public void subscribe_AfterLastEventId_ShouldReplayMissedChanges() throws Exception {
+		changeFeed.subscribe(null, subscriber);
+		shoeService.save(new ShoeBuilder().setArticleNumber("C4").setStock("1").build());
+		subscriber.next();
+		String lastId = subscriber.lastId;
+
+		shoeService.save(new ShoeBuilder().setArticleNumber("C5").setStock("1").build());
+		shoeService.save(new ShoeBuilder().setArticleNumber("C6").setStock("1").build());
+
+		RecordingSubscriber resumed = new RecordingSubscriber();
+		changeFeed.subscribe(lastId, resumed);
+		try {
+			assertThat(resumed.next(), is("saved C5 1"));
+			assertThat(resumed.next(), is("saved C6 1"));
+			assertThat(resumed.events.poll(200, TimeUnit.MILLISECONDS), is(nullValue()));
+		} finally {
+			changeFeed.unsubscribe(resumed);
+		}
+	}
+
+	@Test
+	public void subscribe_LastEventIdOutOfReplay_ShouldReset() throws Exception {
+		changeFeed.subscribe(null, subscriber);
+		shoeService.save(new ShoeBuilder().setArticleNumber("C7").setStock("1").build());
+		subscriber.next();
+		String lastId = subscriber.lastId;
+		for (int i = 0; i < 4; i++) {
+			shoeService.save(new ShoeBuilder().setArticleNumber("C8" + i).setStock("1").build());
+		}
+
+		RecordingSubscriber resumed = new RecordingSubscriber();
+		changeFeed.subscribe(lastId, resumed);
+		RecordingSubscriber unknown = new RecordingSubscriber();
+		changeFeed.subscribe("unknown-1", unknown);
+		try {
+			assertThat(resumed.next(), is("reset"));
+			assertThat(unknown.next(), is("reset"));
+		} finally {
+			changeFeed.unsubscribe(resumed);
+			changeFeed.unsubscribe(unknown);
+		}
+	}
+
+	@Test
+	public void subscribe_StalledSubscriber_ShouldNotHoldUpOthersAndBeClosedWhenBehind() throws Exception {
+		final CountDownLatch stalled = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch closed = new CountDownLatch(1);
+		ShoeChangeFeed.Subscriber slow = new RecordingSubscriber() {
+			@Override
+			public void changed(ShoeChange change) {
+				stalled.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			@Override
+			public void close() {
+				closed.countDown();
+			}
+		};
+		changeFeed.subscribe(null, slow);
+		changeFeed.subscribe(null, subscriber);
+		try {
+			shoeService.save(new ShoeBuilder().setArticleNumber("C90").setStock("1").build());
+			assertThat(stalled.await(5, TimeUnit.SECONDS), is(true));
+			for (int i = 1; i <= 4; i++) {
+				shoeService.save(new ShoeBuilder().setArticleNumber("C9" + i).setStock("1").build());
+			}
+
+			for (int i = 0; i <= 4; i++) {
+				assertThat(subscriber.next(), is("saved C9" + i + " 1"));
+			}
+			assertThat(closed.getCount(), is(1L));
+			release.countDown();
+			assertThat(closed.await(5, TimeUnit.SECONDS), is(true));
+		} finally {
+			release.countDown();
+			changeFeed.unsubscribe(slow);
+		}
+	}
+
+	private static class RecordingSubscriber implements ShoeChangeFeed.Subscriber {
+
+		private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+		private volatile String lastId;
+
+		@Override
+		public void changed(ShoeChange change) {
+			lastId = change.getId();
+			events.add(change.getType().name().toLowerCase() + " " + change.getShoe().getArticleNumber() + " "
+					+ change.getShoe().getStock());
+		}
+
+		@Override
+		public void reset(String id) {
+			lastId = id;
+			events.add("reset");
+		}
+
+		@Override
+		public void heartbeat() {
+		}
+
+		@Override
+		public void close() {
+			events.add("closed");
+		}
+
+		String next() throws InterruptedException {
+			return events.poll(5, TimeUnit.SECONDS);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package com.proeins.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.proeins.AppConfig;
+import com.proeins.exception.InvalidRequestException;
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeBuilder;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+@TestPropertySource(properties = {
+		"mysql.driver=org.h2.Driver",
+		"mysql.url=jdbc:h2:mem:shoeimport;DB_CLOSE_DELAY=-1",
+		"mysql.user=sa",
+		"mysql.password=",
+		"hibernate.show_sql=false",
+		"hibernate.hbm2ddl.auto=create-drop",
+		"shoe.import.batch_size=50",
+		"shoe.import.parallelism=2",
+		"shoe.import.max_record_length=100" })
+public class TestShoeImportService {
+
+	@Autowired
+	private ShoeService shoeService;
+
+	@Autowired
+	private ShoeImportService shoeImportService;
+
+	private final List<String> errors = new ArrayList<>();
+
+	private final List<Long> committedRows = new ArrayList<>();
+
+	private final ShoeImportListener listener = new ShoeImportListener() {
+		@Override
+		public void rowFailed(long line, List<String> rowErrors) {
+			errors.add(line + ": " + rowErrors);
+		}
+
+		@Override
+		public void batchCommitted(ShoeImportProgress progress) {
+			committedRows.add(progress.getRows());
+		}
+	};
+
+	@After
+	public void cleanup() throws Exception {
+		for (Shoe found : shoeService.searchShoes(null)) {
+			shoeService.delete(found.getId());
+		}
+	}
+
+	private ShoeImportProgress importCsv(String csv) throws IOException {
+		ShoeCsvReader rows = shoeImportService.open(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+		return shoeImportService.importShoes(rows, listener);
+	}
+
+	@Test
+	public void importShoes_ManyBatches_ShouldUpsertByArticleNumber() throws Exception {
+		Shoe existing = shoeService.save(new ShoeBuilder().setArticleNumber("I7").setBrand("Before").setColor("black").build());
+		StringBuilder csv = new StringBuilder("id,articleNumber,name,brand,color,size,stock\r\n");
+		for (int i = 0; i < 120; i++) {
+			csv.append(",I").append(i).append(",\"Runner, \"\"").append(i).append("\"\"\",Imported,,42,5\r\n");
+		}
+
+		ShoeImportProgress progress = importCsv(csv.toString());
+
+		assertThat(progress.getRows(), is(120L));
+		assertThat(progress.getInserted(), is(119L));
+		assertThat(progress.getUpdated(), is(1L));
+		assertThat(progress.getFailed(), is(0L));
+		assertThat(committedRows, contains(50L, 100L, 120L));
+		assertThat(shoeService.searchShoes("brand:Imported").size(), is(120));
+		Shoe updated = shoeService.searchShoes("articleNumber:I7").get(0);
+		assertThat(updated.getId(), is(existing.getId()));
+		assertThat(updated.getName(), is("Runner, \"7\""));
+		assertThat(updated.getColor(), is("black"));
+	}
+
+	@Test
+	public void importShoes_InvalidRows_ShouldOnlyFailThemselves() throws Exception {
+		StringBuilder tooLong = new StringBuilder();
+		for (int i = 0; i < 101; i++) {
+			tooLong.append('x');
+		}
+		ShoeImportProgress progress = importCsv("articleNumber,brand,stock\n"
+				+ "I1,Imported,3\n"
+				+ ",Imported,3\n"
+				+ "I2,Imported,-1\n"
+				+ "I3,Imported\n"
+				+ "\n"
+				+ "I4,\"" + tooLong + "\",1\n"
+				+ "I5,\"Imported\",2\n");
+
+		assertThat(progress.getRows(), is(6L));
+		assertThat(progress.getInserted(), is(2L));
+		assertThat(progress.getFailed(), is(4L));
+		assertThat(errors, contains("3: [articleNumber is required]",
+				"4: [stock must be a whole number of at least 0]",
+				"5: [Expected 3 fields, found 2]",
+				"7: [Record is longer than 100 characters]"));
+		assertThat(shoeService.searchShoes("brand:Imported").size(), is(2));
+	}
+
+	@Test
+	public void importShoes_RepeatedArticleNumber_ShouldCountOneShoe() throws Exception {
+		ShoeImportProgress progress = importCsv("articleNumber,brand,color\n"
+				+ "I1,Imported,red\n"
+				+ "i1,Imported,blue\n"
+				+ "I2,Imported,red\n");
+
+		assertThat(progress.getRows(), is(3L));
+		assertThat(progress.getInserted(), is(2L));
+		assertThat(progress.getUpdated(), is(0L));
+		assertThat(shoeService.searchShoes("brand:Imported").size(), is(2));
+	}
+
+	@Test(expected = InvalidRequestException.class)
+	public void open_UnknownColumn_ShouldBeRejected() throws Exception {
+		importCsv("articleNumber,price\nI1,10\n");
+	}
+}
@@ -0,0 +1,89 @@
+package com.proeins.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.proeins.AppConfig;
+import com.proeins.model.Shoe;
+import com.proeins.model.ShoeBuilder;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {AppConfig.class})
+@TestPropertySource(properties = {
+		"mysql.driver=org.h2.Driver",
+		"mysql.url=jdbc:h2:mem:shoeingest;DB_CLOSE_DELAY=-1",
+		"mysql.user=sa",
+		"mysql.password=",
+		"hibernate.show_sql=false",
+		"hibernate.hbm2ddl.auto=create-drop",
+		"shoe.ingest.enabled=true",
+		"shoe.ingest.batch_size=50",
+		"shoe.ingest.max_delay_millis=50" })
+public class TestShoeIngestService {
+
+	@Autowired
+	private ShoeService shoeService;
+
+	@Autowired
+	private ShoeIngestService shoeIngestService;
+
+	@After
+	public void cleanup() throws Exception {
+		for (Shoe found : shoeService.searchShoes(null)) {
+			shoeService.delete(found.getId());
+		}
+	}
+
+	private ShoeIngestTicket await(ShoeIngestTicket ticket) throws InterruptedException {
+		for (int i = 0; i < 500 && ticket.getStatus() == ShoeIngestTicket.Status.PENDING; i++) {
+			Thread.sleep(10);
+		}
+		return ticket;
+	}
+
+	@Test
+	public void submitSave_Burst_ShouldCommitAllShoes() throws Exception {
+		List<ShoeIngestTicket> tickets = new ArrayList<>();
+		for (int i = 0; i < 120; i++) {
+			tickets.add(shoeIngestService.submitSave(new ShoeBuilder().setArticleNumber("Q" + i).setBrand("Queued").build()));
+		}
+		for (ShoeIngestTicket ticket : tickets) {
+			assertThat(await(ticket).getStatus(), is(ShoeIngestTicket.Status.DONE));
+			assertThat(ticket.getShoeId(), notNullValue());
+			assertThat(shoeIngestService.getTicket(ticket.getId()), is(ticket));
+		}
+		assertThat(shoeService.searchShoes("brand=Queued").size(), is(120));
+	}
+
+	@Test
+	public void submitUpdate_MissingShoe_ShouldOnlyFailItsTicket() throws Exception {
+		Shoe shoe = shoeService.save(new ShoeBuilder().setArticleNumber("Q1").setBrand("Before").build());
+		ShoeIngestTicket missing = shoeIngestService.submitUpdate(Long.MAX_VALUE, new ShoeBuilder().setBrand("After").build());
+		ShoeIngestTicket updated = shoeIngestService.submitUpdate(shoe.getId(), new ShoeBuilder().setBrand("After").build());
+		ShoeIngestTicket saved = shoeIngestService.submitSave(new ShoeBuilder().setArticleNumber("Q2").setBrand("After").build());
+
+		assertThat(await(missing).getStatus(), is(ShoeIngestTicket.Status.FAILED));
+		assertThat(missing.getError(), notNullValue());
+		assertThat(await(updated).getStatus(), is(ShoeIngestTicket.Status.DONE));
+		assertThat(updated.getShoeId(), is(shoe.getId()));
+		assertThat(await(saved).getStatus(), is(ShoeIngestTicket.Status.DONE));
+		assertThat(shoeService.searchShoes("brand=After").size(), is(2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void submitSave_EmptyShoe_ShouldThrowIllegalArgumentException() throws Exception {
+		shoeIngestService.submitSave(new Shoe());
+	}
+}